@@ -18,6 +18,7 @@
 
 import org.apache.calcite.DataContext;
 import org.apache.calcite.adapter.java.AbstractQueryableTable;
+import org.apache.calcite.adapter.java.JavaTypeFactory;
 import org.apache.calcite.linq4j.AbstractEnumerable;
 import org.apache.calcite.linq4j.Enumerable;
 import org.apache.calcite.linq4j.Enumerator;
@@ -29,8 +30,10 @@
 import org.apache.calcite.rel.RelCollations;
 import org.apache.calcite.rel.type.RelDataType;
 import org.apache.calcite.rel.type.RelDataTypeFactory;
+import org.apache.calcite.rel.type.RelDataTypeField;
 import org.apache.calcite.rel.type.RelProtoDataType;
-import org.apache.calcite.schema.ScannableTable;
+import org.apache.calcite.runtime.ColumnBatch;
+import org.apache.calcite.schema.ColumnarScannableTable;
 import org.apache.calcite.schema.SchemaPlus;
 import org.apache.calcite.schema.Statistic;
 import org.apache.calcite.schema.Statistics;
@@ -45,6 +48,7 @@
 import java.lang.reflect.Array;
 import java.lang.reflect.Type;
 import java.util.AbstractList;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -55,7 +59,8 @@
  * values in the column; see {@link Representation} and
  * {@link RepresentationType}.
  */
-class ArrayTable extends AbstractQueryableTable implements ScannableTable {
+class ArrayTable extends AbstractQueryableTable
+    implements ColumnarScannableTable {
   private final RelProtoDataType protoRowType;
   private final Supplier<Content> supplier;
 
@@ -91,6 +96,20 @@ public Enumerator<Object[]> enumerator() {
     };
   }
 
+  public Enumerable<ColumnBatch> scanBatches(DataContext root) {
+    final JavaTypeFactory typeFactory = root.getTypeFactory();
+    final List<Type> types = new ArrayList<>();
+    for (RelDataTypeField field : getRowType(typeFactory).getFieldList()) {
+      types.add(typeFactory.getJavaClass(field.getType()));
+    }
+    return new AbstractEnumerable<ColumnBatch>() {
+      public Enumerator<ColumnBatch> enumerator() {
+        final Content content = supplier.get();
+        return content.batchEnumerator(types, ColumnBatch.DEFAULT_CAPACITY);
+      }
+    };
+  }
+
   public <T> Queryable<T> asQueryable(final QueryProvider queryProvider,
       SchemaPlus schema, String tableName) {
     return new AbstractTableQueryable<T>(queryProvider, schema, this,
@@ -832,6 +851,11 @@ public Enumerator<Object[]> arrayEnumerator() {
       return new ArrayEnumerator(size, columns);
     }
 
+    public Enumerator<ColumnBatch> batchEnumerator(List<? extends Type> types,
+        int capacity) {
+      return new BatchEnumerator(size, columns, types, capacity);
+    }
+
     /** Enumerator over a table with a single column; each element
      * returned is an object. */
     private static class ObjectEnumerator implements Enumerator<Object> {
@@ -894,6 +918,62 @@ public void reset() {
       public void close() {
       }
     }
+
+    /** Enumerator over a table that returns batches of rows. A column that is
+     * stored in an array of the same type as its vector is copied using
+     * {@link System#arraycopy}; other columns are copied value by value. */
+    private static class BatchEnumerator implements Enumerator<ColumnBatch> {
+      final int rowCount;
+      final List<Column> columns;
+      final int capacity;
+      final ColumnBatch.Builder builder;
+      int start;
+      ColumnBatch current;
+
+      BatchEnumerator(int rowCount, List<Column> columns,
+          List<? extends Type> types, int capacity) {
+        this.rowCount = rowCount;
+        this.columns = columns;
+        this.capacity = capacity;
+        this.builder = new ColumnBatch.Builder(types, capacity);
+      }
+
+      public ColumnBatch current() {
+        return current;
+      }
+
+      public boolean moveNext() {
+        if (start >= rowCount) {
+          current = null;
+          return false;
+        }
+        final int n = Math.min(capacity, rowCount - start);
+        for (Ord<Column> column : Ord.zip(columns)) {
+          final Object vector = builder.vector(column.i);
+          if (column.e.representation instanceof PrimitiveArray
+              && column.e.dataSet.getClass() == vector.getClass()) {
+            System.arraycopy(column.e.dataSet, start, vector, 0, n);
+          } else {
+            for (int i = 0; i < n; i++) {
+              builder.set(column.i, i,
+                  column.e.representation.getObject(column.e.dataSet,
+                      start + i));
+            }
+          }
+        }
+        current = builder.build(n);
+        start += n;
+        return true;
+      }
+
+      public void reset() {
+        start = 0;
+        current = null;
+      }
+
+      public void close() {
+      }
+    }
   }
 }
 
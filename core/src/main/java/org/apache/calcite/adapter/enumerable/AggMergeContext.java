@@ -0,0 +1,44 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.enumerable;
+
+import org.apache.calcite.linq4j.tree.Expression;
+
+import java.util.List;
+
+/**
+ * Information for a call to
+ * {@link MergeableAggImplementor#implementMerge(AggContext, AggMergeContext)}.
+ *
+ * <p>{@link AggMergeContext} provides access to two sets of accumulator
+ * variables: those that receive the merged state, and those whose state is
+ * merged into them.
+ */
+public interface AggMergeContext extends AggResetContext {
+  /**
+   * Returns accumulator variables whose state should be merged into
+   * {@link #accumulator()}. They have the same types, and must not be
+   * modified.
+   *
+   * @return accumulator variables of the other partial aggregate
+   *
+   * @see AggImplementor#getStateType(org.apache.calcite.adapter.enumerable.AggContext)
+   */
+  List<Expression> otherAccumulator();
+}
+
+// End AggMergeContext.java
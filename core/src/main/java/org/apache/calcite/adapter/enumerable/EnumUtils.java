@@ -19,6 +19,8 @@
 import org.apache.calcite.adapter.java.JavaTypeFactory;
 import org.apache.calcite.linq4j.Ord;
 import org.apache.calcite.linq4j.function.Function2;
+import org.apache.calcite.linq4j.function.Predicate2;
+import org.apache.calcite.linq4j.tree.BlockBuilder;
 import org.apache.calcite.linq4j.tree.BlockStatement;
 import org.apache.calcite.linq4j.tree.ConstantUntypedNull;
 import org.apache.calcite.linq4j.tree.Expression;
@@ -26,11 +28,14 @@
 import org.apache.calcite.linq4j.tree.MethodDeclaration;
 import org.apache.calcite.linq4j.tree.ParameterExpression;
 import org.apache.calcite.linq4j.tree.Primitive;
+import org.apache.calcite.rel.RelNode;
 import org.apache.calcite.rel.core.JoinRelType;
 import org.apache.calcite.rel.type.RelDataType;
 import org.apache.calcite.rel.type.RelDataTypeField;
 import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.rex.RexProgramBuilder;
 import org.apache.calcite.util.BuiltInMethod;
+import org.apache.calcite.util.Pair;
 
 import com.google.common.base.Function;
 import com.google.common.collect.ImmutableList;
@@ -127,6 +132,26 @@ public int size() {
     };
   }
 
+  /** Converts rows to arrays, so that an operator can write them to a
+   * {@link org.apache.calcite.runtime.SpillFile} if it runs out of memory.
+   * Rows that are written to disk must consist of values that
+   * {@link org.apache.calcite.runtime.RowSerializer} can write, rather than,
+   * say, Java beans.
+   *
+   * @param typeFactory Type factory
+   * @param expression Expression for the rows
+   * @param physType Physical type of the rows
+   * @return Expression for the converted rows, and their physical type
+   */
+  static Pair<Expression, PhysType> toSpillable(JavaTypeFactory typeFactory,
+      Expression expression, PhysType physType) {
+    final PhysType arrayPhysType =
+        PhysTypeImpl.of(typeFactory, physType.getRowType(),
+            JavaRowFormat.ARRAY);
+    return Pair.of(physType.convertTo(expression, arrayPhysType),
+        arrayPhysType);
+  }
+
   static Expression joinSelector(JoinRelType joinType, PhysType physType,
       List<PhysType> inputPhysTypes) {
     // A parameter for each input.
@@ -170,6 +195,36 @@ static Expression joinSelector(JoinRelType joinType, PhysType physType,
         parameters);
   }
 
+  /** Generates a {@link org.apache.calcite.linq4j.function.Predicate2} that
+   * evaluates a join condition on a row from each input. */
+  static Expression joinPredicate(EnumerableRelImplementor implementor,
+      BlockBuilder builder, RelNode left, RelNode right,
+      PhysType leftPhysType, PhysType rightPhysType, RexNode condition) {
+    final ParameterExpression left_ =
+        Expressions.parameter(leftPhysType.getJavaRowType(), "left");
+    final ParameterExpression right_ =
+        Expressions.parameter(rightPhysType.getJavaRowType(), "right");
+    final RexProgramBuilder program =
+        new RexProgramBuilder(
+            implementor.getTypeFactory().builder()
+                .addAll(left.getRowType().getFieldList())
+                .addAll(right.getRowType().getFieldList())
+                .build(),
+            left.getCluster().getRexBuilder());
+    program.addCondition(condition);
+    builder.add(
+        Expressions.return_(null,
+            RexToLixTranslator.translateCondition(program.getProgram(),
+                implementor.getTypeFactory(),
+                builder,
+                new RexToLixTranslator.InputGetterImpl(
+                    ImmutableList.of(Pair.of((Expression) left_, leftPhysType),
+                        Pair.of((Expression) right_, rightPhysType))),
+                implementor.allCorrelateVariables)));
+    return Expressions.lambda(Predicate2.class, builder.toBlock(), left_,
+        right_);
+  }
+
   /** Converts from internal representation to JDBC representation used by
    * arguments of user-defined functions. For example, converts date values from
    * {@code int} to {@link java.sql.Date}. */
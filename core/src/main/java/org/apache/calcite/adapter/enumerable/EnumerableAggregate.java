@@ -17,29 +17,42 @@
 package org.apache.calcite.adapter.enumerable;
 
 import org.apache.calcite.adapter.enumerable.impl.AggAddContextImpl;
+import org.apache.calcite.adapter.enumerable.impl.AggMergeContextImpl;
 import org.apache.calcite.adapter.enumerable.impl.AggResultContextImpl;
 import org.apache.calcite.adapter.java.JavaTypeFactory;
+import org.apache.calcite.config.CalciteConnectionConfig;
 import org.apache.calcite.jdbc.JavaTypeFactoryImpl;
+import org.apache.calcite.linq4j.Enumerator;
 import org.apache.calcite.linq4j.Ord;
 import org.apache.calcite.linq4j.function.Function0;
 import org.apache.calcite.linq4j.function.Function1;
 import org.apache.calcite.linq4j.function.Function2;
 import org.apache.calcite.linq4j.tree.BlockBuilder;
+import org.apache.calcite.linq4j.tree.Blocks;
 import org.apache.calcite.linq4j.tree.Expression;
 import org.apache.calcite.linq4j.tree.Expressions;
+import org.apache.calcite.linq4j.tree.MemberDeclaration;
 import org.apache.calcite.linq4j.tree.ParameterExpression;
+import org.apache.calcite.linq4j.tree.Primitive;
 import org.apache.calcite.linq4j.tree.Types;
 import org.apache.calcite.plan.RelOptCluster;
+import org.apache.calcite.plan.RelOptCost;
+import org.apache.calcite.plan.RelOptPlanner;
 import org.apache.calcite.plan.RelTraitSet;
 import org.apache.calcite.prepare.CalcitePrepareImpl;
 import org.apache.calcite.rel.InvalidRelException;
+import org.apache.calcite.rel.RelCollation;
+import org.apache.calcite.rel.RelCollations;
+import org.apache.calcite.rel.RelFieldCollation;
 import org.apache.calcite.rel.RelNode;
 import org.apache.calcite.rel.core.Aggregate;
 import org.apache.calcite.rel.core.AggregateCall;
+import org.apache.calcite.rel.metadata.RelMetadataQuery;
 import org.apache.calcite.rel.type.RelDataType;
 import org.apache.calcite.rel.type.RelDataTypeField;
 import org.apache.calcite.rex.RexInputRef;
 import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.runtime.LongHashAggregator;
 import org.apache.calcite.sql.SqlAggFunction;
 import org.apache.calcite.util.BuiltInMethod;
 import org.apache.calcite.util.ImmutableBitSet;
@@ -50,14 +63,25 @@
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
+import static org.apache.calcite.adapter.enumerable.EnumUtils.NO_EXPRS;
+import static org.apache.calcite.adapter.enumerable.EnumUtils.NO_PARAMS;
+
 /** Implementation of {@link org.apache.calcite.rel.core.Aggregate} in
  * {@link org.apache.calcite.adapter.enumerable.EnumerableConvention enumerable calling convention}. */
 public class EnumerableAggregate extends Aggregate implements EnumerableRel {
+  /** Factor by which an aggregate whose input is sorted on its grouping
+   * columns is cheaper than one that hashes. */
+  private static final double SORTED_COST_FACTOR = 0.8d;
+
   public EnumerableAggregate(
       RelOptCluster cluster,
       RelTraitSet traitSet,
@@ -99,6 +123,17 @@ public EnumerableAggregate(
     }
   }
 
+  @Override public RelOptCost computeSelfCost(RelOptPlanner planner,
+      RelMetadataQuery mq) {
+    final RelOptCost cost = super.computeSelfCost(planner, mq);
+    if (isInputSorted()) {
+      // A streaming aggregate builds no hash table, and holds only one group
+      // in memory.
+      return cost.multiplyBy(SORTED_COST_FACTOR);
+    }
+    return cost;
+  }
+
   public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
     final JavaTypeFactory typeFactory = implementor.getTypeFactory();
     final BlockBuilder builder = new BlockBuilder();
@@ -172,7 +207,24 @@ public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
     // return child
     //     .distinct(equalityComparer);
 
-    final PhysType inputPhysType = result.physType;
+    final int spillMemoryLimit = spillMemoryLimit();
+    final PhysType inputPhysType;
+    if (spillMemoryLimit > 0) {
+      final Pair<Expression, PhysType> pair =
+          EnumUtils.toSpillable(typeFactory, childExp, result.physType);
+      childExp = pair.left;
+      inputPhysType = pair.right;
+    } else {
+      inputPhysType = result.physType;
+    }
+    final int parallelism = parallelism();
+    final boolean inputSorted = isInputSorted();
+
+    final List<Primitive> keyPrimitives = primitiveKey(inputPhysType);
+    if (keyPrimitives != null) {
+      return implementPrimitive(implementor, builder, childExp, inputPhysType,
+          physType, keyPrimitives);
+    }
 
     ParameterExpression parameter =
         Expressions.parameter(inputPhysType.getJavaRowType(), "a0");
@@ -292,36 +344,9 @@ public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
 
       stateOffset += stateSize;
 
-      AggAddContext addContext =
-          new AggAddContextImpl(builder2, accumulator) {
-            public List<RexNode> rexArguments() {
-              List<RelDataTypeField> inputTypes =
-                  inputPhysType.getRowType().getFieldList();
-              List<RexNode> args = new ArrayList<>();
-              for (int index : agg.call.getArgList()) {
-                args.add(RexInputRef.of(index, inputTypes));
-              }
-              return args;
-            }
-
-            public RexNode rexFilterArgument() {
-              return agg.call.filterArg < 0
-                  ? null
-                  : RexInputRef.of(agg.call.filterArg,
-                      inputPhysType.getRowType());
-            }
-
-            public RexToLixTranslator rowTranslator() {
-              return RexToLixTranslator.forAggregation(typeFactory,
-                  currentBlock(),
-                  new RexToLixTranslator.InputGetterImpl(
-                      Collections.singletonList(
-                          Pair.of((Expression) inParameter, inputPhysType))))
-                  .setNullable(currentNullables());
-            }
-          };
-
-      agg.implementor.implementAdd(agg.context, addContext);
+      agg.implementor.implementAdd(agg.context,
+          addContext(typeFactory, builder2, accumulator, agg, inParameter,
+              inputPhysType));
     }
     builder2.add(acc_);
     final Expression accumulatorAdder =
@@ -414,6 +439,9 @@ public RexToLixTranslator rowTranslator() {
                       accumulatorAdder,
                       resultSelector))));
     } else if (aggCalls.isEmpty()
+        && !inputSorted
+        && spillMemoryLimit == 0
+        && parallelism == 1
         && groupSet.equals(
             ImmutableBitSet.range(child.getRowType().getFieldCount()))) {
       builder.add(
@@ -436,19 +464,608 @@ public RexToLixTranslator rowTranslator() {
                   resultBlock.toBlock(),
                   key_,
                   acc_));
-      builder.add(
-          Expressions.return_(null,
-              Expressions.call(childExp,
-                  BuiltInMethod.GROUP_BY2.method,
-                  Expressions.list(keySelector_,
-                      accumulatorInitializer,
-                      accumulatorAdder,
-                      resultSelector_)
-                      .appendIfNotNull(keyPhysType.comparer()))));
+      if (inputSorted) {
+        // Rows with the same key are adjacent; emit each group when its key
+        // changes.
+        final Expression comparer = keyPhysType.comparer();
+        builder.add(
+            Expressions.return_(null,
+                Expressions.call(BuiltInMethod.SORTED_GROUP_BY.method,
+                    childExp,
+                    keySelector_,
+                    accumulatorInitializer,
+                    accumulatorAdder,
+                    resultSelector_,
+                    comparer == null ? Expressions.constant(null) : comparer)));
+      } else if (spillMemoryLimit > 0) {
+        // Function1<Object[], Object[]> accumulatorWriter =
+        //     new Function1<Object[], Object[]>() {
+        //         public Object[] apply(Object[] acc) {
+        //             return new Object[] {acc[0], acc[1]};
+        //         }
+        //     };
+        final BlockBuilder writerBlock = new BlockBuilder();
+        final List<Expression> stateValues = new ArrayList<>();
+        for (int i = 0; i < aggStateTypes.size(); i++) {
+          stateValues.add(
+              Expressions.box(accPhysType.fieldReference(acc_, i)));
+        }
+        writerBlock.add(Expressions.newArrayInit(Object.class, stateValues));
+        final Expression accumulatorWriter =
+            builder.append("accumulatorWriter",
+                Expressions.lambda(Function1.class, writerBlock.toBlock(),
+                    acc_));
+
+        // Function1<Object[], Object[]> accumulatorReader =
+        //     new Function1<Object[], Object[]>() {
+        //         public Object[] apply(Object[] values) {
+        //             Object[] acc = accumulatorInitializer.apply();
+        //             acc[0] = (Integer) values[0];
+        //             acc[1] = (Integer) values[1];
+        //             return acc;
+        //         }
+        //     };
+        final BlockBuilder readerBlock = new BlockBuilder();
+        final ParameterExpression values_ =
+            Expressions.parameter(Object[].class, "values");
+        final Expression newAcc_ =
+            readerBlock.append("acc",
+                Expressions.convert_(
+                    Expressions.call(accumulatorInitializer,
+                        BuiltInMethod.FUNCTION0_APPLY.method),
+                    accPhysType.getJavaRowType()),
+                false);
+        for (int i = 0; i < aggStateTypes.size(); i++) {
+          final Type type = accPhysType.getJavaFieldType(i);
+          final Expression value =
+              Expressions.arrayIndex(values_, Expressions.constant(i));
+          readerBlock.add(
+              Expressions.statement(
+                  Expressions.assign(accPhysType.fieldReference(newAcc_, i),
+                      Primitive.is(type)
+                          ? Expressions.unbox(
+                              Expressions.convert_(value, Primitive.box(type)))
+                          : Expressions.convert_(value, type))));
+        }
+        readerBlock.add(newAcc_);
+        final Expression accumulatorReader =
+            builder.append("accumulatorReader",
+                Expressions.lambda(Function1.class, readerBlock.toBlock(),
+                    values_));
+        final Expression comparer = keyPhysType.comparer();
+        builder.add(
+            Expressions.return_(null,
+                Expressions.call(BuiltInMethod.SPILLING_GROUP_BY.method,
+                    childExp,
+                    keySelector_,
+                    accumulatorInitializer,
+                    accumulatorAdder,
+                    accumulatorMerger(builder, aggs, accPhysType, acc_),
+                    resultSelector_,
+                    accumulatorWriter,
+                    accumulatorReader,
+                    comparer == null ? Expressions.constant(null) : comparer,
+                    Expressions.constant((long) spillMemoryLimit << 20))));
+      } else if (parallelism > 1) {
+        final Expression accumulatorMerger =
+            accumulatorMerger(builder, aggs, accPhysType, acc_);
+        final Expression comparer = keyPhysType.comparer();
+        builder.add(
+            Expressions.return_(null,
+                Expressions.call(BuiltInMethod.PARALLEL_GROUP_BY.method,
+                    childExp,
+                    keySelector_,
+                    accumulatorInitializer,
+                    accumulatorAdder,
+                    accumulatorMerger,
+                    resultSelector_,
+                    comparer == null ? Expressions.constant(null) : comparer,
+                    Expressions.constant(parallelism))));
+      } else {
+        builder.add(
+            Expressions.return_(null,
+                Expressions.call(childExp,
+                    BuiltInMethod.GROUP_BY2.method,
+                    Expressions.list(keySelector_,
+                        accumulatorInitializer,
+                        accumulatorAdder,
+                        resultSelector_)
+                        .appendIfNotNull(keyPhysType.comparer()))));
+      }
     }
     return implementor.result(physType, builder.toBlock());
   }
 
+  /** Generates a function that merges the accumulator of one set of rows
+   * into the accumulator of another set of rows of the same group. Every
+   * aggregate function must be implemented by a
+   * {@link MergeableAggImplementor}. */
+  private static Expression accumulatorMerger(BlockBuilder builder,
+      List<AggImpState> aggs, PhysType accPhysType,
+      ParameterExpression acc_) {
+    // Function2<Object[], Object[], Object[]> accumulatorMerger =
+    //     new Function2<Object[], Object[], Object[]>() {
+    //         public Object[] apply(Object[] acc, Object[] otherAcc) {
+    //              acc[0] = ((Integer) acc[0]) + ((Integer) otherAcc[0]);
+    //              acc[1] = ((Integer) acc[1]) + ((Integer) otherAcc[1]);
+    //             return acc;
+    //         }
+    //     };
+    final BlockBuilder mergeBlock = new BlockBuilder();
+    final ParameterExpression otherAcc_ =
+        Expressions.parameter(accPhysType.getJavaRowType(), "otherAcc");
+    for (int i = 0, stateOffset = 0; i < aggs.size(); i++) {
+      final AggImpState agg = aggs.get(i);
+      final int stateSize = agg.state.size();
+      final List<Expression> otherAccumulator = new ArrayList<>(stateSize);
+      for (int j = 0; j < stateSize; j++) {
+        otherAccumulator.add(
+            accPhysType.fieldReference(otherAcc_, j + stateOffset));
+      }
+      stateOffset += stateSize;
+      ((MergeableAggImplementor) agg.implementor).implementMerge(
+          agg.context,
+          new AggMergeContextImpl(mergeBlock, agg.state, otherAccumulator));
+    }
+    mergeBlock.add(acc_);
+    return builder.append("accumulatorMerger",
+        Expressions.lambda(Function2.class, mergeBlock.toBlock(), acc_,
+            otherAcc_));
+  }
+
+  /** Creates a context for the code that adds an input row to the
+   * accumulators of an aggregate function. */
+  private static AggAddContext addContext(final JavaTypeFactory typeFactory,
+      BlockBuilder builder, List<Expression> accumulator,
+      final AggImpState agg, final Expression row,
+      final PhysType inputPhysType) {
+    return new AggAddContextImpl(builder, accumulator) {
+      public List<RexNode> rexArguments() {
+        List<RelDataTypeField> inputTypes =
+            inputPhysType.getRowType().getFieldList();
+        List<RexNode> args = new ArrayList<>();
+        for (int index : agg.call.getArgList()) {
+          args.add(RexInputRef.of(index, inputTypes));
+        }
+        return args;
+      }
+
+      public RexNode rexFilterArgument() {
+        return agg.call.filterArg < 0
+            ? null
+            : RexInputRef.of(agg.call.filterArg,
+                inputPhysType.getRowType());
+      }
+
+      public RexToLixTranslator rowTranslator() {
+        return RexToLixTranslator.forAggregation(typeFactory,
+            currentBlock(),
+            new RexToLixTranslator.InputGetterImpl(
+                Collections.singletonList(Pair.of(row, inputPhysType))))
+            .setNullable(currentNullables());
+      }
+    };
+  }
+
+  /** Returns the number of megabytes of groups that this aggregate may hold
+   * in memory before it writes groups to temporary files, or 0 if it holds
+   * all groups in memory.
+   *
+   * <p>Only an aggregate that has a single, non-empty grouping set, and
+   * whose aggregate functions can merge partial states, can spill; see
+   * {@link org.apache.calcite.runtime.SpillingHashAggregate}. */
+  private int spillMemoryLimit() {
+    final CalciteConnectionConfig config =
+        getCluster().getPlanner().getContext()
+            .unwrap(CalciteConnectionConfig.class);
+    if (config == null
+        || getGroupType() != Group.SIMPLE
+        || groupSet.isEmpty()
+        || isInputSorted()
+        || !isMergeable()) {
+      return 0;
+    }
+    return config.spillMemoryLimit();
+  }
+
+  /** Returns whether every aggregate function can merge partial states. */
+  private boolean isMergeable() {
+    for (AggregateCall aggCall : aggCalls) {
+      if (!(RexImpTable.INSTANCE.get(aggCall.getAggregation(), false)
+          instanceof MergeableAggImplementor)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Returns whether rows with the same grouping key arrive adjacent to each
+   * other, so that this aggregate can emit each group as soon as its key
+   * changes; see
+   * {@link org.apache.calcite.linq4j.EnumerableDefaults#sortedGroupBy}. */
+  private boolean isInputSorted() {
+    return getGroupType() == Group.SIMPLE
+        && !groupSet.isEmpty()
+        && sortedCollation(getCluster().getMetadataQuery(), getInput(),
+            groupSet) != null;
+  }
+
+  /** Returns the collation of the output of an aggregate whose input is
+   * sorted on a prefix that consists of its grouping columns (in any order),
+   * or null if the input is not known to be sorted that way.
+   *
+   * <p>The collation uses output field ordinals; the grouping columns are the
+   * leading fields of the output. */
+  static RelCollation sortedCollation(RelMetadataQuery mq, RelNode input,
+      ImmutableBitSet groupSet) {
+    final List<RelCollation> collations = mq.collations(input);
+    if (collations == null || groupSet.isEmpty()) {
+      return null;
+    }
+    final int n = groupSet.cardinality();
+    for (RelCollation collation : collations) {
+      final List<RelFieldCollation> fieldCollations =
+          collation.getFieldCollations();
+      if (fieldCollations.size() < n) {
+        continue;
+      }
+      final List<RelFieldCollation> prefix = fieldCollations.subList(0, n);
+      final ImmutableBitSet.Builder keys = ImmutableBitSet.builder();
+      for (RelFieldCollation fieldCollation : prefix) {
+        keys.set(fieldCollation.getFieldIndex());
+      }
+      if (!keys.build().equals(groupSet)) {
+        continue;
+      }
+      final List<RelFieldCollation> outputFieldCollations = new ArrayList<>();
+      for (RelFieldCollation fieldCollation : prefix) {
+        final int i = groupSet.indexOf(fieldCollation.getFieldIndex());
+        outputFieldCollations.add(fieldCollation.copy(i));
+      }
+      return RelCollations.of(outputFieldCollations);
+    }
+    return null;
+  }
+
+  /** Returns the number of threads that this aggregate may use, or 1 if it
+   * aggregates in the calling thread.
+   *
+   * <p>Only an aggregate that does not spill, has a single, non-empty
+   * grouping set, and whose aggregate functions can merge partial states
+   * can use several threads; see
+   * {@link org.apache.calcite.linq4j.EnumerableDefaults#parallelGroupBy}. */
+  private int parallelism() {
+    final CalciteConnectionConfig config =
+        getCluster().getPlanner().getContext()
+            .unwrap(CalciteConnectionConfig.class);
+    if (config == null
+        || spillMemoryLimit() > 0
+        || getGroupType() != Group.SIMPLE
+        || groupSet.isEmpty()
+        || isInputSorted()
+        || !isMergeable()) {
+      return 1;
+    }
+    return Math.max(1, config.aggregateParallelism());
+  }
+
+  /** Returns the primitive type of each grouping column, if this aggregate
+   * can use {@link LongHashAggregator}; otherwise null.
+   *
+   * <p>It can if the connection has enabled
+   * {@link CalciteConnectionConfig#primitiveAggregate()}, the aggregate
+   * neither spills nor uses several threads, there is a single
+   * grouping set, every aggregate function is {@code COUNT}, {@code SUM},
+   * {@code MIN} or {@code MAX}, and the grouping columns are integers,
+   * characters or booleans whose widths, plus one bit for each column that
+   * may be null, add up to no more than 64 bits. */
+  private List<Primitive> primitiveKey(PhysType inputPhysType) {
+    final CalciteConnectionConfig config =
+        getCluster().getPlanner().getContext()
+            .unwrap(CalciteConnectionConfig.class);
+    if (config == null
+        || !config.primitiveAggregate()
+        || config.spillMemoryLimit() > 0
+        || parallelism() > 1
+        || getGroupType() != Group.SIMPLE
+        || groupSet.isEmpty()
+        || isInputSorted()) {
+      return null;
+    }
+    for (AggregateCall aggCall : aggCalls) {
+      switch (aggCall.getAggregation().getKind()) {
+      case COUNT:
+      case SUM:
+      case SUM0:
+      case MIN:
+      case MAX:
+        break;
+      default:
+        return null;
+      }
+    }
+    final List<Primitive> primitives = new ArrayList<>();
+    int bits = 0;
+    for (int key : groupSet) {
+      final Type type = inputPhysType.getJavaFieldType(key);
+      final Primitive primitive = Primitive.of(type);
+      final Primitive box = Primitive.ofBox(type);
+      final Primitive p = primitive != null ? primitive : box;
+      if (p == null || keyWidth(p) < 0) {
+        return null;
+      }
+      bits += keyWidth(p) + (box != null ? 1 : 0);
+      primitives.add(p);
+    }
+    return bits <= 64 ? primitives : null;
+  }
+
+  /** Returns the number of bits that a grouping column of a given type
+   * occupies in a packed key, or -1 if it cannot be packed. */
+  private static int keyWidth(Primitive primitive) {
+    switch (primitive) {
+    case BOOLEAN:
+      return 1;
+    case BYTE:
+      return 8;
+    case CHAR:
+    case SHORT:
+      return 16;
+    case INT:
+      return 32;
+    case LONG:
+      return 64;
+    default:
+      // FLOAT and DOUBLE are excluded because equal values, such as 0.0 and
+      // -0.0, may have different bits
+      return -1;
+    }
+  }
+
+  /** Generates code that aggregates using a {@link LongHashAggregator}.
+   *
+   * <p>The values of the grouping columns are packed into a {@code long},
+   * and each accumulator is an array, indexed by group number, of the type
+   * of the aggregate function's state; so if the state is primitive, the
+   * loop that adds a row to its group allocates no objects. */
+  private Result implementPrimitive(EnumerableRelImplementor implementor,
+      BlockBuilder builder, Expression childExp, PhysType inputPhysType,
+      PhysType physType, List<Primitive> keyPrimitives) {
+    final JavaTypeFactory typeFactory = implementor.getTypeFactory();
+
+    // return new AbstractEnumerable() {
+    //   public Enumerator enumerator() {
+    //     return new LongHashAggregator() {
+    //       int[] acc0s0 = new int[0];
+    //       public long key(Object row) {
+    //         return (long) ((Employee) row).deptno & 4294967295L;
+    //       }
+    //       public void allocate(int capacity) {
+    //         acc0s0 = Arrays.copyOf(acc0s0, capacity);
+    //       }
+    //       public void reset(int group) {
+    //         acc0s0[group] = 0;
+    //       }
+    //       public void add(int group, Object row) {
+    //         acc0s0[group] = acc0s0[group] + ((Employee) row).salary;
+    //       }
+    //       public Object result(long key, int group) {
+    //         return new Object[] {(int) key, acc0s0[group]};
+    //       }
+    //     }.aggregate(child);
+    //   }
+    // };
+    final ParameterExpression row_ =
+        Expressions.parameter(Object.class, "row");
+    final ParameterExpression group_ =
+        Expressions.parameter(int.class, "group");
+    final ParameterExpression key_ =
+        Expressions.parameter(long.class, "key");
+    final ParameterExpression capacity_ =
+        Expressions.parameter(int.class, "capacity");
+    final List<MemberDeclaration> memberDeclarations = new ArrayList<>();
+
+    // Pack the grouping columns into a long, the first in the lowest bits.
+    // A column that may be null is followed by a bit that is set if it is
+    // null.
+    final BlockBuilder keyBlock = new BlockBuilder();
+    final Expression keyRow =
+        keyBlock.append("in",
+            RexToLixTranslator.convert(row_, inputPhysType.getJavaRowType()));
+    final List<Expression> keyResults = new ArrayList<>();
+    Expression key = null;
+    int shift = 0;
+    for (Ord<Integer> ord : Ord.zip(groupSet.asList())) {
+      final Primitive primitive = keyPrimitives.get(ord.i);
+      final int width = keyWidth(primitive);
+      final Expression value =
+          inputPhysType.fieldReference(keyRow, ord.e);
+      final boolean nullable = Primitive.ofBox(value.getType()) != null;
+      Expression bits =
+          packKey(nullable ? Expressions.unbox(value) : value, primitive);
+      Expression unpacked =
+          unpackKey(
+              shift == 0
+                  ? key_
+                  : Expressions.rightShift(key_, Expressions.constant(shift)),
+              primitive);
+      if (shift > 0) {
+        bits = Expressions.leftShift(bits, Expressions.constant(shift));
+      }
+      shift += width;
+      if (nullable) {
+        bits =
+            Expressions.condition(
+                Expressions.equal(value, RexImpTable.NULL_EXPR),
+                Expressions.constant(1L << shift),
+                bits);
+        unpacked =
+            Expressions.condition(
+                isBitSet(key_, shift),
+                Expressions.constant(null),
+                Expressions.box(unpacked));
+        ++shift;
+      }
+      key = key == null ? bits : Expressions.or(key, bits);
+      keyResults.add(unpacked);
+    }
+    keyBlock.add(Expressions.return_(null, key));
+    memberDeclarations.add(
+        EnumUtils.overridingMethodDecl(
+            BuiltInMethod.LONG_HASH_AGGREGATOR_KEY.method,
+            ImmutableList.of(row_), keyBlock.toBlock()));
+
+    // Declare an array for each element of each aggregate function's state.
+    final List<AggImpState> aggs = new ArrayList<>(aggCalls.size());
+    final List<ParameterExpression> arrays = new ArrayList<>();
+    final BlockBuilder allocateBlock = new BlockBuilder();
+    for (Ord<AggregateCall> call : Ord.zip(aggCalls)) {
+      final AggImpState agg = new AggImpState(call.i, call.e, false);
+      agg.context = new AggContextImpl(agg, typeFactory);
+      final List<Type> state = agg.implementor.getStateType(agg.context);
+      final List<Expression> decls = new ArrayList<>(state.size());
+      for (Ord<Type> type : Ord.zip(state)) {
+        final Class clazz = Types.toClass(type.e);
+        final Class arrayClass = Array.newInstance(clazz, 0).getClass();
+        final ParameterExpression array_ =
+            Expressions.parameter(arrayClass, "acc" + call.i + "s" + type.i);
+        memberDeclarations.add(
+            Expressions.fieldDecl(0, array_,
+                Expressions.newArrayBounds(clazz, 1,
+                    Expressions.constant(0))));
+        final Method copyOf =
+            Types.lookupMethod(Arrays.class, "copyOf",
+                clazz.isPrimitive() ? arrayClass : Object[].class, int.class);
+        allocateBlock.add(
+            Expressions.statement(
+                Expressions.assign(array_,
+                    Types.castIfNecessary(arrayClass,
+                        Expressions.call(copyOf, array_, capacity_)))));
+        arrays.add(array_);
+        decls.add(Expressions.arrayIndex(array_, group_));
+      }
+      agg.state = decls;
+      aggs.add(agg);
+    }
+    memberDeclarations.add(
+        EnumUtils.overridingMethodDecl(
+            BuiltInMethod.LONG_HASH_AGGREGATOR_ALLOCATE.method,
+            ImmutableList.of(capacity_), allocateBlock.toBlock()));
+
+    final BlockBuilder resetBlock = new BlockBuilder();
+    for (AggImpState agg : aggs) {
+      agg.implementor.implementReset(agg.context,
+          new AggResultContextImpl(resetBlock, agg.call, agg.state, null,
+              null));
+    }
+    memberDeclarations.add(
+        EnumUtils.overridingMethodDecl(
+            BuiltInMethod.LONG_HASH_AGGREGATOR_RESET.method,
+            ImmutableList.of(group_), resetBlock.toBlock()));
+
+    final BlockBuilder addBlock = new BlockBuilder();
+    final Expression addRow =
+        addBlock.append("in",
+            RexToLixTranslator.convert(row_, inputPhysType.getJavaRowType()));
+    for (AggImpState agg : aggs) {
+      agg.implementor.implementAdd(agg.context,
+          addContext(typeFactory, addBlock, agg.state, agg, addRow,
+              inputPhysType));
+    }
+    memberDeclarations.add(
+        EnumUtils.overridingMethodDecl(
+            BuiltInMethod.LONG_HASH_AGGREGATOR_ADD.method,
+            ImmutableList.of(group_, row_), addBlock.toBlock()));
+
+    // Read each accumulator into a variable; implementors derive the names of
+    // temporary variables from the accumulator expression.
+    final BlockBuilder resultBlock = new BlockBuilder();
+    final List<Expression> results = new ArrayList<>(keyResults);
+    int i = 0;
+    for (AggImpState agg : aggs) {
+      final List<Expression> accumulator = new ArrayList<>();
+      for (Ord<Expression> state : Ord.zip(agg.state)) {
+        final ParameterExpression array_ = arrays.get(i++);
+        final ParameterExpression pe =
+            Expressions.parameter(state.e.getType(),
+                resultBlock.newName("a" + agg.aggIdx + "s" + state.i));
+        resultBlock.add(
+            Expressions.declare(Modifier.FINAL, pe,
+                Expressions.arrayIndex(array_, group_)));
+        accumulator.add(pe);
+      }
+      results.add(
+          agg.implementor.implementResult(agg.context,
+              new AggResultContextImpl(resultBlock, agg.call, accumulator,
+                  null, null)));
+    }
+    resultBlock.add(
+        Expressions.return_(null, physType.record(results)));
+    memberDeclarations.add(
+        EnumUtils.overridingMethodDecl(
+            BuiltInMethod.LONG_HASH_AGGREGATOR_RESULT.method,
+            ImmutableList.of(key_, group_), resultBlock.toBlock()));
+
+    final Expression body =
+        Expressions.call(
+            Expressions.new_(
+                BuiltInMethod.LONG_HASH_AGGREGATOR_CTOR.constructor,
+                NO_EXPRS,
+                memberDeclarations),
+            BuiltInMethod.LONG_HASH_AGGREGATOR_AGGREGATE.method,
+            childExp);
+    builder.add(
+        Expressions.return_(
+            null,
+            Expressions.new_(
+                BuiltInMethod.ABSTRACT_ENUMERABLE_CTOR.constructor,
+                NO_EXPRS,
+                ImmutableList.<MemberDeclaration>of(
+                    Expressions.methodDecl(
+                        Modifier.PUBLIC,
+                        Types.of(Enumerator.class, physType.getJavaRowType()),
+                        BuiltInMethod.ENUMERABLE_ENUMERATOR.method.getName(),
+                        NO_PARAMS,
+                        Blocks.toFunctionBlock(body))))));
+    return implementor.result(physType, builder.toBlock());
+  }
+
+  /** Converts the value of a grouping column to the bits of a packed key. */
+  private static Expression packKey(Expression value, Primitive primitive) {
+    switch (primitive) {
+    case BOOLEAN:
+      return Expressions.condition(value, Expressions.constant(1L),
+          Expressions.constant(0L));
+    case LONG:
+      return value;
+    default:
+      return Expressions.and(Expressions.convert_(value, long.class),
+          Expressions.constant((1L << keyWidth(primitive)) - 1));
+    }
+  }
+
+  /** Converts the bits of a packed key, shifted so that a grouping column
+   * is in the lowest bits, to the value of that column. */
+  private static Expression unpackKey(Expression bits, Primitive primitive) {
+    switch (primitive) {
+    case BOOLEAN:
+      return Expressions.notEqual(
+          Expressions.and(bits, Expressions.constant(1L)),
+          Expressions.constant(0L));
+    case LONG:
+      return bits;
+    default:
+      return Expressions.convert_(bits, primitive.primitiveClass);
+    }
+  }
+
+  /** Returns an expression that is true if a given bit of a long is set. */
+  private static Expression isBitSet(Expression value, int bit) {
+    return Expressions.notEqual(
+        Expressions.and(value, Expressions.constant(1L << bit)),
+        Expressions.constant(0L));
+  }
+
   /** An implementation of {@link AggContext}. */
   private class AggContextImpl implements AggContext {
     private final AggImpState agg;
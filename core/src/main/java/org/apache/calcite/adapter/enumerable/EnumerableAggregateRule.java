@@ -19,8 +19,10 @@
 import org.apache.calcite.plan.Convention;
 import org.apache.calcite.plan.RelTraitSet;
 import org.apache.calcite.rel.InvalidRelException;
+import org.apache.calcite.rel.RelCollation;
 import org.apache.calcite.rel.RelNode;
 import org.apache.calcite.rel.convert.ConverterRule;
+import org.apache.calcite.rel.core.Aggregate;
 import org.apache.calcite.rel.logical.LogicalAggregate;
 
 /**
@@ -35,13 +37,25 @@ class EnumerableAggregateRule extends ConverterRule {
 
   public RelNode convert(RelNode rel) {
     final LogicalAggregate agg = (LogicalAggregate) rel;
-    final RelTraitSet traitSet =
+    final RelNode input =
+        convert(agg.getInput(), EnumerableConvention.INSTANCE);
+    RelTraitSet traitSet =
         agg.getTraitSet().replace(EnumerableConvention.INSTANCE);
+    if (agg.getGroupType() == Aggregate.Group.SIMPLE) {
+      // If the input is sorted on the grouping columns, the aggregate streams
+      // its groups in the same order.
+      final RelCollation collation =
+          EnumerableAggregate.sortedCollation(
+              rel.getCluster().getMetadataQuery(), input, agg.getGroupSet());
+      if (collation != null) {
+        traitSet = traitSet.replace(collation);
+      }
+    }
     try {
       return new EnumerableAggregate(
           rel.getCluster(),
           traitSet,
-          convert(agg.getInput(), EnumerableConvention.INSTANCE),
+          input,
           agg.indicator,
           agg.getGroupSet(),
           agg.getGroupSets(),
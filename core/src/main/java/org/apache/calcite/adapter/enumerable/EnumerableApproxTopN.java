@@ -0,0 +1,223 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.enumerable;
+
+import org.apache.calcite.linq4j.function.Function2;
+import org.apache.calcite.linq4j.tree.BlockBuilder;
+import org.apache.calcite.linq4j.tree.Expression;
+import org.apache.calcite.linq4j.tree.Expressions;
+import org.apache.calcite.linq4j.tree.ParameterExpression;
+import org.apache.calcite.linq4j.tree.Types;
+import org.apache.calcite.plan.RelOptCluster;
+import org.apache.calcite.plan.RelOptCost;
+import org.apache.calcite.plan.RelOptPlanner;
+import org.apache.calcite.plan.RelTraitSet;
+import org.apache.calcite.rel.RelCollation;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.RelWriter;
+import org.apache.calcite.rel.SingleRel;
+import org.apache.calcite.rel.metadata.RelMetadataQuery;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rex.RexLiteral;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.util.BuiltInMethod;
+import org.apache.calcite.util.ImmutableBitSet;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Relational expression that computes the keys that occur most often in
+ * its input, and an estimate of how often each occurs, in
+ * {@link EnumerableConvention enumerable calling convention}.
+ *
+ * <p>It is equivalent to an aggregate that groups by the keys and computes
+ * {@code COUNT(*)}, followed by a sort on the count, descending, with a
+ * {@code fetch}; but it uses a {@link org.apache.calcite.runtime.SpaceSaving}
+ * sketch of bounded size rather than counting every key. The counts may be
+ * too high, and a key may be missing if its count is close to that of the
+ * last key returned; if there are fewer distinct keys than the sketch has
+ * counters, the result is exact.
+ *
+ * <p>It is created by {@link EnumerableApproxTopNRule} only if the
+ * connection allows approximate "Top N" results.
+ */
+public class EnumerableApproxTopN extends SingleRel implements EnumerableRel {
+  /** Minimum number of counters in the sketch. */
+  private static final int MIN_CAPACITY = 1000;
+
+  /** Number of counters in the sketch for each key returned. */
+  private static final int CAPACITY_FACTOR = 16;
+
+  /** Maximum number of counters in the sketch. The sketch needs at least
+   * one counter for each key returned, so {@link EnumerableApproxTopNRule}
+   * does not fire if more keys are required. */
+  static final int MAX_CAPACITY = 1 << 20;
+
+  public final ImmutableBitSet groupSet;
+  public final RelCollation collation;
+  public final RexNode offset;
+  public final RexNode fetch;
+
+  /** Creates an EnumerableApproxTopN.
+   *
+   * @param cluster Cluster
+   * @param traitSet Traits
+   * @param input Input relational expression
+   * @param rowType Row type; the keys followed by a {@code BIGINT} count
+   * @param groupSet Bit set of grouping fields
+   * @param collation Sort on the count field, descending
+   * @param offset Number of keys to skip; may be null
+   * @param fetch Number of keys to return
+   */
+  public EnumerableApproxTopN(RelOptCluster cluster, RelTraitSet traitSet,
+      RelNode input, RelDataType rowType, ImmutableBitSet groupSet,
+      RelCollation collation, RexNode offset, RexNode fetch) {
+    super(cluster, traitSet, input);
+    this.rowType = rowType;
+    this.groupSet = groupSet;
+    this.collation = collation;
+    this.offset = offset;
+    this.fetch = fetch;
+    assert getConvention() instanceof EnumerableConvention;
+    assert rowType.getFieldCount() == groupSet.cardinality() + 1;
+    assert fetch != null;
+  }
+
+  /** Creates an EnumerableApproxTopN. */
+  public static EnumerableApproxTopN create(RelNode input, RelDataType rowType,
+      ImmutableBitSet groupSet, RelCollation collation, RexNode offset,
+      RexNode fetch) {
+    final RelOptCluster cluster = input.getCluster();
+    final RelTraitSet traitSet =
+        cluster.traitSetOf(EnumerableConvention.INSTANCE)
+            .replace(collation);
+    return new EnumerableApproxTopN(cluster, traitSet, input, rowType,
+        groupSet, collation, offset, fetch);
+  }
+
+  @Override public EnumerableApproxTopN copy(RelTraitSet traitSet,
+      List<RelNode> inputs) {
+    return new EnumerableApproxTopN(getCluster(), traitSet, sole(inputs),
+        rowType, groupSet, collation, offset, fetch);
+  }
+
+  @Override public RelWriter explainTerms(RelWriter pw) {
+    return super.explainTerms(pw)
+        .item("group", groupSet)
+        .itemIf("offset", offset, offset != null)
+        .item("fetch", fetch);
+  }
+
+  /** Returns the number of keys to skip plus the number to return, or
+   * {@link Long#MAX_VALUE} if that is larger. */
+  static long limit(RexNode offset, RexNode fetch) {
+    BigDecimal limit = ((RexLiteral) fetch).getValueAs(BigDecimal.class);
+    if (offset != null) {
+      limit = limit.add(((RexLiteral) offset).getValueAs(BigDecimal.class));
+    }
+    return limit.compareTo(BigDecimal.valueOf(Long.MAX_VALUE)) >= 0
+        ? Long.MAX_VALUE
+        : limit.longValue();
+  }
+
+  /** Returns the number of counters in a sketch that returns a given number
+   * of keys, including those skipped. */
+  static int capacity(long limit) {
+    return (int) Math.min(MAX_CAPACITY,
+        Math.max(MIN_CAPACITY, CAPACITY_FACTOR * Math.min(limit, MAX_CAPACITY)));
+  }
+
+  @Override public double estimateRowCount(RelMetadataQuery mq) {
+    return Math.min(
+        ((RexLiteral) fetch).getValueAs(BigDecimal.class).doubleValue(),
+        mq.getRowCount(getInput()));
+  }
+
+  @Override public RelOptCost computeSelfCost(RelOptPlanner planner,
+      RelMetadataQuery mq) {
+    // Replaces an aggregate and a sort, and holds only a fixed number of
+    // counters; so cost it as the rows it returns.
+    return planner.getCostFactory().makeCost(mq.getRowCount(this), 0, 0);
+  }
+
+  public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
+    final BlockBuilder builder = new BlockBuilder();
+    final EnumerableRel child = (EnumerableRel) getInput();
+    final Result result = implementor.visitChild(this, 0, child, pref);
+    final Expression childExp = builder.append("child", result.block);
+    final PhysType inputPhysType = result.physType;
+    final PhysType physType =
+        PhysTypeImpl.of(implementor.getTypeFactory(), getRowType(),
+            pref.preferCustom());
+    final PhysType keyPhysType =
+        inputPhysType.project(groupSet.asList(), JavaRowFormat.LIST);
+    final int groupCount = groupSet.cardinality();
+
+    // Function1<Employee, Integer> keySelector =
+    //     new Function1<Employee, Integer>() {
+    //         public Integer apply(Employee a0) {
+    //             return a0.deptno;
+    //         }
+    //     };
+    final ParameterExpression parameter =
+        Expressions.parameter(inputPhysType.getJavaRowType(), "a0");
+    final Expression keySelector =
+        builder.append("keySelector",
+            inputPhysType.generateSelector(parameter, groupSet.asList(),
+                keyPhysType.getFormat()));
+
+    // Function2<Integer, Long, Object[]> resultSelector =
+    //     new Function2<Integer, Long, Object[]>() {
+    //         public Object[] apply(Integer key, Long count) {
+    //             return new Object[] {key, count};
+    //         }
+    //     };
+    final ParameterExpression key_ =
+        Expressions.parameter(keyPhysType.getJavaRowType(), "key");
+    final ParameterExpression count_ =
+        Expressions.parameter(Long.class, "count");
+    final List<Expression> results = new ArrayList<>();
+    for (int i = 0; i < groupCount; i++) {
+      results.add(keyPhysType.fieldReference(key_, i));
+    }
+    results.add(
+        Types.castIfNecessary(physType.getJavaFieldType(groupCount), count_));
+    final Expression resultSelector =
+        builder.append("resultSelector",
+            Expressions.lambda(Function2.class, physType.record(results),
+                key_, count_));
+
+    // The rule ensures that the offset plus the fetch is at most
+    // MAX_CAPACITY, so each fits in an int.
+    final long limit = limit(offset, fetch);
+    assert limit <= MAX_CAPACITY;
+    builder.add(
+        Expressions.return_(null,
+            Expressions.call(BuiltInMethod.APPROX_TOP_N.method,
+                childExp,
+                keySelector,
+                Expressions.constant(capacity(limit)),
+                Expressions.constant(
+                    offset == null ? 0 : RexLiteral.intValue(offset)),
+                Expressions.constant(RexLiteral.intValue(fetch)),
+                resultSelector)));
+    return implementor.result(physType, builder.toBlock());
+  }
+}
+
+// End EnumerableApproxTopN.java
@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.enumerable;
+
+import org.apache.calcite.config.CalciteConnectionConfig;
+import org.apache.calcite.plan.RelOptRule;
+import org.apache.calcite.plan.RelOptRuleCall;
+import org.apache.calcite.rel.RelCollation;
+import org.apache.calcite.rel.RelFieldCollation;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.core.Aggregate;
+import org.apache.calcite.rel.core.AggregateCall;
+import org.apache.calcite.rel.logical.LogicalAggregate;
+import org.apache.calcite.rel.logical.LogicalSort;
+import org.apache.calcite.rex.RexLiteral;
+import org.apache.calcite.sql.SqlKind;
+
+import java.util.List;
+
+/**
+ * Rule to convert a {@link LogicalSort} on {@code COUNT(*)}, descending, with
+ * a literal {@code fetch}, whose input is a {@link LogicalAggregate} that
+ * computes only that count, to an {@link EnumerableApproxTopN}.
+ *
+ * <p>For example,
+ *
+ * <blockquote><pre>SELECT deptno, COUNT(*) AS c
+ * FROM emp
+ * GROUP BY deptno
+ * ORDER BY c DESC
+ * LIMIT 10</pre></blockquote>
+ *
+ * <p>The rule fires only if the connection allows approximate "Top N"
+ * results; see
+ * {@link org.apache.calcite.config.CalciteConnectionProperty#APPROXIMATE_TOP_N}.
+ */
+class EnumerableApproxTopNRule extends RelOptRule {
+  EnumerableApproxTopNRule() {
+    super(
+        operand(LogicalSort.class,
+            operand(LogicalAggregate.class, any())),
+        "EnumerableApproxTopNRule");
+  }
+
+  @Override public void onMatch(RelOptRuleCall call) {
+    final LogicalSort sort = call.rel(0);
+    final LogicalAggregate aggregate = call.rel(1);
+    final CalciteConnectionConfig config =
+        call.getPlanner().getContext().unwrap(CalciteConnectionConfig.class);
+    if (config == null || !config.approximateTopN()) {
+      return;
+    }
+    if (!(sort.fetch instanceof RexLiteral)
+        || sort.offset != null && !(sort.offset instanceof RexLiteral)) {
+      return;
+    }
+    if (EnumerableApproxTopN.limit(sort.offset, sort.fetch)
+        > EnumerableApproxTopN.MAX_CAPACITY) {
+      // Too many keys for a sketch of bounded size; the aggregate and sort
+      // will compute the exact result.
+      return;
+    }
+    if (aggregate.getGroupType() != Aggregate.Group.SIMPLE
+        || aggregate.getGroupSet().isEmpty()
+        || aggregate.getAggCallList().size() != 1) {
+      return;
+    }
+    final AggregateCall aggCall = aggregate.getAggCallList().get(0);
+    if (aggCall.getAggregation().getKind() != SqlKind.COUNT
+        || !aggCall.getArgList().isEmpty()
+        || aggCall.isDistinct()
+        || aggCall.filterArg >= 0) {
+      return;
+    }
+    final RelCollation collation = sort.getCollation();
+    final List<RelFieldCollation> fieldCollations =
+        collation.getFieldCollations();
+    if (fieldCollations.size() != 1
+        || fieldCollations.get(0).getFieldIndex() != aggregate.getGroupCount()
+        || fieldCollations.get(0).getDirection()
+            != RelFieldCollation.Direction.DESCENDING) {
+      return;
+    }
+    final RelNode input = aggregate.getInput();
+    call.transformTo(
+        EnumerableApproxTopN.create(
+            convert(input,
+                input.getTraitSet().replace(EnumerableConvention.INSTANCE)),
+            sort.getRowType(),
+            aggregate.getGroupSet(),
+            collation,
+            sort.offset,
+            sort.fetch));
+  }
+}
+
+// End EnumerableApproxTopNRule.java
@@ -0,0 +1,350 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.enumerable;
+
+import org.apache.calcite.linq4j.tree.BlockBuilder;
+import org.apache.calcite.linq4j.tree.Expression;
+import org.apache.calcite.linq4j.tree.Expressions;
+import org.apache.calcite.plan.RelOptCluster;
+import org.apache.calcite.plan.RelOptCost;
+import org.apache.calcite.plan.RelOptPlanner;
+import org.apache.calcite.plan.RelOptUtil;
+import org.apache.calcite.plan.RelTraitSet;
+import org.apache.calcite.rel.InvalidRelException;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.core.CorrelationId;
+import org.apache.calcite.rel.core.JoinRelType;
+import org.apache.calcite.rel.metadata.RelMetadataQuery;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rel.type.RelDataTypeFactory;
+import org.apache.calcite.rex.RexCall;
+import org.apache.calcite.rex.RexInputRef;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.rex.RexUtil;
+import org.apache.calcite.sql.SqlKind;
+import org.apache.calcite.sql.type.SqlTypeUtil;
+import org.apache.calcite.util.BuiltInMethod;
+import org.apache.calcite.util.Util;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/** Implementation of {@link org.apache.calcite.rel.core.Join} in
+ * {@link EnumerableConvention enumerable calling convention} whose condition
+ * restricts a field of the left input to a band (range) whose bounds are
+ * fields of the right input, such as
+ * {@code a.ts BETWEEN b.startTs AND b.endTs}.
+ *
+ * <p>Rather than comparing each left row with each right row, as
+ * {@link EnumerableThetaJoin} does, it sorts both inputs and sweeps through
+ * them; see
+ * {@link org.apache.calcite.linq4j.EnumerableDefaults#bandJoin}. The rest of
+ * the condition is evaluated for each pair of rows within the band. */
+public class EnumerableBandJoin extends EnumerableThetaJoin {
+  /** Field of the left input that must be within the band. */
+  public final int leftKey;
+  /** Field of the right input that is the lower bound of the band, or -1 if
+   * there is no lower bound. */
+  public final int lowerKey;
+  public final boolean lowerStrict;
+  /** Field of the right input that is the upper bound of the band, or -1 if
+   * there is no upper bound. */
+  public final int upperKey;
+  public final boolean upperStrict;
+  /** Rest of the condition. */
+  public final RexNode remaining;
+
+  /** Creates an EnumerableBandJoin. */
+  protected EnumerableBandJoin(RelOptCluster cluster, RelTraitSet traits,
+      RelNode left, RelNode right, RexNode condition,
+      Set<CorrelationId> variablesSet, JoinRelType joinType)
+      throws InvalidRelException {
+    super(cluster, traits, left, right, condition, variablesSet, joinType);
+    final Band band = Band.of(left, right, condition);
+    if (band == null) {
+      throw new InvalidRelException(
+          "EnumerableBandJoin requires a range condition: " + condition);
+    }
+    this.leftKey = band.leftKey;
+    this.lowerKey = band.lowerKey;
+    this.lowerStrict = band.lowerStrict;
+    this.upperKey = band.upperKey;
+    this.upperStrict = band.upperStrict;
+    this.remaining =
+        RexUtil.composeConjunction(cluster.getRexBuilder(), band.remaining,
+            false);
+  }
+
+  @Override public EnumerableBandJoin copy(RelTraitSet traitSet,
+      RexNode condition, RelNode left, RelNode right, JoinRelType joinType,
+      boolean semiJoinDone) {
+    try {
+      return new EnumerableBandJoin(getCluster(), traitSet, left, right,
+          condition, variablesSet, joinType);
+    } catch (InvalidRelException e) {
+      // Semantic error not possible. Must be a bug. Convert to
+      // internal error.
+      throw new AssertionError(e);
+    }
+  }
+
+  @Override public RelOptCost computeSelfCost(RelOptPlanner planner,
+      RelMetadataQuery mq) {
+    double rowCount = mq.getRowCount(this);
+
+    // As in EnumerableThetaJoin, make one of the two equivalent joins
+    // slightly more expensive.
+    switch (joinType) {
+    case RIGHT:
+      rowCount = addEpsilon(rowCount);
+      break;
+    default:
+      if (left.getId() > right.getId()) {
+        rowCount = addEpsilon(rowCount);
+      }
+    }
+
+    // Each left row is compared only with the right rows within its band,
+    // which are counted in the output, but both inputs must be sorted.
+    final double rightRowCount = right.estimateRowCount(mq);
+    final double leftRowCount = left.estimateRowCount(mq);
+    if (Double.isInfinite(leftRowCount)) {
+      rowCount = leftRowCount;
+    } else {
+      rowCount += Util.nLogN(leftRowCount);
+    }
+    if (Double.isInfinite(rightRowCount)) {
+      rowCount = rightRowCount;
+    } else {
+      rowCount += Util.nLogN(rightRowCount);
+    }
+    return planner.getCostFactory().makeCost(rowCount, 0, 0);
+  }
+
+  @Override public Result implement(EnumerableRelImplementor implementor,
+      Prefer pref) {
+    final BlockBuilder builder = new BlockBuilder();
+    final Result leftResult =
+        implementor.visitChild(this, 0, (EnumerableRel) left, pref);
+    final Expression leftExpression =
+        builder.append("left", leftResult.block);
+    final Result rightResult =
+        implementor.visitChild(this, 1, (EnumerableRel) right, pref);
+    final Expression rightExpression =
+        builder.append("right", rightResult.block);
+    final PhysType physType =
+        PhysTypeImpl.of(implementor.getTypeFactory(),
+            getRowType(),
+            pref.preferArray());
+    final Expression predicate =
+        remaining.isAlwaysTrue()
+            ? Expressions.constant(null)
+            : predicate(implementor,
+                new BlockBuilder(),
+                leftResult.physType,
+                rightResult.physType,
+                remaining);
+    return implementor.result(
+        physType,
+        builder.append(
+            Expressions.call(BuiltInMethod.BAND_JOIN.method,
+                Expressions.list(
+                    leftExpression,
+                    rightExpression,
+                    leftResult.physType.generateAccessor(
+                        ImmutableList.of(leftKey)),
+                    accessor(rightResult.physType, lowerKey),
+                    Expressions.constant(lowerStrict),
+                    accessor(rightResult.physType, upperKey),
+                    Expressions.constant(upperStrict),
+                    predicate,
+                    EnumUtils.joinSelector(joinType,
+                        physType,
+                        ImmutableList.of(leftResult.physType,
+                            rightResult.physType)),
+                    Expressions.constant(joinType.generatesNullsOnLeft()),
+                    Expressions.constant(joinType.generatesNullsOnRight()))))
+            .toBlock());
+  }
+
+  private static Expression accessor(PhysType physType, int field) {
+    return field < 0
+        ? Expressions.constant(null)
+        : physType.generateAccessor(ImmutableList.of(field));
+  }
+
+  /** Returns whether a join condition contains a range condition that can be
+   * evaluated by an {@link EnumerableBandJoin}. */
+  static boolean isBand(RelNode left, RelNode right, RexNode condition) {
+    return Band.of(left, right, condition) != null;
+  }
+
+  /** Range condition found in a join condition. */
+  private static class Band {
+    final int leftKey;
+    final int lowerKey;
+    final boolean lowerStrict;
+    final int upperKey;
+    final boolean upperStrict;
+    final List<RexNode> remaining;
+
+    Band(int leftKey, int lowerKey, boolean lowerStrict, int upperKey,
+        boolean upperStrict, List<RexNode> remaining) {
+      this.leftKey = leftKey;
+      this.lowerKey = lowerKey;
+      this.lowerStrict = lowerStrict;
+      this.upperKey = upperKey;
+      this.upperStrict = upperStrict;
+      this.remaining = remaining;
+    }
+
+    /** Finds the range condition in a join condition, or returns null.
+     *
+     * <p>Looks for conjuncts that compare a field of the left input with a
+     * field of the right input of the same numeric or datetime type, using
+     * {@code <}, {@code <=}, {@code >} or {@code >=}. If a left field has
+     * both a lower and an upper bound, uses that field. */
+    static Band of(RelNode left, RelNode right, RexNode condition) {
+      final RelDataTypeFactory typeFactory = left.getCluster().getTypeFactory();
+      final int leftCount = left.getRowType().getFieldCount();
+      final List<RelDataType> types =
+          new ArrayList<>(RelOptUtil.getFieldTypeList(left.getRowType()));
+      types.addAll(RelOptUtil.getFieldTypeList(right.getRowType()));
+      final List<RexNode> conjunctions = RelOptUtil.conjunctions(condition);
+      final List<Comparison> comparisons = new ArrayList<>();
+      for (RexNode e : conjunctions) {
+        comparisons.add(Comparison.of(e, leftCount, types, typeFactory));
+      }
+      int leftKey = -1;
+      for (Comparison c : comparisons) {
+        if (c != null) {
+          if (hasBothBounds(comparisons, c.leftField)) {
+            leftKey = c.leftField;
+            break;
+          }
+          if (leftKey < 0) {
+            leftKey = c.leftField;
+          }
+        }
+      }
+      if (leftKey < 0) {
+        return null;
+      }
+      int lowerKey = -1;
+      boolean lowerStrict = false;
+      int upperKey = -1;
+      boolean upperStrict = false;
+      final List<RexNode> remaining = new ArrayList<>();
+      for (int i = 0; i < conjunctions.size(); i++) {
+        final Comparison c = comparisons.get(i);
+        if (c != null && c.leftField == leftKey) {
+          if (c.lower && lowerKey < 0) {
+            lowerKey = c.rightField - leftCount;
+            lowerStrict = c.strict;
+            continue;
+          }
+          if (!c.lower && upperKey < 0) {
+            upperKey = c.rightField - leftCount;
+            upperStrict = c.strict;
+            continue;
+          }
+        }
+        remaining.add(conjunctions.get(i));
+      }
+      return new Band(leftKey, lowerKey, lowerStrict, upperKey,
+          upperStrict, remaining);
+    }
+
+    private static boolean hasBothBounds(List<Comparison> comparisons,
+        int leftField) {
+      boolean lower = false;
+      boolean upper = false;
+      for (Comparison c : comparisons) {
+        if (c != null && c.leftField == leftField) {
+          if (c.lower) {
+            lower = true;
+          } else {
+            upper = true;
+          }
+        }
+      }
+      return lower && upper;
+    }
+  }
+
+  /** Comparison between a field of the left input and a field of the right
+   * input, normalized so that the left field is on the left. */
+  private static class Comparison {
+    final int leftField;
+    final int rightField;
+    /** Whether the right field is a lower bound ({@code >} or {@code >=}),
+     * otherwise an upper bound. */
+    final boolean lower;
+    final boolean strict;
+
+    Comparison(int leftField, int rightField, boolean lower, boolean strict) {
+      this.leftField = leftField;
+      this.rightField = rightField;
+      this.lower = lower;
+      this.strict = strict;
+    }
+
+    /** Returns the comparison that an expression represents, or null. */
+    static Comparison of(RexNode e, int leftCount, List<RelDataType> types,
+        RelDataTypeFactory typeFactory) {
+      SqlKind kind = e.getKind();
+      switch (kind) {
+      case LESS_THAN:
+      case LESS_THAN_OR_EQUAL:
+      case GREATER_THAN:
+      case GREATER_THAN_OR_EQUAL:
+        break;
+      default:
+        return null;
+      }
+      final List<RexNode> operands = ((RexCall) e).getOperands();
+      if (!(operands.get(0) instanceof RexInputRef)
+          || !(operands.get(1) instanceof RexInputRef)) {
+        return null;
+      }
+      int i0 = ((RexInputRef) operands.get(0)).getIndex();
+      int i1 = ((RexInputRef) operands.get(1)).getIndex();
+      if (i0 >= leftCount && i1 < leftCount) {
+        final int i = i0;
+        i0 = i1;
+        i1 = i;
+        kind = kind.reverse();
+      } else if (i0 >= leftCount || i1 < leftCount) {
+        return null;
+      }
+      final RelDataType type = types.get(i0);
+      if (!SqlTypeUtil.equalSansNullability(typeFactory, type,
+          types.get(i1))
+          || !(SqlTypeUtil.isNumeric(type) || SqlTypeUtil.isDatetime(type))) {
+        return null;
+      }
+      return new Comparison(i0, i1,
+          kind == SqlKind.GREATER_THAN || kind == SqlKind.GREATER_THAN_OR_EQUAL,
+          kind == SqlKind.GREATER_THAN || kind == SqlKind.LESS_THAN);
+    }
+  }
+}
+
+// End EnumerableBandJoin.java
@@ -18,6 +18,7 @@
 
 import org.apache.calcite.DataContext;
 import org.apache.calcite.adapter.java.JavaTypeFactory;
+import org.apache.calcite.config.CalciteConnectionConfig;
 import org.apache.calcite.linq4j.Enumerator;
 import org.apache.calcite.linq4j.tree.BlockBuilder;
 import org.apache.calcite.linq4j.tree.BlockStatement;
@@ -43,6 +44,7 @@
 import org.apache.calcite.rex.RexProgram;
 import org.apache.calcite.rex.RexSimplify;
 import org.apache.calcite.rex.RexUtil;
+import org.apache.calcite.runtime.ColumnBatch;
 import org.apache.calcite.util.BuiltInMethod;
 import org.apache.calcite.util.Pair;
 import org.apache.calcite.util.Util;
@@ -52,6 +54,7 @@
 
 import java.lang.reflect.Modifier;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
@@ -121,7 +124,19 @@ public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
     final EnumerableRel child = (EnumerableRel) getInput();
 
     final Result result =
-        implementor.visitChild(this, 0, child, pref);
+        implementor.visitChild(this, 0, child,
+            canUseBatches(child) ? Prefer.COLUMNAR_BATCH : pref);
+
+    final RexBuilder rexBuilder = getCluster().getRexBuilder();
+    final RelMetadataQuery mq = RelMetadataQuery.instance();
+    final RelOptPredicateList predicates = mq.getPulledUpPredicates(child);
+    final RexSimplify simplify =
+        new RexSimplify(rexBuilder, predicates, false, RexUtil.EXECUTOR);
+    final RexProgram program = this.program.normalize(rexBuilder, simplify);
+
+    if (result.format == JavaRowFormat.COLUMNAR_BATCH) {
+      return implementBatch(implementor, pref, result, program);
+    }
 
     final PhysType physType =
         PhysTypeImpl.of(
@@ -150,13 +165,6 @@ public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
                 BuiltInMethod.ENUMERATOR_CURRENT.method),
             inputJavaType);
 
-    final RexBuilder rexBuilder = getCluster().getRexBuilder();
-    final RelMetadataQuery mq = RelMetadataQuery.instance();
-    final RelOptPredicateList predicates = mq.getPulledUpPredicates(child);
-    final RexSimplify simplify =
-        new RexSimplify(rexBuilder, predicates, false, RexUtil.EXECUTOR);
-    final RexProgram program = this.program.normalize(rexBuilder, simplify);
-
     BlockStatement moveNextBody;
     if (program.getCondition() == null) {
       moveNextBody =
@@ -269,6 +277,152 @@ public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
     return implementor.result(physType, builder.toBlock());
   }
 
+  /** Returns whether this Calc should ask its input to produce
+   * {@link JavaRowFormat#COLUMNAR_BATCH column batches}. Only a table scan
+   * can produce them, and only if the connection has enabled
+   * {@link CalciteConnectionConfig#columnarBatch()}. */
+  private boolean canUseBatches(EnumerableRel child) {
+    if (!(child instanceof EnumerableTableScan)) {
+      return false;
+    }
+    final CalciteConnectionConfig config =
+        getCluster().getPlanner().getContext()
+            .unwrap(CalciteConnectionConfig.class);
+    return config != null && config.columnarBatch();
+  }
+
+  /** Generates code for this Calc whose input produces
+   * {@link JavaRowFormat#COLUMNAR_BATCH column batches}.
+   *
+   * <p>For each batch, the condition is evaluated in a loop over all rows,
+   * reading values directly from the column vectors, and the indexes of
+   * qualifying rows are written to a selection vector. The projections are
+   * evaluated only for selected rows, and produce one record per row, in
+   * the format that the consumer prefers. */
+  private Result implementBatch(EnumerableRelImplementor implementor,
+      Prefer pref, Result result, RexProgram program) {
+    final JavaTypeFactory typeFactory = implementor.getTypeFactory();
+    final BlockBuilder builder = new BlockBuilder();
+    final PhysType physType =
+        PhysTypeImpl.of(typeFactory, getRowType(), pref.preferArray());
+
+    // final Enumerable<ColumnBatch> inputEnumerable = <<child adapter>>;
+    // return new AbstractEnumerable() {
+    //   Enumerator enumerator() {
+    //     return new ColumnBatchEnumerator(inputEnumerable.enumerator()) {
+    //       public int select(ColumnBatch batch, int[] selection) {
+    //         final int[] _vector = (int[]) batch.vectors[0];
+    //         int n = 0;
+    //         for (int i = 0; i < batch.size; i++) {
+    //           if (_vector[i] > 10) {
+    //             selection[n++] = i;
+    //           }
+    //         }
+    //         return n;
+    //       }
+    //       public Object current() {
+    //         ...
+    //         return new Object[] {..., _vector[row], ...};
+    //       }
+    //     };
+    //   }
+    // };
+    final ParameterExpression batch_ =
+        Expressions.parameter(ColumnBatch.class, "batch");
+    final List<MemberDeclaration> memberDeclarations = new ArrayList<>();
+    if (program.getCondition() != null) {
+      final ParameterExpression selection_ =
+          Expressions.parameter(int[].class, "selection");
+      final ParameterExpression i_ = Expressions.parameter(int.class, "i");
+      final ParameterExpression n_ = Expressions.parameter(int.class, "n");
+      final BlockBuilder builder2 = new BlockBuilder(false);
+      final BlockBuilder builder3 = new BlockBuilder(true, builder2);
+      final Expression condition =
+          RexToLixTranslator.translateCondition(
+              program,
+              typeFactory,
+              builder3,
+              new RexToLixTranslator.ColumnBatchInputGetter(batch_, i_,
+                  result.physType, builder2),
+              implementor.allCorrelateVariables);
+      builder3.add(
+          Expressions.ifThen(
+              condition,
+              Expressions.statement(
+                  Expressions.assign(
+                      Expressions.arrayIndex(selection_,
+                          Expressions.postIncrementAssign(n_)),
+                      i_))));
+      builder2.add(Expressions.declare(0, n_, Expressions.constant(0)));
+      builder2.add(
+          Expressions.for_(
+              Expressions.declare(0, i_, Expressions.constant(0)),
+              Expressions.lessThan(i_,
+                  Expressions.field(batch_,
+                      BuiltInMethod.COLUMN_BATCH_SIZE.field)),
+              Expressions.preIncrementAssign(i_),
+              builder3.toBlock()));
+      builder2.add(Expressions.return_(null, n_));
+      memberDeclarations.add(
+          EnumUtils.overridingMethodDecl(
+              BuiltInMethod.COLUMN_BATCH_ENUMERATOR_SELECT.method,
+              ImmutableList.of(batch_, selection_),
+              builder2.toBlock()));
+    }
+
+    // "batch" and "row" are fields of ColumnBatchEnumerator
+    final ParameterExpression row_ = Expressions.parameter(int.class, "row");
+    final BlockBuilder builder4 = new BlockBuilder();
+    final List<Expression> expressions =
+        RexToLixTranslator.translateProjects(
+            program,
+            typeFactory,
+            builder4,
+            physType,
+            DataContext.ROOT,
+            new RexToLixTranslator.ColumnBatchInputGetter(batch_, row_,
+                result.physType, builder4),
+            implementor.allCorrelateVariables);
+    builder4.add(
+        Expressions.return_(
+            null, physType.record(expressions)));
+    memberDeclarations.add(
+        Expressions.methodDecl(
+            Modifier.PUBLIC,
+            BRIDGE_METHODS
+                ? Object.class
+                : physType.getJavaRowType(),
+            "current",
+            NO_PARAMS,
+            builder4.toBlock()));
+
+    final Expression inputEnumerable =
+        builder.append(
+            "inputEnumerable", result.block, false);
+    final Expression body =
+        Expressions.new_(
+            BuiltInMethod.COLUMN_BATCH_ENUMERATOR_CTOR.constructor,
+            ImmutableList.<Expression>of(
+                Expressions.call(
+                    inputEnumerable,
+                    BuiltInMethod.ENUMERABLE_ENUMERATOR.method)),
+            memberDeclarations);
+    builder.add(
+        Expressions.return_(
+            null,
+            Expressions.new_(
+                BuiltInMethod.ABSTRACT_ENUMERABLE_CTOR.constructor,
+                NO_EXPRS,
+                ImmutableList.<MemberDeclaration>of(
+                    Expressions.methodDecl(
+                        Modifier.PUBLIC,
+                        Types.of(Enumerator.class, physType.getJavaRowType()),
+                        BuiltInMethod.ENUMERABLE_ENUMERATOR.method.getName(),
+                        NO_PARAMS,
+                        Blocks.toFunctionBlock(body))))));
+    return implementor.result(physType, builder.toBlock());
+  }
+
   public RexProgram getProgram() {
     return program;
   }
@@ -16,6 +16,7 @@
  */
 package org.apache.calcite.adapter.enumerable;
 
+import org.apache.calcite.config.CalciteConnectionConfig;
 import org.apache.calcite.linq4j.tree.BlockBuilder;
 import org.apache.calcite.linq4j.tree.Expression;
 import org.apache.calcite.linq4j.tree.Expressions;
@@ -27,6 +28,9 @@
 import org.apache.calcite.rel.core.Correlate;
 import org.apache.calcite.rel.core.CorrelationId;
 import org.apache.calcite.rel.core.JoinRelType;
+import org.apache.calcite.rex.RexCall;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.rex.RexShuttle;
 import org.apache.calcite.sql.SemiJoinType;
 import org.apache.calcite.util.BuiltInMethod;
 import org.apache.calcite.util.ImmutableBitSet;
@@ -104,14 +108,59 @@ public Result implement(EnumerableRelImplementor implementor,
                 : JoinRelType.INNER, physType,
             ImmutableList.of(leftResult.physType, rightResult.physType));
 
+    Expression inner = Expressions.lambda(corrBlock.toBlock(), corrArg);
+    final CalciteConnectionConfig config =
+        getCluster().getPlanner().getContext()
+            .unwrap(CalciteConnectionConfig.class);
+    final int cacheSize = config == null ? 0 : config.correlateCacheSize();
+    if (cacheSize > 0 && isDeterministic(right)) {
+      // Evaluate the inner input once for each distinct value of the
+      // columns that it uses, rather than once for each outer row.
+      final Expression keySelector =
+          Primitive.is(corrVarType)
+              ? Expressions.call(BuiltInMethod.IDENTITY_SELECTOR.method)
+              : leftResult.physType.generateAccessor(
+                  requiredColumns.asList());
+      inner =
+          Expressions.call(BuiltInMethod.CACHE_CORRELATE.method, inner,
+              keySelector, Expressions.constant(cacheSize),
+              Expressions.constant(joinType == SemiJoinType.SEMI
+                  || joinType == SemiJoinType.ANTI));
+    }
+
     builder.append(
         Expressions.call(leftExpression, BuiltInMethod.CORRELATE_JOIN.method,
             Expressions.constant(joinType.toLinq4j()),
-        Expressions.lambda(corrBlock.toBlock(), corrArg),
+        inner,
         selector));
 
     return implementor.result(physType, builder.toBlock());
   }
+
+  /** Returns whether a relational expression and its inputs always return
+   * the same rows for the same values of the correlation variable; that
+   * is, whether they call no non-deterministic functions. */
+  private static boolean isDeterministic(RelNode rel) {
+    final boolean[] deterministic = {true};
+    rel.accept(
+        new RexShuttle() {
+          @Override public RexNode visitCall(RexCall call) {
+            if (!call.getOperator().isDeterministic()) {
+              deterministic[0] = false;
+            }
+            return super.visitCall(call);
+          }
+        });
+    if (!deterministic[0]) {
+      return false;
+    }
+    for (RelNode input : rel.getInputs()) {
+      if (!isDeterministic(input)) {
+        return false;
+      }
+    }
+    return true;
+  }
 }
 
 // End EnumerableCorrelate.java
@@ -18,6 +18,7 @@
 
 import org.apache.calcite.DataContext;
 import org.apache.calcite.avatica.Helper;
+import org.apache.calcite.config.CalciteConnectionConfig;
 import org.apache.calcite.interpreter.InterpretableConvention;
 import org.apache.calcite.interpreter.InterpretableRel;
 import org.apache.calcite.interpreter.Interpreter;
@@ -41,8 +42,15 @@
 import org.apache.calcite.runtime.Hook;
 import org.apache.calcite.runtime.Typed;
 import org.apache.calcite.runtime.Utilities;
+import org.apache.calcite.util.Pair;
 import org.apache.calcite.util.Util;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+
 import org.codehaus.commons.compiler.CompileException;
 import org.codehaus.commons.compiler.CompilerFactoryFactory;
 import org.codehaus.commons.compiler.IClassBodyEvaluator;
@@ -52,6 +60,9 @@
 import java.io.StringReader;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Relational expression that converts an enumerable input to interpretable
@@ -62,6 +73,35 @@
  */
 public class EnumerableInterpretable extends ConverterImpl
     implements InterpretableRel {
+  /** Caches of compiled classes, keyed by generated Java source code.
+   *
+   * <p>There is one cache for each combination of maximum size and expiry
+   * time (see {@link CalciteConnectionConfig#bindableCacheMaxSize()} and
+   * {@link CalciteConnectionConfig#bindableCacheExpireSeconds()}). A compiled
+   * class does not depend on the connection that created it, so connections
+   * with the same settings share a cache.
+   *
+   * <p>We cache classes, not instances, because a generated {@link Bindable}
+   * stores its {@link DataContext} in a field while it is being bound. */
+  private static final LoadingCache<List<Integer>,
+      Cache<Pair<Integer, String>, Class>> BINDABLE_CACHES =
+      CacheBuilder.newBuilder()
+          .build(
+              new CacheLoader<List<Integer>,
+                  Cache<Pair<Integer, String>, Class>>() {
+                public Cache<Pair<Integer, String>, Class> load(
+                    List<Integer> key) {
+                  final CacheBuilder<Object, Object> builder =
+                      CacheBuilder.newBuilder()
+                          .maximumSize(key.get(0))
+                          .recordStats();
+                  if (key.get(1) > 0) {
+                    builder.expireAfterAccess(key.get(1), TimeUnit.SECONDS);
+                  }
+                  return builder.build();
+                }
+              });
+
   protected EnumerableInterpretable(RelOptCluster cluster, RelNode input) {
     super(cluster, ConventionTraitDef.INSTANCE,
         cluster.traitSetOf(InterpretableConvention.INSTANCE), input);
@@ -85,6 +125,21 @@ public Node implement(final InterpreterImplementor implementor) {
   public static Bindable toBindable(Map<String, Object> parameters,
       CalcitePrepare.SparkHandler spark, EnumerableRel rel,
       EnumerableRel.Prefer prefer) {
+    return toBindable(parameters, spark, rel, prefer, null);
+  }
+
+  /** Generates Java code for an enumerable relational expression and compiles
+   * it.
+   *
+   * <p>If {@code config} enables the cache of compiled classes, and a class
+   * has previously been compiled from identical source code, re-uses that
+   * class rather than invoking Janino again. Values that may differ between
+   * statements of the same shape, such as dynamic parameters and stashed
+   * objects, are read from the {@link DataContext} when the bindable is bound,
+   * so they do not prevent re-use. */
+  public static Bindable toBindable(Map<String, Object> parameters,
+      CalcitePrepare.SparkHandler spark, EnumerableRel rel,
+      EnumerableRel.Prefer prefer, CalciteConnectionConfig config) {
     EnumerableRelImplementor relImplementor =
         new EnumerableRelImplementor(rel.getCluster().getRexBuilder(),
             parameters);
@@ -102,7 +157,15 @@ public static Bindable toBindable(Map<String, Object> parameters,
       if (spark != null && spark.enabled()) {
         return spark.compile(expr, s);
       } else {
-        return getBindable(expr, s, rel.getRowType().getFieldCount());
+        final int fieldCount = rel.getRowType().getFieldCount();
+        if (config != null && config.bindableCacheMaxSize() > 0) {
+          final Cache<Pair<Integer, String>, Class> cache =
+              BINDABLE_CACHES.getUnchecked(
+                  ImmutableList.of(config.bindableCacheMaxSize(),
+                      config.bindableCacheExpireSeconds()));
+          return getCachedBindable(cache, expr, s, fieldCount);
+        }
+        return getBindable(expr, s, fieldCount);
       }
     } catch (Exception e) {
       throw Helper.INSTANCE.wrap("Error while compiling generated Java code:\n"
@@ -118,6 +181,40 @@ static ArrayBindable getArrayBindable(ClassDeclaration expr, String s,
 
   static Bindable getBindable(ClassDeclaration expr, String s, int fieldCount)
       throws CompileException, IOException {
+    return (Bindable) createEvaluator(expr, fieldCount)
+        .createInstance(new StringReader(s));
+  }
+
+  /** Returns an instance of a class compiled from the given source code,
+   * compiling the class only if it is not already in the cache.
+   *
+   * <p>Calls {@link Hook#BINDABLE_CACHE} with the statistics of the cache
+   * after each lookup. */
+  static Bindable getCachedBindable(Cache<Pair<Integer, String>, Class> cache,
+      final ClassDeclaration expr, final String s, final int fieldCount)
+      throws Exception {
+    final Class clazz;
+    try {
+      clazz = cache.get(Pair.of(fieldCount, s),
+          new Callable<Class>() {
+            public Class call() throws Exception {
+              final IClassBodyEvaluator cbe =
+                  createEvaluator(expr, fieldCount);
+              cbe.cook(new StringReader(s));
+              return cbe.getClazz();
+            }
+          });
+    } catch (ExecutionException e) {
+      // The loader only throws checked exceptions; they arrive here wrapped
+      throw (Exception) e.getCause();
+    } finally {
+      Hook.BINDABLE_CACHE.run(cache.stats());
+    }
+    return (Bindable) clazz.getConstructor().newInstance();
+  }
+
+  private static IClassBodyEvaluator createEvaluator(ClassDeclaration expr,
+      int fieldCount) {
     ICompilerFactory compilerFactory;
     try {
       compilerFactory = CompilerFactoryFactory.getDefaultCompilerFactory();
@@ -137,7 +234,7 @@ static Bindable getBindable(ClassDeclaration expr, String s, int fieldCount)
       // Add line numbers to the generated janino class
       cbe.setDebuggingInformation(true, true, true);
     }
-    return (Bindable) cbe.createInstance(new StringReader(s));
+    return cbe;
   }
 
   /** Converts a bindable over scalar values into an array bindable, with each
@@ -16,6 +16,7 @@
  */
 package org.apache.calcite.adapter.enumerable;
 
+import org.apache.calcite.config.CalciteConnectionConfig;
 import org.apache.calcite.linq4j.tree.BlockBuilder;
 import org.apache.calcite.linq4j.tree.Expression;
 import org.apache.calcite.linq4j.tree.Expressions;
@@ -26,23 +27,41 @@
 import org.apache.calcite.rel.InvalidRelException;
 import org.apache.calcite.rel.RelNode;
 import org.apache.calcite.rel.RelNodes;
+import org.apache.calcite.rel.SingleRel;
+import org.apache.calcite.rel.convert.ConverterImpl;
+import org.apache.calcite.rel.core.Calc;
 import org.apache.calcite.rel.core.CorrelationId;
 import org.apache.calcite.rel.core.EquiJoin;
+import org.apache.calcite.rel.core.Filter;
 import org.apache.calcite.rel.core.JoinInfo;
 import org.apache.calcite.rel.core.JoinRelType;
+import org.apache.calcite.rel.core.Project;
+import org.apache.calcite.rel.core.TableScan;
 import org.apache.calcite.rel.metadata.RelMetadataQuery;
+import org.apache.calcite.rel.type.RelDataTypeField;
+import org.apache.calcite.rex.RexInputRef;
 import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.rex.RexProgram;
+import org.apache.calcite.sql.type.SqlTypeUtil;
 import org.apache.calcite.util.BuiltInMethod;
+import org.apache.calcite.util.ImmutableBitSet;
 import org.apache.calcite.util.ImmutableIntList;
+import org.apache.calcite.util.Pair;
 import org.apache.calcite.util.Util;
 
 import com.google.common.collect.ImmutableList;
 
+import java.util.List;
 import java.util.Set;
 
 /** Implementation of {@link org.apache.calcite.rel.core.Join} in
  * {@link org.apache.calcite.adapter.enumerable.EnumerableConvention enumerable calling convention}. */
 public class EnumerableJoin extends EquiJoin implements EnumerableRel {
+  /** Approximate false positive rate of the Bloom filter in a
+   * {@link org.apache.calcite.runtime.RuntimeFilter}, which has about 8 bits
+   * for each key and sets 3 bits per key. */
+  private static final double FALSE_POSITIVE_RATE = 0.03d;
+
   /** Creates an EnumerableJoin.
    *
    * <p>Use {@link #create} unless you know what you're doing. */
@@ -146,8 +165,20 @@ public static EnumerableJoin create(
     // Model this by adding L log L to the cost.
     final double rightRowCount = right.estimateRowCount(mq);
     final double leftRowCount = left.estimateRowCount(mq);
+    final CalciteConnectionConfig config =
+        planner.getContext().unwrap(CalciteConnectionConfig.class);
+    final RuntimeFilterTarget target =
+        config != null && config.runtimeFilter()
+            ? runtimeFilterTarget(mq)
+            : null;
     if (Double.isInfinite(leftRowCount)) {
       rowCount = leftRowCount;
+    } else if (target != null) {
+      // A runtime filter does not save reading the probe side, but the rows
+      // it eliminates are tested once and go no further.
+      final double selectivity = runtimeFilterSelectivity(mq, target);
+      rowCount += Util.nLogN(leftRowCount * selectivity)
+          + leftRowCount * (1d - selectivity);
     } else {
       rowCount += Util.nLogN(leftRowCount);
     }
@@ -182,8 +213,29 @@ private double addEpsilon(double d) {
 
   public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
     BlockBuilder builder = new BlockBuilder();
+    final CalciteConnectionConfig config =
+        getCluster().getPlanner().getContext()
+            .unwrap(CalciteConnectionConfig.class);
+    final RuntimeFilterTarget target =
+        config != null && config.runtimeFilter()
+            ? runtimeFilterTarget(getCluster().getMetadataQuery())
+            : null;
+    Expression filter_ = null;
+    if (target != null) {
+      // The probe side scan tests the filter, so it must be declared before
+      // the probe side.
+      filter_ =
+          builder.append("runtimeFilter",
+              Expressions.new_(BuiltInMethod.RUNTIME_FILTER_CTOR.constructor,
+                  Expressions.constant(target.expectedKeyCount)),
+              false);
+      implementor.registerRuntimeFilter(target.rel, target.field, filter_);
+    }
     final Result leftResult =
         implementor.visitChild(this, 0, (EnumerableRel) left, pref);
+    if (target != null) {
+      implementor.clearRuntimeFilter(target.rel, filter_);
+    }
     Expression leftExpression =
         builder.append(
             "left", leftResult.block);
@@ -192,36 +244,173 @@ public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
     Expression rightExpression =
         builder.append(
             "right", rightResult.block);
+    final int spillMemoryLimit =
+        config == null ? 0 : config.spillMemoryLimit();
+    final int parallelism = config == null ? 1 : config.joinParallelism();
+    PhysType leftPhysType = leftResult.physType;
+    PhysType rightPhysType = rightResult.physType;
+    if (spillMemoryLimit > 0) {
+      final Pair<Expression, PhysType> leftPair =
+          EnumUtils.toSpillable(implementor.getTypeFactory(), leftExpression,
+              leftPhysType);
+      leftExpression = leftPair.left;
+      leftPhysType = leftPair.right;
+      final Pair<Expression, PhysType> rightPair =
+          EnumUtils.toSpillable(implementor.getTypeFactory(), rightExpression,
+              rightPhysType);
+      rightExpression = rightPair.left;
+      rightPhysType = rightPair.right;
+    }
+    if (target != null) {
+      rightExpression =
+          builder.append("right",
+              Expressions.call(BuiltInMethod.RUNTIME_FILTER_COLLECT.method,
+                  rightExpression,
+                  rightPhysType.generateAccessor(
+                      ImmutableList.of(rightKeys.get(target.key))),
+                  filter_));
+    }
     final PhysType physType =
         PhysTypeImpl.of(
             implementor.getTypeFactory(), getRowType(), pref.preferArray());
     final PhysType keyPhysType =
-        leftResult.physType.project(
+        leftPhysType.project(
             leftKeys, JavaRowFormat.LIST);
-    return implementor.result(
-        physType,
-        builder.append(
-            Expressions.call(
-                leftExpression,
-                BuiltInMethod.JOIN.method,
-                Expressions.list(
-                    rightExpression,
-                    leftResult.physType.generateAccessor(leftKeys),
-                    rightResult.physType.generateAccessor(rightKeys),
-                    EnumUtils.joinSelector(joinType,
-                        physType,
-                        ImmutableList.of(
-                            leftResult.physType, rightResult.physType)))
-                    .append(
-                        Util.first(keyPhysType.comparer(),
-                            Expressions.constant(null)))
-                    .append(
-                        Expressions.constant(joinType.generatesNullsOnLeft()))
-                    .append(
-                        Expressions.constant(
-                            joinType.generatesNullsOnRight())))).toBlock());
+    final Expressions.FluentList<Expression> arguments =
+        Expressions.list(
+            rightExpression,
+            leftPhysType.generateAccessor(leftKeys),
+            rightPhysType.generateAccessor(rightKeys),
+            EnumUtils.joinSelector(joinType,
+                physType,
+                ImmutableList.of(leftPhysType, rightPhysType)))
+            .append(
+                Util.first(keyPhysType.comparer(),
+                    Expressions.constant(null)))
+            .append(
+                Expressions.constant(joinType.generatesNullsOnLeft()))
+            .append(
+                Expressions.constant(
+                    joinType.generatesNullsOnRight()));
+    final Expression join;
+    if (spillMemoryLimit > 0) {
+      join =
+          Expressions.call(BuiltInMethod.SPILLING_JOIN.method,
+              Expressions.list(leftExpression)
+                  .appendAll(arguments)
+                  .append(Expressions.constant((long) spillMemoryLimit << 20)));
+    } else if (parallelism > 1) {
+      join =
+          Expressions.call(BuiltInMethod.PARALLEL_JOIN.method,
+              Expressions.list(leftExpression)
+                  .appendAll(arguments)
+                  .append(Expressions.constant(parallelism)));
+    } else {
+      join =
+          Expressions.call(leftExpression, BuiltInMethod.JOIN.method,
+              arguments);
+    }
+    return implementor.result(physType, builder.append(join).toBlock());
+  }
+
+  /** Returns where to apply a runtime filter on the probe (left) side of
+   * this join, or null if the join should not have one.
+   *
+   * <p>A join is eligible if it discards probe rows that have no match
+   * (that is, it is an inner or right join), if its build (right) side is
+   * estimated to have fewer rows than its probe side, and if a join key
+   * can be traced through projections and filters to a field of a table
+   * scan or of another source of rows, such as an adapter's converter. */
+  private RuntimeFilterTarget runtimeFilterTarget(RelMetadataQuery mq) {
+    if (joinType != JoinRelType.INNER && joinType != JoinRelType.RIGHT) {
+      return null;
+    }
+    final Double leftRowCount = mq.getRowCount(left);
+    final Double rightRowCount = mq.getRowCount(right);
+    if (leftRowCount == null
+        || rightRowCount == null
+        || rightRowCount >= leftRowCount) {
+      return null;
+    }
+    final List<RelDataTypeField> leftFields = left.getRowType().getFieldList();
+    final List<RelDataTypeField> rightFields =
+        right.getRowType().getFieldList();
+    for (int key = 0; key < leftKeys.size(); key++) {
+      if (!SqlTypeUtil.equalSansNullability(getCluster().getTypeFactory(),
+          leftFields.get(leftKeys.get(key)).getType(),
+          rightFields.get(rightKeys.get(key)).getType())) {
+        continue;
+      }
+      RelNode rel = left;
+      int field = leftKeys.get(key);
+      for (;;) {
+        if (rel instanceof TableScan
+            || rel instanceof EnumerableInterpreter
+            || rel instanceof ConverterImpl) {
+          final Double keyCount =
+              mq.getDistinctRowCount(right,
+                  ImmutableBitSet.of(rightKeys.get(key)), null);
+          final double expectedKeyCount =
+              Math.min(Util.first(keyCount, rightRowCount), Integer.MAX_VALUE);
+          return new RuntimeFilterTarget(key, rel, field,
+              (int) expectedKeyCount);
+        }
+        final RexNode e;
+        if (rel instanceof Calc) {
+          final RexProgram program = ((Calc) rel).getProgram();
+          e = program.expandLocalRef(program.getProjectList().get(field));
+        } else if (rel instanceof Project) {
+          e = ((Project) rel).getProjects().get(field);
+        } else if (rel instanceof Filter) {
+          e = null;
+        } else {
+          break;
+        }
+        if (e != null) {
+          if (!(e instanceof RexInputRef)) {
+            break;
+          }
+          field = ((RexInputRef) e).getIndex();
+        }
+        rel = ((SingleRel) rel).getInput();
+      }
+    }
+    return null;
   }
 
+  /** Returns the estimated fraction of probe rows that pass a runtime
+   * filter: those whose key occurs on the build side, plus the false
+   * positives of the Bloom filter. */
+  private double runtimeFilterSelectivity(RelMetadataQuery mq,
+      RuntimeFilterTarget target) {
+    final Double keyCount =
+        mq.getDistinctRowCount(left,
+            ImmutableBitSet.of(leftKeys.get(target.key)), null);
+    if (keyCount == null || keyCount <= 0d) {
+      return 1d;
+    }
+    return Math.min(1d,
+        target.expectedKeyCount / keyCount + FALSE_POSITIVE_RATE);
+  }
+
+  /** Where to apply a runtime filter. */
+  private static class RuntimeFilterTarget {
+    /** Ordinal of the join key. */
+    final int key;
+    /** Relational expression on the probe side whose rows are filtered. */
+    final RelNode rel;
+    /** Field of {@link #rel} that is the join key. */
+    final int field;
+    final int expectedKeyCount;
+
+    RuntimeFilterTarget(int key, RelNode rel, int field,
+        int expectedKeyCount) {
+      this.key = key;
+      this.rel = rel;
+      this.field = field;
+      this.expectedKeyCount = expectedKeyCount;
+    }
+  }
 }
 
 // End EnumerableJoin.java
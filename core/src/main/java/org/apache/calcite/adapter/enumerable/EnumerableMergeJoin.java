@@ -54,7 +54,12 @@
 
 /** Implementation of {@link org.apache.calcite.rel.core.Join} in
  * {@link EnumerableConvention enumerable calling convention} using
- * a merge algorithm. */
+ * a merge algorithm.
+ *
+ * <p>Both inputs must be sorted on the join keys, ascending with nulls last.
+ * Any part of the condition that is not an equality between the keys is
+ * evaluated on each pair of rows whose keys match. Supports inner, left,
+ * right and full joins. */
 public class EnumerableMergeJoin extends EquiJoin implements EnumerableRel {
   EnumerableMergeJoin(
       RelOptCluster cluster,
@@ -71,7 +76,9 @@ public class EnumerableMergeJoin extends EquiJoin implements EnumerableRel {
         variablesSet, joinType);
     final List<RelCollation> collations =
         traits.getTraits(RelCollationTraitDef.INSTANCE);
-    assert collations == null || RelCollations.contains(collations, leftKeys);
+    assert collations == null
+        || joinType.generatesNullsOnLeft()
+        || RelCollations.contains(collations, leftKeys);
   }
 
   @Deprecated // to be removed before 2.0
@@ -92,7 +99,8 @@ public static EnumerableMergeJoin create(RelNode left, RelNode right,
     if (traitSet.isEnabled(RelCollationTraitDef.INSTANCE)) {
       final RelMetadataQuery mq = cluster.getMetadataQuery();
       final List<RelCollation> collations =
-          RelMdCollation.mergeJoin(mq, left, right, leftKeys, rightKeys);
+          RelMdCollation.mergeJoin(mq, left, right, leftKeys, rightKeys,
+              joinType);
       traitSet = traitSet.replace(collations);
     }
     return new EnumerableMergeJoin(cluster, traitSet, left, right, condition,
@@ -103,7 +111,6 @@ public static EnumerableMergeJoin create(RelNode left, RelNode right,
       RexNode condition, RelNode left, RelNode right, JoinRelType joinType,
       boolean semiJoinDone) {
     final JoinInfo joinInfo = JoinInfo.of(left, right, condition);
-    assert joinInfo.isEqui();
     try {
       return new EnumerableMergeJoin(getCluster(), traitSet, left, right,
           condition, joinInfo.leftKeys, joinInfo.rightKeys, variablesSet,
@@ -115,6 +122,10 @@ public static EnumerableMergeJoin create(RelNode left, RelNode right,
     }
   }
 
+  @Override public JoinInfo analyzeCondition() {
+    return JoinInfo.of(left, right, condition);
+  }
+
   @Override public RelOptCost computeSelfCost(RelOptPlanner planner,
       RelMetadataQuery mq) {
     // We assume that the inputs are sorted. The price of sorting them has
@@ -160,6 +171,13 @@ public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
           Types.castIfNecessary(keyClass,
               rightResult.physType.fieldReference(right_, pair.right)));
     }
+    final RexNode remaining =
+        analyzeCondition().getRemaining(getCluster().getRexBuilder());
+    final Expression predicate =
+        remaining.isAlwaysTrue()
+            ? Expressions.constant(null)
+            : EnumUtils.joinPredicate(implementor, new BlockBuilder(), left,
+                right, leftResult.physType, rightResult.physType, remaining);
     final PhysType leftKeyPhysType =
         leftResult.physType.project(leftKeys, JavaRowFormat.LIST);
     final PhysType rightKeyPhysType =
@@ -176,6 +194,7 @@ public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
                         leftKeyPhysType.record(leftExpressions), left_),
                     Expressions.lambda(
                         rightKeyPhysType.record(rightExpressions), right_),
+                    predicate,
                     EnumUtils.joinSelector(joinType,
                         physType,
                         ImmutableList.of(
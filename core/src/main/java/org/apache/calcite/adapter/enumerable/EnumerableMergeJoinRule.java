@@ -19,6 +19,7 @@
 import org.apache.calcite.linq4j.Ord;
 import org.apache.calcite.plan.Convention;
 import org.apache.calcite.plan.RelOptCluster;
+import org.apache.calcite.plan.RelOptUtil;
 import org.apache.calcite.plan.RelTraitSet;
 import org.apache.calcite.rel.InvalidRelException;
 import org.apache.calcite.rel.RelCollation;
@@ -27,11 +28,11 @@
 import org.apache.calcite.rel.RelNode;
 import org.apache.calcite.rel.convert.ConverterRule;
 import org.apache.calcite.rel.core.JoinInfo;
-import org.apache.calcite.rel.core.JoinRelType;
 import org.apache.calcite.rel.logical.LogicalJoin;
 
 import com.google.common.collect.Lists;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /** Planner rule that converts a
@@ -52,15 +53,19 @@ class EnumerableMergeJoinRule extends ConverterRule {
     LogicalJoin join = (LogicalJoin) rel;
     final JoinInfo info =
         JoinInfo.of(join.getLeft(), join.getRight(), join.getCondition());
-    if (join.getJoinType() != JoinRelType.INNER) {
-      // EnumerableMergeJoin only supports inner join.
-      // (It supports non-equi join, using a post-filter; see below.)
-      return null;
-    }
     if (info.pairs().size() == 0) {
       // EnumerableMergeJoin CAN support cartesian join, but disable it for now.
       return null;
     }
+    final List<Boolean> filterNulls = new ArrayList<>();
+    RelOptUtil.splitJoinCondition(join.getLeft(), join.getRight(),
+        join.getCondition(), new ArrayList<Integer>(), new ArrayList<Integer>(),
+        filterNulls);
+    if (filterNulls.contains(false)) {
+      // EnumerableMergeJoin never matches null keys, so it cannot evaluate
+      // "IS NOT DISTINCT FROM".
+      return null;
+    }
     final List<RelNode> newInputs = Lists.newArrayList();
     final List<RelCollation> collations = Lists.newArrayList();
     int offset = 0;
@@ -76,7 +81,10 @@ class EnumerableMergeJoinRule extends ConverterRule {
                   RelFieldCollation.NullDirection.LAST));
         }
         final RelCollation collation = RelCollations.of(fieldCollations);
-        collations.add(RelCollations.shift(collation, offset));
+        if (!join.getJoinType().generatesNullsOn(ord.i)) {
+          // A side that generates nulls does not preserve its sort order.
+          collations.add(RelCollations.shift(collation, offset));
+        }
         traits = traits.replace(collation);
       }
       newInputs.add(convert(ord.e, traits));
@@ -85,18 +93,17 @@ class EnumerableMergeJoinRule extends ConverterRule {
     final RelNode left = newInputs.get(0);
     final RelNode right = newInputs.get(1);
     final RelOptCluster cluster = join.getCluster();
-    RelNode newRel;
     try {
       RelTraitSet traits = join.getTraitSet()
           .replace(EnumerableConvention.INSTANCE);
       if (!collations.isEmpty()) {
         traits = traits.replace(collations);
       }
-      newRel = new EnumerableMergeJoin(cluster,
+      return new EnumerableMergeJoin(cluster,
           traits,
           left,
           right,
-          info.getEquiCondition(left, right, cluster.getRexBuilder()),
+          join.getCondition(),
           info.leftKeys,
           info.rightKeys,
           join.getVariablesSet(),
@@ -105,11 +112,6 @@ class EnumerableMergeJoinRule extends ConverterRule {
       EnumerableRules.LOGGER.debug(e.toString());
       return null;
     }
-    if (!info.isEqui()) {
-      newRel = new EnumerableFilter(cluster, newRel.getTraitSet(),
-          newRel, info.getRemaining(cluster.getRexBuilder()));
-    }
-    return newRel;
   }
 }
 
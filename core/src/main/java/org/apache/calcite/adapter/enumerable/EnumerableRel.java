@@ -77,7 +77,12 @@ enum Prefer {
      * accommodate records represented as arrays. */
     CUSTOM_NICE,
     /** Consumer has no preferred representation. */
-    ANY;
+    ANY,
+    /** Consumer would prefer that records arrive in batches, stored column by
+     * column (see {@link JavaRowFormat#COLUMNAR_BATCH}), but can accommodate
+     * any representation. Only a producer that can generate batches directly
+     * will do so, and it must not pass this preference on to its inputs. */
+    COLUMNAR_BATCH;
 
     public JavaRowFormat preferCustom() {
       return prefer(JavaRowFormat.CUSTOM);
@@ -38,9 +38,11 @@
 import org.apache.calcite.linq4j.tree.Statement;
 import org.apache.calcite.linq4j.tree.Types;
 import org.apache.calcite.linq4j.tree.VisitorImpl;
+import org.apache.calcite.rel.RelNode;
 import org.apache.calcite.rex.RexBuilder;
 import org.apache.calcite.runtime.Bindable;
 import org.apache.calcite.util.BuiltInMethod;
+import org.apache.calcite.util.Pair;
 
 import com.google.common.base.Function;
 import com.google.common.collect.Collections2;
@@ -78,6 +80,8 @@ public class EnumerableRelImplementor extends JavaRelImplementor {
       Maps.newHashMap();
   private final Map<Object, ParameterExpression> stashedParameters =
       Maps.newIdentityHashMap();
+  private final Map<RelNode, List<Pair<Integer, Expression>>> runtimeFilters =
+      Maps.newIdentityHashMap();
 
   protected final Function1<String, RexToLixTranslator.InputGetter> allCorrelateVariables =
       new Function1<String, RexToLixTranslator.InputGetter>() {
@@ -100,7 +104,22 @@ public EnumerableRel.Result visitChild(
     if (parent != null) {
       assert child == parent.getInputs().get(ordinal);
     }
-    return child.implement(this, prefer);
+    final EnumerableRel.Result result = child.implement(this, prefer);
+    final List<Pair<Integer, Expression>> filters = runtimeFilters.get(child);
+    if (filters == null) {
+      return result;
+    }
+    final BlockBuilder builder = new BlockBuilder();
+    Expression source_ = builder.append("source", result.block);
+    for (Pair<Integer, Expression> filter : filters) {
+      source_ = builder.append("source",
+          Expressions.call(BuiltInMethod.RUNTIME_FILTER_FILTER.method,
+              source_,
+              result.physType.generateAccessor(ImmutableList.of(filter.left)),
+              filter.right));
+    }
+    return new EnumerableRel.Result(builder.append(source_).toBlock(),
+        result.physType, result.format);
   }
 
   public ClassDeclaration implementRoot(EnumerableRel rootRel,
@@ -481,6 +500,33 @@ public RexToLixTranslator.InputGetter getCorrelVariableGetter(String name) {
     return corrVars.get(name);
   }
 
+  /** Registers a {@link org.apache.calcite.runtime.RuntimeFilter} to be
+   * applied to the rows of a relational expression, testing a given field,
+   * while its parent is being implemented. */
+  public void registerRuntimeFilter(RelNode rel, int field,
+      Expression filter) {
+    List<Pair<Integer, Expression>> filters = runtimeFilters.get(rel);
+    if (filters == null) {
+      filters = new ArrayList<>();
+      runtimeFilters.put(rel, filters);
+    }
+    filters.add(Pair.of(field, filter));
+  }
+
+  public void clearRuntimeFilter(RelNode rel, Expression filter) {
+    final List<Pair<Integer, Expression>> filters = runtimeFilters.get(rel);
+    assert filters != null : "Runtime filter should be registered";
+    for (int i = 0; i < filters.size(); i++) {
+      if (filters.get(i).right == filter) {
+        filters.remove(i);
+        break;
+      }
+    }
+    if (filters.isEmpty()) {
+      runtimeFilters.remove(rel);
+    }
+  }
+
   public EnumerableRel.Result result(PhysType physType, BlockStatement block) {
     return new EnumerableRel.Result(
         block, physType, ((PhysTypeImpl) physType).format);
@@ -36,6 +36,9 @@ public class EnumerableRules {
   public static final RelOptRule ENUMERABLE_MERGE_JOIN_RULE =
       new EnumerableMergeJoinRule();
 
+  public static final RelOptRule ENUMERABLE_BAND_JOIN_RULE =
+      new EnumerableBandJoinRule();
+
   public static final RelOptRule ENUMERABLE_SEMI_JOIN_RULE =
       new EnumerableSemiJoinRule();
 
@@ -63,6 +66,12 @@ private EnumerableRules() {
   public static final EnumerableLimitRule ENUMERABLE_LIMIT_RULE =
       new EnumerableLimitRule();
 
+  public static final EnumerableTopNRule ENUMERABLE_TOP_N_RULE =
+      new EnumerableTopNRule();
+
+  public static final EnumerableApproxTopNRule ENUMERABLE_APPROX_TOP_N_RULE =
+      new EnumerableApproxTopNRule();
+
   public static final EnumerableUnionRule ENUMERABLE_UNION_RULE =
       new EnumerableUnionRule();
 
@@ -16,6 +16,7 @@
  */
 package org.apache.calcite.adapter.enumerable;
 
+import org.apache.calcite.config.CalciteConnectionConfig;
 import org.apache.calcite.linq4j.tree.BlockBuilder;
 import org.apache.calcite.linq4j.tree.Expression;
 import org.apache.calcite.linq4j.tree.Expressions;
@@ -77,6 +78,28 @@ public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
         builder.append("child", result.block);
 
     PhysType inputPhysType = result.physType;
+    final CalciteConnectionConfig config =
+        getCluster().getPlanner().getContext()
+            .unwrap(CalciteConnectionConfig.class);
+    final int spillMemoryLimit =
+        config == null ? 0 : config.spillMemoryLimit();
+    if (spillMemoryLimit > 0) {
+      // Rows become arrays of boxed values; the comparator unboxes NOT NULL
+      // primitive fields before comparing them.
+      final Pair<Expression, PhysType> spillable =
+          EnumUtils.toSpillable(implementor.getTypeFactory(), childExp,
+              inputPhysType);
+      final PhysType arrayPhysType = spillable.right;
+      builder.add(
+          Expressions.return_(null,
+              Expressions.call(BuiltInMethod.EXTERNAL_SORT.method,
+                  spillable.left,
+                  builder.append("comparator",
+                      arrayPhysType.generateComparator(collation)),
+                  Expressions.constant((long) spillMemoryLimit << 20))));
+      return implementor.result(arrayPhysType, builder.toBlock());
+    }
+
     final Pair<Expression, Expression> pair =
         inputPhysType.generateCollationKey(
             collation.getFieldCollations());
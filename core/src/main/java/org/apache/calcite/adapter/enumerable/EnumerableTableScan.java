@@ -37,6 +37,8 @@
 import org.apache.calcite.rel.core.TableScan;
 import org.apache.calcite.rel.type.RelDataType;
 import org.apache.calcite.rel.type.RelDataTypeField;
+import org.apache.calcite.runtime.ColumnBatch;
+import org.apache.calcite.schema.ColumnarScannableTable;
 import org.apache.calcite.schema.FilterableTable;
 import org.apache.calcite.schema.ProjectableFilterableTable;
 import org.apache.calcite.schema.QueryableTable;
@@ -252,7 +254,39 @@ private boolean hasCollectionField(RelDataType rowType) {
     return new EnumerableTableScan(getCluster(), traitSet, table, elementType);
   }
 
+  /** Returns an expression that scans the table as a sequence of
+   * {@link ColumnBatch column batches}, or null if the table cannot be
+   * scanned that way. */
+  private Expression getBatchExpression() {
+    if (table.unwrap(ColumnarScannableTable.class) == null
+        || getRowType().getFieldCount() == 0
+        || hasCollectionField(rowType)) {
+      return null;
+    }
+    final Expression expression = table.getExpression(ScannableTable.class);
+    if (!(expression instanceof MethodCallExpression)) {
+      return null;
+    }
+    final MethodCallExpression call = (MethodCallExpression) expression;
+    if (!call.method.equals(BuiltInMethod.SCHEMAS_ENUMERABLE_SCANNABLE.method)) {
+      return null;
+    }
+    return Expressions.call(BuiltInMethod.SCHEMAS_BATCHES.method,
+        Expressions.convert_(call.expressions.get(0),
+            ColumnarScannableTable.class),
+        call.expressions.get(1));
+  }
+
   public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
+    if (pref == Prefer.COLUMNAR_BATCH) {
+      final Expression expression = getBatchExpression();
+      if (expression != null) {
+        final PhysType physType =
+            PhysTypeImpl.of(implementor.getTypeFactory(), getRowType(),
+                JavaRowFormat.COLUMNAR_BATCH);
+        return implementor.result(physType, Blocks.toBlock(expression));
+      }
+    }
     // Note that representation is ARRAY. This assumes that the table
     // returns a Object[] for each record. Actually a Table<T> can
     // return any type T. And, if it is a JdbcTable, we'd like to be
@@ -16,11 +16,9 @@
  */
 package org.apache.calcite.adapter.enumerable;
 
-import org.apache.calcite.linq4j.function.Predicate2;
 import org.apache.calcite.linq4j.tree.BlockBuilder;
 import org.apache.calcite.linq4j.tree.Expression;
 import org.apache.calcite.linq4j.tree.Expressions;
-import org.apache.calcite.linq4j.tree.ParameterExpression;
 import org.apache.calcite.plan.RelOptCluster;
 import org.apache.calcite.plan.RelOptCost;
 import org.apache.calcite.plan.RelOptPlanner;
@@ -32,9 +30,7 @@
 import org.apache.calcite.rel.core.JoinRelType;
 import org.apache.calcite.rel.metadata.RelMetadataQuery;
 import org.apache.calcite.rex.RexNode;
-import org.apache.calcite.rex.RexProgramBuilder;
 import org.apache.calcite.util.BuiltInMethod;
-import org.apache.calcite.util.Pair;
 
 import com.google.common.collect.ImmutableList;
 
@@ -98,10 +94,19 @@ protected EnumerableThetaJoin(RelOptCluster cluster, RelTraitSet traits,
     if (Double.isInfinite(rightRowCount)) {
       rowCount = rightRowCount;
     }
+    // If an EnumerableBandJoin could evaluate this join, it is competing
+    // with this join, so charge for evaluating the condition for every
+    // combination of left and right rows. Otherwise there is no alternative,
+    // and the cost is left as it was, so that other plans do not change.
+    if (!Double.isInfinite(rowCount)
+        && analyzeCondition().pairs().isEmpty()
+        && EnumerableBandJoin.isBand(left, right, condition)) {
+      rowCount += leftRowCount * rightRowCount;
+    }
     return planner.getCostFactory().makeCost(rowCount, 0, 0);
   }
 
-  private double addEpsilon(double d) {
+  double addEpsilon(double d) {
     assert d >= 0d;
     final double d0 = d;
     if (d < 10) {
@@ -160,29 +165,8 @@ public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
   Expression predicate(EnumerableRelImplementor implementor,
       BlockBuilder builder, PhysType leftPhysType, PhysType rightPhysType,
       RexNode condition) {
-    final ParameterExpression left_ =
-        Expressions.parameter(leftPhysType.getJavaRowType(), "left");
-    final ParameterExpression right_ =
-        Expressions.parameter(rightPhysType.getJavaRowType(), "right");
-    final RexProgramBuilder program =
-        new RexProgramBuilder(
-            implementor.getTypeFactory().builder()
-                .addAll(left.getRowType().getFieldList())
-                .addAll(right.getRowType().getFieldList())
-                .build(),
-            getCluster().getRexBuilder());
-    program.addCondition(condition);
-    builder.add(
-        Expressions.return_(null,
-            RexToLixTranslator.translateCondition(program.getProgram(),
-                implementor.getTypeFactory(),
-                builder,
-                new RexToLixTranslator.InputGetterImpl(
-                    ImmutableList.of(Pair.of((Expression) left_, leftPhysType),
-                        Pair.of((Expression) right_, rightPhysType))),
-                implementor.allCorrelateVariables)));
-    return Expressions.lambda(Predicate2.class, builder.toBlock(), left_,
-        right_);
+    return EnumUtils.joinPredicate(implementor, builder, left, right,
+        leftPhysType, rightPhysType, condition);
   }
 }
 
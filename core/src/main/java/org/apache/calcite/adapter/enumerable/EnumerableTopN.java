@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.enumerable;
+
+import org.apache.calcite.linq4j.tree.BlockBuilder;
+import org.apache.calcite.linq4j.tree.Expression;
+import org.apache.calcite.linq4j.tree.Expressions;
+import org.apache.calcite.plan.RelOptCluster;
+import org.apache.calcite.plan.RelOptCost;
+import org.apache.calcite.plan.RelOptPlanner;
+import org.apache.calcite.plan.RelTraitSet;
+import org.apache.calcite.rel.RelCollation;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.core.Sort;
+import org.apache.calcite.rel.metadata.RelMetadataQuery;
+import org.apache.calcite.rex.RexLiteral;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.util.BuiltInMethod;
+
+/** Implementation of {@link org.apache.calcite.rel.core.Sort} that has a
+ * {@code fetch} in
+ * {@link org.apache.calcite.adapter.enumerable.EnumerableConvention enumerable calling convention}.
+ *
+ * <p>Rather than sorting all of its input, it keeps the first
+ * {@code offset + fetch} rows in a bounded heap; see
+ * {@link org.apache.calcite.runtime.TopN}. */
+public class EnumerableTopN extends Sort implements EnumerableRel {
+  /**
+   * Creates an EnumerableTopN.
+   *
+   * <p>Use {@link #create} unless you know what you're doing.
+   */
+  public EnumerableTopN(RelOptCluster cluster, RelTraitSet traitSet,
+      RelNode input, RelCollation collation, RexNode offset, RexNode fetch) {
+    super(cluster, traitSet, input, collation, offset, fetch);
+    assert getConvention() instanceof EnumerableConvention;
+    assert getConvention() == input.getConvention();
+    assert !collation.getFieldCollations().isEmpty();
+    assert fetch != null;
+  }
+
+  /** Creates an EnumerableTopN. */
+  public static EnumerableTopN create(RelNode child, RelCollation collation,
+      RexNode offset, RexNode fetch) {
+    final RelOptCluster cluster = child.getCluster();
+    final RelTraitSet traitSet =
+        cluster.traitSetOf(EnumerableConvention.INSTANCE)
+            .replace(collation);
+    return new EnumerableTopN(cluster, traitSet, child, collation, offset,
+        fetch);
+  }
+
+  @Override public EnumerableTopN copy(
+      RelTraitSet traitSet,
+      RelNode newInput,
+      RelCollation newCollation,
+      RexNode offset,
+      RexNode fetch) {
+    return new EnumerableTopN(getCluster(), traitSet, newInput, newCollation,
+        offset, fetch);
+  }
+
+  @Override public RelOptCost computeSelfCost(RelOptPlanner planner,
+      RelMetadataQuery mq) {
+    // Each input row is compared with the head of a heap of k rows, and
+    // only rows that enter the heap cost log k; but assume the worst case,
+    // n log k.
+    final double inputRowCount = mq.getRowCount(getInput());
+    final double k =
+        (offset == null ? 0 : RexLiteral.intValue(offset))
+            + RexLiteral.intValue(fetch);
+    final double bytesPerRow = getRowType().getFieldCount() * 4;
+    final double cpu =
+        inputRowCount * Math.log(Math.max(Math.min(k, inputRowCount), 2))
+            * bytesPerRow;
+    return planner.getCostFactory().makeCost(inputRowCount, cpu, 0);
+  }
+
+  public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
+    final BlockBuilder builder = new BlockBuilder();
+    final EnumerableRel child = (EnumerableRel) getInput();
+    final Result result = implementor.visitChild(this, 0, child, pref);
+    final PhysType physType = result.physType;
+    final Expression childExp =
+        builder.append("child", result.block);
+    builder.add(
+        Expressions.return_(null,
+            Expressions.call(BuiltInMethod.TOP_N.method,
+                childExp,
+                builder.append("comparator",
+                    physType.generateComparator(collation)),
+                Expressions.constant(
+                    offset == null ? 0 : RexLiteral.intValue(offset)),
+                Expressions.constant(RexLiteral.intValue(fetch)))));
+    return implementor.result(physType, builder.toBlock());
+  }
+}
+
+// End EnumerableTopN.java
@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.enumerable;
+
+import org.apache.calcite.plan.Convention;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.convert.ConverterRule;
+import org.apache.calcite.rel.core.Sort;
+import org.apache.calcite.rex.RexLiteral;
+
+/**
+ * Rule to convert an {@link org.apache.calcite.rel.core.Sort} that has a sort
+ * key and a literal {@code fetch} to an {@link EnumerableTopN}.
+ *
+ * <p>The plan competes with the one produced by {@link EnumerableLimitRule},
+ * an {@link EnumerableLimit} on an {@link EnumerableSort}; it usually wins,
+ * unless the input is already sorted.
+ */
+class EnumerableTopNRule extends ConverterRule {
+  EnumerableTopNRule() {
+    super(Sort.class, Convention.NONE, EnumerableConvention.INSTANCE,
+        "EnumerableTopNRule");
+  }
+
+  public RelNode convert(RelNode rel) {
+    final Sort sort = (Sort) rel;
+    if (sort.getCollation().getFieldCollations().isEmpty()
+        || !(sort.fetch instanceof RexLiteral)
+        || sort.offset != null && !(sort.offset instanceof RexLiteral)) {
+      return null;
+    }
+    final RelNode input = sort.getInput();
+    return EnumerableTopN.create(
+        convert(
+            input,
+            input.getTraitSet().replace(EnumerableConvention.INSTANCE)),
+        sort.getCollation(),
+        sort.offset,
+        sort.fetch);
+  }
+}
+
+// End EnumerableTopNRule.java
@@ -20,6 +20,7 @@
 import org.apache.calcite.adapter.enumerable.impl.WinAggResetContextImpl;
 import org.apache.calcite.adapter.enumerable.impl.WinAggResultContextImpl;
 import org.apache.calcite.adapter.java.JavaTypeFactory;
+import org.apache.calcite.linq4j.function.Function1;
 import org.apache.calcite.linq4j.tree.BinaryExpression;
 import org.apache.calcite.linq4j.tree.BlockBuilder;
 import org.apache.calcite.linq4j.tree.BlockStatement;
@@ -35,6 +36,7 @@
 import org.apache.calcite.plan.RelOptPlanner;
 import org.apache.calcite.plan.RelTraitSet;
 import org.apache.calcite.prepare.CalcitePrepareImpl;
+import org.apache.calcite.rel.RelCollation;
 import org.apache.calcite.rel.RelFieldCollation;
 import org.apache.calcite.rel.RelNode;
 import org.apache.calcite.rel.core.AggregateCall;
@@ -48,6 +50,8 @@
 import org.apache.calcite.rex.RexWindowBound;
 import org.apache.calcite.runtime.SortedMultiMap;
 import org.apache.calcite.sql.SqlAggFunction;
+import org.apache.calcite.sql.SqlKind;
+import org.apache.calcite.sql.type.SqlTypeUtil;
 import org.apache.calcite.util.BuiltInMethod;
 import org.apache.calcite.util.ImmutableBitSet;
 import org.apache.calcite.util.Pair;
@@ -60,12 +64,19 @@
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 /** Implementation of {@link org.apache.calcite.rel.core.Window} in
  * {@link org.apache.calcite.adapter.enumerable.EnumerableConvention enumerable calling convention}. */
 public class EnumerableWindow extends Window implements EnumerableRel {
+  /** Number of rows below which an aggregate over a frame of fixed size is
+   * computed by looping over the frame, rather than maintained as the frame
+   * slides. */
+  private static final int MIN_SLIDING_FRAME_ROWS = 16;
+
   /** Creates an EnumerableWindowRel. */
   EnumerableWindow(RelOptCluster cluster, RelTraitSet traits, RelNode child,
       List<RexLiteral> constants, RelDataType rowType, List<Group> groups) {
@@ -175,13 +186,32 @@ public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
 
     PhysType inputPhysType = result.physType;
 
+    // A group whose input is sorted on its partition keys and then on its
+    // ORDER BY keys is evaluated as a stream, one partition at a time, and
+    // its output has the same order as its input. Other groups gather all
+    // rows into partitions and sort each partition.
+    final boolean[] streaming = new boolean[groups.size()];
+    boolean buffered = false;
+    List<RelCollation> collations =
+        getCluster().getMetadataQuery().collations(child);
+    for (int windowIdx = 0; windowIdx < groups.size(); windowIdx++) {
+      if (collations != null && isSorted(groups.get(windowIdx), collations)) {
+        streaming[windowIdx] = true;
+      } else {
+        buffered = true;
+        collations = null;
+      }
+    }
+
     ParameterExpression prevStart =
         Expressions.parameter(int.class, builder.newName("prevStart"));
     ParameterExpression prevEnd =
         Expressions.parameter(int.class, builder.newName("prevEnd"));
 
-    builder.add(Expressions.declare(0, prevStart, null));
-    builder.add(Expressions.declare(0, prevEnd, null));
+    if (buffered) {
+      builder.add(Expressions.declare(0, prevStart, null));
+      builder.add(Expressions.declare(0, prevEnd, null));
+    }
 
     for (int windowIdx = 0; windowIdx < groups.size(); windowIdx++) {
       Group group = groups.get(windowIdx);
@@ -199,11 +229,18 @@ public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
               inputPhysType.generateComparator(
                   group.collation()));
 
-      Pair<Expression, Expression> partitionIterator =
-          getPartitionIterator(builder, source_, inputPhysType, group,
-              comparator_);
-      final Expression collectionExpr = partitionIterator.left;
-      final Expression iterator_ = partitionIterator.right;
+      final Expression collectionExpr;
+      final Expression iterator_;
+      if (streaming[windowIdx]) {
+        collectionExpr = null;
+        iterator_ = null;
+      } else {
+        Pair<Expression, Expression> partitionIterator =
+            getPartitionIterator(builder, source_, inputPhysType, group,
+                comparator_);
+        collectionExpr = partitionIterator.left;
+        iterator_ = partitionIterator.right;
+      }
 
       List<AggImpState> aggs = new ArrayList<AggImpState>();
       List<AggregateCall> aggregateCalls = group.getAggregateCalls(this);
@@ -223,28 +260,50 @@ public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
           PhysTypeImpl.of(
               typeFactory, outputRowType, pref.prefer(result.format));
 
-      final Expression list_ =
-          builder.append(
-              "list",
-              Expressions.new_(
-                  ArrayList.class,
-                  Expressions.call(
-                      collectionExpr, BuiltInMethod.COLLECTION_SIZE.method)),
-              false);
+      Expression list_ = null;
+      if (!streaming[windowIdx]) {
+        list_ =
+            builder.append(
+                "list",
+                Expressions.new_(
+                    ArrayList.class,
+                    Expressions.call(
+                        collectionExpr, BuiltInMethod.COLLECTION_SIZE.method)),
+                false);
+      }
 
       Pair<Expression, Expression> collationKey =
           getRowCollationKey(builder, inputPhysType, group, windowIdx);
       Expression keySelector = collationKey.left;
       Expression keyComparator = collationKey.right;
       final BlockBuilder builder3 = new BlockBuilder();
-      final Expression rows_ =
-          builder3.append(
-              "rows",
-              Expressions.convert_(
-                  Expressions.call(
-                      iterator_, BuiltInMethod.ITERATOR_NEXT.method),
-                  Object[].class),
-              false);
+      final ParameterExpression partition_;
+      final Expression rows_;
+      if (streaming[windowIdx]) {
+        // Body of a function that is applied to the rows of each partition,
+        // and returns the output rows.
+        partition_ =
+            Expressions.parameter(Object[].class, builder3.newName("rows"));
+        rows_ = partition_;
+        list_ =
+            builder3.append(
+                "list",
+                Expressions.new_(
+                    ArrayList.class, Expressions.field(rows_, "length")),
+                false);
+        builder3.add(Expressions.declare(0, prevStart, null));
+        builder3.add(Expressions.declare(0, prevEnd, null));
+      } else {
+        partition_ = null;
+        rows_ =
+            builder3.append(
+                "rows",
+                Expressions.convert_(
+                    Expressions.call(
+                        iterator_, BuiltInMethod.ITERATOR_NEXT.method),
+                    Object[].class),
+                false);
+      }
 
       builder3.add(
           Expressions.statement(
@@ -285,9 +344,24 @@ public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
                 outputPhysType.getJavaFieldType(i)));
       }
 
-      declareAndResetState(typeFactory, builder, result, windowIdx, aggs,
+      declareAndResetState(typeFactory,
+          streaming[windowIdx] ? builder3 : builder, result, windowIdx, aggs,
           outputPhysType, outputRow);
 
+      // Aggregates that are maintained incrementally as the frame slides
+      // over the partition; the others are computed by looping over the
+      // rows of the frame.
+      final List<Pair<AggImpState, SqlKind>> slidingAggs = new ArrayList<>();
+      final List<AggImpState> loopAggs = new ArrayList<>();
+      for (AggImpState agg : aggs) {
+        final SqlKind kind = slidingKind(typeFactory, group, agg);
+        if (kind != null) {
+          slidingAggs.add(Pair.of(agg, kind));
+        } else {
+          loopAggs.add(agg);
+        }
+      }
+
       // There are assumptions that minX==0. If ever change this, look for
       // frameRowCount, bounds checking, etc
       final Expression minX = Expressions.constant(0);
@@ -377,7 +451,7 @@ public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
       builder6.add(
           Expressions.statement(Expressions.assign(actualStart, startX)));
 
-      for (final AggImpState agg : aggs) {
+      for (final AggImpState agg : loopAggs) {
         agg.implementor.implementReset(agg.context,
             new WinAggResetContextImpl(builder6, agg.state, i_, startX, endX,
                 hasRows, partitionRowCount, frameRowCount));
@@ -447,7 +521,8 @@ public List<RexNode> apply(AggImpState agg) {
             }
           };
 
-      implementAdd(aggs, builder7, resultContextBuilder, rexArguments, jDecl);
+      implementAdd(loopAggs, builder7, resultContextBuilder, rexArguments,
+          jDecl);
 
       BlockStatement forBlock = builder7.toBlock();
       if (!forBlock.statements.isEmpty()) {
@@ -463,8 +538,8 @@ public List<RexNode> apply(AggImpState agg) {
         builder5.add(forAggLoop);
       }
 
-      if (implementResult(aggs, builder5, resultContextBuilder, rexArguments,
-              true)) {
+      if (implementResult(loopAggs, builder5, resultContextBuilder,
+              rexArguments, true)) {
         builder4.add(
             Expressions.ifThen(
                 Expressions.orElse(lowerBoundCanChange,
@@ -472,9 +547,13 @@ public List<RexNode> apply(AggImpState agg) {
                 builder5.toBlock()));
       }
 
-      implementResult(aggs, builder4, resultContextBuilder, rexArguments,
+      implementResult(loopAggs, builder4, resultContextBuilder, rexArguments,
           false);
 
+      implementSliding(typeFactory, slidingAggs, builder3, builder4, rows_,
+          inputPhysType, result.physType.getRowType().getFieldCount(),
+          translatedConstants, rexArguments, startX, endX, hasRows);
+
       builder4.add(
           Expressions.statement(
               Expressions.call(
@@ -491,25 +570,46 @@ public List<RexNode> apply(AggImpState agg) {
               Expressions.preIncrementAssign(i_),
               builder4.toBlock()));
 
-      builder.add(
-          Expressions.while_(
-              Expressions.call(
-                  iterator_,
-                  BuiltInMethod.ITERATOR_HAS_NEXT.method),
-              builder3.toBlock()));
-      builder.add(
-          Expressions.statement(
-              Expressions.call(
-                  collectionExpr,
-                  BuiltInMethod.MAP_CLEAR.method)));
-
-      // We're not assigning to "source". For each group, create a new
-      // final variable called "source" or "sourceN".
-      source_ =
-          builder.append(
-              "source",
-              Expressions.call(
-                  BuiltInMethod.AS_ENUMERABLE.method, list_));
+      if (streaming[windowIdx]) {
+        //   source = Enumerables.mapPartitions(source, keySelector,
+        //       new Function1<Object[], List>() {
+        //         public List apply(Object[] rows) {
+        //           final List list = new ArrayList(rows.length);
+        //           ...
+        //           return list;
+        //         }
+        //       });
+        builder3.add(Expressions.return_(null, list_));
+        source_ =
+            builder.append(
+                "source",
+                Expressions.call(
+                    BuiltInMethod.MAP_PARTITIONS.method,
+                    source_,
+                    inputPhysType.generateAccessor(group.keys.asList()),
+                    Expressions.lambda(Function1.class, builder3.toBlock(),
+                        partition_)));
+      } else {
+        builder.add(
+            Expressions.while_(
+                Expressions.call(
+                    iterator_,
+                    BuiltInMethod.ITERATOR_HAS_NEXT.method),
+                builder3.toBlock()));
+        builder.add(
+            Expressions.statement(
+                Expressions.call(
+                    collectionExpr,
+                    BuiltInMethod.MAP_CLEAR.method)));
+
+        // We're not assigning to "source". For each group, create a new
+        // final variable called "source" or "sourceN".
+        source_ =
+            builder.append(
+                "source",
+                Expressions.call(
+                    BuiltInMethod.AS_ENUMERABLE.method, list_));
+      }
 
       inputPhysType = outputPhysType;
     }
@@ -637,6 +737,53 @@ public Expression getPartitionRowCount() {
     };
   }
 
+  /** Returns whether rows sorted on one of the given collations arrive
+   * partition by partition, each partition sorted on the ORDER BY keys of a
+   * group.
+   *
+   * <p>The partition keys may be in any order and direction; the ORDER BY
+   * keys must match exactly, treating an unspecified null direction as
+   * NULLS LAST, as the comparators do. */
+  static boolean isSorted(Group group, List<RelCollation> collations) {
+    final int keyCount = group.keys.cardinality();
+    final List<RelFieldCollation> orderKeys =
+        group.orderKeys.getFieldCollations();
+    for (RelCollation collation : collations) {
+      final List<RelFieldCollation> fieldCollations =
+          collation.getFieldCollations();
+      if (fieldCollations.size() < keyCount + orderKeys.size()) {
+        continue;
+      }
+      final ImmutableBitSet.Builder keys = ImmutableBitSet.builder();
+      for (RelFieldCollation fieldCollation
+          : fieldCollations.subList(0, keyCount)) {
+        keys.set(fieldCollation.getFieldIndex());
+      }
+      if (!keys.build().equals(group.keys)) {
+        continue;
+      }
+      boolean matches = true;
+      for (int i = 0; i < orderKeys.size(); i++) {
+        final RelFieldCollation orderKey = orderKeys.get(i);
+        final RelFieldCollation fieldCollation =
+            fieldCollations.get(keyCount + i);
+        if (fieldCollation.getFieldIndex() != orderKey.getFieldIndex()
+            || fieldCollation.getDirection() != orderKey.getDirection()
+            || (fieldCollation.nullDirection
+                == RelFieldCollation.NullDirection.FIRST)
+                != (orderKey.nullDirection
+                    == RelFieldCollation.NullDirection.FIRST)) {
+          matches = false;
+          break;
+        }
+      }
+      if (matches) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   private Pair<Expression, Expression> getPartitionIterator(
       BlockBuilder builder,
       Expression source_,
@@ -905,6 +1052,242 @@ public List<RexNode> rexArguments() {
     return nonEmpty;
   }
 
+  /** Returns the kind of an aggregate function if it can be maintained
+   * incrementally as the frame slides over the partition, otherwise null.
+   *
+   * <p>{@code SUM} and {@code COUNT} (and {@code AVG}, which is expanded to
+   * them) add the values that enter the frame and subtract the values that
+   * leave it; {@code MIN} and {@code MAX} query a segment tree. Floating-point
+   * {@code SUM} is computed by the loop, so that its rounding does not
+   * depend on the order in which rows enter and leave the frame. */
+  private SqlKind slidingKind(JavaTypeFactory typeFactory, Group group,
+      AggImpState agg) {
+    if (group.lowerBound.isUnbounded() && group.lowerBound.isPreceding()) {
+      // The frame only grows, and the loop already adds just the new rows.
+      return null;
+    }
+    final int frameRows = maxFrameRows(group);
+    if (frameRows >= 0 && frameRows < MIN_SLIDING_FRAME_ROWS) {
+      // The frame is so small that looping over it is cheaper.
+      return null;
+    }
+    final AggregateCall call = agg.call;
+    if (call.isDistinct()
+        || call.filterArg >= 0
+        || call.getArgList().size() != 1) {
+      return null;
+    }
+    final RelDataType argType = agg.context.parameterRelTypes().get(0);
+    final SqlKind kind = call.getAggregation().getKind();
+    if ((kind == SqlKind.SUM || kind == SqlKind.MIN || kind == SqlKind.MAX)
+        && !call.type.isNullable()
+        && (argType.isNullable() || !group.isAlwaysNonEmpty())) {
+      // SUM, MIN and MAX of an empty frame, or of only nulls, are null, which
+      // a NOT NULL result cannot hold. COUNT and $SUM0 are 0, as is the sum
+      // of an empty SlidingSum, so they slide whether or not the argument
+      // is nullable. (A windowed SUM whose result is nullable is converted
+      // to a NOT NULL $SUM0 and a COUNT.)
+      return null;
+    }
+    switch (kind) {
+    case COUNT:
+      // COUNT of a NOT NULL argument is the number of rows in the frame,
+      // which is known without looping.
+      return argType.isNullable() ? kind : null;
+    case SUM:
+    case SUM0:
+      if (SqlTypeUtil.isExactNumeric(argType)
+          && SqlTypeUtil.isExactNumeric(call.type)
+          && SqlTypeUtil.isDecimal(argType)
+              == SqlTypeUtil.isDecimal(call.type)) {
+        return kind;
+      }
+      return null;
+    case MIN:
+    case MAX:
+      final Type type =
+          Primitive.box(EnumUtils.javaClass(typeFactory, argType));
+      if (type instanceof Class
+          && Comparable.class.isAssignableFrom((Class) type)) {
+        return kind;
+      }
+      return null;
+    default:
+      return null;
+    }
+  }
+
+  /** Returns the maximum number of rows in the frame of a ROWS window whose
+   * bounds are both the current row or constant offsets, or -1 if the frame
+   * has no fixed size. */
+  private int maxFrameRows(Group group) {
+    if (!group.isRows) {
+      return -1;
+    }
+    final Integer lower = rowOffset(group.lowerBound);
+    final Integer upper = rowOffset(group.upperBound);
+    if (lower == null || upper == null) {
+      return -1;
+    }
+    return Math.max(0, upper - lower + 1);
+  }
+
+  /** Returns the offset of a ROWS bound from the current row, or null if it
+   * is unbounded or not constant. */
+  private Integer rowOffset(RexWindowBound bound) {
+    if (bound.isUnbounded()) {
+      return null;
+    }
+    if (bound.isCurrentRow()) {
+      return 0;
+    }
+    RexNode offset = bound.getOffset();
+    if (offset instanceof RexInputRef) {
+      final int i = ((RexInputRef) offset).getIndex()
+          - getInput().getRowType().getFieldCount();
+      if (i < 0) {
+        return null;
+      }
+      offset = constants.get(i);
+    }
+    if (!(offset instanceof RexLiteral)) {
+      return null;
+    }
+    final int n = RexLiteral.intValue(offset);
+    return bound.isPreceding() ? -n : n;
+  }
+
+  /** Generates code that, for each partition, collects the argument values
+   * of the sliding aggregates into arrays and builds a
+   * {@link org.apache.calcite.runtime.SlidingSum} or
+   * {@link org.apache.calcite.runtime.SegmentTree} over each, and, for each
+   * row, computes the aggregates over the current frame. */
+  private void implementSliding(JavaTypeFactory typeFactory,
+      List<Pair<AggImpState, SqlKind>> slidingAggs, BlockBuilder builder3,
+      BlockBuilder builder4, Expression rows_, PhysType inputPhysType,
+      int fieldCount, List<Expression> translatedConstants,
+      Function<AggImpState, List<RexNode>> rexArguments,
+      Expression startX, Expression endX, Expression hasRows) {
+    if (slidingAggs.isEmpty()) {
+      return;
+    }
+    final BlockBuilder valuesBuilder = new BlockBuilder(true, builder3);
+    final ParameterExpression k_ =
+        Expressions.parameter(int.class, builder3.newName("k"));
+    final Expression row_ =
+        valuesBuilder.append("row",
+            RexToLixTranslator.convert(Expressions.arrayIndex(rows_, k_),
+                inputPhysType.getJavaRowType()));
+    final RexToLixTranslator translator =
+        RexToLixTranslator.forAggregation(typeFactory, valuesBuilder,
+            new WindowRelInputGetter(row_, inputPhysType, fieldCount,
+                translatedConstants));
+
+    // An empty frame is represented by an end that is less than its start.
+    final Expression frameEnd =
+        hasRows.equals(Expressions.constant(true))
+            ? endX
+            : builder4.append("frameEnd",
+                Expressions.condition(hasRows, endX,
+                    Expressions.subtract(startX, Expressions.constant(1))));
+
+    // Aggregates of the same argument share its values, and SUM and COUNT
+    // of the same argument share a SlidingSum.
+    final Map<Integer, Expression> valueArrays = new HashMap<>();
+    final Map<Pair<Integer, SqlKind>, Expression> structures =
+        new HashMap<>();
+    for (Pair<AggImpState, SqlKind> pair : slidingAggs) {
+      final AggImpState agg = pair.left;
+      final SqlKind kind = pair.right;
+      final int ordinal = agg.call.getArgList().get(0);
+      Expression values_ = valueArrays.get(ordinal);
+      if (values_ == null) {
+        values_ = builder3.append("values",
+            Expressions.newArrayBounds(Object.class, 1,
+                Expressions.field(rows_, "length")),
+            false);
+        valuesBuilder.add(
+            Expressions.statement(
+                Expressions.assign(Expressions.arrayIndex(values_, k_),
+                    Expressions.box(
+                        translator.translate(
+                            rexArguments.apply(agg).get(0))))));
+        valueArrays.put(ordinal, values_);
+      }
+      final boolean tree = kind == SqlKind.MIN || kind == SqlKind.MAX;
+      final Pair<Integer, SqlKind> key =
+          Pair.of(ordinal, tree ? kind : SqlKind.SUM);
+      final boolean decimal =
+          SqlTypeUtil.isDecimal(agg.context.parameterRelTypes().get(0));
+      Expression structure_ = structures.get(key);
+      if (structure_ == null) {
+        if (tree) {
+          structure_ = builder3.append("tree",
+              Expressions.new_(BuiltInMethod.SEGMENT_TREE_CTOR.constructor,
+                  values_, Expressions.constant(kind == SqlKind.MAX)),
+              false);
+        } else {
+          structure_ = builder3.append("sums",
+              Expressions.new_(BuiltInMethod.SLIDING_SUM_CTOR.constructor,
+                  values_, Expressions.constant(decimal)),
+              false);
+          builder4.add(
+              Expressions.statement(
+                  Expressions.call(structure_,
+                      BuiltInMethod.SLIDING_SUM_MOVE_TO.method, startX,
+                      frameEnd)));
+        }
+        structures.put(key, structure_);
+      }
+      final Type returnType = agg.context.returnType();
+      final Expression res;
+      switch (kind) {
+      case MIN:
+      case MAX:
+        res = Expressions.convert_(
+            Expressions.call(structure_,
+                BuiltInMethod.SEGMENT_TREE_QUERY.method, startX, frameEnd),
+            Primitive.box(returnType));
+        break;
+      case COUNT:
+        res = Expressions.call(structure_,
+            BuiltInMethod.SLIDING_SUM_COUNT.method);
+        break;
+      default:
+        final Expression sum = decimal
+            ? Expressions.call(structure_,
+                BuiltInMethod.SLIDING_SUM_DECIMAL_SUM.method)
+            : Expressions.convert_(
+                Expressions.call(structure_,
+                    BuiltInMethod.SLIDING_SUM_LONG_SUM.method),
+                Primitive.unbox(returnType));
+        if (kind == SqlKind.SUM && agg.call.type.isNullable()) {
+          // SUM of an empty frame, or of only nulls, is null.
+          res = Expressions.condition(
+              Expressions.equal(
+                  Expressions.call(structure_,
+                      BuiltInMethod.SLIDING_SUM_COUNT.method),
+                  Expressions.constant(0L)),
+              Expressions.constant(null, Primitive.box(returnType)),
+              Expressions.box(sum));
+        } else {
+          res = sum;
+        }
+      }
+      builder4.add(
+          Expressions.statement(
+              Expressions.assign(agg.result,
+                  RexToLixTranslator.convert(res, agg.result.getType()))));
+    }
+
+    builder3.add(
+        Expressions.for_(
+            Expressions.declare(0, k_, Expressions.constant(0)),
+            Expressions.lessThan(k_, Expressions.field(rows_, "length")),
+            Expressions.preIncrementAssign(k_),
+            valuesBuilder.toBlock()));
+  }
+
   private Expression translateBound(RexToLixTranslator translator,
       ParameterExpression i_, Expression row_, Expression min_,
       Expression max_, Expression rows_, Group group,
@@ -25,6 +25,7 @@
 import org.apache.calcite.linq4j.tree.MethodCallExpression;
 import org.apache.calcite.linq4j.tree.Types;
 import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.runtime.ColumnBatch;
 import org.apache.calcite.runtime.FlatLists;
 import org.apache.calcite.runtime.Unit;
 import org.apache.calcite.util.BuiltInMethod;
@@ -246,9 +247,54 @@ public Expression field(Expression expression, int field, Type fromType,
       }
       return RexToLixTranslator.convert(e, fromType, fieldType);
     }
+  },
+
+  /** A batch of rows, stored column by column; see
+   * {@link org.apache.calcite.runtime.ColumnBatch}.
+   *
+   * <p>A relational expression that produces batches returns an enumerable
+   * over {@code ColumnBatch}, not one object per row. Consumers read values
+   * by indexing into the column vectors, using
+   * {@link RexToLixTranslator.ColumnBatchInputGetter}. It is not possible to
+   * create a record in this format. */
+  COLUMNAR_BATCH {
+    Type javaRowClass(
+        JavaTypeFactory typeFactory,
+        RelDataType type) {
+      return ColumnBatch.class;
+    }
+
+    @Override Type javaFieldClass(JavaTypeFactory typeFactory, RelDataType type,
+        int index) {
+      return ColumnBatch.vectorClass(
+          EnumUtils.javaClass(typeFactory,
+              type.getFieldList().get(index).getType()));
+    }
+
+    public Expression record(Type javaRowClass, List<Expression> expressions) {
+      throw new UnsupportedOperationException(
+          "cannot create a record in COLUMNAR_BATCH format");
+    }
+
+    /** {@inheritDoc}
+     *
+     * <p>Returns the vector that holds the values of the field in all rows of
+     * the batch; {@code fieldType} is the Java class of a single value. */
+    public Expression field(Expression expression, int field, Type fromType,
+        Type fieldType) {
+      return Expressions.convert_(
+          Expressions.arrayIndex(
+              Expressions.field(expression,
+                  BuiltInMethod.COLUMN_BATCH_VECTORS.field),
+              Expressions.constant(field)),
+          ColumnBatch.vectorClass(fieldType));
+    }
   };
 
   public JavaRowFormat optimize(RelDataType rowType) {
+    if (this == COLUMNAR_BATCH) {
+      return this;
+    }
     switch (rowType.getFieldCount()) {
     case 0:
       return LIST;
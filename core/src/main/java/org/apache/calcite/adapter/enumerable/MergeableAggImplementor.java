@@ -0,0 +1,52 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.enumerable;
+
+/**
+ * Implements an aggregate function whose intermediate state can be combined
+ * with the state of the same function computed over other rows.
+ *
+ * <p>This allows a two-phase aggregation: each of several tasks aggregates
+ * a part of the input into partial states, then the partial states of each
+ * group are merged. The result is the same as if all rows had been added to
+ * one accumulator.
+ *
+ * @see org.apache.calcite.adapter.enumerable.RexImpTable.CountImplementor
+ * @see org.apache.calcite.adapter.enumerable.RexImpTable.SumImplementor
+ * @see org.apache.calcite.adapter.enumerable.RexImpTable.MinMaxImplementor
+ */
+public interface MergeableAggImplementor extends AggImplementor {
+  /**
+   * Updates intermediate values to account for the rows that were added to
+   * another accumulator.
+   * {@link AggMergeContext#accumulator()} should be used to reference the
+   * state variables to update, and {@link AggMergeContext#otherAccumulator()}
+   * the state variables of the other accumulator.
+   * For instance, to merge counts, use the following code:
+   *
+   * <blockquote><code>merge.currentBlock().add(<br>
+   *   Expressions.statement(<br>
+   *     Expressions.addAssign(merge.accumulator().get(0),<br>
+   *       merge.otherAccumulator().get(0)));</code></blockquote>
+   *
+   * @param info Aggregate context
+   * @param merge Merge context
+   */
+  void implementMerge(AggContext info, AggMergeContext merge);
+}
+
+// End MergeableAggImplementor.java
@@ -93,6 +93,7 @@
 import static org.apache.calcite.sql.fun.SqlStdOperatorTable.ABS;
 import static org.apache.calcite.sql.fun.SqlStdOperatorTable.ACOS;
 import static org.apache.calcite.sql.fun.SqlStdOperatorTable.AND;
+import static org.apache.calcite.sql.fun.SqlStdOperatorTable.APPROX_COUNT_DISTINCT;
 import static org.apache.calcite.sql.fun.SqlStdOperatorTable.ARRAY_VALUE_CONSTRUCTOR;
 import static org.apache.calcite.sql.fun.SqlStdOperatorTable.ASIN;
 import static org.apache.calcite.sql.fun.SqlStdOperatorTable.ATAN;
@@ -342,13 +343,15 @@ public Expression implement(RexToLixTranslator translator,
     map.put(IS_NOT_FALSE, new IsXxxImplementor(false, true));
 
     // LIKE and SIMILAR
-    final MethodImplementor likeImplementor =
-        new MethodImplementor(BuiltInMethod.LIKE.method);
+    final LikeImplementor likeImplementor =
+        new LikeImplementor(BuiltInMethod.LIKE.method,
+            BuiltInMethod.LIKE_MATCHER.method);
     defineImplementor(LIKE, NullPolicy.STRICT, likeImplementor, false);
     defineImplementor(NOT_LIKE, NullPolicy.STRICT,
         NotImplementor.of(likeImplementor), false);
-    final MethodImplementor similarImplementor =
-        new MethodImplementor(BuiltInMethod.SIMILAR.method);
+    final LikeImplementor similarImplementor =
+        new LikeImplementor(BuiltInMethod.SIMILAR.method,
+            BuiltInMethod.SIMILAR_MATCHER.method);
     defineImplementor(SIMILAR_TO, NullPolicy.STRICT, similarImplementor, false);
     defineImplementor(NOT_SIMILAR_TO, NullPolicy.STRICT,
         NotImplementor.of(similarImplementor), false);
@@ -406,6 +409,8 @@ public Expression implement(RexToLixTranslator translator,
     map.put(LOCALTIMESTAMP, systemFunctionImplementor);
 
     aggMap.put(COUNT, constructorSupplier(CountImplementor.class));
+    aggMap.put(APPROX_COUNT_DISTINCT,
+        constructorSupplier(ApproxCountDistinctImplementor.class));
     aggMap.put(SUM0, constructorSupplier(SumImplementor.class));
     aggMap.put(SUM, constructorSupplier(SumImplementor.class));
     Supplier<MinMaxImplementor> minMax =
@@ -1065,13 +1070,73 @@ public static Expression multiplyDivide(Expression e, BigDecimal multiplier,
   }
 
   /** Implementor for the {@code COUNT} aggregate function. */
-  static class CountImplementor extends StrictAggImplementor {
+  static class CountImplementor extends StrictAggImplementor
+      implements MergeableAggImplementor {
     @Override public void implementNotNullAdd(AggContext info,
         AggAddContext add) {
       add.currentBlock().add(
           Expressions.statement(
               Expressions.postIncrementAssign(add.accumulator().get(0))));
     }
+
+    @Override protected void implementNotNullMerge(AggContext info,
+        AggMergeContext merge) {
+      final Expression acc = merge.accumulator().get(0);
+      merge.currentBlock().add(
+          Expressions.statement(
+              Expressions.assign(acc,
+                  Expressions.add(acc, merge.otherAccumulator().get(0)))));
+    }
+  }
+
+  /** Implementor for the {@code APPROX_COUNT_DISTINCT} aggregate function.
+   *
+   * <p>The state is a {@link org.apache.calcite.runtime.HyperLogLog}
+   * sketch. */
+  static class ApproxCountDistinctImplementor extends StrictAggImplementor
+      implements MergeableAggImplementor {
+    @Override public List<Type> getNotNullState(AggContext info) {
+      return Collections.<Type>singletonList(byte[].class);
+    }
+
+    @Override protected void implementNotNullReset(AggContext info,
+        AggResetContext reset) {
+      reset.currentBlock().add(
+          Expressions.statement(
+              Expressions.assign(reset.accumulator().get(0),
+                  Expressions.call(BuiltInMethod.HLL_CREATE.method))));
+    }
+
+    @Override public void implementNotNullAdd(AggContext info,
+        AggAddContext add) {
+      final Expression arg = add.arguments().get(0);
+      final Primitive primitive = Primitive.of(arg.getType());
+      final Expression call;
+      if (primitive != null && primitive.isFixedNumeric()) {
+        // Avoid boxing integers
+        call = Expressions.call(BuiltInMethod.HLL_ADD_LONG.method,
+            add.accumulator().get(0), Expressions.convert_(arg, long.class));
+      } else {
+        call = Expressions.call(BuiltInMethod.HLL_ADD.method,
+            add.accumulator().get(0), Expressions.box(arg));
+      }
+      add.currentBlock().add(Expressions.statement(call));
+    }
+
+    @Override protected void implementNotNullMerge(AggContext info,
+        AggMergeContext merge) {
+      merge.currentBlock().add(
+          Expressions.statement(
+              Expressions.call(BuiltInMethod.HLL_MERGE.method,
+                  merge.accumulator().get(0),
+                  merge.otherAccumulator().get(0))));
+    }
+
+    @Override protected Expression implementNotNullResult(AggContext info,
+        AggResultContext result) {
+      return Expressions.call(BuiltInMethod.HLL_ESTIMATE.method,
+          result.accumulator().get(0));
+    }
   }
 
   /** Implementor for the {@code COUNT} windowed aggregate function. */
@@ -1113,7 +1178,8 @@ static class CountWinImplementor extends StrictWinAggImplementor {
   }
 
   /** Implementor for the {@code SUM} windowed aggregate function. */
-  static class SumImplementor extends StrictAggImplementor {
+  static class SumImplementor extends StrictAggImplementor
+      implements MergeableAggImplementor {
     @Override protected void implementNotNullReset(AggContext info,
         AggResetContext reset) {
       Expression start = info.returnType() == BigDecimal.class
@@ -1138,6 +1204,21 @@ static class SumImplementor extends StrictAggImplementor {
       accAdvance(add, acc, next);
     }
 
+    @Override protected void implementNotNullMerge(AggContext info,
+        AggMergeContext merge) {
+      final Expression acc = merge.accumulator().get(0);
+      final Expression other = merge.otherAccumulator().get(0);
+      final Expression next;
+      if (info.returnType() == BigDecimal.class) {
+        next = Expressions.call(acc, "add", other);
+      } else {
+        next = Expressions.add(acc, other);
+      }
+      merge.currentBlock().add(
+          Expressions.statement(
+              Expressions.assign(acc, Types.castIfNecessary(acc.type, next))));
+    }
+
     @Override public Expression implementNotNullResult(AggContext info,
         AggResultContext result) {
       return super.implementNotNullResult(info, result);
@@ -1145,7 +1226,8 @@ static class SumImplementor extends StrictAggImplementor {
   }
 
   /** Implementor for the {@code MIN} and {@code MAX} aggregate functions. */
-  static class MinMaxImplementor extends StrictAggImplementor {
+  static class MinMaxImplementor extends StrictAggImplementor
+      implements MergeableAggImplementor {
     @Override protected void implementNotNullReset(AggContext info,
         AggResetContext reset) {
       Expression acc = reset.accumulator().get(0);
@@ -1173,6 +1255,22 @@ static class MinMaxImplementor extends StrictAggImplementor {
           Expressions.unbox(arg));
       accAdvance(add, acc, next);
     }
+
+    @Override protected void implementNotNullMerge(AggContext info,
+        AggMergeContext merge) {
+      final Expression acc = merge.accumulator().get(0);
+      final Method method = (info.aggregation() == MIN
+          ? BuiltInMethod.LESSER
+          : BuiltInMethod.GREATER).method;
+      final Expression next = Expressions.call(
+          method.getDeclaringClass(),
+          method.getName(),
+          acc,
+          merge.otherAccumulator().get(0));
+      merge.currentBlock().add(
+          Expressions.statement(
+              Expressions.assign(acc, Types.castIfNecessary(acc.type, next))));
+    }
   }
 
   /** Implementor for the {@code SINGLE_VALUE} aggregate function. */
@@ -1722,6 +1820,36 @@ public Expression implement(
     }
   }
 
+  /** Implementor for the {@code LIKE} and {@code SIMILAR TO} operators.
+   *
+   * <p>If the pattern and escape are literals, generates a call to a method
+   * that creates a {@link org.apache.calcite.runtime.Like.Matcher}; the
+   * call has constant arguments, so the matcher is created once and held in
+   * a static field of the generated class, and each row calls only its
+   * {@code matches} method. Otherwise generates a call to a method that
+   * looks up the matcher for each row. */
+  private static class LikeImplementor extends MethodImplementor {
+    private final Method matcherMethod;
+
+    LikeImplementor(Method method, Method matcherMethod) {
+      super(method);
+      this.matcherMethod = matcherMethod;
+    }
+
+    @Override public Expression implement(RexToLixTranslator translator,
+        RexCall call, List<Expression> translatedOperands) {
+      for (RexNode operand : Util.skip(call.getOperands())) {
+        if (!(operand instanceof RexLiteral)) {
+          return super.implement(translator, call, translatedOperands);
+        }
+      }
+      final Expression matcher =
+          Expressions.call(matcherMethod, Util.skip(translatedOperands));
+      return Expressions.call(matcher, BuiltInMethod.MATCHER_MATCHES.method,
+          translatedOperands.get(0));
+    }
+  }
+
   /** Implementor for a function that generates calls to a given method. */
   private static class SequenceImplementor extends MethodImplementor {
     SequenceImplementor(Method method) {
@@ -59,6 +59,7 @@
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -1272,6 +1273,77 @@ public Expression field(BlockBuilder list, int index, Type storageType) {
     }
   }
 
+  /** Implementation of {@link InputGetter} that reads a field of one row of a
+   * {@link org.apache.calcite.runtime.ColumnBatch}.
+   *
+   * <p>The first time a field is referenced, its vector and null bitmap are
+   * assigned to variables in {@code declarations}, which must be a block
+   * that encloses every use. If {@code declarations} is outside a loop over
+   * the rows of a batch, the loop reads elements of primitive arrays, and
+   * does not box or cast. */
+  public static class ColumnBatchInputGetter implements InputGetter {
+    private final Expression batch;
+    private final Expression row;
+    private final PhysType physType;
+    private final BlockBuilder declarations;
+    private final Map<Integer, Pair<Expression, Expression>> vectors =
+        new HashMap<>();
+
+    /** Creates a ColumnBatchInputGetter.
+     *
+     * @param batch Expression for the batch
+     * @param row Expression for the index of the row within the batch
+     * @param physType Physical type of the input, in
+     *                 {@link JavaRowFormat#COLUMNAR_BATCH} format
+     * @param declarations Block in which to declare vector variables
+     */
+    public ColumnBatchInputGetter(Expression batch, Expression row,
+        PhysType physType, BlockBuilder declarations) {
+      assert physType.getFormat() == JavaRowFormat.COLUMNAR_BATCH;
+      this.batch = batch;
+      this.row = row;
+      this.physType = physType;
+      this.declarations = declarations;
+    }
+
+    public Expression field(BlockBuilder list, int index, Type storageType) {
+      final Class fieldClass = physType.fieldClass(index);
+      Pair<Expression, Expression> pair = vectors.get(index);
+      if (pair == null) {
+        final Expression vector =
+            declarations.append("vector",
+                physType.getFormat().field(batch, index, null, fieldClass),
+                false);
+        final Expression nulls;
+        if (physType.fieldNullable(index)) {
+          nulls = declarations.append("nulls",
+              Expressions.arrayIndex(
+                  Expressions.field(batch,
+                      BuiltInMethod.COLUMN_BATCH_NULLS.field),
+                  Expressions.constant(index)),
+              false);
+        } else {
+          nulls = null;
+        }
+        pair = Pair.of(vector, nulls);
+        vectors.put(index, pair);
+      }
+      Expression value = Expressions.arrayIndex(pair.left, row);
+      final Primitive primitive = Primitive.of(value.getType());
+      if (primitive == null) {
+        value = convert(value, fieldClass);
+      } else if (pair.right != null) {
+        value =
+            Expressions.condition(
+                Expressions.call(BuiltInMethod.COLUMN_BATCH_IS_NULL.method,
+                    pair.right, row),
+                Expressions.constant(null, primitive.boxClass),
+                Expressions.box(value, primitive));
+      }
+      return convert(value, storageType != null ? storageType : fieldClass);
+    }
+  }
+
   /** Thrown in the unusual (but not erroneous) situation where the expression
    * we are translating is the null literal but we have already checked that
    * it is not null. It is easier to throw (and caller will always handle)
@@ -37,6 +37,7 @@
  * The base implementation of strict aggregate function.
  * @see org.apache.calcite.adapter.enumerable.RexImpTable.CountImplementor
  * @see org.apache.calcite.adapter.enumerable.RexImpTable.SumImplementor
+ * @see org.apache.calcite.adapter.enumerable.MergeableAggImplementor
  */
 public abstract class StrictAggImplementor implements AggImplementor {
   private boolean needTrackEmptySet;
@@ -202,6 +203,38 @@ public final Expression implementResult(AggContext info,
     return res;
   }
 
+  /**
+   * Implements {@link MergeableAggImplementor#implementMerge} for
+   * sub-classes that implement that interface. If the state tracks whether a
+   * row has been added, the other state is merged only if a row has been
+   * added to it; {@link #implementNotNullMerge} merges the rest of the
+   * state.
+   */
+  public final void implementMerge(AggContext info, AggMergeContext merge) {
+    if (!trackNullsPerRow) {
+      implementNotNullMerge(info, merge);
+      return;
+    }
+    final List<Expression> acc = merge.accumulator();
+    final List<Expression> otherAcc = merge.otherAccumulator();
+    final BlockBuilder thenBlock = merge.nestBlock();
+    thenBlock.add(
+        Expressions.statement(
+            Expressions.assign(acc.get(acc.size() - 1),
+                Expressions.constant(true))));
+    implementNotNullMerge(info, merge);
+    merge.exitBlock();
+    merge.currentBlock().add(
+        Expressions.ifThen(otherAcc.get(otherAcc.size() - 1),
+            thenBlock.toBlock()));
+  }
+
+  protected void implementNotNullMerge(AggContext info,
+      AggMergeContext merge) {
+    throw new UnsupportedOperationException(
+        "cannot merge " + info.aggregation());
+  }
+
   protected Expression implementNotNullResult(AggContext info,
       AggResultContext result) {
     return result.accumulator().get(0);
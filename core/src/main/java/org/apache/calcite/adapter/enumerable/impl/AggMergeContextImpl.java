@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.enumerable.impl;
+
+import org.apache.calcite.adapter.enumerable.AggMergeContext;
+import org.apache.calcite.linq4j.tree.BlockBuilder;
+import org.apache.calcite.linq4j.tree.Expression;
+
+import java.util.List;
+
+/**
+ * Implementation of
+ * {@link org.apache.calcite.adapter.enumerable.AggMergeContext}
+ */
+public class AggMergeContextImpl extends AggResetContextImpl
+    implements AggMergeContext {
+  private final List<Expression> otherAccumulator;
+
+  /**
+   * Creates aggregate merge context.
+   *
+   * @param block Code block that will contain the merge statements
+   * @param accumulator Accumulator variables that receive the merged state
+   * @param otherAccumulator Accumulator variables whose state is merged
+   */
+  public AggMergeContextImpl(BlockBuilder block, List<Expression> accumulator,
+      List<Expression> otherAccumulator) {
+    super(block, accumulator);
+    this.otherAccumulator = otherAccumulator;
+  }
+
+  public List<Expression> otherAccumulator() {
+    return otherAccumulator;
+  }
+}
+
+// End AggMergeContextImpl.java
@@ -32,6 +32,30 @@ public interface CalciteConnectionConfig extends ConnectionConfig {
   boolean approximateTopN();
   /** @see CalciteConnectionProperty#APPROXIMATE_DECIMAL */
   boolean approximateDecimal();
+  /** @see CalciteConnectionProperty#BINDABLE_CACHE_MAX_SIZE */
+  int bindableCacheMaxSize();
+  /** @see CalciteConnectionProperty#BINDABLE_CACHE_EXPIRE_SECONDS */
+  int bindableCacheExpireSeconds();
+  /** @see CalciteConnectionProperty#PLAN_CACHE_MAX_SIZE */
+  int planCacheMaxSize();
+  /** @see CalciteConnectionProperty#COLUMNAR_BATCH */
+  boolean columnarBatch();
+  /** @see CalciteConnectionProperty#JOIN_PARALLELISM */
+  int joinParallelism();
+  /** @see CalciteConnectionProperty#SPILL_MEMORY_LIMIT */
+  int spillMemoryLimit();
+  /** @see CalciteConnectionProperty#PRIMITIVE_AGGREGATE */
+  boolean primitiveAggregate();
+  /** @see CalciteConnectionProperty#AGGREGATE_PARALLELISM */
+  int aggregateParallelism();
+  /** @see CalciteConnectionProperty#INTERPRETER_PARALLELISM */
+  int interpreterParallelism();
+  /** @see CalciteConnectionProperty#RUNTIME_FILTER */
+  boolean runtimeFilter();
+  /** @see CalciteConnectionProperty#CORRELATE_CACHE_SIZE */
+  int correlateCacheSize();
+  /** @see CalciteConnectionProperty#TOP_DOWN_OPT */
+  boolean topDownOpt();
   /** @see CalciteConnectionProperty#AUTO_TEMP */
   boolean autoTemp();
   /** @see CalciteConnectionProperty#MATERIALIZATIONS_ENABLED */
@@ -61,6 +61,66 @@ public boolean approximateDecimal() {
         .getBoolean();
   }
 
+  public int bindableCacheMaxSize() {
+    return CalciteConnectionProperty.BINDABLE_CACHE_MAX_SIZE.wrap(properties)
+        .getInt();
+  }
+
+  public int bindableCacheExpireSeconds() {
+    return CalciteConnectionProperty.BINDABLE_CACHE_EXPIRE_SECONDS
+        .wrap(properties).getInt();
+  }
+
+  public int planCacheMaxSize() {
+    return CalciteConnectionProperty.PLAN_CACHE_MAX_SIZE.wrap(properties)
+        .getInt();
+  }
+
+  public boolean columnarBatch() {
+    return CalciteConnectionProperty.COLUMNAR_BATCH.wrap(properties)
+        .getBoolean();
+  }
+
+  public int joinParallelism() {
+    return CalciteConnectionProperty.JOIN_PARALLELISM.wrap(properties)
+        .getInt();
+  }
+
+  public int spillMemoryLimit() {
+    return CalciteConnectionProperty.SPILL_MEMORY_LIMIT.wrap(properties)
+        .getInt();
+  }
+
+  public boolean primitiveAggregate() {
+    return CalciteConnectionProperty.PRIMITIVE_AGGREGATE.wrap(properties)
+        .getBoolean();
+  }
+
+  public int aggregateParallelism() {
+    return CalciteConnectionProperty.AGGREGATE_PARALLELISM.wrap(properties)
+        .getInt();
+  }
+
+  public int interpreterParallelism() {
+    return CalciteConnectionProperty.INTERPRETER_PARALLELISM.wrap(properties)
+        .getInt();
+  }
+
+  public boolean runtimeFilter() {
+    return CalciteConnectionProperty.RUNTIME_FILTER.wrap(properties)
+        .getBoolean();
+  }
+
+  public int correlateCacheSize() {
+    return CalciteConnectionProperty.CORRELATE_CACHE_SIZE.wrap(properties)
+        .getInt();
+  }
+
+  public boolean topDownOpt() {
+    return CalciteConnectionProperty.TOP_DOWN_OPT.wrap(properties)
+        .getBoolean();
+  }
+
   public boolean autoTemp() {
     return CalciteConnectionProperty.AUTO_TEMP.wrap(properties).getBoolean();
   }
@@ -36,18 +36,94 @@
  */
 public enum CalciteConnectionProperty implements ConnectionProperty {
   /** Whether approximate results from {@code COUNT(DISTINCT ...)} aggregate
-   * functions are acceptable. */
+   * functions are acceptable. If true, they are computed using
+   * {@code APPROX_COUNT_DISTINCT}, which uses a fixed amount of memory. */
   APPROXIMATE_DISTINCT_COUNT("approximateDistinctCount", Type.BOOLEAN, false,
       false),
 
   /** Whether approximate results from "Top N" queries
-   * ({@code ORDER BY aggFun DESC LIMIT n}) are acceptable. */
+   * ({@code ORDER BY aggFun DESC LIMIT n}) are acceptable. If true,
+   * {@code ORDER BY COUNT(*) DESC LIMIT n} is computed using a fixed number
+   * of counters. */
   APPROXIMATE_TOP_N("approximateTopN", Type.BOOLEAN, false, false),
 
   /** Whether approximate results from aggregate functions on
    * DECIMAL types are acceptable. */
   APPROXIMATE_DECIMAL("approximateDecimal", Type.BOOLEAN, false, false),
 
+  /** Maximum number of classes compiled from generated Java code to keep in a
+   * cache, so that statements that generate identical code do not need to be
+   * compiled again. If 0 (the default), the cache is not used. */
+  BINDABLE_CACHE_MAX_SIZE("bindableCacheMaxSize", Type.NUMBER, 0, false),
+
+  /** Number of seconds after which an unused entry is removed from the cache
+   * of compiled classes. If 0 (the default), entries are only removed when the
+   * cache exceeds {@link #BINDABLE_CACHE_MAX_SIZE}. */
+  BINDABLE_CACHE_EXPIRE_SECONDS("bindableCacheExpireSeconds", Type.NUMBER, 0,
+      false),
+
+  /** Maximum number of prepared statements to keep in the connection's cache.
+   * Statements that differ only in the values of literals compared to columns
+   * share an entry. If 0 (the default), the cache is not used. */
+  PLAN_CACHE_MAX_SIZE("planCacheMaxSize", Type.NUMBER, 0, false),
+
+  /** Whether to read rows in batches, column by column, from tables that
+   * support it (see {@link org.apache.calcite.schema.ColumnarScannableTable}),
+   * and evaluate filters and projections over each batch in a loop. */
+  COLUMNAR_BATCH("columnarBatch", Type.BOOLEAN, false, false),
+
+  /** Number of threads to use to build and probe the hash table of a hash
+   * join. If 1 (the default), joins run in the calling thread. */
+  JOIN_PARALLELISM("joinParallelism", Type.NUMBER, 1, false),
+
+  /** Approximate number of megabytes of rows that a hash join, a sort or a
+   * hash aggregation may hold in memory; beyond that, it writes rows to
+   * temporary files. If 0 (the default), there is no limit. */
+  SPILL_MEMORY_LIMIT("spillMemoryLimit", Type.NUMBER, 0, false),
+
+  /** Whether to aggregate, where the grouping key fits into a {@code long}
+   * and the aggregate functions are {@code COUNT}, {@code SUM}, {@code MIN}
+   * and {@code MAX}, using an open-addressing hash table keyed on primitive
+   * values, and accumulators held in arrays. Groups are returned in the order
+   * in which they were first seen. Ignored if {@link #SPILL_MEMORY_LIMIT} is
+   * set or {@link #AGGREGATE_PARALLELISM} is greater than 1. */
+  PRIMITIVE_AGGREGATE("primitiveAggregate", Type.BOOLEAN, false, false),
+
+  /** Number of threads to use to aggregate. If greater than 1, an aggregate
+   * with a single grouping set, whose aggregate functions are {@code COUNT},
+   * {@code SUM}, {@code MIN} and {@code MAX}, aggregates parts of its input
+   * in separate threads, then merges the partial results. If 1 (the
+   * default), aggregation runs in the calling thread. Ignored if
+   * {@link #SPILL_MEMORY_LIMIT} is set. */
+  AGGREGATE_PARALLELISM("aggregateParallelism", Type.NUMBER, 1, false),
+
+  /** Number of threads the interpreter may use to run the nodes of a plan in
+   * the {@link org.apache.calcite.interpreter.BindableConvention bindable}
+   * convention. If greater than 1, independent parts of the plan, such as
+   * the inputs of a join or the branches of a union, run at the same time,
+   * and an exchange partitions its input into that many partitions. If 1
+   * (the default), nodes run one after another in the calling thread. */
+  INTERPRETER_PARALLELISM("interpreterParallelism", Type.NUMBER, 1, false),
+
+  /** Whether an inner or right hash join whose build side is estimated to
+   * be smaller than its probe side builds a Bloom filter and a range from
+   * its build keys, and applies them to the rows of the probe side as they
+   * leave the table scan that produces the join key. */
+  RUNTIME_FILTER("runtimeFilter", Type.BOOLEAN, false, false),
+
+  /** Number of distinct values of the correlation variable for which a
+   * correlating join keeps the rows of its inner input, so that the inner
+   * input is evaluated once per distinct value rather than once per outer
+   * row. The least recently used values are evicted first. If 0 (the
+   * default), the inner input is evaluated for every outer row. */
+  CORRELATE_CACHE_SIZE("correlateCacheSize", Type.NUMBER, 0, false),
+
+  /** Whether the planner optimizes top-down, starting from the root and
+   * pruning alternatives that cannot be cheaper than the best plan found so
+   * far, rather than firing every rule in order of importance. It fires
+   * fewer rules, which makes planning queries with many joins faster. */
+  TOP_DOWN_OPT("topDownOpt", Type.BOOLEAN, false, false),
+
   /** Whether to store query results in temporary tables. */
   AUTO_TEMP("autoTemp", Type.BOOLEAN, false, false),
 
@@ -32,11 +32,15 @@
 import org.apache.calcite.linq4j.tree.ParameterExpression;
 import org.apache.calcite.rel.core.Aggregate;
 import org.apache.calcite.rel.core.AggregateCall;
+import org.apache.calcite.rel.type.RelDataType;
 import org.apache.calcite.rel.type.RelDataTypeFactory;
 import org.apache.calcite.rex.RexInputRef;
 import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.runtime.LongGroupTable;
 import org.apache.calcite.schema.impl.AggregateFunctionImpl;
+import org.apache.calcite.sql.SqlKind;
 import org.apache.calcite.sql.fun.SqlStdOperatorTable;
+import org.apache.calcite.sql.type.SqlTypeName;
 import org.apache.calcite.util.ImmutableBitSet;
 import org.apache.calcite.util.Pair;
 
@@ -48,7 +52,10 @@
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -62,10 +69,22 @@ public class AggregateNode extends AbstractSingleNode<Aggregate> {
   private final int outputRowLength;
   private final ImmutableList<AccumulatorFactory> accumulatorFactories;
   private final DataContext dataContext;
+  /** Grouping whose accumulators hold their state in primitive arrays; null
+   * if this aggregate cannot use one. */
+  private final PrimitiveGrouping primitiveGrouping;
 
   public AggregateNode(Interpreter interpreter, Aggregate rel) {
     super(interpreter, rel);
+    // Accumulators copy the values that they need from each row
+    interpreter.transientInput(rel, 0);
     this.dataContext = interpreter.getDataContext();
+    this.primitiveGrouping = PrimitiveGrouping.create(rel);
+    if (primitiveGrouping != null) {
+      this.unionGroups = rel.getGroupSet();
+      this.outputRowLength = 0;
+      this.accumulatorFactories = ImmutableList.of();
+      return;
+    }
 
     ImmutableBitSet union = ImmutableBitSet.of();
 
@@ -89,6 +108,10 @@ public AggregateNode(Interpreter interpreter, Aggregate rel) {
   }
 
   public void run() throws InterruptedException {
+    if (primitiveGrouping != null) {
+      primitiveGrouping.run(source, sink);
+      return;
+    }
     Row r;
     while ((r = source.receive()) != null) {
       for (Grouping group : groups) {
@@ -516,6 +539,371 @@ public Object end() {
     }
   }
 
+  /** Grouping for an aggregate that has a single grouping set, and whose
+   * aggregate functions are COUNT, or SUM, MIN or MAX over integer or
+   * floating-point values.
+   *
+   * <p>Groups are numbered in the order in which they are first seen, and
+   * each accumulator holds its state in primitive arrays indexed by group
+   * number, so adding a row to a group allocates no objects. If the key is a
+   * single integer column, the number of a group is found in a
+   * {@link LongGroupTable}; otherwise in a hash map, using the same
+   * {@link GroupKey} to look up every row. */
+  private static class PrimitiveGrouping {
+    private static final int INITIAL_CAPACITY = 16;
+
+    /** Value in a {@link LongGroupTable} that represents a null key; only
+     * used for columns narrower than {@code BIGINT}. */
+    private static final long NULL_KEY = Long.MIN_VALUE;
+
+    private final int[] keyOrdinals;
+    private final List<PrimitiveAccumulator> accumulators;
+    /** Table of groups if the key is a single integer column, otherwise
+     * null. */
+    private final LongGroupTable table;
+    private final Map<GroupKey, Integer> map = new HashMap<>();
+    private final GroupKey probe;
+    /** Key values of each group. */
+    private final List<Object[]> keys = new ArrayList<>();
+    private int capacity;
+
+    private PrimitiveGrouping(int[] keyOrdinals, boolean longKey,
+        List<PrimitiveAccumulator> accumulators) {
+      this.keyOrdinals = keyOrdinals;
+      this.accumulators = accumulators;
+      this.table = longKey ? new LongGroupTable() : null;
+      this.probe = new GroupKey(new Object[keyOrdinals.length]);
+    }
+
+    /** Creates a PrimitiveGrouping, or returns null if the aggregate has
+     * several grouping sets or an aggregate function that has no primitive
+     * accumulator. */
+    static PrimitiveGrouping create(Aggregate rel) {
+      if (rel.getGroupType() != Aggregate.Group.SIMPLE || rel.indicator) {
+        return null;
+      }
+      final RelDataType inputRowType = rel.getInput().getRowType();
+      final List<PrimitiveAccumulator> accumulators = new ArrayList<>();
+      for (AggregateCall call : rel.getAggCallList()) {
+        final PrimitiveAccumulator accumulator =
+            PrimitiveAccumulator.create(call, inputRowType);
+        if (accumulator == null) {
+          return null;
+        }
+        accumulators.add(accumulator);
+      }
+      final int[] keyOrdinals = rel.getGroupSet().toArray();
+      boolean longKey = false;
+      if (keyOrdinals.length == 1) {
+        final RelDataType type =
+            inputRowType.getFieldList().get(keyOrdinals[0]).getType();
+        switch (type.getSqlTypeName()) {
+        case TINYINT:
+        case SMALLINT:
+        case INTEGER:
+          longKey = true;
+          break;
+        case BIGINT:
+          // Every long value is a valid key, so there is none left for null
+          longKey = !type.isNullable();
+          break;
+        }
+      }
+      return new PrimitiveGrouping(keyOrdinals, longKey, accumulators);
+    }
+
+    void run(Source source, Sink sink) throws InterruptedException {
+      if (keyOrdinals.length == 0) {
+        // An aggregate with no keys returns one row, even if its input is
+        // empty
+        group(probe);
+      }
+      Row row;
+      while ((row = source.receive()) != null) {
+        final int group;
+        if (table != null) {
+          final Object o = row.getObject(keyOrdinals[0]);
+          final int groupCount = table.size();
+          group = table.ordinal(o == null ? NULL_KEY : ((Number) o).longValue());
+          if (group == groupCount) {
+            add(new Object[] {o});
+          }
+        } else {
+          for (int i = 0; i < keyOrdinals.length; i++) {
+            probe.values[i] = row.getObject(keyOrdinals[i]);
+          }
+          probe.hash = Arrays.hashCode(probe.values);
+          group = group(probe);
+        }
+        for (PrimitiveAccumulator accumulator : accumulators) {
+          if (accumulator.filterArg < 0
+              || row.getObject(accumulator.filterArg) == Boolean.TRUE) {
+            accumulator.add(group, row);
+          }
+        }
+      }
+      for (int group = 0; group < keys.size(); group++) {
+        final Object[] key = keys.get(group);
+        final Object[] values = new Object[key.length + accumulators.size()];
+        System.arraycopy(key, 0, values, 0, key.length);
+        for (int i = 0; i < accumulators.size(); i++) {
+          values[key.length + i] = accumulators.get(i).result(group);
+        }
+        sink.send(Row.of(values));
+      }
+    }
+
+    /** Returns the number of the group that has a given key, adding a group
+     * if the key is new. */
+    private int group(GroupKey key) {
+      final Integer group = map.get(key);
+      if (group != null) {
+        return group;
+      }
+      final Object[] values = key.values.clone();
+      final int newGroup = add(values);
+      map.put(new GroupKey(values), newGroup);
+      return newGroup;
+    }
+
+    /** Adds a group, growing the accumulators' arrays if necessary, and
+     * returns its number. */
+    private int add(Object[] key) {
+      final int group = keys.size();
+      keys.add(key);
+      if (group == capacity) {
+        capacity = Math.max(INITIAL_CAPACITY, capacity * 2);
+        for (PrimitiveAccumulator accumulator : accumulators) {
+          accumulator.allocate(capacity);
+        }
+      }
+      return group;
+    }
+  }
+
+  /** Key of a group, used by {@link PrimitiveGrouping} if the key is not a
+   * single integer column.
+   *
+   * <p>It is mutable, so that one instance can be used to look up the key of
+   * each row; the hash code is computed once per row. */
+  private static class GroupKey {
+    final Object[] values;
+    int hash;
+
+    GroupKey(Object[] values) {
+      this.values = values;
+      this.hash = Arrays.hashCode(values);
+    }
+
+    @Override public int hashCode() {
+      return hash;
+    }
+
+    @Override public boolean equals(Object obj) {
+      return obj == this
+          || obj instanceof GroupKey
+          && hash == ((GroupKey) obj).hash
+          && Arrays.equals(values, ((GroupKey) obj).values);
+    }
+  }
+
+  /** Accumulator whose state for every group is held in arrays of primitive
+   * values, indexed by group number. The state of a new group is zero. */
+  private abstract static class PrimitiveAccumulator {
+    final int filterArg;
+
+    PrimitiveAccumulator(AggregateCall call) {
+      this.filterArg = call.filterArg;
+    }
+
+    /** Creates an accumulator for an aggregate call, or returns null if the
+     * call cannot be computed using primitive values. */
+    static PrimitiveAccumulator create(AggregateCall call,
+        RelDataType inputRowType) {
+      if (call.isDistinct()) {
+        return null;
+      }
+      switch (call.getAggregation().getKind()) {
+      case COUNT:
+        return new CountArray(call);
+      case SUM:
+      case SUM0:
+      case MIN:
+      case MAX:
+        if (call.getArgList().size() != 1) {
+          return null;
+        }
+        final SqlTypeName argType = inputRowType.getFieldList()
+            .get(call.getArgList().get(0)).getType().getSqlTypeName();
+        final SqlTypeName type = call.type.getSqlTypeName();
+        if (SqlTypeName.INT_TYPES.contains(argType)
+            && SqlTypeName.INT_TYPES.contains(type)) {
+          return new LongArray(call, type);
+        }
+        if (SqlTypeName.APPROX_TYPES.contains(argType)
+            && SqlTypeName.APPROX_TYPES.contains(type)) {
+          return new DoubleArray(call, type);
+        }
+        return null;
+      default:
+        return null;
+      }
+    }
+
+    /** Grows the arrays so that they can hold a given number of groups,
+     * preserving their contents. */
+    abstract void allocate(int capacity);
+
+    /** Adds a row to a group. */
+    abstract void add(int group, Row row);
+
+    /** Returns the result for a group. */
+    abstract Object result(int group);
+  }
+
+  /** Primitive accumulator for {@code COUNT}. */
+  private static class CountArray extends PrimitiveAccumulator {
+    private final int[] args;
+    private long[] counts = new long[0];
+
+    CountArray(AggregateCall call) {
+      super(call);
+      this.args = ImmutableBitSet.of(call.getArgList()).toArray();
+    }
+
+    void allocate(int capacity) {
+      counts = Arrays.copyOf(counts, capacity);
+    }
+
+    void add(int group, Row row) {
+      for (int arg : args) {
+        if (row.getObject(arg) == null) {
+          return;
+        }
+      }
+      ++counts[group];
+    }
+
+    Object result(int group) {
+      return counts[group];
+    }
+  }
+
+  /** Primitive accumulator for {@code SUM}, {@code $SUM0}, {@code MIN} and
+   * {@code MAX} over integer values. */
+  private static class LongArray extends PrimitiveAccumulator {
+    private final SqlKind kind;
+    private final int arg;
+    private final SqlTypeName type;
+    private long[] values = new long[0];
+    /** Groups that have received at least one value. */
+    private final BitSet nonEmpty = new BitSet();
+
+    LongArray(AggregateCall call, SqlTypeName type) {
+      super(call);
+      this.kind = call.getAggregation().getKind();
+      this.arg = call.getArgList().get(0);
+      this.type = type;
+    }
+
+    void allocate(int capacity) {
+      values = Arrays.copyOf(values, capacity);
+    }
+
+    void add(int group, Row row) {
+      final Object o = row.getObject(arg);
+      if (o == null) {
+        return;
+      }
+      final long v = ((Number) o).longValue();
+      if (!nonEmpty.get(group)) {
+        nonEmpty.set(group);
+        values[group] = v;
+        return;
+      }
+      switch (kind) {
+      case MIN:
+        values[group] = Math.min(values[group], v);
+        break;
+      case MAX:
+        values[group] = Math.max(values[group], v);
+        break;
+      default:
+        values[group] += v;
+      }
+    }
+
+    Object result(int group) {
+      if (!nonEmpty.get(group) && kind != SqlKind.SUM0) {
+        return null;
+      }
+      final long v = values[group];
+      switch (type) {
+      case TINYINT:
+        return (byte) v;
+      case SMALLINT:
+        return (short) v;
+      case INTEGER:
+        return (int) v;
+      default:
+        return v;
+      }
+    }
+  }
+
+  /** Primitive accumulator for {@code SUM}, {@code $SUM0}, {@code MIN} and
+   * {@code MAX} over floating-point values. */
+  private static class DoubleArray extends PrimitiveAccumulator {
+    private final SqlKind kind;
+    private final int arg;
+    private final SqlTypeName type;
+    private double[] values = new double[0];
+    /** Groups that have received at least one value. */
+    private final BitSet nonEmpty = new BitSet();
+
+    DoubleArray(AggregateCall call, SqlTypeName type) {
+      super(call);
+      this.kind = call.getAggregation().getKind();
+      this.arg = call.getArgList().get(0);
+      this.type = type;
+    }
+
+    void allocate(int capacity) {
+      values = Arrays.copyOf(values, capacity);
+    }
+
+    void add(int group, Row row) {
+      final Object o = row.getObject(arg);
+      if (o == null) {
+        return;
+      }
+      final double v = ((Number) o).doubleValue();
+      if (!nonEmpty.get(group)) {
+        nonEmpty.set(group);
+        values[group] = v;
+        return;
+      }
+      switch (kind) {
+      case MIN:
+        values[group] = Math.min(values[group], v);
+        break;
+      case MAX:
+        values[group] = Math.max(values[group], v);
+        break;
+      default:
+        values[group] += v;
+      }
+    }
+
+    Object result(int group) {
+      if (!nonEmpty.get(group) && kind != SqlKind.SUM0) {
+        return null;
+      }
+      final double v = values[group];
+      return type == SqlTypeName.REAL ? (Object) (float) v : (Object) v;
+    }
+  }
+
   /** Accumulator that applies a filter to another accumulator.
    * The filter is a BOOLEAN field in the input row. */
   private static class FilterAccumulator implements Accumulator {
@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.interpreter;
+
+import org.apache.calcite.rel.RelDistribution;
+import org.apache.calcite.rel.core.Exchange;
+import org.apache.calcite.rel.core.SortExchange;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Interpreter node that implements an
+ * {@link org.apache.calcite.rel.core.Exchange}, including a
+ * {@link org.apache.calcite.rel.core.SortExchange}.
+ *
+ * <p>Divides its input into as many partitions as the interpreter has
+ * threads. A hash distribution assigns each row by the hash of its keys; a
+ * round-robin or random distribution assigns rows to each partition in turn;
+ * any other distribution has a single partition. (The node has a single
+ * consumer, so a broadcast distribution, which would give a copy of each row
+ * to each consumer, has a single partition too.) The output is the rows of
+ * each partition in turn.
+ *
+ * <p>A sort exchange sorts each partition, and outputs the rows of all
+ * partitions by merging them, so that its output has the exchange's
+ * collation; if the interpreter is running in parallel, the partitions are
+ * sorted at the same time.
+ */
+public class ExchangeNode extends AbstractSingleNode<Exchange> {
+  private final Interpreter interpreter;
+  private final int partitionCount;
+
+  public ExchangeNode(Interpreter interpreter, Exchange rel) {
+    super(interpreter, rel);
+    this.interpreter = interpreter;
+    switch (rel.getDistribution().getType()) {
+    case HASH_DISTRIBUTED:
+    case ROUND_ROBIN_DISTRIBUTED:
+    case RANDOM_DISTRIBUTED:
+      partitionCount = interpreter.getParallelism();
+      break;
+    default:
+      partitionCount = 1;
+    }
+  }
+
+  public void run() throws InterruptedException {
+    final List<List<Row>> partitions = new ArrayList<>();
+    for (int i = 0; i < partitionCount; i++) {
+      partitions.add(new ArrayList<Row>());
+    }
+    final RelDistribution distribution = rel.getDistribution();
+    final List<Integer> keys = distribution.getKeys();
+    int next = 0;
+    Row row;
+    while ((row = source.receive()) != null) {
+      switch (distribution.getType()) {
+      case HASH_DISTRIBUTED:
+        partitions.get(partition(row, keys)).add(row);
+        break;
+      case ROUND_ROBIN_DISTRIBUTED:
+      case RANDOM_DISTRIBUTED:
+        partitions.get(next).add(row);
+        if (++next == partitionCount) {
+          next = 0;
+        }
+        break;
+      default:
+        partitions.get(0).add(row);
+      }
+    }
+    if (rel instanceof SortExchange) {
+      final Comparator<Row> comparator =
+          SortNode.comparator(((SortExchange) rel).getCollation());
+      final List<Runnable> tasks = new ArrayList<>();
+      for (final List<Row> partition : partitions) {
+        tasks.add(
+            new Runnable() {
+              public void run() {
+                Collections.sort(partition, comparator);
+              }
+            });
+      }
+      interpreter.runAll(tasks);
+      merge(partitions, comparator);
+    } else {
+      for (List<Row> partition : partitions) {
+        for (Row r : partition) {
+          sink.send(r);
+        }
+      }
+    }
+    sink.end();
+  }
+
+  /** Sends the rows of sorted partitions to the sink in order, by repeatedly
+   * sending the least of the partitions' next rows. Of equal rows, those of
+   * the earlier partition are sent first. */
+  private void merge(final List<List<Row>> partitions,
+      final Comparator<Row> comparator) throws InterruptedException {
+    final int[] positions = new int[partitions.size()];
+    final PriorityQueue<Integer> queue =
+        new PriorityQueue<>(partitions.size(),
+            new Comparator<Integer>() {
+              public int compare(Integer p0, Integer p1) {
+                final int c =
+                    comparator.compare(partitions.get(p0).get(positions[p0]),
+                        partitions.get(p1).get(positions[p1]));
+                return c != 0 ? c : Integer.compare(p0, p1);
+              }
+            });
+    for (int i = 0; i < partitions.size(); i++) {
+      if (!partitions.get(i).isEmpty()) {
+        queue.add(i);
+      }
+    }
+    while (!queue.isEmpty()) {
+      final int p = queue.poll();
+      final List<Row> partition = partitions.get(p);
+      sink.send(partition.get(positions[p]++));
+      if (positions[p] < partition.size()) {
+        queue.add(p);
+      }
+    }
+  }
+
+  /** Returns the partition of a row, by hashing the values of its keys. */
+  private int partition(Row row, List<Integer> keys) {
+    int h = 0;
+    for (int key : keys) {
+      final Object o = row.getObject(key);
+      h = h * 31 + (o == null ? 0 : o.hashCode());
+    }
+    h ^= h >>> 16;
+    return (h & Integer.MAX_VALUE) % partitionCount;
+  }
+}
+
+// End ExchangeNode.java
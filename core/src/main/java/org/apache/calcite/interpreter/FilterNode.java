@@ -16,6 +16,8 @@
  */
 package org.apache.calcite.interpreter;
 
+import org.apache.calcite.linq4j.AbstractEnumerable;
+import org.apache.calcite.linq4j.Enumerator;
 import org.apache.calcite.rel.core.Filter;
 
 import com.google.common.collect.ImmutableList;
@@ -23,28 +25,42 @@
 /**
  * Interpreter node that implements a
  * {@link org.apache.calcite.rel.core.Filter}.
+ *
+ * <p>Rows are filtered as the consumer reads them, so the node does not
+ * buffer its output. If the consumer is a {@link ProjectNode}, it reads
+ * directly from this node's input and calls {@link #accept(Row)}.
  */
-public class FilterNode extends AbstractSingleNode<Filter> {
+public class FilterNode implements Node {
   private final Scalar condition;
   private final Context context;
 
-  public FilterNode(Interpreter interpreter, Filter rel) {
-    super(interpreter, rel);
+  public FilterNode(final Interpreter interpreter, final Filter rel) {
     this.condition =
         interpreter.compile(ImmutableList.of(rel.getCondition()),
             rel.getRowType());
     this.context = interpreter.createContext();
+    interpreter.enumerable(rel,
+        new AbstractEnumerable<Row>() {
+          public Enumerator<Row> enumerator() {
+            return new Nodes.SourceEnumerator(interpreter,
+                interpreter.getInput(rel, 0)) {
+              protected Row next(Row row) {
+                return accept(row) ? row : null;
+              }
+            };
+          }
+        });
+  }
+
+  /** Returns whether a row satisfies the condition. */
+  boolean accept(Row row) {
+    context.values = row.getValues();
+    Boolean b = (Boolean) condition.execute(context);
+    return b != null && b;
   }
 
   public void run() throws InterruptedException {
-    Row row;
-    while ((row = source.receive()) != null) {
-      context.values = row.getValues();
-      Boolean b = (Boolean) condition.execute(context);
-      if (b != null && b) {
-        sink.send(row);
-      }
-    }
+    // nothing to do; rows are filtered as they are read
   }
 }
 
@@ -17,10 +17,10 @@
 package org.apache.calcite.interpreter;
 
 import org.apache.calcite.DataContext;
+import org.apache.calcite.config.CalciteConnectionConfig;
 import org.apache.calcite.linq4j.AbstractEnumerable;
 import org.apache.calcite.linq4j.Enumerable;
 import org.apache.calcite.linq4j.Enumerator;
-import org.apache.calcite.linq4j.Linq4j;
 import org.apache.calcite.linq4j.TransformedEnumerator;
 import org.apache.calcite.plan.hep.HepPlanner;
 import org.apache.calcite.plan.hep.HepProgram;
@@ -43,15 +43,25 @@
 import org.apache.calcite.util.ReflectiveVisitor;
 
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
 import java.math.BigDecimal;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Interpreter.
@@ -62,15 +72,56 @@
  */
 public class Interpreter extends AbstractEnumerable<Object[]>
     implements AutoCloseable {
+  /** Number of rows in each batch of the buffer between two nodes. */
+  static final int BATCH_SIZE = 1024;
+
+  /** Number of full batches that the buffer between two nodes holds, if the
+   * nodes run at the same time, before the node that writes to it must wait
+   * for the node that reads from it. */
+  static final int BUFFER_BATCHES = 4;
+
+  /** Pools of threads that run nodes, by parallelism, shared by all
+   * interpreters. Their threads are daemon threads, and exit when they have
+   * been idle for a while. */
+  private static final LoadingCache<Integer, ForkJoinPool> POOLS =
+      CacheBuilder.newBuilder().build(
+          new CacheLoader<Integer, ForkJoinPool>() {
+            public ForkJoinPool load(Integer parallelism) {
+              return new ForkJoinPool(parallelism);
+            }
+          });
+
   final Map<RelNode, NodeInfo> nodes = Maps.newLinkedHashMap();
   private final DataContext dataContext;
   private final RelNode rootRel;
+  private final int parallelism;
+  /** Pool of threads running the nodes; null if the nodes are run one after
+   * another by the calling thread. */
+  private final ForkJoinPool pool;
   private final Map<RelNode, List<RelNode>> relInputs = Maps.newHashMap();
   protected final ScalarCompiler scalarCompiler;
+  /** Batches that have been read, and can be reused by the next buffer that
+   * needs one. Guarded by itself, because buffers may be written and read in
+   * different threads. */
+  private final ArrayDeque<Row[]> freeBatches = new ArrayDeque<>();
 
-  /** Creates an Interpreter. */
+  /** Creates an Interpreter.
+   *
+   * <p>The number of threads is given by the
+   * {@link org.apache.calcite.config.CalciteConnectionProperty#INTERPRETER_PARALLELISM}
+   * property of the connection, if the planner has one in its context. */
   public Interpreter(DataContext dataContext, RelNode rootRel) {
+    this(dataContext, rootRel, parallelism(rootRel));
+  }
+
+  /** Creates an Interpreter that runs its nodes in up to a given number of
+   * threads. */
+  public Interpreter(DataContext dataContext, RelNode rootRel,
+      int parallelism) {
+    Preconditions.checkArgument(parallelism > 0);
     this.dataContext = Preconditions.checkNotNull(dataContext);
+    this.parallelism = parallelism;
+    this.pool = parallelism > 1 ? POOLS.getUnchecked(parallelism) : null;
     this.scalarCompiler =
         new JaninoRexCompiler(rootRel.getCluster().getRexBuilder());
     final RelNode rel = optimize(rootRel);
@@ -78,6 +129,13 @@ public Interpreter(DataContext dataContext, RelNode rootRel) {
     this.rootRel = compiler.visitRoot(rel);
   }
 
+  private static int parallelism(RelNode rootRel) {
+    final CalciteConnectionConfig config =
+        rootRel.getCluster().getPlanner().getContext()
+            .unwrap(CalciteConnectionConfig.class);
+    return config == null ? 1 : Math.max(1, config.interpreterParallelism());
+  }
+
   private RelNode optimize(RelNode rootRel) {
     final HepProgram hepProgram = new HepProgramBuilder()
         .addRuleInstance(CalcSplitRule.INSTANCE)
@@ -92,24 +150,68 @@ private RelNode optimize(RelNode rootRel) {
   }
 
   public Enumerator<Object[]> enumerator() {
-    start();
+    final Scheduler scheduler = start();
     final NodeInfo nodeInfo = nodes.get(rootRel);
     final Enumerator<Row> rows;
     if (nodeInfo.rowEnumerable != null) {
       rows = nodeInfo.rowEnumerable.enumerator();
     } else {
-      final ArrayDeque<Row> queue = ((ListSink) nodeInfo.sink).list;
-      rows = Linq4j.iterableEnumerator(queue);
+      rows = new Nodes.SourceEnumerator(this, rootRel) {
+        protected Row next(Row row) {
+          return row;
+        }
+      };
     }
 
     return new TransformedEnumerator<Row, Object[]>(rows) {
       protected Object[] transform(Row row) {
         return row.getValues();
       }
+
+      @Override public boolean moveNext() {
+        if (scheduler == null) {
+          return super.moveNext();
+        }
+        try {
+          if (super.moveNext()) {
+            return true;
+          }
+        } catch (CancellationException e) {
+          // A node failed, and cancelled the buffer we were reading
+          scheduler.rethrow();
+          throw e;
+        }
+        scheduler.rethrow();
+        return false;
+      }
+
+      @Override public void close() {
+        try {
+          super.close();
+        } finally {
+          if (scheduler != null) {
+            // Stop nodes that are still writing rows that nobody will read
+            scheduler.cancel();
+          }
+        }
+      }
     };
   }
 
-  private void start() {
+  /** Runs the nodes, or starts running them, and returns the scheduler that
+   * is running them; returns null if the nodes have been run, one after
+   * another, by the calling thread. */
+  private Scheduler start() {
+    for (NodeInfo nodeInfo : nodes.values()) {
+      if (nodeInfo.sink instanceof ListSink) {
+        ((ListSink) nodeInfo.sink).list.reset();
+      }
+    }
+    if (pool != null) {
+      final Scheduler scheduler = new Scheduler();
+      scheduler.run();
+      return scheduler;
+    }
     // We rely on the nodes being ordered leaves first.
     for (Map.Entry<RelNode, NodeInfo> entry : nodes.entrySet()) {
       final NodeInfo nodeInfo = entry.getValue();
@@ -118,7 +220,30 @@ private void start() {
       } catch (InterruptedException e) {
         e.printStackTrace();
       }
+      nodeInfo.finish();
     }
+    return null;
+  }
+
+  /** Returns the number of threads that may run nodes at the same time. */
+  int getParallelism() {
+    return parallelism;
+  }
+
+  /** Runs some tasks, at the same time if the interpreter is running its
+   * nodes in a pool of threads, and waits for them to finish. */
+  void runAll(List<Runnable> tasks) {
+    if (pool == null || tasks.size() < 2) {
+      for (Runnable task : tasks) {
+        task.run();
+      }
+      return;
+    }
+    final List<ForkJoinTask<?>> forkJoinTasks = new ArrayList<>();
+    for (Runnable task : tasks) {
+      forkJoinTasks.add(ForkJoinTask.adapt(task));
+    }
+    ForkJoinTask.invokeAll(forkJoinTasks);
   }
 
   public void close() {
@@ -250,8 +375,17 @@ public Object execute(Context context) {
   }
 
   public Source source(RelNode rel, int ordinal) {
-    final RelNode input = getInput(rel, ordinal);
-    final NodeInfo nodeInfo = nodes.get(input);
+    return output(getInput(rel, ordinal));
+  }
+
+  /** Returns a source that reads the rows of a relational expression.
+   *
+   * <p>If the relational expression gives its output as an enumerable, the
+   * source reads a new enumerator; otherwise it reads the buffer that the
+   * relational expression's node writes to, whose rows can be read only
+   * once. */
+  Source output(RelNode rel) {
+    final NodeInfo nodeInfo = nodes.get(rel);
     if (nodeInfo == null) {
       throw new AssertionError("should be registered: " + rel);
     }
@@ -260,13 +394,33 @@ public Source source(RelNode rel, int ordinal) {
     }
     Sink sink = nodeInfo.sink;
     if (sink instanceof ListSink) {
-      return new ListSource((ListSink) nodeInfo.sink);
+      final RowBuffer list = ((ListSink) sink).list;
+      if (list.read) {
+        throw new UnsupportedOperationException("rows of " + rel
+            + " have already been read, and cannot be read again");
+      }
+      return new ListSource(list);
     }
     throw new IllegalStateException(
       "Got a sink " + sink + " to which there is no match source type!");
   }
 
-  private RelNode getInput(RelNode rel, int ordinal) {
+  /** Tells the interpreter that the node of a relational expression does not
+   * keep the rows that it reads from one of its inputs after it has read the
+   * next, so that a node that computes rows as they are read, such as a
+   * {@link ProjectNode}, may write each of them into the same storage. */
+  void transientInput(RelNode rel, int ordinal) {
+    final RelNode input = getInput(rel, ordinal);
+    final Node node = node(input);
+    if (node instanceof FilterNode) {
+      // A filter passes on the rows that it reads
+      transientInput(input, 0);
+    } else if (node instanceof ProjectNode) {
+      ((ProjectNode) node).reuseRows();
+    }
+  }
+
+  RelNode getInput(RelNode rel, int ordinal) {
     final List<RelNode> inputs = relInputs.get(rel);
     if (inputs != null) {
       return inputs.get(ordinal);
@@ -285,8 +439,9 @@ private RelNode getInput(RelNode rel, int ordinal) {
    * @return Sink
    */
   public Sink sink(RelNode rel) {
-    final ArrayDeque<Row> queue = new ArrayDeque<>(1);
-    final Sink sink = new ListSink(queue);
+    final Sink sink =
+        new ListSink(
+            new RowBuffer(pool != null ? BUFFER_BATCHES : Integer.MAX_VALUE));
     NodeInfo nodeInfo = new NodeInfo(rel, sink, null);
     nodes.put(rel, nodeInfo);
     return sink;
@@ -307,6 +462,13 @@ public void enumerable(RelNode rel, Enumerable<Row> rowEnumerable) {
     nodes.put(rel, nodeInfo);
   }
 
+  /** Returns the node that implements a relational expression, or null if
+   * the relational expression has not been compiled yet. */
+  Node node(RelNode rel) {
+    final NodeInfo nodeInfo = nodes.get(rel);
+    return nodeInfo == null ? null : nodeInfo.node;
+  }
+
   public Context createContext() {
     return new Context(dataContext);
   }
@@ -328,6 +490,98 @@ private static class NodeInfo {
       this.rowEnumerable = rowEnumerable;
       assert (sink != null) != (rowEnumerable != null) : "one or the other";
     }
+
+    /** Called when the node has written all of its rows. */
+    void finish() {
+      if (sink instanceof ListSink) {
+        ((ListSink) sink).list.finish();
+      }
+    }
+
+    /** Abandons the rows that the node has written and will write. */
+    void cancel() {
+      if (sink instanceof ListSink) {
+        ((ListSink) sink).list.cancel();
+      }
+    }
+  }
+
+  /** Runs the nodes of the data flow graph in a pool of threads.
+   *
+   * <p>All nodes start at once. A node reads the rows that another node
+   * writes while they are being written, and if it falls behind, the writer
+   * waits for it; the caller of {@link #enumerator()} reads the rows of the
+   * root node in the same way. A node that gives its output as an enumerable
+   * produces rows only as they are read, in the thread of the node that
+   * reads them.
+   *
+   * <p>When a node has finished, it cancels the buffers that it reads, so
+   * that nodes whose rows it did not need stop writing them. If a node
+   * fails, all buffers are cancelled, and the caller gets the error. */
+  private class Scheduler {
+    private final AtomicReference<Throwable> error = new AtomicReference<>();
+
+    void run() {
+      for (NodeInfo nodeInfo : nodes.values()) {
+        final Set<NodeInfo> inputs = new LinkedHashSet<>();
+        addInputs(nodeInfo.rel, inputs);
+        submit(nodeInfo, inputs);
+      }
+    }
+
+    /** Adds the nodes whose rows a given relational expression reads. A
+     * node that gives its output as an enumerable reads its inputs in the
+     * thread of the node that reads it, so their buffers are read by that
+     * node too. */
+    private void addInputs(RelNode rel, Set<NodeInfo> inputs) {
+      for (int i = 0; i < rel.getInputs().size(); i++) {
+        final NodeInfo input = nodes.get(getInput(rel, i));
+        if (input != null && inputs.add(input)
+            && input.rowEnumerable != null) {
+          addInputs(input.rel, inputs);
+        }
+      }
+    }
+
+    private void submit(final NodeInfo nodeInfo, final Set<NodeInfo> inputs) {
+      pool.execute(
+          new Runnable() {
+            public void run() {
+              try {
+                nodeInfo.node.run();
+                nodeInfo.finish();
+              } catch (CancellationException e) {
+                // The node that reads this node's rows has finished, or
+                // another node has failed
+              } catch (Throwable e) {
+                if (error.compareAndSet(null, e)) {
+                  cancel();
+                }
+              } finally {
+                if (nodeInfo.sink != null) {
+                  for (NodeInfo input : inputs) {
+                    input.cancel();
+                  }
+                }
+              }
+            }
+          });
+    }
+
+    /** Stops all nodes. */
+    void cancel() {
+      for (NodeInfo nodeInfo : nodes.values()) {
+        nodeInfo.cancel();
+      }
+    }
+
+    /** Throws the error that made a node fail, if any. */
+    void rethrow() {
+      final Throwable e = error.get();
+      if (e != null) {
+        throw Throwables.propagate(e);
+      }
+    }
   }
 
   /**
@@ -355,11 +609,187 @@ private static class EnumeratorSource implements Source {
     }
   }
 
-  /** Implementation of {@link Sink} using a {@link java.util.ArrayDeque}. */
+  /** Queue of rows, held in fixed-size batches, between a node that writes
+   * rows and a node that reads them.
+   *
+   * <p>The writer fills a batch, and hands it to the reader when it is full
+   * or when the writer has finished, so the writer and the reader, which
+   * may be in different threads, synchronize once per batch rather than
+   * once per row. A batch that has been read is given back to the
+   * interpreter, which hands it to the next buffer that needs one.
+   *
+   * <p>If the writer gets more than a given number of batches ahead of the
+   * reader, it waits until the reader catches up. While the writer waits,
+   * or the reader waits for rows, the pool may start another thread, so
+   * that the nodes they are waiting for can run. */
+  private class RowBuffer {
+    /** Maximum number of batches waiting to be read. */
+    private final int capacity;
+    /** Batches that have been written but not read. Guarded by this. */
+    private final ArrayDeque<Row[]> batches = new ArrayDeque<>();
+    /** Whether the writer has written all of its rows. Guarded by this. */
+    private boolean finished;
+    /** Whether the rows have been abandoned. Guarded by this. */
+    private boolean cancelled;
+    /** Whether the reader has started to read. */
+    boolean read;
+
+    /** Batch being written, and position of the next row to write in it;
+     * used only by the writer. */
+    private Row[] writeBatch;
+    private int writeIndex;
+    /** Batch being read, and position of the next row to read in it; used
+     * only by the reader. A batch that is not full ends with nulls. */
+    private Row[] readBatch;
+    private int readIndex;
+
+    private final Wait canWrite =
+        new Wait() {
+          boolean ready() {
+            return batches.size() < capacity;
+          }
+        };
+
+    private final Wait canRead =
+        new Wait() {
+          boolean ready() {
+            return !batches.isEmpty() || finished;
+          }
+        };
+
+    RowBuffer(int capacity) {
+      this.capacity = capacity;
+    }
+
+    void add(Row row) {
+      if (writeBatch == null) {
+        synchronized (freeBatches) {
+          writeBatch = freeBatches.poll();
+        }
+        if (writeBatch == null) {
+          writeBatch = new Row[BATCH_SIZE];
+        }
+        writeIndex = 0;
+      }
+      writeBatch[writeIndex++] = row;
+      if (writeIndex == BATCH_SIZE) {
+        flush();
+      }
+    }
+
+    /** Hands the batch being written to the reader. */
+    private void flush() {
+      final Row[] batch = writeBatch;
+      writeBatch = null;
+      await(canWrite);
+      synchronized (this) {
+        if (cancelled) {
+          throw new CancellationException();
+        }
+        batches.add(batch);
+        notifyAll();
+      }
+    }
+
+    /** Called when the writer has written all of its rows. */
+    void finish() {
+      if (writeBatch != null) {
+        flush();
+      }
+      synchronized (this) {
+        finished = true;
+        notifyAll();
+      }
+    }
+
+    /** Abandons the rows. A writer or reader that is waiting, or that
+     * calls later, gets a {@link CancellationException}. */
+    synchronized void cancel() {
+      cancelled = true;
+      batches.clear();
+      notifyAll();
+    }
+
+    /** Empties the buffer, so that its node can run again. */
+    synchronized void reset() {
+      batches.clear();
+      finished = false;
+      cancelled = false;
+      read = false;
+      writeBatch = null;
+      readBatch = null;
+    }
+
+    /** Returns the next row, waiting for it if necessary, or null if the
+     * writer has finished and all rows have been read. */
+    Row poll() {
+      read = true;
+      for (;;) {
+        if (readBatch != null) {
+          final Row row =
+              readIndex < BATCH_SIZE ? readBatch[readIndex] : null;
+          if (row != null) {
+            readBatch[readIndex++] = null;
+            return row;
+          }
+          synchronized (freeBatches) {
+            freeBatches.add(readBatch);
+          }
+          readBatch = null;
+        }
+        await(canRead);
+        synchronized (this) {
+          if (cancelled) {
+            throw new CancellationException();
+          }
+          readBatch = batches.poll();
+          if (readBatch == null) {
+            return null;
+          }
+          readIndex = 0;
+          notifyAll();
+        }
+      }
+    }
+
+    /** Waits until a condition holds or the buffer is cancelled. */
+    private void await(Wait wait) {
+      try {
+        ForkJoinPool.managedBlock(wait);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      }
+    }
+
+    /** Condition that a writer or reader waits for. */
+    private abstract class Wait implements ForkJoinPool.ManagedBlocker {
+      /** Returns whether the condition holds; called while holding the
+       * buffer's lock. */
+      abstract boolean ready();
+
+      public boolean isReleasable() {
+        synchronized (RowBuffer.this) {
+          return cancelled || ready();
+        }
+      }
+
+      public boolean block() throws InterruptedException {
+        synchronized (RowBuffer.this) {
+          while (!cancelled && !ready()) {
+            RowBuffer.this.wait();
+          }
+        }
+        return true;
+      }
+    }
+  }
+
+  /** Implementation of {@link Sink} using a {@link RowBuffer}. */
   private static class ListSink implements Sink {
-    final ArrayDeque<Row> list;
+    final RowBuffer list;
 
-    private ListSink(ArrayDeque<Row> list) {
+    private ListSink(RowBuffer list) {
       this.list = list;
     }
 
@@ -368,6 +798,7 @@ public void send(Row row) throws InterruptedException {
     }
 
     public void end() throws InterruptedException {
+      list.finish();
     }
 
     @SuppressWarnings("deprecation")
@@ -382,20 +813,16 @@ public void end() throws InterruptedException {
     }
   }
 
-  /** Implementation of {@link Source} using a {@link java.util.ArrayDeque}. */
+  /** Implementation of {@link Source} using a {@link RowBuffer}. */
   private static class ListSource implements Source {
-    private final ArrayDeque<Row> list;
+    private final RowBuffer list;
 
-    ListSource(ListSink sink) {
-      this.list = sink.list;
+    ListSource(RowBuffer list) {
+      this.list = list;
     }
 
     public Row receive() {
-      try {
-        return list.remove();
-      } catch (NoSuchElementException e) {
-        return null;
-      }
+      return list.poll();
     }
 
     @Override public void close() {
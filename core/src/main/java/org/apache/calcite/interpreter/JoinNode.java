@@ -16,60 +16,233 @@
  */
 package org.apache.calcite.interpreter;
 
+import org.apache.calcite.plan.RelOptUtil;
+import org.apache.calcite.rel.RelNode;
 import org.apache.calcite.rel.core.Join;
+import org.apache.calcite.rel.core.SemiJoin;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rel.type.RelDataTypeFactory;
+import org.apache.calcite.rex.RexBuilder;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.rex.RexUtil;
+import org.apache.calcite.sql.fun.SqlStdOperatorTable;
+import org.apache.calcite.sql.type.SqlTypeName;
+import org.apache.calcite.sql.type.SqlTypeUtil;
+import org.apache.calcite.util.ImmutableIntList;
 
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Lists;
+import com.google.common.primitives.Ints;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Interpreter node that implements a
  * {@link org.apache.calcite.rel.core.Join}.
+ *
+ * <p>Reads the right input into memory. If the condition has equalities
+ * between a field of the left input and a field of the right input, builds a
+ * hash table on those fields of the right rows, and for each left row,
+ * considers only the right rows with the same key; otherwise, considers
+ * every right row. The rest of the condition, if any, is evaluated for each
+ * pair considered.
+ *
+ * <p>Supports inner, left, right and full joins, and
+ * {@link org.apache.calcite.rel.core.SemiJoin}, which returns each left row
+ * that has at least one match.
  */
 public class JoinNode implements Node {
+  /** Key of a row whose only key field is null, if nulls match nulls. */
+  private static final Object NULL_KEY = new Object();
+
   private final Source leftSource;
   private final Source rightSource;
   private final Sink sink;
   private final Join rel;
-  private final Scalar condition;
+  /** Ordinals of the key fields in the left input. */
+  private final int[] leftKeys;
+  /** Ordinals of the key fields in the right input. */
+  private final int[] rightKeys;
+  /** For each key, whether a null value matches nothing (as for "=") rather
+   * than other nulls (as for "IS NOT DISTINCT FROM"). */
+  private final boolean[] filterNulls;
+  /** Part of the condition that is not a key; null if the condition consists
+   * only of keys. */
+  private final Scalar residual;
   private final Context context;
 
   public JoinNode(Interpreter interpreter, Join rel) {
     this.leftSource = interpreter.source(rel, 0);
     this.rightSource = interpreter.source(rel, 1);
     this.sink = interpreter.sink(rel);
-    this.condition = interpreter.compile(ImmutableList.of(rel.getCondition()),
-        interpreter.combinedRowType(rel.getInputs()));
     this.rel = rel;
     this.context = interpreter.createContext();
 
+    final List<Integer> leftKeyList = new ArrayList<>();
+    final List<Integer> rightKeyList = new ArrayList<>();
+    final List<Boolean> filterNullList = new ArrayList<>();
+    final RexNode remaining =
+        RelOptUtil.splitJoinCondition(rel.getLeft(), rel.getRight(),
+            rel.getCondition(), leftKeyList, rightKeyList, filterNullList);
+
+    // Keys whose values might be equal in SQL but not in Java (say 1.0 and
+    // 1.00 as DECIMAL values) go back into the condition.
+    final RexBuilder rexBuilder = rel.getCluster().getRexBuilder();
+    final RelDataTypeFactory typeFactory = rel.getCluster().getTypeFactory();
+    final List<RexNode> residuals = new ArrayList<>();
+    residuals.add(remaining);
+    final List<Integer> leftKeys = new ArrayList<>();
+    final List<Integer> rightKeys = new ArrayList<>();
+    final List<Boolean> filterNulls = new ArrayList<>();
+    final int leftCount = rel.getLeft().getRowType().getFieldCount();
+    for (int i = 0; i < leftKeyList.size(); i++) {
+      final int leftKey = leftKeyList.get(i);
+      final int rightKey = rightKeyList.get(i);
+      final RelDataType leftType = fieldType(rel.getLeft(), leftKey);
+      final RelDataType rightType = fieldType(rel.getRight(), rightKey);
+      if (SqlTypeUtil.equalSansNullability(typeFactory, leftType, rightType)
+          && isHashable(leftType)) {
+        leftKeys.add(leftKey);
+        rightKeys.add(rightKey);
+        filterNulls.add(filterNullList.get(i));
+      } else {
+        residuals.add(
+            rexBuilder.makeCall(
+                filterNullList.get(i)
+                    ? SqlStdOperatorTable.EQUALS
+                    : SqlStdOperatorTable.IS_NOT_DISTINCT_FROM,
+                rexBuilder.makeInputRef(leftType, leftKey),
+                rexBuilder.makeInputRef(rightType, leftCount + rightKey)));
+      }
+    }
+    this.leftKeys = Ints.toArray(leftKeys);
+    this.rightKeys = Ints.toArray(rightKeys);
+    this.filterNulls = new boolean[filterNulls.size()];
+    for (int i = 0; i < filterNulls.size(); i++) {
+      this.filterNulls[i] = filterNulls.get(i);
+    }
+    final RexNode residual =
+        RexUtil.composeConjunction(rexBuilder, residuals, false);
+    this.residual = residual.isAlwaysTrue()
+        ? null
+        : interpreter.compile(ImmutableList.of(residual),
+            interpreter.combinedRowType(rel.getInputs()));
+  }
+
+  private static RelDataType fieldType(RelNode input, int i) {
+    return input.getRowType().getFieldList().get(i).getType();
+  }
+
+  /** Returns whether values of a type are equal in SQL if and only if their
+   * Java values are equal. */
+  private static boolean isHashable(RelDataType type) {
+    final SqlTypeName typeName = type.getSqlTypeName();
+    return typeName != null
+        && typeName != SqlTypeName.DECIMAL
+        && !SqlTypeName.APPROX_TYPES.contains(typeName);
   }
 
   public void run() throws InterruptedException {
-    List<Row> rightList = null;
     final int leftCount = rel.getLeft().getRowType().getFieldCount();
     final int rightCount = rel.getRight().getRowType().getFieldCount();
-    context.values = new Object[rel.getRowType().getFieldCount()];
-    Row left;
+    final boolean semi = rel instanceof SemiJoin;
+    final boolean leftOuter = rel.getJoinType().generatesNullsOnRight();
+    final boolean rightOuter = rel.getJoinType().generatesNullsOnLeft();
+    context.values = new Object[leftCount + rightCount];
+
+    // Read the right input, and index it on its keys.
+    final List<Row> rightList = new ArrayList<>();
+    final Map<Object, List<Integer>> index = new HashMap<>();
     Row right;
+    while ((right = rightSource.receive()) != null) {
+      rightList.add(right);
+      if (leftKeys.length > 0) {
+        final Object key = key(right, rightKeys);
+        if (key != null) {
+          List<Integer> list = index.get(key);
+          if (list == null) {
+            list = new ArrayList<>(1);
+            index.put(key, list);
+          }
+          list.add(rightList.size() - 1);
+        }
+      }
+    }
+    final BitSet rightMatched = new BitSet(rightList.size());
+
+    Row left;
     while ((left = leftSource.receive()) != null) {
       System.arraycopy(left.getValues(), 0, context.values, 0, leftCount);
-      if (rightList == null) {
-        rightList = Lists.newArrayList();
-        while ((right = rightSource.receive()) != null) {
-          rightList.add(right);
-        }
+      final Iterable<Integer> candidates;
+      if (leftKeys.length == 0) {
+        candidates = ImmutableIntList.identity(rightList.size());
+      } else {
+        final Object key = key(left, leftKeys);
+        final List<Integer> list = key == null ? null : index.get(key);
+        candidates = list == null ? ImmutableList.<Integer>of() : list;
       }
-      for (Row right2 : rightList) {
+      boolean leftMatched = false;
+      for (int i : candidates) {
+        final Row right2 = rightList.get(i);
         System.arraycopy(right2.getValues(), 0, context.values, leftCount,
             rightCount);
-        final Boolean execute = (Boolean) condition.execute(context);
-        if (execute != null && execute) {
-          sink.send(Row.asCopy(context.values));
+        if (residual != null) {
+          final Boolean execute = (Boolean) residual.execute(context);
+          if (execute == null || !execute) {
+            continue;
+          }
         }
+        leftMatched = true;
+        if (semi) {
+          break;
+        }
+        rightMatched.set(i);
+        sink.send(Row.asCopy(context.values));
+      }
+      if (semi) {
+        if (leftMatched) {
+          sink.send(left);
+        }
+      } else if (!leftMatched && leftOuter) {
+        Arrays.fill(context.values, leftCount, leftCount + rightCount, null);
+        sink.send(Row.asCopy(context.values));
+      }
+    }
+
+    if (rightOuter) {
+      Arrays.fill(context.values, 0, leftCount, null);
+      for (int i = rightMatched.nextClearBit(0); i < rightList.size();
+           i = rightMatched.nextClearBit(i + 1)) {
+        System.arraycopy(rightList.get(i).getValues(), 0, context.values,
+            leftCount, rightCount);
+        sink.send(Row.asCopy(context.values));
+      }
+    }
+  }
+
+  /** Returns the key of a row, or null if the row cannot match any other
+   * row because a key field is null and nulls match nothing. */
+  private Object key(Row row, int[] keys) {
+    final Object[] values = row.getValues();
+    if (keys.length == 1) {
+      final Object value = values[keys[0]];
+      if (value == null) {
+        return filterNulls[0] ? null : NULL_KEY;
+      }
+      return value;
+    }
+    final Object[] key = new Object[keys.length];
+    for (int i = 0; i < keys.length; i++) {
+      key[i] = values[keys[i]];
+      if (key[i] == null && filterNulls[i]) {
+        return null;
       }
     }
+    return Arrays.asList(key);
   }
 }
 
@@ -16,7 +16,10 @@
  */
 package org.apache.calcite.interpreter;
 
+import org.apache.calcite.linq4j.Enumerator;
+import org.apache.calcite.rel.RelNode;
 import org.apache.calcite.rel.core.Aggregate;
+import org.apache.calcite.rel.core.Exchange;
 import org.apache.calcite.rel.core.Filter;
 import org.apache.calcite.rel.core.Join;
 import org.apache.calcite.rel.core.Project;
@@ -47,6 +50,10 @@ public void visit(Aggregate agg) {
       node = new AggregateNode(interpreter, agg);
     }
 
+    public void visit(Exchange exchange) {
+      node = new ExchangeNode(interpreter, exchange);
+    }
+
     public void visit(Filter filter) {
       node = new FilterNode(interpreter, filter);
     }
@@ -85,6 +92,63 @@ public void visit(Window window) {
       node = new WindowNode(interpreter, window);
     }
   }
+
+  /** Enumerator that reads the rows of a relational expression and
+   * transforms each, skipping those for which {@link #next(Row)} returns
+   * null.
+   *
+   * <p>Nodes that compute each output row from one input row, such as
+   * {@link FilterNode} and {@link ProjectNode}, use it to produce their output
+   * as it is read, rather than writing it to a {@link Sink}. */
+  abstract static class SourceEnumerator implements Enumerator<Row> {
+    private final Interpreter interpreter;
+    private final RelNode rel;
+    private Source source;
+    private Row current;
+
+    /** Creates a SourceEnumerator that reads the rows of a given relational
+     * expression. */
+    SourceEnumerator(Interpreter interpreter, RelNode rel) {
+      this.interpreter = interpreter;
+      this.rel = rel;
+      this.source = interpreter.output(rel);
+    }
+
+    /** Returns the output row for an input row, or null to skip it. */
+    protected abstract Row next(Row row);
+
+    public Row current() {
+      return current;
+    }
+
+    public boolean moveNext() {
+      Row row;
+      while ((row = source.receive()) != null) {
+        current = next(row);
+        if (current != null) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /** {@inheritDoc}
+     *
+     * <p>Reads the rows of the relational expression again. If they are
+     * computed as they are read, as by a table scan, they are computed
+     * again; if a node has written them to a buffer, and some have been read,
+     * throws {@link UnsupportedOperationException}, because a buffer can be
+     * read only once. */
+    public void reset() {
+      source.close();
+      source = interpreter.output(rel);
+      current = null;
+    }
+
+    public void close() {
+      source.close();
+    }
+  }
 }
 
 // End Nodes.java
@@ -16,33 +16,82 @@
  */
 package org.apache.calcite.interpreter;
 
+import org.apache.calcite.linq4j.AbstractEnumerable;
+import org.apache.calcite.linq4j.Enumerator;
+import org.apache.calcite.rel.RelNode;
 import org.apache.calcite.rel.core.Project;
 
 /**
  * Interpreter node that implements a
  * {@link org.apache.calcite.rel.core.Project}.
+ *
+ * <p>Rows are projected as the consumer reads them, so the node does not
+ * buffer its output. If the input is a {@link FilterNode}, the two are
+ * fused: this node reads the filter's input, and evaluates the condition and
+ * then the expressions of each row in one pass.
  */
-public class ProjectNode extends AbstractSingleNode<Project> {
+public class ProjectNode implements Node {
   private final Scalar scalar;
   private final Context context;
   private final int projectCount;
+  /** Whether the node that reads the rows does not keep them, so each
+   * enumerator can write every row into the same storage. */
+  private boolean reuseRows;
 
-  public ProjectNode(Interpreter interpreter, Project rel) {
-    super(interpreter, rel);
+  public ProjectNode(final Interpreter interpreter, final Project rel) {
     this.projectCount = rel.getProjects().size();
     this.scalar = interpreter.compile(rel.getProjects(),
         rel.getInput().getRowType());
     this.context = interpreter.createContext();
+
+    final RelNode input = interpreter.getInput(rel, 0);
+    final Node inputNode = interpreter.node(input);
+    final FilterNode filter =
+        inputNode instanceof FilterNode ? (FilterNode) inputNode : null;
+    final RelNode source =
+        filter != null ? interpreter.getInput(input, 0) : input;
+    // Each row is projected before the next is read
+    interpreter.transientInput(filter != null ? input : rel, 0);
+    interpreter.enumerable(rel,
+        new AbstractEnumerable<Row>() {
+          public Enumerator<Row> enumerator() {
+            return new Nodes.SourceEnumerator(interpreter, source) {
+              /** Row that is written again for each input row, if the
+               * reader does not keep rows. */
+              private Row output;
+
+              protected Row next(Row row) {
+                if (filter != null && !filter.accept(row)) {
+                  return null;
+                }
+                if (reuseRows && output == null) {
+                  output = new Row(new Object[projectCount]);
+                }
+                return project(row, output);
+              }
+            };
+          }
+        });
+  }
+
+  /** Tells this node that the node that reads its rows does not keep each
+   * row after it has read the next. */
+  void reuseRows() {
+    this.reuseRows = true;
+  }
+
+  /** Projects a row, writing the values into a given row, or into a new row
+   * if {@code output} is null. */
+  private Row project(Row row, Row output) {
+    context.values = row.getValues();
+    final Row result =
+        output != null ? output : new Row(new Object[projectCount]);
+    scalar.execute(context, result.getValues());
+    return result;
   }
 
   public void run() throws InterruptedException {
-    Row row;
-    while ((row = source.receive()) != null) {
-      context.values = row.getValues();
-      Object[] values = new Object[projectCount];
-      scalar.execute(context, values);
-      sink.send(new Row(values));
-    }
+    // nothing to do; rows are projected as they are read
   }
 }
 
@@ -16,9 +16,11 @@
  */
 package org.apache.calcite.interpreter;
 
+import org.apache.calcite.rel.RelCollation;
 import org.apache.calcite.rel.RelFieldCollation;
 import org.apache.calcite.rel.core.Sort;
 import org.apache.calcite.rex.RexLiteral;
+import org.apache.calcite.runtime.TopN;
 
 import com.google.common.base.Function;
 import com.google.common.collect.Iterables;
@@ -66,29 +68,36 @@ public void run() throws InterruptedException {
           sink.send(row);
         }
       }
+    } else if (fetch >= 0) {
+      // Keep only the first "offset + fetch" rows, in a bounded heap.
+      final TopN<Row> topN = new TopN<>(comparator(rel.getCollation()), offset, fetch);
+      while ((row = source.receive()) != null) {
+        topN.add(row);
+      }
+      for (Row r : topN.result()) {
+        sink.send(r);
+      }
     } else {
       // Build a sorted collection.
       final List<Row> list = Lists.newArrayList();
       while ((row = source.receive()) != null) {
         list.add(row);
       }
-      Collections.sort(list, comparator());
-      final int end = fetch < 0 || offset + fetch > list.size()
-          ? list.size()
-          : offset + fetch;
-      for (int i = offset; i < end; i++) {
+      Collections.sort(list, comparator(rel.getCollation()));
+      for (int i = offset; i < list.size(); i++) {
         sink.send(list.get(i));
       }
     }
     sink.end();
   }
 
-  private Comparator<Row> comparator() {
-    if (rel.getCollation().getFieldCollations().size() == 1) {
-      return comparator(rel.getCollation().getFieldCollations().get(0));
+  /** Returns a comparator that sorts rows by a collation. */
+  static Comparator<Row> comparator(RelCollation collation) {
+    if (collation.getFieldCollations().size() == 1) {
+      return comparator(collation.getFieldCollations().get(0));
     }
     return Ordering.compound(
-        Iterables.transform(rel.getCollation().getFieldCollations(),
+        Iterables.transform(collation.getFieldCollations(),
             new Function<RelFieldCollation, Comparator<? super Row>>() {
               public Comparator<? super Row> apply(RelFieldCollation input) {
                 return comparator(input);
@@ -96,7 +105,8 @@ public Comparator<? super Row> apply(RelFieldCollation input) {
             }));
   }
 
-  private Comparator<Row> comparator(RelFieldCollation fieldCollation) {
+  private static Comparator<Row> comparator(
+      RelFieldCollation fieldCollation) {
     final int nullComparison = fieldCollation.nullDirection.nullComparison;
     final int x = fieldCollation.getFieldIndex();
     switch (fieldCollation.direction) {
@@ -44,6 +44,7 @@
 import org.apache.calcite.materialize.Lattice;
 import org.apache.calcite.materialize.MaterializationService;
 import org.apache.calcite.prepare.CalciteCatalogReader;
+import org.apache.calcite.prepare.PlanCache;
 import org.apache.calcite.rel.RelNode;
 import org.apache.calcite.rel.type.RelDataTypeSystem;
 import org.apache.calcite.runtime.Hook;
@@ -94,6 +95,9 @@
   final CalciteSchema rootSchema;
   final Function0<CalcitePrepare> prepareFactory;
   final CalciteServer server = new CalciteServerImpl();
+  /** Cache of prepared statements, or null if
+   * {@link CalciteConnectionConfig#planCacheMaxSize()} is 0. */
+  private final PlanCache planCache;
 
   // must be package-protected
   static final Trojan TROJAN = createTrojan();
@@ -128,6 +132,9 @@ protected CalciteConnectionImpl(Driver driver, AvaticaFactory factory,
             ? rootSchema
             : CalciteSchema.createRootSchema(true));
     Preconditions.checkArgument(this.rootSchema.isRoot(), "must be root schema");
+    this.planCache = cfg.planCacheMaxSize() > 0
+        ? new PlanCache(this.rootSchema, cfg.planCacheMaxSize())
+        : null;
     this.properties.put(InternalProperty.CASE_SENSITIVE, cfg.caseSensitive());
     this.properties.put(InternalProperty.UNQUOTED_CASING, cfg.unquotedCasing());
     this.properties.put(InternalProperty.QUOTED_CASING, cfg.quotedCasing());
@@ -218,6 +225,10 @@ <T> CalcitePrepare.CalciteSignature<T> parseQuery(
     CalcitePrepare.Dummy.push(prepareContext);
     try {
       final CalcitePrepare prepare = prepareFactory.apply();
+      if (planCache != null && query.sql != null) {
+        return planCache.prepare(prepare, prepareContext, query.sql,
+            maxRowCount);
+      }
       return prepare.prepareSql(prepareContext, query, Object[].class,
           maxRowCount);
     } finally {
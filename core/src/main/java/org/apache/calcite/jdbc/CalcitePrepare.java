@@ -365,6 +365,10 @@ public Enumerable<T> enumerable(DataContext dataContext) {
     public List<RelCollation> getCollationList() {
       return collationList;
     }
+
+    public Bindable<T> getBindable() {
+      return bindable;
+    }
   }
 
   /** A union type of the three possible ways of expressing a query: as a SQL
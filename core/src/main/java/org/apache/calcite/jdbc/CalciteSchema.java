@@ -46,6 +46,7 @@
 import java.util.NavigableMap;
 import java.util.NavigableSet;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Schema.
@@ -66,6 +67,9 @@ public abstract class CalciteSchema {
   protected final NameMap<FunctionEntry> nullaryFunctionMap;
   protected final NameMap<CalciteSchema> subSchemaMap;
   private List<? extends List<String>> path;
+  /** Number of changes made to this schema and its descendants. Only the
+   * root schema's counter is used; see {@link #getModCount()}. */
+  private final AtomicLong modCount = new AtomicLong();
 
   protected CalciteSchema(CalciteSchema parent, Schema schema,
       String name, NameMap<CalciteSchema> subSchemaMap,
@@ -168,6 +172,7 @@ public TableEntry add(String tableName, Table table,
     final TableEntryImpl entry =
         new TableEntryImpl(this, tableName, table, sqls);
     tableMap.put(tableName, entry);
+    changed();
     return entry;
   }
 
@@ -179,6 +184,7 @@ private FunctionEntry add(String name, Function function) {
     if (function.getParameters().isEmpty()) {
       nullaryFunctionMap.put(name, entry);
     }
+    changed();
     return entry;
   }
 
@@ -188,9 +194,25 @@ private LatticeEntry add(String name, Lattice lattice) {
     }
     final LatticeEntryImpl entry = new LatticeEntryImpl(this, name, lattice);
     latticeMap.put(name, entry);
+    changed();
     return entry;
   }
 
+  /** Records that an object has been explicitly added to this schema, or
+   * that its path has changed. */
+  protected void changed() {
+    root().modCount.incrementAndGet();
+  }
+
+  /** Returns the number of changes made to the tree of schemas that contains
+   * this schema. The value increases whenever a table, function, lattice or
+   * sub-schema is explicitly added to any schema in the tree, so that callers
+   * that cache information derived from the schema, such as prepared
+   * statements, can tell whether it is stale. */
+  public long getModCount() {
+    return root().modCount.get();
+  }
+
   public CalciteSchema root() {
     for (CalciteSchema schema = this;;) {
       if (schema.parent == null) {
@@ -604,6 +626,7 @@ public <T> T unwrap(Class<T> clazz) {
 
     public void setPath(ImmutableList<ImmutableList<String>> path) {
       CalciteSchema.this.path = path;
+      changed();
     }
 
     public void add(String name, Table table) {
@@ -27,6 +27,7 @@
 
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.LinkedHashMultimap;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Ordering;
 
@@ -352,6 +353,7 @@ void addMatch(VolcanoRuleMatch match) {
 
       matchList.matchMap.put(
           planner.getSubset(match.rels[0]), match);
+      matchList.rootMatches.put(match.rels[0], match);
     }
   }
 
@@ -483,6 +485,10 @@ VolcanoRuleMatch popMatch(VolcanoPlannerPhase phase) {
         match = matchList.remove(bestPos);
       }
 
+      if (!phaseMatchList.rootMatches.remove(match.rels[0], match)) {
+        // Already popped by popMatch(VolcanoPlannerPhase, RelSet)
+        continue;
+      }
       if (skipMatch(match)) {
         LOGGER.debug("Skip match: {}", match);
       } else {
@@ -502,6 +508,52 @@ VolcanoRuleMatch popMatch(VolcanoPlannerPhase phase) {
     return match;
   }
 
+  /**
+   * Removes a rule match whose root operand is a relational expression in a
+   * given set, and returns it; or returns null if there is no such match.
+   *
+   * <p>Used by {@link TopDownOptimizer}, which explores one set at a time,
+   * and does not consider importance.
+   */
+  VolcanoRuleMatch popMatch(VolcanoPlannerPhase phase, RelSet set) {
+    final PhaseMatchList phaseMatchList = matchListMap.get(phase);
+    if (phaseMatchList == null) {
+      throw new AssertionError("Used match list for phase " + phase
+          + " after phase complete");
+    }
+    for (RelNode rel : set.rels) {
+      final Iterator<VolcanoRuleMatch> iterator =
+          phaseMatchList.rootMatches.get(rel).iterator();
+      while (iterator.hasNext()) {
+        final VolcanoRuleMatch match = iterator.next();
+        iterator.remove();
+        if (skipMatch(match)) {
+          LOGGER.debug("Skip match: {}", match);
+          continue;
+        }
+        match.recomputeDigest();
+        phaseMatchList.matchMap.remove(
+            planner.getSubset(match.rels[0]), match);
+        LOGGER.debug("Pop match: {}", match);
+        return match;
+      }
+    }
+    return null;
+  }
+
+  /** Returns whether there is a rule match whose root operand is a
+   * relational expression in a given set. Does not check whether the match
+   * would be skipped. */
+  boolean hasMatch(VolcanoPlannerPhase phase, RelSet set) {
+    final PhaseMatchList phaseMatchList = matchListMap.get(phase);
+    for (RelNode rel : set.rels) {
+      if (phaseMatchList.rootMatches.containsKey(rel)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   /** Returns whether to skip a match. This happens if any of the
    * {@link RelNode}s have importance zero. */
   private boolean skipMatch(VolcanoRuleMatch match) {
@@ -689,6 +741,14 @@ private static class PhaseMatchList {
     final Multimap<RelSubset, VolcanoRuleMatch> matchMap =
         HashMultimap.create();
 
+    /**
+     * Multi-map from the relational expression that matches the root operand
+     * of a rule to the VolcanoRuleMatches in {@link #list}. A match that is
+     * not in this map has already been popped.
+     */
+    final Multimap<RelNode, VolcanoRuleMatch> rootMatches =
+        LinkedHashMultimap.create();
+
     PhaseMatchList(VolcanoPlannerPhase phase) {
       this.phase = phase;
     }
@@ -697,6 +757,7 @@ void clear() {
       list.clear();
       names.clear();
       matchMap.clear();
+      rootMatches.clear();
     }
   }
 }
@@ -0,0 +1,197 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.plan.volcano;
+
+import org.apache.calcite.plan.RelOptCost;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.metadata.RelMetadataQuery;
+import org.apache.calcite.util.Pair;
+import org.apache.calcite.util.trace.CalciteTrace;
+
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Drives a {@link VolcanoPlanner} top-down, in the style of the Cascades
+ * framework, rather than by the importance of rule matches.
+ *
+ * <p>To optimize a {@link RelSubset}, the optimizer fires the rule matches
+ * whose root operand is in the subset's {@link RelSet}, then, for each
+ * relational expression in the subset, in increasing order of its own cost,
+ * optimizes the subsets that are its inputs. The cheapest plan found so far
+ * is an upper bound: an expression whose own cost is not less than the bound
+ * is pruned, and each input is optimized with the bound that remains after
+ * the expression and its previous inputs, so whole sub-trees that cannot
+ * improve on the best plan are never explored. If optimizing the inputs
+ * created new rule matches in the set, it repeats.
+ *
+ * <p>Rules, sets, subsets and costs are those of the planner; the optimizer
+ * only chooses which rule matches to fire, and in what order. The cost of
+ * each subset's best plan is maintained by the planner, as usual, when
+ * relational expressions are registered.
+ *
+ * <p>Each subset is optimized once for a given bound. A later request with a
+ * higher bound optimizes it again, unless the earlier request found a plan,
+ * in which case that plan is the best. A subset that is an input of itself
+ * is not optimized while it is being optimized.
+ */
+class TopDownOptimizer {
+  private static final Logger LOGGER = CalciteTrace.getPlannerTracer();
+
+  private final VolcanoPlanner planner;
+  private final VolcanoPlannerPhase phase;
+
+  /** Subsets that have been optimized, and the bound that each was
+   * optimized with. */
+  private final Map<RelSubset, RelOptCost> optimized = new HashMap<>();
+
+  /** Subsets that are being optimized. */
+  private final Set<RelSubset> active = new HashSet<>();
+
+  private int fireCount;
+  private int pruneCount;
+
+  TopDownOptimizer(VolcanoPlanner planner, VolcanoPlannerPhase phase) {
+    this.planner = planner;
+    this.phase = phase;
+  }
+
+  /** Optimizes the root subset, with no bound. */
+  void optimize(RelSubset root) {
+    optimize(root, planner.getCostFactory().makeInfiniteCost());
+    LOGGER.debug("Top-down optimization of phase {}: fired {} rule matches, "
+        + "pruned {} alternatives; cost {}", phase, fireCount, pruneCount,
+        planner.canonize(root).bestCost);
+  }
+
+  /** Optimizes a subset, and returns the cost of its best plan. The cost is
+   * not less than {@code upperBound} if there is no plan cheaper than the
+   * bound. */
+  private RelOptCost optimize(RelSubset subset, RelOptCost upperBound) {
+    subset = planner.canonize(subset);
+    if (active.contains(subset)) {
+      return subset.bestCost;
+    }
+    final RelOptCost previousBound = optimized.get(subset);
+    if (previousBound != null
+        && (subset.bestCost.isLt(previousBound)
+            || upperBound.isLe(previousBound))
+        && !planner.ruleQueue.hasMatch(phase, subset.set)) {
+      return subset.bestCost;
+    }
+    final RelSubset activeSubset = subset;
+    active.add(activeSubset);
+    try {
+      for (;;) {
+        explore(subset.set);
+        subset = planner.canonize(subset);
+        // The bound tightens only with plans whose inputs have been
+        // optimized; the subset's current best plan may not be one of them.
+        RelOptCost bound = upperBound;
+        for (Pair<RelNode, RelOptCost> pair : alternatives(subset)) {
+          final RelOptCost cost = optimizeInputs(pair.left, pair.right, bound);
+          if (cost.isLt(bound)) {
+            bound = cost;
+          }
+        }
+        subset = planner.canonize(subset);
+        if (!planner.ruleQueue.hasMatch(phase, subset.set)) {
+          break;
+        }
+      }
+      optimized.put(subset, upperBound);
+      return subset.bestCost;
+    } finally {
+      active.remove(activeSubset);
+    }
+  }
+
+  /** Fires every rule match whose root operand is in a set, including those
+   * created by firing the others. */
+  private void explore(RelSet set) {
+    for (;;) {
+      final VolcanoRuleMatch match = planner.ruleQueue.popMatch(phase, set);
+      if (match == null) {
+        return;
+      }
+      assert match.getRule().matches(match);
+      match.onMatch();
+      ++fireCount;
+      while (set.equivalentSet != null) {
+        set = set.equivalentSet;
+      }
+    }
+  }
+
+  /** Returns the implementable relational expressions in a subset, and the
+   * cost of each, not including its inputs, cheapest first. */
+  private List<Pair<RelNode, RelOptCost>> alternatives(RelSubset subset) {
+    final RelMetadataQuery mq = subset.getCluster().getMetadataQuery();
+    final List<Pair<RelNode, RelOptCost>> list = new ArrayList<>();
+    for (RelNode rel : subset.getRelList()) {
+      final RelOptCost cost = planner.getSelfCost(rel, mq);
+      if (!cost.isInfinite()) {
+        list.add(Pair.of(rel, cost));
+      }
+    }
+    Collections.sort(list,
+        new Comparator<Pair<RelNode, RelOptCost>>() {
+          public int compare(Pair<RelNode, RelOptCost> o1,
+              Pair<RelNode, RelOptCost> o2) {
+            return o1.right.isLt(o2.right) ? -1
+                : o2.right.isLt(o1.right) ? 1
+                : 0;
+          }
+        });
+    return list;
+  }
+
+  /** Optimizes the inputs of a relational expression, and returns its
+   * cumulative cost; or a cost not less than {@code bound} if the
+   * expression cannot be cheaper than the bound, in which case the
+   * remaining inputs are not optimized. */
+  private RelOptCost optimizeInputs(RelNode rel, RelOptCost selfCost,
+      RelOptCost bound) {
+    RelOptCost cost = selfCost;
+    if (!cost.isLt(bound)) {
+      ++pruneCount;
+      return cost;
+    }
+    for (RelNode input : rel.getInputs()) {
+      final RelSubset inputSubset = planner.getSubset(input);
+      if (inputSubset == null) {
+        continue;
+      }
+      cost = cost.plus(optimize(inputSubset, bound.minus(cost)));
+      if (!cost.isLt(bound)) {
+        ++pruneCount;
+        return cost;
+      }
+    }
+    return cost;
+  }
+}
+
+// End TopDownOptimizer.java
@@ -131,6 +131,19 @@ public class VolcanoPlanner extends AbstractRelOptPlanner {
    */
   protected boolean impatient = false;
 
+  /**
+   * If true, the planner is driven top-down by a {@link TopDownOptimizer}
+   * rather than by the importance of the matches in the rule queue.
+   *
+   * <p>Starting at the root, it fires the rules whose matches are rooted in
+   * a subset's set, then optimizes the inputs of each relational expression
+   * in the subset, passing down an upper bound on cost; alternatives that
+   * cannot beat the best plan found so far are pruned, and the rules that
+   * would have explored their inputs are never fired. If this does not find
+   * an implementable plan, the planner carries on as if it were false.
+   */
+  protected boolean topDownOpt = false;
+
   /**
    * Operands that apply to a given class of {@link RelNode}.
    *
@@ -594,6 +607,15 @@ public RelNode findBestExp() {
     for (VolcanoPlannerPhase phase : VolcanoPlannerPhase.values()) {
       setInitialImportance();
 
+      if (topDownOpt) {
+        new TopDownOptimizer(this, phase).optimize(root);
+        root = canonize(root);
+        if (!root.bestCost.isInfinite()) {
+          ruleQueue.phaseCompleted(phase);
+          continue;
+        }
+      }
+
       RelOptCost targetCost = costFactory.makeHugeCost();
       int tick = 0;
       int firstFiniteTick = -1;
@@ -950,6 +972,22 @@ public RelOptCost getCost(RelNode rel, RelMetadataQuery mq) {
     if (rel instanceof RelSubset) {
       return ((RelSubset) rel).bestCost;
     }
+    if (rel.getTraitSet().getTrait(ConventionTraitDef.INSTANCE)
+        == Convention.NONE) {
+      return costFactory.makeInfiniteCost();
+    }
+    RelOptCost cost = getSelfCost(rel, mq);
+    for (RelNode input : rel.getInputs()) {
+      cost = cost.plus(getCost(input, mq));
+    }
+    return cost;
+  }
+
+  /**
+   * Returns the cost of a relational expression, not including the cost of
+   * its inputs. It is infinite if the expression has no calling convention.
+   */
+  RelOptCost getSelfCost(RelNode rel, RelMetadataQuery mq) {
     if (rel.getTraitSet().getTrait(ConventionTraitDef.INSTANCE)
         == Convention.NONE) {
       return costFactory.makeInfiniteCost();
@@ -959,9 +997,6 @@ public RelOptCost getCost(RelNode rel, RelMetadataQuery mq) {
       // cost must be positive, so nudge it
       cost = costFactory.makeTinyCost();
     }
-    for (RelNode input : rel.getInputs()) {
-      cost = cost.plus(getCost(input, mq));
-    }
     return cost;
   }
 
@@ -1327,7 +1362,7 @@ void reregister(
    * @param subset Subset
    * @return Leader of subset's equivalence class
    */
-  private RelSubset canonize(final RelSubset subset) {
+  RelSubset canonize(final RelSubset subset) {
     if (subset.set.equivalentSet == null) {
       return subset;
     }
@@ -1758,6 +1793,16 @@ public void setLocked(boolean locked) {
     this.locked = locked;
   }
 
+  /**
+   * Sets whether the planner is driven top-down, with branch-and-bound
+   * pruning, rather than by the importance of rule matches.
+   *
+   * @param topDownOpt Whether to optimize top-down
+   */
+  public void setTopDownOpt(boolean topDownOpt) {
+    this.topDownOpt = topDownOpt;
+  }
+
   public void ensureRegistered(
       RelNode rel,
       RelNode equivRel,
@@ -199,6 +199,7 @@ public class CalcitePrepareImpl implements CalcitePrepare {
       ImmutableList.of(
           EnumerableRules.ENUMERABLE_JOIN_RULE,
           EnumerableRules.ENUMERABLE_MERGE_JOIN_RULE,
+          EnumerableRules.ENUMERABLE_BAND_JOIN_RULE,
           EnumerableRules.ENUMERABLE_SEMI_JOIN_RULE,
           EnumerableRules.ENUMERABLE_CORRELATE_RULE,
           EnumerableRules.ENUMERABLE_PROJECT_RULE,
@@ -206,6 +207,8 @@ public class CalcitePrepareImpl implements CalcitePrepare {
           EnumerableRules.ENUMERABLE_AGGREGATE_RULE,
           EnumerableRules.ENUMERABLE_SORT_RULE,
           EnumerableRules.ENUMERABLE_LIMIT_RULE,
+          EnumerableRules.ENUMERABLE_TOP_N_RULE,
+          EnumerableRules.ENUMERABLE_APPROX_TOP_N_RULE,
           EnumerableRules.ENUMERABLE_COLLECT_RULE,
           EnumerableRules.ENUMERABLE_UNCOLLECT_RULE,
           EnumerableRules.ENUMERABLE_UNION_RULE,
@@ -524,6 +527,7 @@ protected RelOptPlanner createPlanner(
     }
     final VolcanoPlanner planner =
         new VolcanoPlanner(costFactory, externalContext);
+    planner.setTopDownOpt(prepareContext.config().topDownOpt());
     planner.addRelTraitDef(ConventionTraitDef.INSTANCE);
     if (ENABLE_COLLATION_TRAIT) {
       planner.addRelTraitDef(RelCollationTraitDef.INSTANCE);
@@ -1259,7 +1263,7 @@ protected SqlValidator createSqlValidator(CatalogReader catalogReader) {
         try {
           CatalogReader.THREAD_LOCAL.set(catalogReader);
           bindable = EnumerableInterpretable.toBindable(internalParameters,
-              context.spark(), enumerable, prefer);
+              context.spark(), enumerable, prefer, context.config());
         } finally {
           CatalogReader.THREAD_LOCAL.remove();
         }
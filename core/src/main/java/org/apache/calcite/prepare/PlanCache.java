@@ -0,0 +1,438 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.prepare;
+
+import org.apache.calcite.avatica.AvaticaParameter;
+import org.apache.calcite.config.CalciteConnectionConfig;
+import org.apache.calcite.jdbc.CalcitePrepare;
+import org.apache.calcite.jdbc.CalciteSchema;
+import org.apache.calcite.runtime.Bindable;
+import org.apache.calcite.runtime.Hook;
+import org.apache.calcite.runtime.Utilities;
+import org.apache.calcite.sql.SqlCall;
+import org.apache.calcite.sql.SqlCharStringLiteral;
+import org.apache.calcite.sql.SqlDynamicParam;
+import org.apache.calcite.sql.SqlIdentifier;
+import org.apache.calcite.sql.SqlKind;
+import org.apache.calcite.sql.SqlLiteral;
+import org.apache.calcite.sql.SqlNode;
+import org.apache.calcite.sql.SqlNumericLiteral;
+import org.apache.calcite.sql.parser.SqlParseException;
+import org.apache.calcite.sql.parser.SqlParser;
+import org.apache.calcite.sql.parser.SqlParserImplFactory;
+import org.apache.calcite.sql.parser.SqlParserPos;
+import org.apache.calcite.sql.parser.SqlParserUtil;
+import org.apache.calcite.sql.type.SqlTypeName;
+import org.apache.calcite.sql.util.SqlBasicVisitor;
+import org.apache.calcite.util.NlsString;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Cache of prepared statements for a connection.
+ *
+ * <p>Before a statement is prepared, literals that are compared to columns
+ * (for example {@code 10} in {@code WHERE deptno = 10}) are replaced by
+ * dynamic parameters. The statement is prepared once for each such
+ * "normalized" SQL string, and subsequent statements that differ only in
+ * the values of those literals re-use the plan and generated code, supplying
+ * the literal values as internal parameters when the statement is executed.
+ *
+ * <p>Statements that cannot be normalized (because they already contain
+ * dynamic parameters, or because a literal cannot be converted to the type
+ * that the validator deduced for its parameter) are cached by their SQL
+ * text.
+ *
+ * <p>The key of each entry includes the modification count of the
+ * connection's root schema (see {@link CalciteSchema#getModCount()}), so
+ * entries become unreachable when a table, function or schema is added.
+ * DDL statements are never cached, and they empty the cache.
+ *
+ * <p>The connection's configuration is fixed, so it is not part of the key.
+ */
+public class PlanCache {
+  private final CalciteSchema rootSchema;
+  private final Cache<Key, Entry> cache;
+
+  /** Creates a PlanCache.
+   *
+   * @param rootSchema Root schema of the connection (not a snapshot)
+   * @param maxSize Maximum number of entries
+   */
+  public PlanCache(CalciteSchema rootSchema, int maxSize) {
+    this.rootSchema = Preconditions.checkNotNull(rootSchema);
+    this.cache = CacheBuilder.newBuilder()
+        .maximumSize(maxSize)
+        .recordStats()
+        .build();
+  }
+
+  /** Removes all entries. */
+  public void invalidateAll() {
+    cache.invalidateAll();
+  }
+
+  /** Prepares a SQL statement, re-using a previously prepared statement of
+   * the same shape if possible.
+   *
+   * <p>Calls {@link Hook#PLAN_CACHE} with the statistics of the cache after
+   * each lookup. */
+  public <T> CalcitePrepare.CalciteSignature<T> prepare(
+      CalcitePrepare prepare, CalcitePrepare.Context context, String sql,
+      long maxRowCount) {
+    final CalciteConnectionConfig config = context.config();
+    final SqlNode sqlNode;
+    try {
+      sqlNode = parse(config, sql);
+    } catch (SqlParseException e) {
+      // Let the regular path report the error
+      return prepare(prepare, context, sql, maxRowCount, false);
+    }
+    final SqlKind kind = sqlNode.getKind();
+    if (kind.belongsTo(SqlKind.DDL)) {
+      cache.invalidateAll();
+      return prepare(prepare, context, sql, maxRowCount, false);
+    }
+    if (config.spark()
+        || !(kind.belongsTo(SqlKind.QUERY) || kind.belongsTo(SqlKind.DML))) {
+      return prepare(prepare, context, sql, maxRowCount, false);
+    }
+
+    final LiteralFinder finder = new LiteralFinder();
+    sqlNode.accept(finder);
+    final List<SqlLiteral> literals = finder.literals();
+    if (!finder.dynamicParam && !literals.isEmpty()) {
+      final String normalizedSql = normalize(sql, literals);
+      if (normalizedSql != null) {
+        final Key key = key(context, normalizedSql, maxRowCount);
+        Entry entry = lookup(key);
+        if (entry == null) {
+          CalcitePrepare.CalciteSignature<Object> signature;
+          try {
+            signature = prepare.prepareSql(context,
+                CalcitePrepare.Query.<Object>of(normalizedSql),
+                Object[].class, maxRowCount);
+          } catch (RuntimeException e) {
+            // Replacing literals made the statement invalid, perhaps because
+            // a parameter's type cannot be deduced. Remember, so that we do
+            // not try again.
+            signature = null;
+          }
+          entry = new Entry(signature);
+          cache.put(key, entry);
+        }
+        if (entry.signature != null
+            && entry.signature.parameters.size() == literals.size()) {
+          final Map<String, Object> values = new LinkedHashMap<>();
+          for (int i = 0; i < literals.size(); i++) {
+            final Object value =
+                toLocal(literals.get(i), entry.signature.parameters.get(i));
+            if (value == null) {
+              break;
+            }
+            values.put("?" + i, value);
+          }
+          if (values.size() == literals.size()) {
+            return copy(entry.signature, context, sql,
+                ImmutableList.<AvaticaParameter>of(), values, maxRowCount);
+          }
+        }
+      }
+    }
+    return prepare(prepare, context, sql, maxRowCount, true);
+  }
+
+  /** Prepares a statement without replacing literals, using a cached
+   * statement with the same SQL text if {@code useCache}. */
+  private <T> CalcitePrepare.CalciteSignature<T> prepare(
+      CalcitePrepare prepare, CalcitePrepare.Context context, String sql,
+      long maxRowCount, boolean useCache) {
+    if (!useCache) {
+      return prepare.prepareSql(context, CalcitePrepare.Query.<T>of(sql),
+          Object[].class, maxRowCount);
+    }
+    final Key key = key(context, sql, maxRowCount);
+    Entry entry = lookup(key);
+    if (entry == null || entry.signature == null) {
+      // If the signature is null, the SQL was the normalized form of another
+      // statement and could not be prepared; preparing again will throw.
+      entry = new Entry(
+          prepare.prepareSql(context, CalcitePrepare.Query.<Object>of(sql),
+              Object[].class, maxRowCount));
+      cache.put(key, entry);
+    }
+    return copy(entry.signature, context, sql, entry.signature.parameters,
+        ImmutableMap.<String, Object>of(), maxRowCount);
+  }
+
+  private Entry lookup(Key key) {
+    final Entry entry = cache.getIfPresent(key);
+    Hook.PLAN_CACHE.run(cache.stats());
+    return entry;
+  }
+
+  private Key key(CalcitePrepare.Context context, String sql,
+      long maxRowCount) {
+    return new Key(sql, rootSchema.getModCount(),
+        context.getDefaultSchemaPath(), maxRowCount);
+  }
+
+  /** Creates a signature for a statement from a cached signature. */
+  @SuppressWarnings("unchecked")
+  private static <T> CalcitePrepare.CalciteSignature<T> copy(
+      CalcitePrepare.CalciteSignature<Object> signature,
+      CalcitePrepare.Context context, String sql,
+      List<AvaticaParameter> parameters, Map<String, Object> values,
+      long maxRowCount) {
+    final Map<String, Object> internalParameters =
+        new LinkedHashMap<>(signature.internalParameters);
+    internalParameters.putAll(values);
+    return new CalcitePrepare.CalciteSignature<>(sql, parameters,
+        internalParameters, signature.rowType, signature.columns,
+        signature.cursorFactory, context.getRootSchema(),
+        signature.getCollationList(), maxRowCount,
+        (Bindable<T>) copy(signature.getBindable()),
+        signature.statementType);
+  }
+
+  /** Returns a bindable that computes the same results as a given bindable
+   * and can be bound at the same time.
+   *
+   * <p>Classes generated from enumerable plans store the
+   * {@link org.apache.calcite.DataContext} in a field while they are being
+   * bound, so we create a new instance; other bindables are re-used. */
+  private static Bindable copy(Bindable bindable) {
+    if (bindable instanceof Utilities) {
+      try {
+        return bindable.getClass().getConstructor().newInstance();
+      } catch (ReflectiveOperationException e) {
+        throw new RuntimeException(e);
+      }
+    }
+    return bindable;
+  }
+
+  private static SqlNode parse(CalciteConnectionConfig config, String sql)
+      throws SqlParseException {
+    final SqlParser.ConfigBuilder parserConfig = SqlParser.configBuilder()
+        .setQuotedCasing(config.quotedCasing())
+        .setUnquotedCasing(config.unquotedCasing())
+        .setQuoting(config.quoting())
+        .setConformance(config.conformance())
+        .setCaseSensitive(config.caseSensitive());
+    final SqlParserImplFactory parserFactory =
+        config.parserFactory(SqlParserImplFactory.class, null);
+    if (parserFactory != null) {
+      parserConfig.setParserFactory(parserFactory);
+    }
+    return SqlParser.create(sql, parserConfig.build()).parseStmt();
+  }
+
+  /** Replaces each literal in a SQL string with "?"; returns null if the
+   * text at the position of a literal does not look like that literal. */
+  private static String normalize(String sql, List<SqlLiteral> literals) {
+    final StringBuilder buf = new StringBuilder();
+    int end = 0;
+    for (SqlLiteral literal : literals) {
+      final SqlParserPos pos = literal.getParserPosition();
+      final int start = SqlParserUtil.lineColToIndex(sql,
+          pos.getLineNum(), pos.getColumnNum());
+      if (start < end) {
+        return null;
+      }
+      final int literalEnd = SqlParserUtil.lineColToIndex(sql,
+          pos.getEndLineNum(), pos.getEndColumnNum()) + 1;
+      if (literalEnd > sql.length()
+          || !matches(literal, sql.substring(start, literalEnd))) {
+        return null;
+      }
+      buf.append(sql, end, start).append('?');
+      end = literalEnd;
+    }
+    buf.append(sql, end, sql.length());
+    return buf.toString();
+  }
+
+  /** Returns whether a piece of SQL text is the source of a literal.
+   * Character literals with a prefix, such as {@code N'abc'} or
+   * {@code _ISO-8859-1'abc'}, do not match. */
+  private static boolean matches(SqlLiteral literal, String text) {
+    if (literal instanceof SqlCharStringLiteral) {
+      return text.startsWith("'") && text.endsWith("'");
+    }
+    try {
+      return new BigDecimal(text).compareTo(literal.bigDecimalValue()) == 0;
+    } catch (NumberFormatException e) {
+      return false;
+    }
+  }
+
+  /** Converts a literal to the Java value that a dynamic parameter of a given
+   * type would have at run time; returns null if the value cannot be
+   * represented exactly. */
+  private static Object toLocal(SqlLiteral literal,
+      AvaticaParameter parameter) {
+    final SqlTypeName typeName =
+        SqlTypeName.getNameForJdbcType(parameter.parameterType);
+    if (typeName == null) {
+      return null;
+    }
+    if (literal instanceof SqlCharStringLiteral) {
+      switch (typeName) {
+      case CHAR:
+      case VARCHAR:
+        return ((NlsString) literal.getValue()).getValue();
+      default:
+        return null;
+      }
+    }
+    final BigDecimal value = literal.bigDecimalValue();
+    try {
+      switch (typeName) {
+      case TINYINT:
+        return value.byteValueExact();
+      case SMALLINT:
+        return value.shortValueExact();
+      case INTEGER:
+        return value.intValueExact();
+      case BIGINT:
+        return value.longValueExact();
+      case DECIMAL:
+        return value;
+      case FLOAT:
+      case DOUBLE:
+        final double d = value.doubleValue();
+        return new BigDecimal(d).compareTo(value) == 0 ? d : null;
+      default:
+        return null;
+      }
+    } catch (ArithmeticException e) {
+      return null;
+    }
+  }
+
+  /** Visitor that finds literals that can be replaced with dynamic
+   * parameters, and whether the statement already contains dynamic
+   * parameters.
+   *
+   * <p>A literal can be replaced if it is an exact numeric or a character
+   * string literal, and is being compared to an identifier, so that the
+   * validator can deduce the type of the parameter. */
+  private static class LiteralFinder extends SqlBasicVisitor<Void> {
+    private final List<SqlLiteral> literals = new ArrayList<>();
+    boolean dynamicParam;
+
+    @Override public Void visit(SqlDynamicParam param) {
+      dynamicParam = true;
+      return null;
+    }
+
+    @Override public Void visit(SqlCall call) {
+      if (call.getKind().belongsTo(SqlKind.COMPARISON)
+          && call.getKind() != SqlKind.IN
+          && call.operandCount() == 2) {
+        for (int i = 0; i < 2; i++) {
+          final SqlNode operand = call.operand(i);
+          if (call.operand(1 - i) instanceof SqlIdentifier
+              && isReplaceable(operand)) {
+            literals.add((SqlLiteral) operand);
+          }
+        }
+      }
+      return super.visit(call);
+    }
+
+    private static boolean isReplaceable(SqlNode node) {
+      if (node instanceof SqlNumericLiteral) {
+        return ((SqlNumericLiteral) node).isExact();
+      }
+      return node instanceof SqlCharStringLiteral;
+    }
+
+    /** Returns the literals in the order they occur in the SQL text. */
+    List<SqlLiteral> literals() {
+      final List<SqlLiteral> list = new ArrayList<>(literals);
+      Collections.sort(list,
+          new Comparator<SqlLiteral>() {
+            public int compare(SqlLiteral o1, SqlLiteral o2) {
+              final SqlParserPos p1 = o1.getParserPosition();
+              final SqlParserPos p2 = o2.getParserPosition();
+              int c = Integer.compare(p1.getLineNum(), p2.getLineNum());
+              if (c == 0) {
+                c = Integer.compare(p1.getColumnNum(), p2.getColumnNum());
+              }
+              return c;
+            }
+          });
+      return list;
+    }
+  }
+
+  /** Key of an entry in the cache. */
+  private static class Key {
+    final String sql;
+    final long modCount;
+    final List<String> defaultSchemaPath;
+    final long maxRowCount;
+
+    Key(String sql, long modCount, List<String> defaultSchemaPath,
+        long maxRowCount) {
+      this.sql = sql;
+      this.modCount = modCount;
+      this.defaultSchemaPath = ImmutableList.copyOf(defaultSchemaPath);
+      this.maxRowCount = maxRowCount;
+    }
+
+    @Override public int hashCode() {
+      return Objects.hash(sql, modCount, defaultSchemaPath, maxRowCount);
+    }
+
+    @Override public boolean equals(Object obj) {
+      return obj == this
+          || obj instanceof Key
+          && sql.equals(((Key) obj).sql)
+          && modCount == ((Key) obj).modCount
+          && defaultSchemaPath.equals(((Key) obj).defaultSchemaPath)
+          && maxRowCount == ((Key) obj).maxRowCount;
+    }
+  }
+
+  /** Entry in the cache. The signature is null if the normalized statement
+   * could not be prepared. */
+  private static class Entry {
+    final CalcitePrepare.CalciteSignature<Object> signature;
+
+    Entry(CalcitePrepare.CalciteSignature<Object> signature) {
+      this.signature = signature;
+    }
+  }
+}
+
+// End PlanCache.java
@@ -28,6 +28,7 @@
 import org.apache.calcite.rel.RelNode;
 import org.apache.calcite.rel.core.Filter;
 import org.apache.calcite.rel.core.Join;
+import org.apache.calcite.rel.core.JoinRelType;
 import org.apache.calcite.rel.core.Project;
 import org.apache.calcite.rel.core.Sort;
 import org.apache.calcite.rel.core.SortExchange;
@@ -128,7 +129,7 @@ public ImmutableList<RelCollation> collations(EnumerableMergeJoin join,
     // order of the left and right sides.
     return ImmutableList.copyOf(
         RelMdCollation.mergeJoin(mq, join.getLeft(), join.getRight(),
-            join.getLeftKeys(), join.getRightKeys()));
+            join.getLeftKeys(), join.getRightKeys(), join.getJoinType()));
   }
 
   public ImmutableList<RelCollation> collations(Sort sort,
@@ -359,19 +360,35 @@ public int compare(List<RexLiteral> o1, List<RexLiteral> o2) {
   public static List<RelCollation> mergeJoin(RelMetadataQuery mq,
       RelNode left, RelNode right,
       ImmutableIntList leftKeys, ImmutableIntList rightKeys) {
+    return mergeJoin(mq, left, right, leftKeys, rightKeys, JoinRelType.INNER);
+  }
+
+  /** Helper method to determine a {@link Join}'s collation assuming that it
+   * uses a merge-join algorithm and has a given join type.
+   *
+   * <p>A side that generates nulls does not preserve its collations, because
+   * rows of nulls are interleaved with its sorted rows. */
+  public static List<RelCollation> mergeJoin(RelMetadataQuery mq,
+      RelNode left, RelNode right,
+      ImmutableIntList leftKeys, ImmutableIntList rightKeys,
+      JoinRelType joinType) {
     final ImmutableList.Builder<RelCollation> builder = ImmutableList.builder();
 
     final ImmutableList<RelCollation> leftCollations = mq.collations(left);
     assert RelCollations.contains(leftCollations, leftKeys)
         : "cannot merge join: left input is not sorted on left keys";
-    builder.addAll(leftCollations);
+    if (!joinType.generatesNullsOnLeft()) {
+      builder.addAll(leftCollations);
+    }
 
     final ImmutableList<RelCollation> rightCollations = mq.collations(right);
     assert RelCollations.contains(rightCollations, rightKeys)
         : "cannot merge join: right input is not sorted on right keys";
-    final int leftFieldCount = left.getRowType().getFieldCount();
-    for (RelCollation collation : rightCollations) {
-      builder.add(RelCollations.shift(collation, leftFieldCount));
+    if (!joinType.generatesNullsOnRight()) {
+      final int leftFieldCount = left.getRowType().getFieldCount();
+      for (RelCollation collation : rightCollations) {
+        builder.add(RelCollations.shift(collation, leftFieldCount));
+      }
     }
     return builder.build();
   }
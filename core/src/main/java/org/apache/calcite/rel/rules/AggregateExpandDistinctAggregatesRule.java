@@ -16,6 +16,7 @@
  */
 package org.apache.calcite.rel.rules;
 
+import org.apache.calcite.config.CalciteConnectionConfig;
 import org.apache.calcite.linq4j.Ord;
 import org.apache.calcite.plan.Contexts;
 import org.apache.calcite.plan.RelOptRule;
@@ -116,12 +117,51 @@ public AggregateExpandDistinctAggregatesRule(
 
   //~ Methods ----------------------------------------------------------------
 
+  /** Replaces each {@code COUNT(DISTINCT x)} in an aggregate with
+   * {@code APPROX_COUNT_DISTINCT(x)}. Returns the aggregate unchanged if it
+   * has no such calls. */
+  private static Aggregate approximateDistinctCounts(Aggregate aggregate) {
+    final List<AggregateCall> aggCalls = new ArrayList<>();
+    boolean changed = false;
+    for (AggregateCall aggCall : aggregate.getAggCallList()) {
+      if (aggCall.isDistinct()
+          && aggCall.getAggregation().getKind() == SqlKind.COUNT
+          && aggCall.getArgList().size() == 1) {
+        aggCalls.add(
+            AggregateCall.create(SqlStdOperatorTable.APPROX_COUNT_DISTINCT,
+                false, aggCall.getArgList(), aggCall.filterArg,
+                aggCall.getType(), aggCall.getName()));
+        changed = true;
+      } else {
+        aggCalls.add(aggCall);
+      }
+    }
+    if (!changed) {
+      return aggregate;
+    }
+    return aggregate.copy(aggregate.getTraitSet(), aggregate.getInput(),
+        aggregate.indicator, aggregate.getGroupSet(), aggregate.getGroupSets(),
+        aggCalls);
+  }
+
   public void onMatch(RelOptRuleCall call) {
     final Aggregate aggregate = call.rel(0);
     if (!aggregate.containsDistinctCall()) {
       return;
     }
 
+    // If approximate results are acceptable, use a sketch rather than
+    // eliminating duplicates.
+    final CalciteConnectionConfig config =
+        call.getPlanner().getContext().unwrap(CalciteConnectionConfig.class);
+    if (config != null && config.approximateDistinctCount()) {
+      final Aggregate newAggregate = approximateDistinctCounts(aggregate);
+      if (newAggregate != aggregate) {
+        call.transformTo(newAggregate);
+        return;
+      }
+    }
+
     // Find all of the agg expressions. We use a LinkedHashSet to ensure determinism.
     int nonDistinctAggCallCount = 0;  // find all aggregate calls without distinct
     int filterCount = 0;
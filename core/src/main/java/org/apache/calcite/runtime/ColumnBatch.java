@@ -0,0 +1,301 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.runtime;
+
+import org.apache.calcite.linq4j.AbstractEnumerable;
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.Enumerator;
+import org.apache.calcite.linq4j.tree.Primitive;
+
+import com.google.common.collect.ImmutableList;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Type;
+import java.util.List;
+
+/**
+ * A batch of rows stored column by column.
+ *
+ * <p>Each column is held in a vector. If the Java type of the column is a
+ * primitive type or the box of a primitive type (say {@code int} or
+ * {@link Integer}), the vector is an array of that primitive type
+ * ({@code int[]}); otherwise the vector is an {@code Object[]}. Null values
+ * of a column are recorded in a bitmap; the bitmap is null if the column
+ * contains no null values in this batch.
+ *
+ * <p>Code that processes a batch can therefore evaluate expressions over
+ * primitive values in a loop, without boxing each value into an object.
+ *
+ * @see org.apache.calcite.adapter.enumerable.JavaRowFormat#COLUMNAR_BATCH
+ * @see org.apache.calcite.schema.ColumnarScannableTable
+ */
+public class ColumnBatch {
+  /** Number of rows in a batch unless the producer chooses otherwise. */
+  public static final int DEFAULT_CAPACITY = 1024;
+
+  /** Number of rows in this batch. */
+  public final int size;
+
+  /** Column vectors; each is an array of at least {@link #size} elements. */
+  public final Object[] vectors;
+
+  /** Null bitmaps, one per column. Bit {@code r} of the bitmap of a column is
+   * set if the value of that column in row {@code r} is null. An element is
+   * null if the column has no null values. */
+  public final long[][] nulls;
+
+  /** Creates a ColumnBatch. */
+  public ColumnBatch(int size, Object[] vectors, long[][] nulls) {
+    assert vectors.length == nulls.length;
+    this.size = size;
+    this.vectors = vectors;
+    this.nulls = nulls;
+  }
+
+  /** Returns whether the value of a given column in a given row is null. */
+  public boolean isNull(int column, int row) {
+    return isNull(nulls[column], row);
+  }
+
+  /** Returns whether a null bitmap has the bit of a given row set. The bitmap
+   * may be null, meaning that no value is null. */
+  public static boolean isNull(long[] nulls, int row) {
+    return nulls != null && (nulls[row >> 6] & (1L << row)) != 0;
+  }
+
+  /** Returns the value of a given column in a given row, boxing it if it is a
+   * primitive. */
+  public Object get(int column, int row) {
+    if (isNull(column, row)) {
+      return null;
+    }
+    return Array.get(vectors[column], row);
+  }
+
+  /** Returns the values of a given row as an array. */
+  public Object[] row(int row) {
+    final Object[] values = new Object[vectors.length];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = get(i, row);
+    }
+    return values;
+  }
+
+  /** Returns the class of the vector that holds values of a given Java
+   * type; for example, {@code int[]} for {@code int} and {@link Integer},
+   * {@code Object[]} for {@link String}. */
+  public static Class vectorClass(Type type) {
+    final Primitive primitive = primitive(type);
+    return primitive == null
+        ? Object[].class
+        : Array.newInstance(primitive.primitiveClass, 0).getClass();
+  }
+
+  private static Primitive primitive(Type type) {
+    final Primitive primitive = Primitive.ofBoxOr(type);
+    if (primitive == null || primitive == Primitive.VOID) {
+      return null;
+    }
+    return primitive;
+  }
+
+  /** Converts an enumerable over rows into an enumerable over batches of at
+   * most {@code capacity} rows.
+   *
+   * @param rows Rows, each an array of column values
+   * @param types Java types of the columns
+   * @param capacity Maximum number of rows in a batch
+   */
+  public static Enumerable<ColumnBatch> batches(
+      final Enumerable<Object[]> rows, final List<? extends Type> types,
+      final int capacity) {
+    return new AbstractEnumerable<ColumnBatch>() {
+      public Enumerator<ColumnBatch> enumerator() {
+        final Enumerator<Object[]> enumerator = rows.enumerator();
+        return new Enumerator<ColumnBatch>() {
+          final Builder builder = new Builder(types, capacity);
+          ColumnBatch current;
+
+          public ColumnBatch current() {
+            return current;
+          }
+
+          public boolean moveNext() {
+            while (enumerator.moveNext()) {
+              builder.add(enumerator.current());
+              if (builder.size() == capacity) {
+                current = builder.build();
+                return true;
+              }
+            }
+            if (builder.size() > 0) {
+              current = builder.build();
+              return true;
+            }
+            current = null;
+            return false;
+          }
+
+          public void reset() {
+            enumerator.reset();
+            builder.build();
+            current = null;
+          }
+
+          public void close() {
+            enumerator.close();
+          }
+        };
+      }
+    };
+  }
+
+  /** Converts an enumerable over batches into an enumerable over rows. */
+  public static Enumerable<Object[]> rows(
+      final Enumerable<ColumnBatch> batches) {
+    return new AbstractEnumerable<Object[]>() {
+      public Enumerator<Object[]> enumerator() {
+        return new ColumnBatchEnumerator<Object[]>(batches.enumerator()) {
+          public Object[] current() {
+            return batch.row(row);
+          }
+        };
+      }
+    };
+  }
+
+  /** Builds a sequence of {@link ColumnBatch} objects.
+   *
+   * <p>A producer either adds rows one at a time, using {@link #add}, or
+   * writes values column by column, using {@link #set} and {@link #vector},
+   * then calls {@link #build}. After a batch has been built, the builder
+   * allocates new vectors for the next batch. */
+  public static class Builder {
+    private final ImmutableList<Primitive> primitives;
+    private final int capacity;
+    private Object[] vectors;
+    private long[][] nulls;
+    private int size;
+
+    /** Creates a Builder.
+     *
+     * @param types Java types of the columns
+     * @param capacity Maximum number of rows in a batch
+     */
+    public Builder(List<? extends Type> types, int capacity) {
+      final ImmutableList.Builder<Primitive> builder = ImmutableList.builder();
+      for (Type type : types) {
+        final Primitive primitive = primitive(type);
+        builder.add(primitive == null ? Primitive.OTHER : primitive);
+      }
+      this.primitives = builder.build();
+      this.capacity = capacity;
+      allocate();
+    }
+
+    private void allocate() {
+      vectors = new Object[primitives.size()];
+      nulls = new long[primitives.size()][];
+      for (int i = 0; i < vectors.length; i++) {
+        final Primitive primitive = primitives.get(i);
+        vectors[i] = primitive == Primitive.OTHER
+            ? new Object[capacity]
+            : Array.newInstance(primitive.primitiveClass, capacity);
+      }
+      size = 0;
+    }
+
+    /** Returns the number of rows added since the last batch was built. */
+    public int size() {
+      return size;
+    }
+
+    /** Returns the vector that is being filled for a given column. */
+    public Object vector(int column) {
+      return vectors[column];
+    }
+
+    /** Appends a row. */
+    public Builder add(Object[] values) {
+      assert size < capacity;
+      for (int i = 0; i < values.length; i++) {
+        set(i, size, values[i]);
+      }
+      ++size;
+      return this;
+    }
+
+    /** Sets the value of a given column in a given row. */
+    public void set(int column, int row, Object value) {
+      if (value == null) {
+        long[] bits = nulls[column];
+        if (bits == null) {
+          bits = nulls[column] = new long[(capacity + 63) >> 6];
+        }
+        bits[row >> 6] |= 1L << row;
+        return;
+      }
+      final Object vector = vectors[column];
+      switch (primitives.get(column)) {
+      case BOOLEAN:
+        ((boolean[]) vector)[row] = (Boolean) value;
+        break;
+      case CHAR:
+        ((char[]) vector)[row] = (Character) value;
+        break;
+      case BYTE:
+        ((byte[]) vector)[row] = ((Number) value).byteValue();
+        break;
+      case SHORT:
+        ((short[]) vector)[row] = ((Number) value).shortValue();
+        break;
+      case INT:
+        ((int[]) vector)[row] = ((Number) value).intValue();
+        break;
+      case LONG:
+        ((long[]) vector)[row] = ((Number) value).longValue();
+        break;
+      case FLOAT:
+        ((float[]) vector)[row] = ((Number) value).floatValue();
+        break;
+      case DOUBLE:
+        ((double[]) vector)[row] = ((Number) value).doubleValue();
+        break;
+      default:
+        ((Object[]) vector)[row] = value;
+      }
+    }
+
+    /** Returns a batch containing the rows added since the last batch was
+     * built, and starts a new batch. */
+    public ColumnBatch build() {
+      return build(size);
+    }
+
+    /** Returns a batch of a given number of rows, whose values have been
+     * written using {@link #set} or directly into the {@link #vector}s, and
+     * starts a new batch. */
+    public ColumnBatch build(int size) {
+      assert size <= capacity;
+      final ColumnBatch batch = new ColumnBatch(size, vectors, nulls);
+      allocate();
+      return batch;
+    }
+  }
+}
+
+// End ColumnBatch.java
@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.runtime;
+
+import org.apache.calcite.linq4j.Enumerator;
+
+/**
+ * Enumerator that reads {@link ColumnBatch column batches} from an input
+ * and returns one element for each selected row.
+ *
+ * <p>When it reads a batch, it calls {@link #select} to choose the rows that
+ * qualify. Code generated for
+ * {@link org.apache.calcite.adapter.enumerable.EnumerableCalc} overrides
+ * {@code select} with a loop that evaluates the condition over the whole
+ * batch, and overrides {@link #current()} to evaluate the projections for
+ * {@link #row} of {@link #batch}.
+ *
+ * @param <E> Element type
+ */
+public abstract class ColumnBatchEnumerator<E> implements Enumerator<E> {
+  private final Enumerator<ColumnBatch> input;
+  private int[] selection = new int[0];
+  private int selectionSize;
+  private int position = -1;
+
+  /** Current batch. */
+  protected ColumnBatch batch;
+
+  /** Index of the current row within {@link #batch}. */
+  protected int row = -1;
+
+  /** Creates a ColumnBatchEnumerator. */
+  protected ColumnBatchEnumerator(Enumerator<ColumnBatch> input) {
+    this.input = input;
+  }
+
+  /** Writes the indexes of the rows of a batch that qualify into the
+   * selection vector, in ascending order, and returns how many there are.
+   *
+   * <p>The default implementation selects every row.
+   *
+   * @param batch Batch
+   * @param selection Selection vector; has at least as many elements as
+   *                  the batch has rows
+   * @return Number of selected rows
+   */
+  public int select(ColumnBatch batch, int[] selection) {
+    for (int i = 0; i < batch.size; i++) {
+      selection[i] = i;
+    }
+    return batch.size;
+  }
+
+  public boolean moveNext() {
+    for (;;) {
+      if (++position < selectionSize) {
+        row = selection[position];
+        return true;
+      }
+      if (!input.moveNext()) {
+        batch = null;
+        row = -1;
+        return false;
+      }
+      batch = input.current();
+      if (selection.length < batch.size) {
+        selection = new int[batch.size];
+      }
+      selectionSize = select(batch, selection);
+      position = -1;
+    }
+  }
+
+  public void reset() {
+    input.reset();
+    batch = null;
+    row = -1;
+    selectionSize = 0;
+    position = -1;
+  }
+
+  public void close() {
+    input.close();
+  }
+}
+
+// End ColumnBatchEnumerator.java
@@ -17,11 +17,22 @@
 package org.apache.calcite.runtime;
 
 import org.apache.calcite.interpreter.Row;
+import org.apache.calcite.linq4j.AbstractEnumerable;
 import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.Enumerator;
+import org.apache.calcite.linq4j.Linq4j;
 import org.apache.calcite.linq4j.function.Function1;
 
 import com.google.common.base.Supplier;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
 /**
  * Utilities for processing {@link org.apache.calcite.linq4j.Enumerable}
  * collections.
@@ -70,6 +81,160 @@ public Enumerable<Row> get() {
     };
   }
 
+  /** Splits an enumerable whose rows arrive grouped by key into partitions
+   * of consecutive rows that have the same key, applies a function to each
+   * partition, and returns the concatenation of the results.
+   *
+   * <p>The input is read lazily, and only one partition is held in memory at
+   * a time.
+   *
+   * @param source Input, in which rows with the same key are adjacent
+   * @param keySelector Function that returns the key of a row
+   * @param partitionFunction Function that is applied to the rows of each
+   *                          partition, in input order
+   * @param <E> Input row type
+   * @param <K> Key type
+   * @param <R> Result type
+   */
+  public static <E, K, R> Enumerable<R> mapPartitions(
+      final Enumerable<E> source, final Function1<E, K> keySelector,
+      final Function1<Object[], List<R>> partitionFunction) {
+    return new AbstractEnumerable<R>() {
+      public Enumerator<R> enumerator() {
+        return new PartitionEnumerator<>(source.enumerator(), keySelector,
+            partitionFunction);
+      }
+    };
+  }
+
+  /** Wraps the function that evaluates the inner input of a correlating
+   * join, so that rows for the most recently used values of the correlation
+   * key are kept, and the inner input is evaluated only once for each value.
+   *
+   * <p>The inner input must return the same rows whenever the correlation
+   * key has the same value.
+   *
+   * @param inner Function that evaluates the inner input for an outer row
+   * @param keySelector Function that returns the columns of an outer row
+   *                    that the inner input uses
+   * @param cacheSize Maximum number of keys whose rows are kept
+   * @param firstOnly Whether only the first row of the inner input is
+   *                  needed, as in a semi- or anti-join
+   * @param <E> Outer row type
+   * @param <R> Inner row type
+   */
+  public static <E, R> Function1<E, Enumerable<R>> cacheCorrelate(
+      final Function1<E, Enumerable<R>> inner,
+      final Function1<E, ?> keySelector, final int cacheSize,
+      final boolean firstOnly) {
+    final Map<Object, Enumerable<R>> cache =
+        new LinkedHashMap<Object, Enumerable<R>>(16, 0.75f, true) {
+          @Override protected boolean removeEldestEntry(
+              Map.Entry<Object, Enumerable<R>> eldest) {
+            return size() > cacheSize;
+          }
+        };
+    return new Function1<E, Enumerable<R>>() {
+      public Enumerable<R> apply(E outer) {
+        final Object key = keySelector.apply(outer);
+        Enumerable<R> rows = cache.get(key);
+        if (rows == null) {
+          Enumerable<R> enumerable = inner.apply(outer);
+          if (enumerable == null) {
+            enumerable = Linq4j.emptyEnumerable();
+          } else if (firstOnly) {
+            enumerable = enumerable.take(1);
+          }
+          rows = Linq4j.asEnumerable(enumerable.toList());
+          cache.put(key, rows);
+        }
+        return rows;
+      }
+    };
+  }
+
+  /** Enumerator that applies a function to each partition of its input.
+   *
+   * @see #mapPartitions
+   *
+   * @param <E> Input row type
+   * @param <K> Key type
+   * @param <R> Result type
+   */
+  private static class PartitionEnumerator<E, K, R> implements Enumerator<R> {
+    private final Enumerator<E> input;
+    private final Function1<E, K> keySelector;
+    private final Function1<Object[], List<R>> partitionFunction;
+    private final List<Object> rows = new ArrayList<>();
+    private Iterator<R> results = Collections.emptyIterator();
+    private R current;
+    /** Whether the current input row is the first of a partition that has
+     * not been read yet. */
+    private boolean pending;
+    private boolean done;
+
+    PartitionEnumerator(Enumerator<E> input, Function1<E, K> keySelector,
+        Function1<Object[], List<R>> partitionFunction) {
+      this.input = input;
+      this.keySelector = keySelector;
+      this.partitionFunction = partitionFunction;
+    }
+
+    public R current() {
+      return current;
+    }
+
+    public boolean moveNext() {
+      for (;;) {
+        if (results.hasNext()) {
+          current = results.next();
+          return true;
+        }
+        if (!nextPartition()) {
+          current = null;
+          return false;
+        }
+      }
+    }
+
+    /** Reads the next partition and applies the function to it. Returns
+     * false if there are no more partitions. */
+    private boolean nextPartition() {
+      if (!pending && (done || !input.moveNext())) {
+        done = true;
+        return false;
+      }
+      E row = input.current();
+      final K key = keySelector.apply(row);
+      rows.add(row);
+      pending = false;
+      while (input.moveNext()) {
+        row = input.current();
+        if (!Objects.equals(key, keySelector.apply(row))) {
+          pending = true;
+          break;
+        }
+        rows.add(row);
+      }
+      done = !pending;
+      final Object[] partition = rows.toArray();
+      rows.clear();
+      results = partitionFunction.apply(partition).iterator();
+      return true;
+    }
+
+    public void reset() {
+      input.reset();
+      results = Collections.emptyIterator();
+      current = null;
+      pending = false;
+      done = false;
+    }
+
+    public void close() {
+      input.close();
+    }
+  }
 }
 
 // End Enumerables.java
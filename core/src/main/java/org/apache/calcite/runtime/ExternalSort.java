@@ -0,0 +1,304 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.runtime;
+
+import org.apache.calcite.linq4j.AbstractEnumerable;
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.Enumerator;
+import org.apache.calcite.linq4j.Linq4j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Sort that writes sorted runs of rows to temporary files if its input does
+ * not fit within a memory limit, then merges the runs.
+ *
+ * <p>Rows are collected into an array until their estimated size exceeds
+ * the limit; the array is then sorted and written to a {@link SpillFile} as
+ * a run. If there are more than {@link #MERGE_FAN_IN} runs, consecutive
+ * runs are merged into longer runs until there are not. The last runs,
+ * and the rows that remain in memory, are merged as the output is read.
+ *
+ * <p>The sort is stable: rows that compare equal are returned in the order
+ * that they were read.
+ *
+ * <p>Rows are held as objects and compared by the comparator that is given;
+ * the sort does not store primitive values unboxed. {@code EnumerableSort}
+ * converts its rows to arrays, whose fields are boxed, and generates a
+ * comparator that unboxes {@code NOT NULL} fields of primitive type to
+ * compare them; nullable fields are compared as {@link Comparable}.
+ *
+ * <p>When it has finished, if it wrote any files, the sort calls
+ * {@link Hook#SPILL} with a {@link SpillFile.Stats}.
+ */
+public class ExternalSort {
+  /** Maximum number of runs merged at the same time. */
+  static final int MERGE_FAN_IN = 64;
+
+  private ExternalSort() {}
+
+  /** Sorts rows, writing them to temporary files if they do not fit in
+   * memory.
+   *
+   * <p>Rows are written using {@link RowSerializer}, so they must consist of
+   * values that it can serialize.
+   *
+   * @param source Input rows
+   * @param comparator Comparator of rows
+   * @param memoryLimit Approximate number of bytes of rows to hold in
+   *                    memory, as estimated by
+   *                    {@link RowSerializer#estimateSize(Object)}
+   */
+  public static <T> Enumerable<T> sort(final Enumerable<T> source,
+      final Comparator<T> comparator, final long memoryLimit) {
+    return new AbstractEnumerable<T>() {
+      public Enumerator<T> enumerator() {
+        return new Sorter<>(comparator, memoryLimit).sort(source);
+      }
+    };
+  }
+
+  /** Performs one execution of a sort.
+   *
+   * @param <T> Row type */
+  private static class Sorter<T> {
+    private final Comparator<T> comparator;
+    private final long memoryLimit;
+
+    /** Sorted runs that have been written and not yet merged. */
+    private List<SpillFile<T>> runs = new ArrayList<>();
+    private int fileCount;
+    private long byteCount;
+
+    Sorter(Comparator<T> comparator, long memoryLimit) {
+      this.comparator = comparator;
+      this.memoryLimit = memoryLimit;
+    }
+
+    Enumerator<T> sort(Enumerable<T> source) {
+      final List<T> buffer = new ArrayList<>();
+      long memory = 0;
+      try (Enumerator<T> enumerator = source.enumerator()) {
+        while (enumerator.moveNext()) {
+          final T row = enumerator.current();
+          buffer.add(row);
+          // Each row also occupies a slot in the array
+          memory += RowSerializer.estimateSize(row) + 4;
+          if (memory > memoryLimit) {
+            // Add the run before writing it, so that close() deletes it if
+            // writing fails
+            final SpillFile<T> run = createFile();
+            runs.add(run);
+            for (T t : sorted(buffer)) {
+              run.add(t);
+            }
+            run.finish();
+            buffer.clear();
+            memory = 0;
+          }
+        }
+      } catch (RuntimeException | Error e) {
+        close();
+        throw e;
+      }
+      final List<T> last = sorted(buffer);
+      if (runs.isEmpty()) {
+        return Linq4j.enumerator(last);
+      }
+      final List<Enumerator<T>> inputs = new ArrayList<>();
+      try {
+        while (runs.size() >= MERGE_FAN_IN) {
+          mergePass();
+        }
+        for (SpillFile<T> run : runs) {
+          inputs.add(read(run).enumerator());
+        }
+      } catch (RuntimeException | Error e) {
+        for (Enumerator<T> input : inputs) {
+          input.close();
+        }
+        close();
+        throw e;
+      }
+      inputs.add(Linq4j.enumerator(last));
+      return new MergeEnumerator<T>(inputs, comparator) {
+        @Override public void close() {
+          try {
+            super.close();
+          } finally {
+            Sorter.this.close();
+          }
+        }
+      };
+    }
+
+    /** Returns the rows in a list, sorted. */
+    private List<T> sorted(List<T> rows) {
+      //noinspection unchecked
+      final T[] array = (T[]) rows.toArray();
+      Arrays.sort(array, comparator);
+      return Arrays.asList(array);
+    }
+
+    /** Merges each group of {@link #MERGE_FAN_IN} consecutive runs into a
+     * single run. Because groups are consecutive, the sort remains
+     * stable. */
+    private void mergePass() {
+      final List<SpillFile<T>> newRuns = new ArrayList<>();
+      try {
+        for (int i = 0; i < runs.size(); i += MERGE_FAN_IN) {
+          final List<SpillFile<T>> group =
+              runs.subList(i, Math.min(i + MERGE_FAN_IN, runs.size()));
+          if (group.size() == 1) {
+            newRuns.add(group.get(0));
+            continue;
+          }
+          final List<Enumerator<T>> inputs = new ArrayList<>();
+          for (SpillFile<T> run : group) {
+            inputs.add(read(run).enumerator());
+          }
+          final SpillFile<T> newRun = createFile();
+          newRuns.add(newRun);
+          try (Enumerator<T> merge =
+                   new MergeEnumerator<>(inputs, comparator)) {
+            while (merge.moveNext()) {
+              newRun.add(merge.current());
+            }
+          }
+          newRun.finish();
+          for (SpillFile<T> run : group) {
+            run.close();
+          }
+        }
+      } catch (RuntimeException | Error e) {
+        // The caller deletes the old runs; delete the new ones
+        for (SpillFile<T> run : newRuns) {
+          run.close();
+        }
+        throw e;
+      }
+      runs = newRuns;
+    }
+
+    private SpillFile<T> createFile() {
+      ++fileCount;
+      return new SpillFile<>();
+    }
+
+    private Enumerable<T> read(SpillFile<T> file) {
+      final Enumerable<T> enumerable = file.read();
+      byteCount += file.getByteCount();
+      return enumerable;
+    }
+
+    /** Deletes any remaining files, and reports statistics. */
+    private void close() {
+      for (SpillFile<T> run : runs) {
+        run.close();
+      }
+      runs.clear();
+      if (fileCount > 0) {
+        Hook.SPILL.run(new SpillFile.Stats("sort", fileCount, byteCount));
+        fileCount = 0;
+        byteCount = 0;
+      }
+    }
+  }
+
+  /** Enumerator that merges several sorted inputs.
+   *
+   * <p>If rows from different inputs compare equal, returns the row from the
+   * earlier input first.
+   *
+   * @param <T> Row type */
+  private static class MergeEnumerator<T> implements Enumerator<T> {
+    private final List<Enumerator<T>> inputs;
+    private final PriorityQueue<Cursor<T>> queue;
+    private Cursor<T> cursor;
+    private boolean started;
+
+    MergeEnumerator(List<Enumerator<T>> inputs,
+        final Comparator<T> comparator) {
+      this.inputs = inputs;
+      this.queue = new PriorityQueue<>(Math.max(1, inputs.size()),
+          new Comparator<Cursor<T>>() {
+            public int compare(Cursor<T> c0, Cursor<T> c1) {
+              final int c = comparator.compare(c0.current, c1.current);
+              return c != 0 ? c : Integer.compare(c0.ordinal, c1.ordinal);
+            }
+          });
+    }
+
+    public T current() {
+      return cursor.current;
+    }
+
+    public boolean moveNext() {
+      if (!started) {
+        started = true;
+        for (int i = 0; i < inputs.size(); i++) {
+          final Cursor<T> c = new Cursor<>(inputs.get(i), i);
+          if (c.advance()) {
+            queue.add(c);
+          }
+        }
+      } else if (cursor != null && cursor.advance()) {
+        queue.add(cursor);
+      }
+      cursor = queue.poll();
+      return cursor != null;
+    }
+
+    public void reset() {
+      throw new UnsupportedOperationException();
+    }
+
+    public void close() {
+      for (Enumerator<T> input : inputs) {
+        input.close();
+      }
+    }
+  }
+
+  /** Current position in one input of a {@link MergeEnumerator}.
+   *
+   * @param <T> Row type */
+  private static class Cursor<T> {
+    final Enumerator<T> enumerator;
+    final int ordinal;
+    T current;
+
+    Cursor(Enumerator<T> enumerator, int ordinal) {
+      this.enumerator = enumerator;
+      this.ordinal = ordinal;
+    }
+
+    boolean advance() {
+      if (enumerator.moveNext()) {
+        current = enumerator.current();
+        return true;
+      }
+      return false;
+    }
+  }
+}
+
+// End ExternalSort.java
@@ -61,6 +61,28 @@ public enum Hook {
    * Janino. */
   JAVA_PLAN,
 
+  /** Called after looking up generated Java code in the cache of compiled
+   * classes, with the cache's {@link com.google.common.cache.CacheStats}
+   * (hit, miss and eviction counts). */
+  BINDABLE_CACHE,
+
+  /** Called after looking up a statement in a connection's cache of prepared
+   * statements, with the cache's {@link com.google.common.cache.CacheStats}.
+   * See {@link org.apache.calcite.prepare.PlanCache}. */
+  PLAN_CACHE,
+
+  /** Called when an operator that has written rows to temporary files
+   * finishes, with a {@link SpillFile.Stats}. */
+  SPILL,
+
+  /** Called when the probe side of a join that has a runtime filter is
+   * closed, with the {@link RuntimeFilter}. */
+  RUNTIME_FILTER,
+
+  /** Called when an approximate Top-N has read its input, with the
+   * {@link SpaceSaving} sketch. */
+  APPROXIMATE_TOP_N,
+
   /** Called with the output of sql-to-rel-converter. */
   CONVERTED,
 
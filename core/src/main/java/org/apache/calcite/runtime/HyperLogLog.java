@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.runtime;
+
+import java.math.BigDecimal;
+
+/**
+ * Estimates the number of distinct values in a set, using the HyperLogLog
+ * algorithm.
+ *
+ * <p>The state of a sketch is an array of {@link #REGISTER_COUNT} bytes,
+ * whatever the number of values added to it, so these methods are static and
+ * operate on the array. Each register holds the largest number of leading
+ * zeros, plus one, seen in the hashes of the values that map to it. Two
+ * sketches are merged by taking the maximum of each register.
+ *
+ * <p>The standard error of the estimate is about
+ * 1.04 / &radic;{@link #REGISTER_COUNT}, or 1.6%.
+ */
+public class HyperLogLog {
+  /** Number of bits of the hash that choose a register. */
+  private static final int PRECISION = 12;
+
+  /** Number of registers in a sketch. */
+  public static final int REGISTER_COUNT = 1 << PRECISION;
+
+  private static final double ALPHA =
+      0.7213d / (1d + 1.079d / REGISTER_COUNT);
+
+  private HyperLogLog() {}
+
+  /** Creates an empty sketch. */
+  public static byte[] create() {
+    return new byte[REGISTER_COUNT];
+  }
+
+  /** Adds a value to a sketch. Null values are ignored. */
+  public static void add(byte[] registers, Object value) {
+    if (value != null) {
+      addHash(registers, hash(value));
+    }
+  }
+
+  /** Adds an integer value to a sketch. Adds the same hash as
+   * {@link #add(byte[], Object)} would for the boxed value. */
+  public static void add(byte[] registers, long value) {
+    addHash(registers, mix(value));
+  }
+
+  private static void addHash(byte[] registers, long hash) {
+    final int index = (int) (hash >>> (64 - PRECISION));
+    // The remaining bits, with a sentinel so that the count is bounded.
+    final long w = (hash << PRECISION) | (1L << (PRECISION - 1));
+    final byte rank = (byte) (Long.numberOfLeadingZeros(w) + 1);
+    if (rank > registers[index]) {
+      registers[index] = rank;
+    }
+  }
+
+  /** Adds the values of one sketch to another. */
+  public static void merge(byte[] registers, byte[] otherRegisters) {
+    for (int i = 0; i < REGISTER_COUNT; i++) {
+      if (otherRegisters[i] > registers[i]) {
+        registers[i] = otherRegisters[i];
+      }
+    }
+  }
+
+  /** Returns the estimated number of distinct values that have been added to
+   * a sketch. */
+  public static long estimate(byte[] registers) {
+    double sum = 0d;
+    int zeroCount = 0;
+    for (byte register : registers) {
+      sum += 1d / (1L << register);
+      if (register == 0) {
+        ++zeroCount;
+      }
+    }
+    final double m = REGISTER_COUNT;
+    final double estimate = ALPHA * m * m / sum;
+    if (estimate <= 2.5d * m && zeroCount > 0) {
+      // For small sets, linear counting is more accurate.
+      return Math.round(m * Math.log(m / zeroCount));
+    }
+    return Math.round(estimate);
+  }
+
+  /** Computes a 64-bit hash of a value. Values that are equal in SQL, such
+   * as an {@code INTEGER} and a {@code BIGINT} with the same value, have the
+   * same hash. */
+  static long hash(Object value) {
+    if (value instanceof Long
+        || value instanceof Integer
+        || value instanceof Short
+        || value instanceof Byte) {
+      return mix(((Number) value).longValue());
+    }
+    if (value instanceof Double || value instanceof Float) {
+      final double d = ((Number) value).doubleValue();
+      if (d == Math.rint(d) && Math.abs(d) < 0x1p62) {
+        return mix((long) d);
+      }
+      return mix(Double.doubleToLongBits(d));
+    }
+    if (value instanceof BigDecimal) {
+      final BigDecimal d = ((BigDecimal) value).stripTrailingZeros();
+      if (d.scale() <= 0 && d.precision() - d.scale() < 19) {
+        return mix(d.longValue());
+      }
+      return hash(d.toString());
+    }
+    if (value instanceof String) {
+      // FNV-1a, which unlike String.hashCode() produces 64 bits
+      final String s = (String) value;
+      long h = 0xCBF29CE484222325L;
+      for (int i = 0; i < s.length(); i++) {
+        h = (h ^ s.charAt(i)) * 0x100000001B3L;
+      }
+      return mix(h);
+    }
+    return mix(value.hashCode());
+  }
+
+  /** Spreads the bits of a value, using the finalizer of MurmurHash3. */
+  private static long mix(long z) {
+    z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+    z = (z ^ (z >>> 33)) * 0xC4CEB9FE1A85EC53L;
+    return z ^ (z >>> 33);
+  }
+}
+
+// End HyperLogLog.java
@@ -16,6 +16,14 @@
  */
 package org.apache.calcite.runtime;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
 /**
  * Utilities for converting SQL {@code LIKE} and {@code SIMILAR} operators
  * to regular expressions.
@@ -40,6 +48,11 @@ public class Like {
       "[:alnum:]", "\\p{Alnum}"
   };
 
+  /** Recently used matchers, so that a pattern that is not a literal is not
+   * translated and compiled for every row. */
+  private static final Cache<List<Object>, Matcher> MATCHER_CACHE =
+      CacheBuilder.newBuilder().maximumSize(256).build();
+
   private Like() {
   }
 
@@ -50,16 +63,19 @@ private Like() {
   static String sqlToRegexLike(
       String sqlPattern,
       CharSequence escapeStr) {
-    final char escapeChar;
-    if (escapeStr != null) {
-      if (escapeStr.length() != 1) {
-        throw invalidEscapeCharacter(escapeStr.toString());
-      }
-      escapeChar = escapeStr.charAt(0);
-    } else {
-      escapeChar = 0;
+    return sqlToRegexLike(sqlPattern, escapeChar(escapeStr));
+  }
+
+  /** Converts an optional escape string to a character, or 0 if there is no
+   * escape string. */
+  private static char escapeChar(CharSequence escapeStr) {
+    if (escapeStr == null) {
+      return 0;
+    }
+    if (escapeStr.length() != 1) {
+      throw invalidEscapeCharacter(escapeStr.toString());
     }
-    return sqlToRegexLike(sqlPattern, escapeChar);
+    return escapeStr.charAt(0);
   }
 
   /**
@@ -210,16 +226,7 @@ private static int sqlSimilarRewriteCharEnumeration(
   static String sqlToRegexSimilar(
       String sqlPattern,
       CharSequence escapeStr) {
-    final char escapeChar;
-    if (escapeStr != null) {
-      if (escapeStr.length() != 1) {
-        throw invalidEscapeCharacter(escapeStr.toString());
-      }
-      escapeChar = escapeStr.charAt(0);
-    } else {
-      escapeChar = 0;
-    }
-    return sqlToRegexSimilar(sqlPattern, escapeChar);
+    return sqlToRegexSimilar(sqlPattern, escapeChar(escapeStr));
   }
 
   /**
@@ -301,6 +308,187 @@ static String sqlToRegexSimilar(
 
     return javaPattern.toString();
   }
+
+  /** Returns a matcher for a SQL LIKE pattern, with optional escape
+   * string. */
+  public static Matcher likeMatcher(String sqlPattern, String escapeStr) {
+    final List<Object> key = Arrays.<Object>asList("LIKE", sqlPattern, escapeStr);
+    Matcher matcher = MATCHER_CACHE.getIfPresent(key);
+    if (matcher == null) {
+      matcher = createLikeMatcher(sqlPattern, escapeChar(escapeStr));
+      MATCHER_CACHE.put(key, matcher);
+    }
+    return matcher;
+  }
+
+  /** Returns a matcher for a SQL SIMILAR pattern, with optional escape
+   * string. */
+  public static Matcher similarMatcher(String sqlPattern, String escapeStr) {
+    final List<Object> key =
+        Arrays.<Object>asList("SIMILAR", sqlPattern, escapeStr);
+    Matcher matcher = MATCHER_CACHE.getIfPresent(key);
+    if (matcher == null) {
+      matcher = new RegexMatcher(
+          sqlToRegexSimilar(sqlPattern, escapeChar(escapeStr)));
+      MATCHER_CACHE.put(key, matcher);
+    }
+    return matcher;
+  }
+
+  /** Creates a matcher for a SQL LIKE pattern.
+   *
+   * <p>If the pattern has no '_' wildcards, and its only '%' wildcards are at
+   * its start and end, the matcher compares strings directly; otherwise it
+   * uses a compiled regular expression. */
+  static Matcher createLikeMatcher(String sqlPattern, char escapeChar) {
+    // Split the pattern into literal segments at each '%'
+    final List<String> segments = new ArrayList<>();
+    final StringBuilder b = new StringBuilder();
+    final int len = sqlPattern.length();
+    for (int i = 0; i < len; i++) {
+      final char c = sqlPattern.charAt(i);
+      if (c == escapeChar) {
+        if (i == len - 1) {
+          throw invalidEscapeSequence(sqlPattern, i);
+        }
+        final char nextChar = sqlPattern.charAt(i + 1);
+        if (nextChar == '_' || nextChar == '%' || nextChar == escapeChar) {
+          b.append(nextChar);
+          i++;
+        } else {
+          throw invalidEscapeSequence(sqlPattern, i);
+        }
+      } else if (c == '_') {
+        return new RegexMatcher(sqlToRegexLike(sqlPattern, escapeChar));
+      } else if (c == '%') {
+        segments.add(b.toString());
+        b.setLength(0);
+      } else {
+        b.append(c);
+      }
+    }
+    segments.add(b.toString());
+    switch (segments.size()) {
+    case 1:
+      // 'abc'
+      return new EqualsMatcher(segments.get(0));
+    case 2:
+      if (segments.get(0).isEmpty()) {
+        // '%abc'
+        return new SuffixMatcher(segments.get(1));
+      }
+      if (segments.get(1).isEmpty()) {
+        // 'abc%'
+        return new PrefixMatcher(segments.get(0));
+      }
+      break;
+    case 3:
+      if (segments.get(0).isEmpty() && segments.get(2).isEmpty()) {
+        // '%abc%'
+        return new ContainsMatcher(segments.get(1));
+      }
+      break;
+    }
+    return new RegexMatcher(sqlToRegexLike(sqlPattern, escapeChar));
+  }
+
+  /** Tests whether strings match a SQL LIKE or SIMILAR pattern.
+   *
+   * <p>A matcher is immutable, and may be used by several threads at once. */
+  public abstract static class Matcher {
+    /** Returns whether a string matches the pattern. */
+    public abstract boolean matches(String s);
+  }
+
+  /** Matcher for a pattern that has no wildcards. */
+  private static class EqualsMatcher extends Matcher {
+    private final String literal;
+
+    EqualsMatcher(String literal) {
+      this.literal = literal;
+    }
+
+    public boolean matches(String s) {
+      return s.equals(literal);
+    }
+  }
+
+  /** Matcher for a pattern whose only wildcard is a '%' at the end. */
+  private static class PrefixMatcher extends Matcher {
+    private final String prefix;
+
+    PrefixMatcher(String prefix) {
+      this.prefix = prefix;
+    }
+
+    public boolean matches(String s) {
+      return s.startsWith(prefix);
+    }
+  }
+
+  /** Matcher for a pattern whose only wildcard is a '%' at the start. */
+  private static class SuffixMatcher extends Matcher {
+    private final String suffix;
+
+    SuffixMatcher(String suffix) {
+      this.suffix = suffix;
+    }
+
+    public boolean matches(String s) {
+      return s.endsWith(suffix);
+    }
+  }
+
+  /** Matcher for a pattern whose only wildcards are a '%' at the start and a
+   * '%' at the end.
+   *
+   * <p>Uses the Boyer-Moore-Horspool algorithm: the table of how far to move
+   * along the string, given the character at the end of the current window,
+   * is computed once, when the matcher is created. The table is indexed by
+   * the low 8 bits of the character; characters that share an entry get the
+   * smallest of their shifts, which is still safe. */
+  private static class ContainsMatcher extends Matcher {
+    private final String literal;
+    private final int[] shifts = new int[256];
+
+    ContainsMatcher(String literal) {
+      this.literal = literal;
+      final int m = literal.length();
+      Arrays.fill(shifts, m);
+      for (int i = 0; i < m - 1; i++) {
+        shifts[literal.charAt(i) & 0xFF] = m - 1 - i;
+      }
+    }
+
+    public boolean matches(String s) {
+      final int m = literal.length();
+      if (m == 0) {
+        return true;
+      }
+      final char last = literal.charAt(m - 1);
+      for (int i = m - 1; i < s.length();) {
+        final char c = s.charAt(i);
+        if (c == last && s.regionMatches(i - m + 1, literal, 0, m - 1)) {
+          return true;
+        }
+        i += shifts[c & 0xFF];
+      }
+      return false;
+    }
+  }
+
+  /** Matcher that uses a compiled regular expression. */
+  private static class RegexMatcher extends Matcher {
+    private final Pattern pattern;
+
+    RegexMatcher(String regex) {
+      this.pattern = Pattern.compile(regex);
+    }
+
+    public boolean matches(String s) {
+      return pattern.matcher(s).matches();
+    }
+  }
 }
 
 // End Like.java
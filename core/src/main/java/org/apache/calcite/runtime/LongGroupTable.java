@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.runtime;
+
+import java.util.Arrays;
+
+/**
+ * Hash table that assigns consecutive ordinals, starting at 0, to distinct
+ * {@code long} keys.
+ *
+ * <p>The table uses open addressing with linear probing over parallel
+ * arrays of keys and ordinals, so looking up a key allocates no objects.
+ * It is used for aggregation: the ordinal of a group is an index into arrays
+ * of accumulators.
+ */
+public class LongGroupTable {
+  private static final int INITIAL_CAPACITY = 16;
+
+  /** Key in each slot. */
+  private long[] slotKeys;
+  /** One more than the ordinal of the key in each slot, or 0 if the slot is
+   * empty. */
+  private int[] slotOrdinals;
+  /** Key of each ordinal. */
+  private long[] keys;
+  private int mask;
+  private int size;
+
+  /** Creates an empty LongGroupTable. */
+  public LongGroupTable() {
+    slotKeys = new long[INITIAL_CAPACITY];
+    slotOrdinals = new int[INITIAL_CAPACITY];
+    keys = new long[INITIAL_CAPACITY / 2];
+    mask = INITIAL_CAPACITY - 1;
+  }
+
+  /** Returns the ordinal of a key, adding the key if it is not present.
+   *
+   * <p>If the key is new, its ordinal is the previous value of
+   * {@link #size()}. */
+  public int ordinal(long key) {
+    int slot = hash(key) & mask;
+    for (;;) {
+      final int ordinal = slotOrdinals[slot];
+      if (ordinal == 0) {
+        return add(slot, key);
+      }
+      if (slotKeys[slot] == key) {
+        return ordinal - 1;
+      }
+      slot = (slot + 1) & mask;
+    }
+  }
+
+  /** Returns the number of keys. */
+  public int size() {
+    return size;
+  }
+
+  /** Returns the key that has a given ordinal. */
+  public long key(int ordinal) {
+    return keys[ordinal];
+  }
+
+  private int add(int slot, long key) {
+    final int ordinal = size++;
+    if (ordinal == keys.length) {
+      keys = Arrays.copyOf(keys, ordinal * 2);
+    }
+    keys[ordinal] = key;
+    slotKeys[slot] = key;
+    slotOrdinals[slot] = ordinal + 1;
+    if (size * 2 > slotKeys.length) {
+      rehash(slotKeys.length * 2);
+    }
+    return ordinal;
+  }
+
+  /** Moves the keys into arrays with a given number of slots, keeping the
+   * load factor no more than one half. */
+  private void rehash(int capacity) {
+    slotKeys = new long[capacity];
+    slotOrdinals = new int[capacity];
+    mask = capacity - 1;
+    for (int ordinal = 0; ordinal < size; ordinal++) {
+      final long key = keys[ordinal];
+      int slot = hash(key) & mask;
+      while (slotOrdinals[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+      slotKeys[slot] = key;
+      slotOrdinals[slot] = ordinal + 1;
+    }
+  }
+
+  /** Spreads the bits of a key, so that keys that differ only in their high
+   * bits, or that are in arithmetic sequence, occupy different slots. Uses
+   * the finalization step of MurmurHash3. */
+  private static int hash(long key) {
+    long h = key;
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return (int) h;
+  }
+}
+
+// End LongGroupTable.java
@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.runtime;
+
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.Enumerator;
+import org.apache.calcite.linq4j.Linq4j;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hash aggregation whose grouping key can be packed into a {@code long}.
+ *
+ * <p>Groups are numbered in the order in which they are first seen, using a
+ * {@link LongGroupTable}. Subclasses hold accumulators in arrays indexed by
+ * group number, typically one array of primitive values for each
+ * accumulator, so that adding a row to a group allocates no objects.
+ *
+ * <p>Code generated for
+ * {@link org.apache.calcite.adapter.enumerable.EnumerableAggregate}
+ * overrides {@link #key}, {@link #allocate}, {@link #reset}, {@link #add}
+ * and {@link #result} using the aggregate functions' implementors.
+ *
+ * @param <E> Input row type
+ */
+public abstract class LongHashAggregator<E> {
+  private static final int INITIAL_CAPACITY = 16;
+
+  private final LongGroupTable table = new LongGroupTable();
+  private int capacity;
+
+  /** Creates a LongHashAggregator. */
+  protected LongHashAggregator() {
+  }
+
+  /** Returns the grouping key of a row, packed into a {@code long}. */
+  public abstract long key(E row);
+
+  /** Grows the accumulator arrays so that they can hold a given number of
+   * groups, preserving their contents. */
+  public abstract void allocate(int capacity);
+
+  /** Initializes the accumulators of a new group. */
+  public abstract void reset(int group);
+
+  /** Adds a row to the accumulators of a group. */
+  public abstract void add(int group, E row);
+
+  /** Returns the output row for a group. */
+  public abstract Object result(long key, int group);
+
+  /** Reads every row of the input, and returns one output row for each
+   * group. */
+  public Enumerator<Object> aggregate(Enumerable<E> source) {
+    try (Enumerator<E> enumerator = source.enumerator()) {
+      while (enumerator.moveNext()) {
+        final E row = enumerator.current();
+        final int groupCount = table.size();
+        final int group = table.ordinal(key(row));
+        if (group == groupCount) {
+          if (group == capacity) {
+            capacity = Math.max(INITIAL_CAPACITY, capacity * 2);
+            allocate(capacity);
+          }
+          reset(group);
+        }
+        add(group, row);
+      }
+    }
+    final List<Object> results = new ArrayList<>(table.size());
+    for (int group = 0; group < table.size(); group++) {
+      results.add(result(table.key(group), group));
+    }
+    return Linq4j.enumerator(results);
+  }
+}
+
+// End LongHashAggregator.java
@@ -0,0 +1,263 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.runtime;
+
+import org.apache.calcite.avatica.util.ByteString;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes rows to, and reads rows from, a compact binary format.
+ *
+ * <p>Used by operators that write rows to temporary files when they run out
+ * of memory. A row is usually an {@code Object[]} whose elements are the
+ * values that the enumerable calling convention uses for SQL types:
+ * {@link Integer}, {@link Long}, {@link String}, {@link BigDecimal} and so
+ * forth. Each value is written as a one-byte tag followed by its content;
+ * integers use a variable-length encoding, so small values take one or two
+ * bytes. Other {@link Serializable} objects are written using Java
+ * serialization.
+ *
+ * <p>Lists are read back as {@link ArrayList}, which is equal to, but may
+ * not be of the same class as, the list that was written.
+ */
+public class RowSerializer {
+  private static final byte NULL = 0;
+  private static final byte FALSE = 1;
+  private static final byte TRUE = 2;
+  private static final byte BYTE = 3;
+  private static final byte SHORT = 4;
+  private static final byte INT = 5;
+  private static final byte LONG = 6;
+  private static final byte FLOAT = 7;
+  private static final byte DOUBLE = 8;
+  private static final byte CHAR = 9;
+  private static final byte STRING = 10;
+  private static final byte DECIMAL = 11;
+  private static final byte BYTE_STRING = 12;
+  private static final byte ARRAY = 13;
+  private static final byte LIST = 14;
+  private static final byte JAVA = 15;
+
+  private RowSerializer() {}
+
+  /** Writes a value, which may be a row. */
+  public static void write(DataOutput out, Object o) throws IOException {
+    if (o == null) {
+      out.writeByte(NULL);
+    } else if (o instanceof Integer) {
+      out.writeByte(INT);
+      writeVarLong(out, (Integer) o);
+    } else if (o instanceof Long) {
+      out.writeByte(LONG);
+      writeVarLong(out, (Long) o);
+    } else if (o instanceof String) {
+      out.writeByte(STRING);
+      writeBytes(out, ((String) o).getBytes(StandardCharsets.UTF_8));
+    } else if (o instanceof Object[]) {
+      final Object[] objects = (Object[]) o;
+      out.writeByte(ARRAY);
+      writeVarLong(out, objects.length);
+      for (Object object : objects) {
+        write(out, object);
+      }
+    } else if (o instanceof Boolean) {
+      out.writeByte((Boolean) o ? TRUE : FALSE);
+    } else if (o instanceof Double) {
+      out.writeByte(DOUBLE);
+      out.writeDouble((Double) o);
+    } else if (o instanceof BigDecimal) {
+      final BigDecimal decimal = (BigDecimal) o;
+      out.writeByte(DECIMAL);
+      writeVarLong(out, decimal.scale());
+      writeBytes(out, decimal.unscaledValue().toByteArray());
+    } else if (o instanceof Short) {
+      out.writeByte(SHORT);
+      writeVarLong(out, (Short) o);
+    } else if (o instanceof Byte) {
+      out.writeByte(BYTE);
+      out.writeByte((Byte) o);
+    } else if (o instanceof Float) {
+      out.writeByte(FLOAT);
+      out.writeFloat((Float) o);
+    } else if (o instanceof Character) {
+      out.writeByte(CHAR);
+      out.writeChar((Character) o);
+    } else if (o instanceof ByteString) {
+      out.writeByte(BYTE_STRING);
+      writeBytes(out, ((ByteString) o).getBytes());
+    } else if (o instanceof List) {
+      final List<?> list = (List<?>) o;
+      out.writeByte(LIST);
+      writeVarLong(out, list.size());
+      for (Object object : list) {
+        write(out, object);
+      }
+    } else if (o instanceof Serializable) {
+      final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try (ObjectOutputStream objectOut = new ObjectOutputStream(bytes)) {
+        objectOut.writeObject(o);
+      }
+      out.writeByte(JAVA);
+      writeBytes(out, bytes.toByteArray());
+    } else {
+      throw new IllegalArgumentException("cannot serialize value of "
+          + o.getClass());
+    }
+  }
+
+  /** Reads a value that was written by {@link #write}. */
+  public static Object read(DataInput in) throws IOException {
+    final byte tag = in.readByte();
+    switch (tag) {
+    case NULL:
+      return null;
+    case FALSE:
+      return false;
+    case TRUE:
+      return true;
+    case BYTE:
+      return in.readByte();
+    case SHORT:
+      return (short) readVarLong(in);
+    case INT:
+      return (int) readVarLong(in);
+    case LONG:
+      return readVarLong(in);
+    case FLOAT:
+      return in.readFloat();
+    case DOUBLE:
+      return in.readDouble();
+    case CHAR:
+      return in.readChar();
+    case STRING:
+      return new String(readBytes(in), StandardCharsets.UTF_8);
+    case DECIMAL:
+      final int scale = (int) readVarLong(in);
+      return new BigDecimal(new BigInteger(readBytes(in)), scale);
+    case BYTE_STRING:
+      return new ByteString(readBytes(in));
+    case ARRAY:
+      final Object[] objects = new Object[(int) readVarLong(in)];
+      for (int i = 0; i < objects.length; i++) {
+        objects[i] = read(in);
+      }
+      return objects;
+    case LIST:
+      final int size = (int) readVarLong(in);
+      final List<Object> list = new ArrayList<>(size);
+      for (int i = 0; i < size; i++) {
+        list.add(read(in));
+      }
+      return list;
+    case JAVA:
+      try (ObjectInputStream objectIn =
+               new ObjectInputStream(new ByteArrayInputStream(readBytes(in)))) {
+        return objectIn.readObject();
+      } catch (ClassNotFoundException e) {
+        throw new IOException(e);
+      }
+    default:
+      throw new IOException("invalid tag " + tag);
+    }
+  }
+
+  /** Returns an estimate of the number of bytes of heap occupied by a value,
+   * which may be a row, including the objects it references.
+   *
+   * <p>Operators use the estimate to decide when to write rows to disk. It
+   * assumes a 64-bit JVM with compressed references. */
+  public static long estimateSize(Object o) {
+    if (o == null) {
+      return 0;
+    } else if (o instanceof Object[]) {
+      final Object[] objects = (Object[]) o;
+      long size = 16 + 4L * objects.length;
+      for (Object object : objects) {
+        size += estimateSize(object);
+      }
+      return size;
+    } else if (o instanceof String) {
+      return 40 + 2L * ((String) o).length();
+    } else if (o instanceof Long || o instanceof Double) {
+      return 24;
+    } else if (o instanceof Number || o instanceof Boolean
+        || o instanceof Character) {
+      return o instanceof BigDecimal ? 64 : 16;
+    } else if (o instanceof List) {
+      final List<?> list = (List<?>) o;
+      long size = 32 + 4L * list.size();
+      for (Object object : list) {
+        size += estimateSize(object);
+      }
+      return size;
+    } else {
+      return 64;
+    }
+  }
+
+  private static void writeBytes(DataOutput out, byte[] bytes)
+      throws IOException {
+    writeVarLong(out, bytes.length);
+    out.write(bytes);
+  }
+
+  private static byte[] readBytes(DataInput in) throws IOException {
+    final byte[] bytes = new byte[(int) readVarLong(in)];
+    in.readFully(bytes);
+    return bytes;
+  }
+
+  /** Writes a signed integer in 1 to 10 bytes. Zig-zag encoding maps values
+   * of small magnitude, negative or positive, to small unsigned values, of
+   * which each byte holds 7 bits. */
+  private static void writeVarLong(DataOutput out, long value)
+      throws IOException {
+    long v = (value << 1) ^ (value >> 63);
+    while ((v & ~0x7FL) != 0) {
+      out.writeByte((int) ((v & 0x7F) | 0x80));
+      v >>>= 7;
+    }
+    out.writeByte((int) v);
+  }
+
+  private static long readVarLong(DataInput in) throws IOException {
+    long v = 0;
+    for (int shift = 0;; shift += 7) {
+      final byte b = in.readByte();
+      v |= (long) (b & 0x7F) << shift;
+      if (b >= 0) {
+        break;
+      }
+    }
+    return (v >>> 1) ^ -(v & 1);
+  }
+}
+
+// End RowSerializer.java
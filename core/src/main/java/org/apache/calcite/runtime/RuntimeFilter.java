@@ -0,0 +1,248 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.runtime;
+
+import org.apache.calcite.linq4j.AbstractEnumerable;
+import org.apache.calcite.linq4j.DelegatingEnumerator;
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.Enumerator;
+import org.apache.calcite.linq4j.function.Function1;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Filter on a join key that is built from the keys of the build side of a
+ * hash join, and is applied to the rows of the probe side before they reach
+ * the join.
+ *
+ * <p>The filter consists of a Bloom filter and the range of the keys. A
+ * row passes if its key is within the range and the Bloom filter might
+ * contain it, so every row that has a match on the build side passes, and
+ * most rows that have no match do not.
+ *
+ * <p>The filter does nothing until the build side has been read completely.
+ *
+ * <p>When the probe side is closed, the filter calls
+ * {@link Hook#RUNTIME_FILTER} with itself, so that the number of rows it
+ * eliminated can be seen.
+ */
+public class RuntimeFilter {
+  /** Number of bits set for each key. */
+  private static final int HASH_COUNT = 3;
+
+  private static final int MIN_BITS = 1 << 10;
+  private static final int MAX_BITS = 1 << 26;
+
+  private final long[] words;
+  private final int mask;
+
+  /** Whether all keys of the build side have been added. The build side may
+   * be read by a different thread than the probe side; writing this field
+   * after the keys publishes the Bloom filter and the range. */
+  private volatile boolean complete;
+  private boolean hasNull;
+  /** Whether all keys are comparable instances of the same class, so that
+   * {@link #min} and {@link #max} are valid. */
+  private boolean ranged;
+  private Comparable min;
+  private Comparable max;
+
+  private long keyCount;
+  private long rowCount;
+  private long eliminatedCount;
+
+  /** Creates a RuntimeFilter.
+   *
+   * @param expectedKeyCount Estimated number of keys on the build side,
+   *                         used to size the Bloom filter
+   */
+  public RuntimeFilter(int expectedKeyCount) {
+    final long bitCount = Math.max(MIN_BITS,
+        Math.min(MAX_BITS, Long.highestOneBit((long) expectedKeyCount * 8)));
+    this.words = new long[(int) (bitCount >>> 6)];
+    this.mask = (int) bitCount - 1;
+    reset();
+  }
+
+  private void reset() {
+    Arrays.fill(words, 0L);
+    complete = false;
+    hasNull = false;
+    ranged = true;
+    min = null;
+    max = null;
+    keyCount = 0;
+    rowCount = 0;
+    eliminatedCount = 0;
+  }
+
+  /** Returns an enumerable that returns the rows of the build side and adds
+   * their keys to a filter. When it has returned all rows, the filter
+   * starts to eliminate rows. */
+  public static <E, K> Enumerable<E> collect(final Enumerable<E> source,
+      final Function1<E, K> keySelector, final RuntimeFilter filter) {
+    return new AbstractEnumerable<E>() {
+      public Enumerator<E> enumerator() {
+        filter.reset();
+        return new DelegatingEnumerator<E>(source.enumerator()) {
+          @Override public boolean moveNext() {
+            if (super.moveNext()) {
+              filter.add(keySelector.apply(current()));
+              return true;
+            }
+            filter.complete = true;
+            return false;
+          }
+
+          @Override public void reset() {
+            super.reset();
+            filter.reset();
+          }
+        };
+      }
+    };
+  }
+
+  /** Returns an enumerable that returns the rows of the probe side that
+   * pass a filter. */
+  public static <E, K> Enumerable<E> filter(final Enumerable<E> source,
+      final Function1<E, K> keySelector, final RuntimeFilter filter) {
+    return new AbstractEnumerable<E>() {
+      public Enumerator<E> enumerator() {
+        return new DelegatingEnumerator<E>(source.enumerator()) {
+          @Override public boolean moveNext() {
+            while (super.moveNext()) {
+              if (filter.test(keySelector.apply(current()))) {
+                return true;
+              }
+            }
+            return false;
+          }
+
+          @Override public void close() {
+            super.close();
+            if (filter.complete) {
+              Hook.RUNTIME_FILTER.run(filter);
+            }
+          }
+        };
+      }
+    };
+  }
+
+  /** Adds a key of the build side. */
+  void add(Object key) {
+    ++keyCount;
+    if (key == null) {
+      hasNull = true;
+      return;
+    }
+    final long hash = hash(key);
+    for (int i = 0; i < HASH_COUNT; i++) {
+      final int bit = bit(hash, i);
+      words[bit >>> 6] |= 1L << bit;
+    }
+    if (ranged) {
+      if (key instanceof Comparable
+          && (min == null || key.getClass() == min.getClass())) {
+        final Comparable c = (Comparable) key;
+        //noinspection unchecked
+        if (min == null || c.compareTo(min) < 0) {
+          min = c;
+        }
+        //noinspection unchecked
+        if (max == null || c.compareTo(max) > 0) {
+          max = c;
+        }
+      } else {
+        ranged = false;
+      }
+    }
+  }
+
+  /** Returns whether a row of the probe side with a given key might have a
+   * match on the build side. */
+  boolean test(Object key) {
+    if (!complete) {
+      return true;
+    }
+    ++rowCount;
+    if (mightContain(key)) {
+      return true;
+    }
+    ++eliminatedCount;
+    return false;
+  }
+
+  private boolean mightContain(Object key) {
+    if (key == null) {
+      return hasNull;
+    }
+    if (ranged
+        && min != null
+        && key.getClass() == min.getClass()) {
+      //noinspection unchecked
+      if (min.compareTo(key) > 0 || max.compareTo(key) < 0) {
+        return false;
+      }
+    }
+    final long hash = hash(key);
+    for (int i = 0; i < HASH_COUNT; i++) {
+      final int bit = bit(hash, i);
+      if ((words[bit >>> 6] & (1L << bit)) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Spreads the hash code of a key over 64 bits. */
+  private static long hash(Object key) {
+    long z = key.hashCode() * 0x9E3779B97F4A7C15L;
+    z = (z ^ (z >>> 32)) * 0xD6E8FEB86659FD93L;
+    return z ^ (z >>> 32);
+  }
+
+  /** Returns the {@code i}th bit of a key, by double hashing. */
+  private int bit(long hash, int i) {
+    return ((int) hash + i * (int) (hash >>> 32)) & mask;
+  }
+
+  /** Returns the number of keys that were added from the build side. */
+  public long getKeyCount() {
+    return keyCount;
+  }
+
+  /** Returns the number of rows of the probe side that were tested. */
+  public long getRowCount() {
+    return rowCount;
+  }
+
+  /** Returns the number of rows of the probe side that were eliminated. */
+  public long getEliminatedCount() {
+    return eliminatedCount;
+  }
+
+  @Override public String toString() {
+    return String.format(Locale.ROOT,
+        "runtime filter: %d keys, %d rows, %d eliminated",
+        keyCount, rowCount, eliminatedCount);
+  }
+}
+
+// End RuntimeFilter.java
@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.runtime;
+
+/**
+ * Segment tree that returns the minimum or maximum of a range of values.
+ *
+ * <p>Used to evaluate {@code MIN} and {@code MAX} over a sliding window
+ * frame. Building the tree takes O(n) time, and each query takes
+ * O(log n) time, whatever the size of the range; re-aggregating each frame
+ * would take time proportional to the size of the frame.
+ *
+ * <p>Null values are ignored, as by the SQL aggregate functions.
+ */
+public class SegmentTree {
+  private final int size;
+  private final boolean max;
+
+  /** Leaves are at positions {@code size} to {@code 2 * size - 1}; the
+   * node at position {@code k} combines those at {@code 2 * k} and
+   * {@code 2 * k + 1}. */
+  private final Comparable[] tree;
+
+  /** Creates a SegmentTree.
+   *
+   * @param values Values; may contain nulls
+   * @param max Whether to compute the maximum (otherwise the minimum)
+   */
+  public SegmentTree(Object[] values, boolean max) {
+    this.size = values.length;
+    this.max = max;
+    this.tree = new Comparable[2 * size];
+    for (int i = 0; i < size; i++) {
+      tree[size + i] = (Comparable) values[i];
+    }
+    for (int k = size - 1; k > 0; k--) {
+      tree[k] = combine(tree[2 * k], tree[2 * k + 1]);
+    }
+  }
+
+  /** Returns the minimum or maximum of the non-null values between
+   * {@code start} and {@code end}, inclusive, or null if there are none. */
+  public Object query(int start, int end) {
+    Comparable result = null;
+    for (int lo = start + size, hi = end + size + 1; lo < hi;
+         lo >>= 1, hi >>= 1) {
+      if ((lo & 1) != 0) {
+        result = combine(result, tree[lo++]);
+      }
+      if ((hi & 1) != 0) {
+        result = combine(result, tree[--hi]);
+      }
+    }
+    return result;
+  }
+
+  private Comparable combine(Comparable c0, Comparable c1) {
+    if (c0 == null) {
+      return c1;
+    }
+    if (c1 == null) {
+      return c0;
+    }
+    //noinspection unchecked
+    final int c = c0.compareTo(c1);
+    return (max ? c >= 0 : c <= 0) ? c0 : c1;
+  }
+}
+
+// End SegmentTree.java
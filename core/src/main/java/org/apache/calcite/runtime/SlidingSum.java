@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.runtime;
+
+import java.math.BigDecimal;
+
+/**
+ * Sum and count of the non-null values in a window frame that moves over an
+ * array of values.
+ *
+ * <p>Used to evaluate {@code SUM} and {@code COUNT} over a sliding window
+ * frame. When the frame moves, values that enter it are added and values
+ * that leave it are subtracted, so if the frame moves one row at a time,
+ * each move takes constant time, whatever the size of the frame.
+ *
+ * <p>Values are either all integers, which are summed as {@code long}
+ * values, or all {@link BigDecimal} values. Floating-point values are not
+ * supported, because subtracting them does not undo adding them.
+ */
+public class SlidingSum {
+  private final long[] longValues;
+  private final BigDecimal[] decimalValues;
+  private final boolean[] nulls;
+
+  /** First row in the frame. */
+  private int start;
+  /** Last row in the frame; if {@code start - 1}, the frame is empty. */
+  private int end = -1;
+
+  private long count;
+  private long longSum;
+  private BigDecimal decimalSum = BigDecimal.ZERO;
+
+  /** Creates a SlidingSum whose frame is initially empty.
+   *
+   * @param values Values; may contain nulls
+   * @param decimal Whether the values are {@link BigDecimal} (otherwise
+   *                integers)
+   */
+  public SlidingSum(Object[] values, boolean decimal) {
+    this.nulls = new boolean[values.length];
+    if (decimal) {
+      this.longValues = null;
+      this.decimalValues = new BigDecimal[values.length];
+    } else {
+      this.longValues = new long[values.length];
+      this.decimalValues = null;
+    }
+    for (int i = 0; i < values.length; i++) {
+      final Object value = values[i];
+      if (value == null) {
+        nulls[i] = true;
+      } else if (decimal) {
+        decimalValues[i] = (BigDecimal) value;
+      } else {
+        longValues[i] = ((Number) value).longValue();
+      }
+    }
+  }
+
+  /** Moves the frame so that it contains the rows between {@code start}
+   * and {@code end}, inclusive. If {@code end} is less than {@code start},
+   * the frame becomes empty. */
+  public void moveTo(int start, int end) {
+    if (end < start || start > this.end || end < this.start) {
+      // The new frame does not overlap the old one. Start from scratch.
+      count = 0;
+      longSum = 0;
+      decimalSum = BigDecimal.ZERO;
+      for (int i = start; i <= end; i++) {
+        add(i);
+      }
+      this.start = start;
+      this.end = Math.max(end, start - 1);
+      return;
+    }
+    while (this.start < start) {
+      remove(this.start++);
+    }
+    while (this.start > start) {
+      add(--this.start);
+    }
+    while (this.end < end) {
+      add(++this.end);
+    }
+    while (this.end > end) {
+      remove(this.end--);
+    }
+  }
+
+  private void add(int i) {
+    if (!nulls[i]) {
+      ++count;
+      if (longValues != null) {
+        longSum += longValues[i];
+      } else {
+        decimalSum = decimalSum.add(decimalValues[i]);
+      }
+    }
+  }
+
+  private void remove(int i) {
+    if (!nulls[i]) {
+      --count;
+      if (longValues != null) {
+        longSum -= longValues[i];
+      } else {
+        decimalSum = decimalSum.subtract(decimalValues[i]);
+      }
+    }
+  }
+
+  /** Returns the number of non-null values in the frame. */
+  public long count() {
+    return count;
+  }
+
+  /** Returns the sum of the values in the frame, if they are integers;
+   * 0 if there are none. */
+  public long longSum() {
+    return longSum;
+  }
+
+  /** Returns the sum of the values in the frame, if they are
+   * {@link BigDecimal}; 0 if there are none. */
+  public BigDecimal decimalSum() {
+    return count == 0 ? BigDecimal.ZERO : decimalSum;
+  }
+}
+
+// End SlidingSum.java
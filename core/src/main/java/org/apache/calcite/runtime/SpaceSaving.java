@@ -0,0 +1,232 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.runtime;
+
+import org.apache.calcite.linq4j.AbstractEnumerable;
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.Enumerator;
+import org.apache.calcite.linq4j.Linq4j;
+import org.apache.calcite.linq4j.function.Function1;
+import org.apache.calcite.linq4j.function.Function2;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Finds the most frequent keys in a stream, in bounded memory, using the
+ * Space-Saving algorithm of Metwally, Agrawal and El Abbadi.
+ *
+ * <p>The sketch keeps at most {@code capacity} counters. A key that has a
+ * counter increments it. A new key, if all counters are in use, takes over
+ * the counter with the smallest count, and starts from that count; the count
+ * it inherits is recorded as the error of the counter.
+ *
+ * <p>So each count is an upper bound on the true frequency of its key, and
+ * the count minus the error is a lower bound. Every key whose frequency is
+ * greater than the number of keys added divided by {@code capacity} has a
+ * counter. If there are no more distinct keys than counters, the counts are
+ * exact.
+ *
+ * <p>An {@link #topN approximate Top-N} calls {@link Hook#APPROXIMATE_TOP_N}
+ * with the sketch when it has read its input, so that the error of its counts
+ * can be seen.
+ *
+ * @param <K> Key type
+ */
+public class SpaceSaving<K> {
+  private final int capacity;
+  private final Map<K, Counter<K>> counters = new HashMap<>();
+  /** Counters, ordered by the count each had when it was added to the heap.
+   * Counts only increase, so the head is a lower bound on the smallest
+   * count. */
+  private final PriorityQueue<Counter<K>> heap;
+  private long total;
+  /** Whether any counter has been taken over by another key. */
+  private boolean evicted;
+
+  /** Creates a SpaceSaving sketch.
+   *
+   * @param capacity Maximum number of counters
+   */
+  public SpaceSaving(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("capacity must be positive: "
+          + capacity);
+    }
+    this.capacity = capacity;
+    this.heap = new PriorityQueue<>(Math.min(capacity, 1024),
+        new Comparator<Counter<K>>() {
+          public int compare(Counter<K> c0, Counter<K> c1) {
+            return Long.compare(c0.heapCount, c1.heapCount);
+          }
+        });
+  }
+
+  /** Returns an enumerable that yields, for the most frequent keys of a
+   * source, a row made from the key and its estimated count, in descending
+   * order of count, skipping the first {@code offset} and returning at most
+   * {@code fetch}.
+   *
+   * @param source Input rows
+   * @param keySelector Function that returns the key of a row
+   * @param capacity Maximum number of counters
+   * @param offset Number of keys to skip
+   * @param fetch Number of keys to return
+   * @param resultSelector Function that creates a result row from a key and
+   *                       its estimated count
+   */
+  public static <E, K, R> Enumerable<R> topN(final Enumerable<E> source,
+      final Function1<E, K> keySelector, final int capacity, final int offset,
+      final int fetch, final Function2<K, Long, R> resultSelector) {
+    return new AbstractEnumerable<R>() {
+      public Enumerator<R> enumerator() {
+        final SpaceSaving<K> sketch = new SpaceSaving<>(capacity);
+        try (Enumerator<E> enumerator = source.enumerator()) {
+          while (enumerator.moveNext()) {
+            sketch.add(keySelector.apply(enumerator.current()));
+          }
+        }
+        Hook.APPROXIMATE_TOP_N.run(sketch);
+        final List<Counter<K>> top =
+            sketch.top((int) Math.min(Integer.MAX_VALUE, (long) offset + fetch));
+        final List<R> list = new ArrayList<>();
+        for (int i = offset; i < top.size(); i++) {
+          final Counter<K> counter = top.get(i);
+          list.add(resultSelector.apply(counter.key, counter.count));
+        }
+        return Linq4j.enumerator(list);
+      }
+    };
+  }
+
+  /** Adds an occurrence of a key. */
+  public void add(K key) {
+    ++total;
+    Counter<K> counter = counters.get(key);
+    if (counter != null) {
+      ++counter.count;
+      return;
+    }
+    if (counters.size() < capacity) {
+      counter = new Counter<>(key, 1, 0);
+    } else {
+      final Counter<K> min = pollMin();
+      counters.remove(min.key);
+      evicted = true;
+      counter = new Counter<>(key, min.count + 1, min.count);
+    }
+    counters.put(key, counter);
+    heap.add(counter);
+  }
+
+  /** Removes the counter with the smallest count from the heap. */
+  private Counter<K> pollMin() {
+    for (;;) {
+      final Counter<K> counter = heap.poll();
+      if (counter.heapCount == counter.count) {
+        return counter;
+      }
+      // The counter has been incremented since it was added; re-add it with
+      // its current count.
+      counter.heapCount = counter.count;
+      heap.add(counter);
+    }
+  }
+
+  /** Returns the number of keys that have been added, including repeats. */
+  public long getTotal() {
+    return total;
+  }
+
+  /** Returns the counters with the {@code n} largest counts, in descending
+   * order of count. */
+  public List<Counter<K>> top(int n) {
+    final List<Counter<K>> list = new ArrayList<>(counters.values());
+    Collections.sort(list,
+        new Comparator<Counter<K>>() {
+          public int compare(Counter<K> c0, Counter<K> c1) {
+            return Long.compare(c1.count, c0.count);
+          }
+        });
+    return list.size() <= n ? list : list.subList(0, n);
+  }
+
+  /** Returns whether the keys returned by {@link #top top(n)} are certainly
+   * the {@code n} most frequent keys; that is, whether the lower bound of
+   * the count of each is at least the upper bound of the count of every
+   * other key. */
+  public boolean isGuaranteed(int n) {
+    if (!evicted) {
+      // Every key that was added has a counter, and its count is exact
+      return true;
+    }
+    final List<Counter<K>> top = top(n + 1);
+    if (top.size() <= n) {
+      return false;
+    }
+    final long next = top.get(n).count;
+    for (int i = 0; i < n; i++) {
+      final Counter<K> counter = top.get(i);
+      if (counter.count - counter.error < next) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Counter of occurrences of a key.
+   *
+   * @param <K> Key type */
+  public static class Counter<K> {
+    public final K key;
+    long count;
+    final long error;
+    /** Value of {@link #count} when the counter was last added to the
+     * heap. */
+    long heapCount;
+
+    Counter(K key, long count, long error) {
+      this.key = key;
+      this.count = count;
+      this.error = error;
+      this.heapCount = count;
+    }
+
+    /** Returns the estimated number of occurrences of the key; never less
+     * than the true number. */
+    public long getCount() {
+      return count;
+    }
+
+    /** Returns the maximum amount by which {@link #getCount()} exceeds the
+     * true number of occurrences of the key. */
+    public long getError() {
+      return error;
+    }
+
+    @Override public String toString() {
+      return key + ":" + count + "+/-" + error;
+    }
+  }
+}
+
+// End SpaceSaving.java
@@ -0,0 +1,226 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.runtime;
+
+import org.apache.calcite.linq4j.AbstractEnumerable;
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.Enumerator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Temporary file to which an operator writes rows that do not fit in
+ * memory, and from which it later reads them back.
+ *
+ * <p>Rows are written using {@link RowSerializer}. After the last row has
+ * been added, call {@link #read()} to read the rows in the order that they
+ * were written. {@link #close()} deletes the file.
+ *
+ * @param <E> Row type
+ */
+public class SpillFile<E> implements Closeable {
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private final File file;
+  private DataOutputStream out;
+  private int rowCount;
+  private long byteCount;
+
+  /** Creates a SpillFile in the directory given by the
+   * {@code java.io.tmpdir} system property. */
+  public SpillFile() {
+    try {
+      file = File.createTempFile("calcite-spill", ".bin");
+      out = new DataOutputStream(
+          new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+    } catch (IOException e) {
+      throw new RuntimeException("while creating spill file", e);
+    }
+  }
+
+  /** Appends a row. */
+  public void add(E row) {
+    if (out == null) {
+      throw new IllegalStateException("spill file is finished");
+    }
+    try {
+      RowSerializer.write(out, row);
+    } catch (IOException e) {
+      throw new RuntimeException("while writing to " + file, e);
+    }
+    ++rowCount;
+  }
+
+  /** Returns the number of rows written. */
+  public int getRowCount() {
+    return rowCount;
+  }
+
+  /** Returns the size of the file in bytes; valid after {@link #finish()}
+   * or {@link #read()} has been called. */
+  public long getByteCount() {
+    return byteCount;
+  }
+
+  /** Finishes writing, and closes the file. Called implicitly by
+   * {@link #read()}; an operator that writes many files should call it as
+   * soon as it has finished writing each one, to avoid holding too many
+   * files open. */
+  public void finish() {
+    if (out != null) {
+      try {
+        out.close();
+      } catch (IOException e) {
+        throw new RuntimeException("while writing to " + file, e);
+      }
+      out = null;
+      byteCount = file.length();
+    }
+  }
+
+  /** Finishes writing, and returns an enumerable that reads the rows in the
+   * order that they were written. Each call to
+   * {@link Enumerable#enumerator()} reads the file again. */
+  public Enumerable<E> read() {
+    finish();
+    final int count = rowCount;
+    return new AbstractEnumerable<E>() {
+      public Enumerator<E> enumerator() {
+        return new SpillEnumerator<>(file, count);
+      }
+    };
+  }
+
+  /** Deletes the file. */
+  public void close() {
+    if (out != null) {
+      try {
+        out.close();
+      } catch (IOException e) {
+        // ignore; we are about to delete the file
+      }
+      out = null;
+    }
+    //noinspection ResultOfMethodCallIgnored
+    file.delete();
+  }
+
+  @Override public String toString() {
+    return String.format(Locale.ROOT, "%s (%d rows)", file, rowCount);
+  }
+
+  /** Enumerator that reads rows from a spill file.
+   *
+   * @param <E> Row type */
+  private static class SpillEnumerator<E> implements Enumerator<E> {
+    private final File file;
+    private final int count;
+    private DataInputStream in;
+    private int position;
+    private E current;
+
+    SpillEnumerator(File file, int count) {
+      this.file = file;
+      this.count = count;
+    }
+
+    public E current() {
+      return current;
+    }
+
+    public boolean moveNext() {
+      if (position >= count) {
+        close();
+        return false;
+      }
+      try {
+        if (in == null) {
+          in = new DataInputStream(
+              new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+        }
+        //noinspection unchecked
+        current = (E) RowSerializer.read(in);
+      } catch (IOException e) {
+        throw new RuntimeException("while reading from " + file, e);
+      }
+      ++position;
+      return true;
+    }
+
+    public void reset() {
+      close();
+      position = 0;
+    }
+
+    public void close() {
+      current = null;
+      if (in != null) {
+        try {
+          in.close();
+        } catch (IOException e) {
+          // ignore
+        }
+        in = null;
+      }
+    }
+  }
+
+  /** Statistics about the temporary files written by one execution of an
+   * operator; passed to {@link Hook#SPILL}. */
+  public static class Stats {
+    /** Name of the operator, for example "join". */
+    public final String operator;
+    /** Number of files written. */
+    public final int fileCount;
+    /** Number of bytes written. */
+    public final long byteCount;
+    /** Number of groups whose rows were written, for an operator that
+     * aggregates; otherwise 0. */
+    public final long groupCount;
+
+    public Stats(String operator, int fileCount, long byteCount) {
+      this(operator, fileCount, byteCount, 0);
+    }
+
+    public Stats(String operator, int fileCount, long byteCount,
+        long groupCount) {
+      this.operator = operator;
+      this.fileCount = fileCount;
+      this.byteCount = byteCount;
+      this.groupCount = groupCount;
+    }
+
+    @Override public String toString() {
+      final String s = String.format(Locale.ROOT, "%s: %d files, %d bytes",
+          operator, fileCount, byteCount);
+      return groupCount == 0
+          ? s
+          : s + String.format(Locale.ROOT, ", %d groups", groupCount);
+    }
+  }
+}
+
+// End SpillFile.java
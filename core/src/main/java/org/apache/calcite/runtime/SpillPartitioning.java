@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.runtime;
+
+import org.apache.calcite.linq4j.function.EqualityComparer;
+
+/**
+ * Partitioning by hash code, used by the operators that write rows to
+ * temporary files when they run out of memory, {@link SpillingHashJoin} and
+ * {@link SpillingHashAggregate}.
+ *
+ * <p>At each level of partitioning, rows are split into {@link #FANOUT}
+ * partitions by a different group of bits of the hash code of their key.
+ */
+final class SpillPartitioning {
+  /** Number of bits of the hash code used to partition at each level. */
+  private static final int FANOUT_BITS = 4;
+
+  /** Number of partitions into which rows are split at each level. */
+  static final int FANOUT = 1 << FANOUT_BITS;
+
+  /** Deepest level at which rows are partitioned; by then, all bits of the
+   * hash code have been used. */
+  static final int MAX_LEVEL = 32 / FANOUT_BITS - 1;
+
+  private SpillPartitioning() {}
+
+  /** Returns the value to use as a key in a hash table; wraps the key if
+   * there is a comparer. */
+  static <K> Object wrap(EqualityComparer<K> comparer, K key) {
+    return comparer == null ? key : new WrappedKey<>(comparer, key);
+  }
+
+  /** Returns the partition of a key at a given level of partitioning. */
+  static int partitionOf(Object key, int level) {
+    // Finalization step of MurmurHash3, so that every bit of the result
+    // depends on every bit of the hash code.
+    int h = key == null ? 0 : key.hashCode();
+    h ^= h >>> 16;
+    h *= 0x85EBCA6B;
+    h ^= h >>> 13;
+    h *= 0xC2B2AE35;
+    h ^= h >>> 16;
+    return (h >>> (level * FANOUT_BITS)) & (FANOUT - 1);
+  }
+
+  /** Key that uses a comparer to implement {@link #equals} and
+   * {@link #hashCode}.
+   *
+   * @param <K> key type */
+  private static class WrappedKey<K> {
+    private final EqualityComparer<K> comparer;
+    private final K key;
+
+    WrappedKey(EqualityComparer<K> comparer, K key) {
+      this.comparer = comparer;
+      this.key = key;
+    }
+
+    @Override public int hashCode() {
+      return comparer.hashCode(key);
+    }
+
+    @Override public boolean equals(Object obj) {
+      //noinspection unchecked
+      return obj == this
+          || obj instanceof WrappedKey
+          && comparer.equal(key, ((WrappedKey<K>) obj).key);
+    }
+  }
+}
+
+// End SpillPartitioning.java
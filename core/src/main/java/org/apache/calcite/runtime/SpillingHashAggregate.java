@@ -0,0 +1,354 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.runtime;
+
+import org.apache.calcite.linq4j.AbstractEnumerable;
+import org.apache.calcite.linq4j.DelegatingEnumerator;
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.Enumerator;
+import org.apache.calcite.linq4j.Linq4j;
+import org.apache.calcite.linq4j.function.EqualityComparer;
+import org.apache.calcite.linq4j.function.Function0;
+import org.apache.calcite.linq4j.function.Function1;
+import org.apache.calcite.linq4j.function.Function2;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hash aggregation that writes partially aggregated groups to temporary files
+ * if its groups do not fit within a memory limit.
+ *
+ * <p>Rows are aggregated into a hash table of groups. Whenever the estimated
+ * size of the groups exceeds the limit, the key and accumulator of each group
+ * are written to one of {@link SpillPartitioning#FANOUT} files, chosen by the
+ * hash code of the key, and the table is emptied. When the input is
+ * exhausted, if nothing was written, the groups in the table are returned;
+ * otherwise the remaining groups are written too, and each file is read back
+ * and its partial accumulators are merged, group by group, in the same way,
+ * using different bits of the hash code to partition them.
+ *
+ * <p>Accumulators are merged using the same function as
+ * {@link org.apache.calcite.linq4j.EnumerableDefaults#parallelGroupBy}, so
+ * only aggregate functions that can merge partial states can spill. An
+ * accumulator is converted to an array of values that {@link RowSerializer}
+ * can write before it is written, and back after it is read.
+ *
+ * <p>The size of an accumulator is estimated again each time a row is added
+ * to it, so the limit holds for accumulators that grow, such as a
+ * {@code MAX} of strings or a {@code SUM} of decimals.
+ *
+ * <p>After {@link SpillPartitioning#MAX_LEVEL} levels of partitioning,
+ * accumulators are merged in memory whatever the size of their groups.
+ *
+ * <p>When it has finished, if it wrote any files, the aggregation calls
+ * {@link Hook#SPILL} with a {@link SpillFile.Stats} whose
+ * {@link SpillFile.Stats#groupCount groupCount} is the number of partially
+ * aggregated groups that were written to files.
+ *
+ * @param <TSource> Input row type
+ * @param <TKey> Key type
+ * @param <TAccumulate> Accumulator type
+ * @param <TResult> Result type
+ */
+public class SpillingHashAggregate<TSource, TKey, TAccumulate, TResult> {
+  /** Estimated number of bytes occupied by an entry in a hash table, in
+   * addition to its key and accumulator. */
+  private static final int ENTRY_SIZE = 64;
+
+  private final Function1<TSource, TKey> keySelector;
+  private final Function0<TAccumulate> accumulatorInitializer;
+  private final Function2<TAccumulate, TSource, TAccumulate> accumulatorAdder;
+  private final Function2<TAccumulate, TAccumulate, TAccumulate>
+      accumulatorMerger;
+  private final Function2<TKey, TAccumulate, TResult> resultSelector;
+  private final Function1<TAccumulate, Object[]> accumulatorWriter;
+  private final Function1<Object[], TAccumulate> accumulatorReader;
+  private final EqualityComparer<TKey> comparer;
+  private final long memoryLimit;
+
+  /** Files that have been created and not yet deleted. */
+  private final List<SpillFile<?>> files = new ArrayList<>();
+  private int fileCount;
+  private long byteCount;
+  private long groupCount;
+
+  private SpillingHashAggregate(Function1<TSource, TKey> keySelector,
+      Function0<TAccumulate> accumulatorInitializer,
+      Function2<TAccumulate, TSource, TAccumulate> accumulatorAdder,
+      Function2<TAccumulate, TAccumulate, TAccumulate> accumulatorMerger,
+      Function2<TKey, TAccumulate, TResult> resultSelector,
+      Function1<TAccumulate, Object[]> accumulatorWriter,
+      Function1<Object[], TAccumulate> accumulatorReader,
+      EqualityComparer<TKey> comparer, long memoryLimit) {
+    this.keySelector = keySelector;
+    this.accumulatorInitializer = accumulatorInitializer;
+    this.accumulatorAdder = accumulatorAdder;
+    this.accumulatorMerger = accumulatorMerger;
+    this.resultSelector = resultSelector;
+    this.accumulatorWriter = accumulatorWriter;
+    this.accumulatorReader = accumulatorReader;
+    this.comparer = comparer;
+    this.memoryLimit = memoryLimit;
+  }
+
+  /** Groups rows by key and aggregates each group, writing partially
+   * aggregated groups to temporary files if the groups do not fit in memory.
+   * Returns the same rows as
+   * {@link org.apache.calcite.linq4j.EnumerableDefaults#groupBy}, but not
+   * necessarily in the same order.
+   *
+   * <p>Keys are written using {@link RowSerializer}, so they must consist of
+   * values that it can serialize.
+   *
+   * @param accumulatorMerger Merges the second accumulator, of rows of the
+   *                          same group, into the first, and returns it
+   * @param accumulatorWriter Converts an accumulator to values that
+   *                          {@link RowSerializer} can write
+   * @param accumulatorReader Converts the values back to an accumulator
+   * @param comparer Comparer of keys, or null to use {@link Object#equals}
+   * @param memoryLimit Approximate number of bytes of keys and accumulators
+   *                    to hold in memory, as estimated by
+   *                    {@link RowSerializer#estimateSize(Object)}
+   */
+  public static <TSource, TKey, TAccumulate, TResult> Enumerable<TResult>
+  groupBy(final Enumerable<TSource> source,
+      final Function1<TSource, TKey> keySelector,
+      final Function0<TAccumulate> accumulatorInitializer,
+      final Function2<TAccumulate, TSource, TAccumulate> accumulatorAdder,
+      final Function2<TAccumulate, TAccumulate, TAccumulate> accumulatorMerger,
+      final Function2<TKey, TAccumulate, TResult> resultSelector,
+      final Function1<TAccumulate, Object[]> accumulatorWriter,
+      final Function1<Object[], TAccumulate> accumulatorReader,
+      final EqualityComparer<TKey> comparer, final long memoryLimit) {
+    return new AbstractEnumerable<TResult>() {
+      public Enumerator<TResult> enumerator() {
+        final SpillingHashAggregate<TSource, TKey, TAccumulate, TResult>
+            aggregate = new SpillingHashAggregate<>(keySelector,
+                accumulatorInitializer, accumulatorAdder, accumulatorMerger,
+                resultSelector, accumulatorWriter, accumulatorReader,
+                comparer, memoryLimit);
+        return aggregate.enumerator(source);
+      }
+    };
+  }
+
+  private Enumerator<TResult> enumerator(Enumerable<TSource> source) {
+    final Enumerable<TResult> results;
+    try {
+      final Pass pass = new Pass(0);
+      try (Enumerator<TSource> enumerator = source.enumerator()) {
+        while (enumerator.moveNext()) {
+          final TSource row = enumerator.current();
+          pass.add(keySelector.apply(row), row);
+        }
+      }
+      results = pass.results();
+    } catch (RuntimeException | Error e) {
+      close();
+      throw e;
+    }
+    return new DelegatingEnumerator<TResult>(results.enumerator()) {
+      @Override public void reset() {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override public void close() {
+        try {
+          super.close();
+        } finally {
+          SpillingHashAggregate.this.close();
+        }
+      }
+    };
+  }
+
+  /** Deletes any remaining files, and reports statistics. */
+  private void close() {
+    for (SpillFile<?> file : files) {
+      file.close();
+    }
+    files.clear();
+    if (fileCount > 0) {
+      Hook.SPILL.run(
+          new SpillFile.Stats("aggregate", fileCount, byteCount, groupCount));
+      fileCount = 0;
+      byteCount = 0;
+      groupCount = 0;
+    }
+  }
+
+  /** Returns an enumerable that merges the partially aggregated groups in a
+   * file at a given level of partitioning, and deletes the file when done.
+   * It reads the file when its enumerator is created. */
+  private Enumerable<TResult> mergeFile(final SpillFile<Object[]> file,
+      final int level) {
+    return new AbstractEnumerable<TResult>() {
+      public Enumerator<TResult> enumerator() {
+        final Pass pass = new Pass(level);
+        try (Enumerator<Object[]> enumerator = read(file).enumerator()) {
+          while (enumerator.moveNext()) {
+            final Object[] entry = enumerator.current();
+            //noinspection unchecked
+            pass.merge((TKey) entry[0],
+                accumulatorReader.apply((Object[]) entry[1]));
+          }
+        }
+        file.close();
+        return pass.results().enumerator();
+      }
+    };
+  }
+
+  /** Aggregation of the groups that belong to the same files at all previous
+   * levels. */
+  private class Pass {
+    private final int level;
+    private final long limit;
+    private final Map<Object, Group> groups = new HashMap<>();
+    private final List<SpillFile<Object[]>> spills = new ArrayList<>();
+
+    /** Estimated size of the keys and accumulators held in memory. */
+    private long memory;
+
+    Pass(int level) {
+      this.level = level;
+      this.limit =
+          level > SpillPartitioning.MAX_LEVEL ? Long.MAX_VALUE : memoryLimit;
+    }
+
+    /** Adds an input row to its group. */
+    void add(TKey key, TSource row) {
+      final Group group = group(key);
+      group.accumulator = accumulatorAdder.apply(group.accumulator, row);
+      resize(group);
+    }
+
+    /** Merges a partial accumulator into its group. */
+    void merge(TKey key, TAccumulate accumulator) {
+      final Group group = group(key);
+      group.accumulator =
+          accumulatorMerger.apply(group.accumulator, accumulator);
+      resize(group);
+    }
+
+    /** Returns the group of a key, creating it if necessary. */
+    private Group group(TKey key) {
+      final Object k = SpillPartitioning.wrap(comparer, key);
+      Group group = groups.get(k);
+      if (group == null) {
+        group = new Group(k, key, accumulatorInitializer.apply());
+        groups.put(k, group);
+        memory += RowSerializer.estimateSize(key) + ENTRY_SIZE;
+      }
+      return group;
+    }
+
+    /** Estimates the size of a group's accumulator again, and if the groups
+     * no longer fit in memory, writes them to files. */
+    private void resize(Group group) {
+      final long size =
+          RowSerializer.estimateSize(accumulatorWriter.apply(group.accumulator));
+      memory += size - group.size;
+      group.size = size;
+      if (memory > limit) {
+        spill();
+      }
+    }
+
+    /** Writes each group to the file of its partition, and empties the
+     * table. */
+    private void spill() {
+      if (spills.isEmpty()) {
+        for (int i = 0; i < SpillPartitioning.FANOUT; i++) {
+          spills.add(null);
+        }
+      }
+      for (Group group : groups.values()) {
+        final int partition = SpillPartitioning.partitionOf(group.k, level);
+        SpillFile<Object[]> file = spills.get(partition);
+        if (file == null) {
+          file = createFile();
+          spills.set(partition, file);
+        }
+        file.add(
+            new Object[] {group.key,
+                accumulatorWriter.apply(group.accumulator)});
+      }
+      groupCount += groups.size();
+      groups.clear();
+      memory = 0;
+    }
+
+    /** Returns an enumerable that returns the groups, merging those that
+     * have been written to files. */
+    Enumerable<TResult> results() {
+      if (spills.isEmpty()) {
+        final List<TResult> results = new ArrayList<>(groups.size());
+        for (Group group : groups.values()) {
+          results.add(resultSelector.apply(group.key, group.accumulator));
+        }
+        groups.clear();
+        return Linq4j.asEnumerable(results);
+      }
+      // Some groups have partial accumulators in files; write the rest, so
+      // that each group is merged within one file.
+      spill();
+      final List<Enumerable<TResult>> list = new ArrayList<>();
+      for (final SpillFile<Object[]> file : spills) {
+        if (file != null) {
+          file.finish();
+          list.add(mergeFile(file, level + 1));
+        }
+      }
+      return Linq4j.concat(list);
+    }
+  }
+
+  private <E> SpillFile<E> createFile() {
+    final SpillFile<E> file = new SpillFile<>();
+    files.add(file);
+    ++fileCount;
+    return file;
+  }
+
+  private <E> Enumerable<E> read(SpillFile<E> file) {
+    final Enumerable<E> enumerable = file.read();
+    byteCount += file.getByteCount();
+    return enumerable;
+  }
+
+  /** Key and accumulator of a group. */
+  private class Group {
+    /** Key as it is held in the hash table. */
+    final Object k;
+    final TKey key;
+    TAccumulate accumulator;
+    /** Estimated size of {@link #accumulator}. */
+    long size;
+
+    Group(Object k, TKey key, TAccumulate accumulator) {
+      this.k = k;
+      this.key = key;
+      this.accumulator = accumulator;
+    }
+  }
+}
+
+// End SpillingHashAggregate.java
@@ -0,0 +1,470 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.runtime;
+
+import org.apache.calcite.linq4j.AbstractEnumerable;
+import org.apache.calcite.linq4j.DelegatingEnumerator;
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.Enumerator;
+import org.apache.calcite.linq4j.Linq4j;
+import org.apache.calcite.linq4j.function.EqualityComparer;
+import org.apache.calcite.linq4j.function.Function1;
+import org.apache.calcite.linq4j.function.Function2;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hash join that writes partitions of its inputs to temporary files if the
+ * rows of its build (right) input do not fit within a memory limit.
+ *
+ * <p>Rows of the build input are assigned to {@link SpillPartitioning#FANOUT}
+ * partitions by the hash code of their key. Whenever the estimated size of
+ * the rows held in memory exceeds the limit, the largest partition is written
+ * to a {@link SpillFile}, as are later rows that belong to it. The partitions
+ * that remain in memory are joined with the probe (left) input as it
+ * streams past; probe rows that belong to a spilled partition are written
+ * to a file of their own. Then each pair of spilled files is joined in the
+ * same way, using different bits of the hash code to partition them. This
+ * is the "hybrid hash join" algorithm.
+ *
+ * <p>After {@link SpillPartitioning#MAX_LEVEL} levels of partitioning, a
+ * partition is joined
+ * in memory whatever its size; it probably consists of rows with the same
+ * key, which no amount of partitioning would split.
+ *
+ * <p>When it has finished, if it wrote any files, the join calls
+ * {@link Hook#SPILL} with a {@link SpillFile.Stats}.
+ *
+ * @param <TSource> left input record type
+ * @param <TInner> right input record type
+ * @param <TKey> key type
+ * @param <TResult> result type
+ */
+public class SpillingHashJoin<TSource, TInner, TKey, TResult> {
+  private final Function1<TSource, TKey> outerKeySelector;
+  private final Function1<TInner, TKey> innerKeySelector;
+  private final Function2<TSource, TInner, TResult> resultSelector;
+  private final EqualityComparer<TKey> comparer;
+  private final boolean generateNullsOnLeft;
+  private final boolean generateNullsOnRight;
+  private final long memoryLimit;
+
+  /** Files that have been created and not yet deleted. */
+  private final List<SpillFile<?>> files = new ArrayList<>();
+  private int fileCount;
+  private long byteCount;
+
+  private SpillingHashJoin(Function1<TSource, TKey> outerKeySelector,
+      Function1<TInner, TKey> innerKeySelector,
+      Function2<TSource, TInner, TResult> resultSelector,
+      EqualityComparer<TKey> comparer, boolean generateNullsOnLeft,
+      boolean generateNullsOnRight, long memoryLimit) {
+    this.outerKeySelector = outerKeySelector;
+    this.innerKeySelector = innerKeySelector;
+    this.resultSelector = resultSelector;
+    this.comparer = comparer;
+    this.generateNullsOnLeft = generateNullsOnLeft;
+    this.generateNullsOnRight = generateNullsOnRight;
+    this.memoryLimit = memoryLimit;
+  }
+
+  /** Joins two inputs, writing rows to temporary files if the right input
+   * does not fit in memory. Returns the same rows as
+   * {@link org.apache.calcite.linq4j.EnumerableDefaults#join}, but not
+   * necessarily in the same order.
+   *
+   * <p>Rows are written using {@link RowSerializer}, so they must consist of
+   * values that it can serialize.
+   *
+   * @param memoryLimit Approximate number of bytes of right rows to hold in
+   *                    memory, as estimated by
+   *                    {@link RowSerializer#estimateSize(Object)}
+   */
+  public static <TSource, TInner, TKey, TResult> Enumerable<TResult> join(
+      final Enumerable<TSource> outer, final Enumerable<TInner> inner,
+      final Function1<TSource, TKey> outerKeySelector,
+      final Function1<TInner, TKey> innerKeySelector,
+      final Function2<TSource, TInner, TResult> resultSelector,
+      final EqualityComparer<TKey> comparer, final boolean generateNullsOnLeft,
+      final boolean generateNullsOnRight, final long memoryLimit) {
+    return new AbstractEnumerable<TResult>() {
+      public Enumerator<TResult> enumerator() {
+        final SpillingHashJoin<TSource, TInner, TKey, TResult> join =
+            new SpillingHashJoin<>(outerKeySelector, innerKeySelector,
+                resultSelector, comparer, generateNullsOnLeft,
+                generateNullsOnRight, memoryLimit);
+        return join.enumerator(outer, inner);
+      }
+    };
+  }
+
+  private Enumerator<TResult> enumerator(Enumerable<TSource> outer,
+      Enumerable<TInner> inner) {
+    return new DelegatingEnumerator<TResult>(
+        join(outer, inner, 0).enumerator()) {
+      @Override public void reset() {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override public void close() {
+        try {
+          super.close();
+        } finally {
+          SpillingHashJoin.this.close();
+        }
+      }
+    };
+  }
+
+  /** Deletes any remaining files, and reports statistics. */
+  private void close() {
+    for (SpillFile<?> file : files) {
+      file.close();
+    }
+    files.clear();
+    if (fileCount > 0) {
+      Hook.SPILL.run(new SpillFile.Stats("join", fileCount, byteCount));
+      fileCount = 0;
+      byteCount = 0;
+    }
+  }
+
+  private <E> SpillFile<E> createFile() {
+    final SpillFile<E> file = new SpillFile<>();
+    files.add(file);
+    ++fileCount;
+    return file;
+  }
+
+  private <E> Enumerable<E> read(SpillFile<E> file) {
+    final Enumerable<E> enumerable = file.read();
+    byteCount += file.getByteCount();
+    return enumerable;
+  }
+
+  /** Returns the value to use as a key in a hash table; wraps the key if
+   * there is a comparer. */
+  private Object wrap(TKey key) {
+    return SpillPartitioning.wrap(comparer, key);
+  }
+
+  /** Returns an enumerable that joins rows at a given level of
+   * partitioning. It reads the right input when its enumerator is
+   * created. */
+  private Enumerable<TResult> join(final Enumerable<TSource> outer,
+      final Enumerable<TInner> inner, final int level) {
+    return new AbstractEnumerable<TResult>() {
+      public Enumerator<TResult> enumerator() {
+        final Pass pass = new Pass(level);
+        pass.build(inner);
+        return pass.probe(outer).enumerator();
+      }
+    };
+  }
+
+  /** Returns an enumerable that joins each right row to a null left row. */
+  private Enumerable<TResult> nullLeft(Enumerable<TInner> inners) {
+    return inners.select(
+        new Function1<TInner, TResult>() {
+          public TResult apply(TInner inner) {
+            return resultSelector.apply(null, inner);
+          }
+        });
+  }
+
+  /** Join of rows that belong to the same partitions at all previous
+   * levels. */
+  private class Pass {
+    private final int level;
+    private final long limit;
+    private final List<Partition> partitions = new ArrayList<>();
+
+    /** Right rows whose key is null. They match no left row; we keep them
+     * only if the join generates nulls on the left. */
+    private final Partition nullKeys = new Partition();
+
+    /** Estimated size of the right rows held in memory. */
+    private long memory;
+
+    Pass(int level) {
+      this.level = level;
+      this.limit =
+          level > SpillPartitioning.MAX_LEVEL ? Long.MAX_VALUE : memoryLimit;
+      for (int i = 0; i < SpillPartitioning.FANOUT; i++) {
+        partitions.add(new Partition());
+      }
+    }
+
+    /** Reads the right input, spilling partitions as necessary, and builds
+     * a hash table for each partition that remains in memory. */
+    void build(Enumerable<TInner> inner) {
+      try (Enumerator<TInner> enumerator = inner.enumerator()) {
+        while (enumerator.moveNext()) {
+          final TInner row = enumerator.current();
+          final TKey key = innerKeySelector.apply(row);
+          final Partition partition;
+          if (key == null) {
+            if (!generateNullsOnLeft) {
+              continue;
+            }
+            partition = nullKeys;
+          } else {
+            partition =
+                partitions.get(SpillPartitioning.partitionOf(wrap(key), level));
+          }
+          if (partition.innerFile != null) {
+            partition.innerFile.add(row);
+            continue;
+          }
+          final long size = RowSerializer.estimateSize(row);
+          partition.rows.add(row);
+          partition.size += size;
+          memory += size;
+          while (memory > limit) {
+            if (!spillLargest()) {
+              break;
+            }
+          }
+        }
+      }
+      for (Partition partition : partitions) {
+        if (partition.innerFile == null && !partition.rows.isEmpty()) {
+          partition.table = new HashMap<>();
+          for (TInner row : partition.rows) {
+            final Object key = wrap(innerKeySelector.apply(row));
+            Group<TInner> group = partition.table.get(key);
+            if (group == null) {
+              group = new Group<>();
+              partition.table.put(key, group);
+            }
+            group.rows.add(row);
+          }
+          partition.rows.clear();
+        }
+      }
+    }
+
+    /** Writes the largest partition held in memory to a file. Returns false
+     * if there is no partition to write. */
+    private boolean spillLargest() {
+      Partition largest = nullKeys.innerFile == null ? nullKeys : null;
+      for (Partition partition : partitions) {
+        if (partition.innerFile == null
+            && (largest == null || partition.size > largest.size)) {
+          largest = partition;
+        }
+      }
+      if (largest == null || largest.size == 0) {
+        return false;
+      }
+      largest.innerFile = createFile();
+      for (TInner row : largest.rows) {
+        largest.innerFile.add(row);
+      }
+      largest.rows.clear();
+      memory -= largest.size;
+      largest.size = 0;
+      return true;
+    }
+
+    /** Returns an enumerable that probes with the left input, then returns
+     * unmatched right rows, then joins the spilled partitions. */
+    Enumerable<TResult> probe(final Enumerable<TSource> outer) {
+      final List<Enumerable<TResult>> list = new ArrayList<>();
+      list.add(
+          new AbstractEnumerable<TResult>() {
+            public Enumerator<TResult> enumerator() {
+              return new ProbeEnumerator(Pass.this, outer.enumerator());
+            }
+          });
+      if (generateNullsOnLeft) {
+        list.add(
+            new AbstractEnumerable<TResult>() {
+              public Enumerator<TResult> enumerator() {
+                return nullLeft(unmatched()).enumerator();
+              }
+            });
+      }
+      for (final Partition partition : partitions) {
+        if (partition.innerFile != null) {
+          list.add(
+              new AbstractEnumerable<TResult>() {
+                public Enumerator<TResult> enumerator() {
+                  return partition.join(level).enumerator();
+                }
+              });
+        }
+      }
+      return Linq4j.concat(list);
+    }
+
+    /** Returns the right rows, held in memory or spilled, that have matched
+     * no left row. Valid after the left input has been read. */
+    private Enumerable<TInner> unmatched() {
+      final List<TInner> rows = new ArrayList<>();
+      for (Partition partition : partitions) {
+        if (partition.table != null) {
+          for (Group<TInner> group : partition.table.values()) {
+            if (!group.matched) {
+              rows.addAll(group.rows);
+            }
+          }
+        }
+      }
+      rows.addAll(nullKeys.rows);
+      if (nullKeys.innerFile != null) {
+        return Linq4j.concat(
+            ImmutableList.of(Linq4j.asEnumerable(rows),
+                read(nullKeys.innerFile)));
+      }
+      return Linq4j.asEnumerable(rows);
+    }
+
+    /** Returns the right rows that match a left row; or a list containing
+     * one null if the join generates nulls on the right and there is no
+     * match; or an empty list. If the row belongs to a spilled partition,
+     * writes it to the partition's left file and returns an empty list. */
+    List<TInner> probe(TSource outer) {
+      if (outer != null) {
+        final TKey key = outerKeySelector.apply(outer);
+        if (key != null) {
+          final Object k = wrap(key);
+          final Partition partition =
+              partitions.get(SpillPartitioning.partitionOf(k, level));
+          if (partition.innerFile != null) {
+            if (partition.outerFile == null) {
+              partition.outerFile = createFile();
+            }
+            partition.outerFile.add(outer);
+            return ImmutableList.of();
+          }
+          final Group<TInner> group =
+              partition.table == null ? null : partition.table.get(k);
+          if (group != null) {
+            group.matched = true;
+            return group.rows;
+          }
+        }
+      }
+      return generateNullsOnRight
+          ? Collections.<TInner>singletonList(null)
+          : ImmutableList.<TInner>of();
+    }
+  }
+
+  /** Rows that belong to one partition at a particular level. */
+  private class Partition {
+    /** Right rows, while the partition is being read and is in memory. */
+    final List<TInner> rows = new ArrayList<>();
+    /** Estimated size of {@link #rows}. */
+    long size;
+    /** Hash table of right rows, built when the partition is in memory after
+     * all right rows have been read. */
+    Map<Object, Group<TInner>> table;
+    /** File of right rows, if the partition has been spilled. */
+    SpillFile<TInner> innerFile;
+    /** File of left rows, if the partition has been spilled and at least one
+     * left row belongs to it. */
+    SpillFile<TSource> outerFile;
+
+    /** Returns an enumerable that joins the rows of this spilled partition,
+     * and deletes its files when done. */
+    Enumerable<TResult> join(int level) {
+      final Enumerable<TResult> enumerable;
+      if (outerFile != null) {
+        enumerable =
+            SpillingHashJoin.this.join(read(outerFile), read(innerFile),
+                level + 1);
+      } else if (generateNullsOnLeft) {
+        enumerable = nullLeft(read(innerFile));
+      } else {
+        enumerable = Linq4j.emptyEnumerable();
+      }
+      return new AbstractEnumerable<TResult>() {
+        public Enumerator<TResult> enumerator() {
+          return new DelegatingEnumerator<TResult>(enumerable.enumerator()) {
+            @Override public void close() {
+              super.close();
+              innerFile.close();
+              if (outerFile != null) {
+                outerFile.close();
+              }
+            }
+          };
+        }
+      };
+    }
+  }
+
+  /** Enumerator that probes the hash tables of a {@link Pass} with each row
+   * of the left input. */
+  private class ProbeEnumerator implements Enumerator<TResult> {
+    private final Pass pass;
+    private final Enumerator<TSource> outers;
+    private TSource outer;
+    private List<TInner> inners = ImmutableList.of();
+    private int i;
+
+    ProbeEnumerator(Pass pass, Enumerator<TSource> outers) {
+      this.pass = pass;
+      this.outers = outers;
+    }
+
+    public TResult current() {
+      return resultSelector.apply(outer, inners.get(i - 1));
+    }
+
+    public boolean moveNext() {
+      for (;;) {
+        if (i < inners.size()) {
+          ++i;
+          return true;
+        }
+        if (!outers.moveNext()) {
+          return false;
+        }
+        outer = outers.current();
+        inners = pass.probe(outer);
+        i = 0;
+      }
+    }
+
+    public void reset() {
+      throw new UnsupportedOperationException();
+    }
+
+    public void close() {
+      outers.close();
+    }
+  }
+
+  /** Right rows that have the same key.
+   *
+   * @param <T> row type */
+  private static class Group<T> {
+    final List<T> rows = new ArrayList<>();
+    boolean matched;
+  }
+}
+
+// End SpillingHashJoin.java
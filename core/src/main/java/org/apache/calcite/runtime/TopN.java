@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.runtime;
+
+import org.apache.calcite.linq4j.AbstractEnumerable;
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.Enumerator;
+import org.apache.calcite.linq4j.Linq4j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Collects the first {@code offset + fetch} rows of its input, in sort
+ * order, and returns them after skipping the first {@code offset}.
+ *
+ * <p>Rows are held in a bounded heap whose head is the greatest row kept so
+ * far. Each new row is compared with the head, and replaces it if it is
+ * less; so the collector uses O(n log k) time and O(k) memory, where k is
+ * {@code offset + fetch}, rather than the O(n log n) time and O(n) memory of
+ * a full sort.
+ *
+ * <p>The result is the same as that of a stable sort: rows that compare
+ * equal are returned in the order that they were added.
+ *
+ * @param <E> Row type
+ */
+public class TopN<E> {
+  private final Comparator<E> comparator;
+  private final int offset;
+  private final int limit;
+  private final PriorityQueue<Entry<E>> heap;
+  private int ordinal;
+
+  /** Creates a TopN.
+   *
+   * @param comparator Comparator of rows
+   * @param offset Number of rows to skip
+   * @param fetch Number of rows to return
+   */
+  public TopN(final Comparator<E> comparator, int offset, int fetch) {
+    if (offset < 0 || fetch < 0) {
+      throw new IllegalArgumentException("offset and fetch must not be "
+          + "negative: " + offset + ", " + fetch);
+    }
+    this.comparator = comparator;
+    this.offset = offset;
+    this.limit = (int) Math.min((long) offset + fetch, Integer.MAX_VALUE);
+    // Reverse order, so that the head of the heap is the greatest row, and
+    // of equal rows, the one added last.
+    this.heap = new PriorityQueue<>(Math.max(1, Math.min(limit, 1024)),
+        new Comparator<Entry<E>>() {
+          public int compare(Entry<E> e0, Entry<E> e1) {
+            final int c = comparator.compare(e1.row, e0.row);
+            return c != 0 ? c : Integer.compare(e1.ordinal, e0.ordinal);
+          }
+        });
+  }
+
+  /** Returns an enumerable that yields the rows of a source in sort order,
+   * skipping the first {@code offset} and returning at most {@code fetch}.
+   *
+   * @param source Input rows
+   * @param comparator Comparator of rows
+   * @param offset Number of rows to skip
+   * @param fetch Number of rows to return
+   */
+  public static <E> Enumerable<E> sort(final Enumerable<E> source,
+      final Comparator<E> comparator, final int offset, final int fetch) {
+    return new AbstractEnumerable<E>() {
+      public Enumerator<E> enumerator() {
+        final TopN<E> topN = new TopN<>(comparator, offset, fetch);
+        if (topN.limit > 0) {
+          try (Enumerator<E> enumerator = source.enumerator()) {
+            while (enumerator.moveNext()) {
+              topN.add(enumerator.current());
+            }
+          }
+        }
+        return Linq4j.enumerator(topN.result());
+      }
+    };
+  }
+
+  /** Adds a row. */
+  public void add(E row) {
+    final int i = ordinal++;
+    if (heap.size() < limit) {
+      heap.add(new Entry<>(row, i));
+    } else if (limit > 0 && comparator.compare(row, heap.peek().row) < 0) {
+      // The new row is less than the greatest row kept so far. (If it is
+      // equal, it was added later, so it loses.)
+      heap.poll();
+      heap.add(new Entry<>(row, i));
+    }
+  }
+
+  /** Returns the rows that have been kept, in sort order, after skipping
+   * the first {@code offset}. */
+  public List<E> result() {
+    if (heap.size() <= offset) {
+      return Collections.emptyList();
+    }
+    //noinspection unchecked
+    final Entry<E>[] entries = heap.toArray(new Entry[heap.size()]);
+    Arrays.sort(entries, Collections.reverseOrder(heap.comparator()));
+    final List<E> list = new ArrayList<>(entries.length - offset);
+    for (int i = offset; i < entries.length; i++) {
+      list.add(entries[i].row);
+    }
+    return list;
+  }
+
+  /** Row and the order in which it was added.
+   *
+   * @param <E> Row type */
+  private static class Entry<E> {
+    final E row;
+    final int ordinal;
+
+    Entry(E row, int ordinal) {
+      this.row = row;
+      this.ordinal = ordinal;
+    }
+  }
+}
+
+// End TopN.java
@@ -0,0 +1,37 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.schema;
+
+import org.apache.calcite.DataContext;
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.runtime.ColumnBatch;
+
+/**
+ * Table that can be scanned as a sequence of batches, each of which holds
+ * the values of several rows column by column.
+ *
+ * <p>The vector of each column must be of the class given by
+ * {@link ColumnBatch#vectorClass} applied to the Java class of the column's
+ * type, as returned by
+ * {@link org.apache.calcite.adapter.java.JavaTypeFactory#getJavaClass}.
+ */
+public interface ColumnarScannableTable extends ScannableTable {
+  /** Returns an enumerator over batches of the rows in this Table. */
+  Enumerable<ColumnBatch> scanBatches(DataContext root);
+}
+
+// End ColumnarScannableTable.java
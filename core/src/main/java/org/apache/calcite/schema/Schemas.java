@@ -36,6 +36,7 @@
 import org.apache.calcite.rel.type.RelDataTypeFactory;
 import org.apache.calcite.rel.type.RelProtoDataType;
 import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.runtime.ColumnBatch;
 import org.apache.calcite.sql.type.SqlTypeUtil;
 import org.apache.calcite.util.BuiltInMethod;
 import org.apache.calcite.util.Pair;
@@ -256,6 +257,14 @@ public static Enumerable<Object[]> enumerable(
         identity(table.getRowType(root.getTypeFactory()).getFieldCount()));
   }
 
+  /** Returns an {@link org.apache.calcite.linq4j.Enumerable} over the rows of
+   * a given table, representing each batch of rows as a
+   * {@link ColumnBatch}. */
+  public static Enumerable<ColumnBatch> batches(
+      final ColumnarScannableTable table, final DataContext root) {
+    return table.scanBatches(root);
+  }
+
   private static int[] identity(int count) {
     final int[] integers = new int[count];
     for (int i = 0; i < integers.length; i++) {
@@ -829,6 +829,24 @@ public boolean argumentMustBeScalar(int ordinal) {
    */
   public static final SqlAggFunction COUNT = new SqlCountAggFunction();
 
+  /**
+   * <code>APPROX_COUNT_DISTINCT</code> aggregate function.
+   *
+   * <p>Returns an estimate of the number of distinct non-null values of its
+   * argument, computed in a fixed amount of memory. If the connection allows
+   * approximate results, {@code COUNT(DISTINCT x)} is evaluated using this
+   * function.
+   */
+  public static final SqlAggFunction APPROX_COUNT_DISTINCT =
+      new SqlAggFunction("APPROX_COUNT_DISTINCT",
+          null,
+          SqlKind.OTHER_FUNCTION,
+          ReturnTypes.BIGINT,
+          null,
+          OperandTypes.ANY,
+          SqlFunctionCategory.NUMERIC, false, false) {
+      };
+
   /**
    * <code>MIN</code> aggregate function.
    */
@@ -71,14 +71,28 @@
 import org.apache.calcite.runtime.ArrayBindable;
 import org.apache.calcite.runtime.BinarySearch;
 import org.apache.calcite.runtime.Bindable;
+import org.apache.calcite.runtime.ColumnBatch;
+import org.apache.calcite.runtime.ColumnBatchEnumerator;
 import org.apache.calcite.runtime.Enumerables;
+import org.apache.calcite.runtime.ExternalSort;
 import org.apache.calcite.runtime.FlatLists;
+import org.apache.calcite.runtime.HyperLogLog;
+import org.apache.calcite.runtime.Like;
+import org.apache.calcite.runtime.LongHashAggregator;
 import org.apache.calcite.runtime.RandomFunction;
 import org.apache.calcite.runtime.ResultSetEnumerable;
+import org.apache.calcite.runtime.RuntimeFilter;
+import org.apache.calcite.runtime.SegmentTree;
+import org.apache.calcite.runtime.SlidingSum;
 import org.apache.calcite.runtime.SortedMultiMap;
+import org.apache.calcite.runtime.SpaceSaving;
+import org.apache.calcite.runtime.SpillingHashAggregate;
+import org.apache.calcite.runtime.SpillingHashJoin;
 import org.apache.calcite.runtime.SqlFunctions;
 import org.apache.calcite.runtime.SqlFunctions.FlatProductInputType;
+import org.apache.calcite.runtime.TopN;
 import org.apache.calcite.runtime.Utilities;
+import org.apache.calcite.schema.ColumnarScannableTable;
 import org.apache.calcite.schema.FilterableTable;
 import org.apache.calcite.schema.ModifiableTable;
 import org.apache.calcite.schema.ProjectableFilterableTable;
@@ -131,6 +145,8 @@ public enum BuiltInMethod {
       FilterableTable.class, DataContext.class),
   SCHEMAS_ENUMERABLE_PROJECTABLE_FILTERABLE(Schemas.class, "enumerable",
       ProjectableFilterableTable.class, DataContext.class),
+  SCHEMAS_BATCHES(Schemas.class, "batches", ColumnarScannableTable.class,
+      DataContext.class),
   SCHEMAS_QUERYABLE(Schemas.class, "queryable", DataContext.class,
       SchemaPlus.class, Class.class, String.class),
   REFLECTIVE_SCHEMA_GET_TARGET(ReflectiveSchema.class, "getTarget"),
@@ -143,15 +159,41 @@ public enum BuiltInMethod {
       String.class, Function1.class),
   JOIN(ExtendedEnumerable.class, "join", Enumerable.class, Function1.class,
       Function1.class, Function2.class),
-  MERGE_JOIN(EnumerableDefaults.class, "mergeJoin", Enumerable.class,
+  PARALLEL_JOIN(EnumerableDefaults.class, "parallelJoin", Enumerable.class,
       Enumerable.class, Function1.class, Function1.class, Function2.class,
-      boolean.class, boolean.class),
+      EqualityComparer.class, boolean.class, boolean.class, int.class),
+  EXTERNAL_SORT(ExternalSort.class, "sort", Enumerable.class,
+      Comparator.class, long.class),
+  TOP_N(TopN.class, "sort", Enumerable.class, Comparator.class, int.class,
+      int.class),
+  APPROX_TOP_N(SpaceSaving.class, "topN", Enumerable.class, Function1.class,
+      int.class, int.class, int.class, Function2.class),
+  SPILLING_JOIN(SpillingHashJoin.class, "join", Enumerable.class,
+      Enumerable.class, Function1.class, Function1.class, Function2.class,
+      EqualityComparer.class, boolean.class, boolean.class, long.class),
+  PARALLEL_GROUP_BY(EnumerableDefaults.class, "parallelGroupBy",
+      Enumerable.class, Function1.class, Function0.class, Function2.class,
+      Function2.class, Function2.class, EqualityComparer.class, int.class),
+  SPILLING_GROUP_BY(SpillingHashAggregate.class, "groupBy", Enumerable.class,
+      Function1.class, Function0.class, Function2.class, Function2.class,
+      Function2.class, Function1.class, Function1.class,
+      EqualityComparer.class, long.class),
+  SORTED_GROUP_BY(EnumerableDefaults.class, "sortedGroupBy", Enumerable.class,
+      Function1.class, Function0.class, Function2.class, Function2.class,
+      EqualityComparer.class),
+  MERGE_JOIN(EnumerableDefaults.class, "mergeJoin", Enumerable.class,
+      Enumerable.class, Function1.class, Function1.class, Predicate2.class,
+      Function2.class, boolean.class, boolean.class),
   SLICE0(Enumerables.class, "slice0", Enumerable.class),
   SEMI_JOIN(EnumerableDefaults.class, "semiJoin", Enumerable.class,
       Enumerable.class, Function1.class, Function1.class),
   THETA_JOIN(EnumerableDefaults.class, "thetaJoin", Enumerable.class,
       Enumerable.class, Predicate2.class, Function2.class, boolean.class,
       boolean.class),
+  BAND_JOIN(EnumerableDefaults.class, "bandJoin", Enumerable.class,
+      Enumerable.class, Function1.class, Function1.class, boolean.class,
+      Function1.class, boolean.class, Predicate2.class, Function2.class,
+      boolean.class, boolean.class),
   CORRELATE_JOIN(ExtendedEnumerable.class, "correlateJoin",
       CorrelateJoinType.class, Function1.class, Function2.class),
   SELECT(ExtendedEnumerable.class, "select", Function1.class),
@@ -245,6 +287,27 @@ public enum BuiltInMethod {
       Object.class, int.class, int.class, Function1.class, Comparator.class),
   BINARY_SEARCH6_UPPER(BinarySearch.class, "upperBound", Object[].class,
       Object.class, int.class, int.class, Function1.class, Comparator.class),
+  RUNTIME_FILTER_CTOR(RuntimeFilter.class, int.class),
+  RUNTIME_FILTER_COLLECT(RuntimeFilter.class, "collect", Enumerable.class,
+      Function1.class, RuntimeFilter.class),
+  RUNTIME_FILTER_FILTER(RuntimeFilter.class, "filter", Enumerable.class,
+      Function1.class, RuntimeFilter.class),
+  MAP_PARTITIONS(Enumerables.class, "mapPartitions", Enumerable.class,
+      Function1.class, Function1.class),
+  CACHE_CORRELATE(Enumerables.class, "cacheCorrelate", Function1.class,
+      Function1.class, int.class, boolean.class),
+  HLL_CREATE(HyperLogLog.class, "create"),
+  HLL_ADD(HyperLogLog.class, "add", byte[].class, Object.class),
+  HLL_ADD_LONG(HyperLogLog.class, "add", byte[].class, long.class),
+  HLL_MERGE(HyperLogLog.class, "merge", byte[].class, byte[].class),
+  HLL_ESTIMATE(HyperLogLog.class, "estimate", byte[].class),
+  SEGMENT_TREE_CTOR(SegmentTree.class, Object[].class, boolean.class),
+  SEGMENT_TREE_QUERY(SegmentTree.class, "query", int.class, int.class),
+  SLIDING_SUM_CTOR(SlidingSum.class, Object[].class, boolean.class),
+  SLIDING_SUM_MOVE_TO(SlidingSum.class, "moveTo", int.class, int.class),
+  SLIDING_SUM_COUNT(SlidingSum.class, "count"),
+  SLIDING_SUM_LONG_SUM(SlidingSum.class, "longSum"),
+  SLIDING_SUM_DECIMAL_SUM(SlidingSum.class, "decimalSum"),
   ARRAY_ITEM(SqlFunctions.class, "arrayItemOptional", List.class, int.class),
   MAP_ITEM(SqlFunctions.class, "mapItemOptional", Map.class, Object.class),
   ANY_ITEM(SqlFunctions.class, "itemOptional", Object.class, Object.class),
@@ -283,6 +346,9 @@ public enum BuiltInMethod {
   RTRIM(SqlFunctions.class, "rtrim", String.class),
   LIKE(SqlFunctions.class, "like", String.class, String.class),
   SIMILAR(SqlFunctions.class, "similar", String.class, String.class),
+  LIKE_MATCHER(SqlFunctions.class, "likeMatcher", String.class),
+  SIMILAR_MATCHER(SqlFunctions.class, "similarMatcher", String.class),
+  MATCHER_MATCHES(Like.Matcher.class, "matches", String.class),
   IS_TRUE(SqlFunctions.class, "isTrue", Boolean.class),
   IS_NOT_FALSE(SqlFunctions.class, "isNotFalse", Boolean.class),
   NOT(SqlFunctions.class, "not", Boolean.class),
@@ -414,6 +480,24 @@ public enum BuiltInMethod {
   SCALAR_EXECUTE2(Scalar.class, "execute", Context.class, Object[].class),
   CONTEXT_VALUES(Context.class, "values", true),
   CONTEXT_ROOT(Context.class, "root", true),
+  COLUMN_BATCH_VECTORS(ColumnBatch.class, "vectors", true),
+  COLUMN_BATCH_NULLS(ColumnBatch.class, "nulls", true),
+  COLUMN_BATCH_SIZE(ColumnBatch.class, "size", true),
+  COLUMN_BATCH_IS_NULL(ColumnBatch.class, "isNull", long[].class, int.class),
+  COLUMN_BATCH_ENUMERATOR_CTOR(ColumnBatchEnumerator.class, Enumerator.class),
+  COLUMN_BATCH_ENUMERATOR_SELECT(ColumnBatchEnumerator.class, "select",
+      ColumnBatch.class, int[].class),
+  LONG_HASH_AGGREGATOR_CTOR(LongHashAggregator.class),
+  LONG_HASH_AGGREGATOR_KEY(LongHashAggregator.class, "key", Object.class),
+  LONG_HASH_AGGREGATOR_ALLOCATE(LongHashAggregator.class, "allocate",
+      int.class),
+  LONG_HASH_AGGREGATOR_RESET(LongHashAggregator.class, "reset", int.class),
+  LONG_HASH_AGGREGATOR_ADD(LongHashAggregator.class, "add", int.class,
+      Object.class),
+  LONG_HASH_AGGREGATOR_RESULT(LongHashAggregator.class, "result", long.class,
+      int.class),
+  LONG_HASH_AGGREGATOR_AGGREGATE(LongHashAggregator.class, "aggregate",
+      Enumerable.class),
   DATA_CONTEXT_GET_QUERY_PROVIDER(DataContext.class, "getQueryProvider"),
   METADATA_REL(Metadata.class, "rel");
 
@@ -18,18 +18,29 @@
 
 import org.apache.calcite.jdbc.JavaTypeFactoryImpl;
 import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.Enumerator;
 import org.apache.calcite.linq4j.Linq4j;
+import org.apache.calcite.rel.RelCollation;
 import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rel.type.RelDataTypeField;
 import org.apache.calcite.rel.type.RelDataTypeImpl;
 import org.apache.calcite.rel.type.RelDataTypeSystem;
+import org.apache.calcite.runtime.ColumnBatch;
+
+import com.google.common.collect.ImmutableList;
 
 import org.junit.Test;
 
+import java.lang.reflect.Type;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
+import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -353,6 +364,56 @@ public class ArrayTableTest {
         "Column(representation=ObjectArray(ordinal=2), value=[Bill, Sebastian, Theodore, Eric])");
   }
 
+  /** Tests that {@link ArrayTable.Content#batchEnumerator} returns the same
+   * rows as {@link ArrayTable.Content#arrayEnumerator}, column by column. */
+  @Test public void testBatches() {
+    final JavaTypeFactoryImpl typeFactory =
+        new JavaTypeFactoryImpl(RelDataTypeSystem.DEFAULT);
+    final RelDataType rowType =
+        typeFactory.builder()
+            .add("empid", typeFactory.createType(int.class))
+            .add("salary", typeFactory.createType(double.class))
+            .add("commission", typeFactory.createType(Integer.class))
+            .add("name", typeFactory.createType(String.class))
+            .build();
+    final Enumerable<Object[]> enumerable =
+        Linq4j.asEnumerable(
+            Arrays.asList(
+                new Object[]{100, 10000.5D, 1000, "Bill"},
+                new Object[]{200, 7000D, null, "Eric"},
+                new Object[]{150, 11500D, 250, "Sebastian"},
+                new Object[]{160, 6000D, null, null},
+                new Object[]{110, 8000D, 500, "Theodore"}));
+    final ColumnLoader<Object[]> loader =
+        new ColumnLoader<Object[]>(typeFactory, enumerable,
+            RelDataTypeImpl.proto(rowType), null);
+    final ArrayTable.Content content =
+        new ArrayTable.Content(loader.representationValues, loader.size(),
+            ImmutableList.<RelCollation>of());
+    final List<Type> types = new ArrayList<>();
+    for (RelDataTypeField field : rowType.getFieldList()) {
+      types.add(typeFactory.getJavaClass(field.getType()));
+    }
+    final Enumerator<ColumnBatch> batches = content.batchEnumerator(types, 2);
+    final Enumerator<Object[]> rows = content.arrayEnumerator();
+    final List<Integer> sizes = new ArrayList<>();
+    while (batches.moveNext()) {
+      final ColumnBatch batch = batches.current();
+      assertThat(batch.vectors[0], instanceOf(int[].class));
+      assertThat(batch.vectors[1], instanceOf(double[].class));
+      assertThat(batch.vectors[2], instanceOf(int[].class));
+      assertThat(batch.vectors[3], instanceOf(Object[].class));
+      sizes.add(batch.size);
+      for (int i = 0; i < batch.size; i++) {
+        assertTrue(rows.moveNext());
+        assertEquals(Arrays.asList(rows.current()),
+            Arrays.asList(batch.row(i)));
+      }
+    }
+    assertFalse(rows.moveNext());
+    assertEquals(Arrays.asList(2, 2, 1), sizes);
+  }
+
   private void checkColumn(ArrayTable.Column x,
       ArrayTable.RepresentationType expectedRepresentationType,
       String expectedString) {
@@ -20,7 +20,9 @@
 import org.apache.calcite.plan.Convention;
 import org.apache.calcite.plan.ConventionTraitDef;
 import org.apache.calcite.plan.RelOptCluster;
+import org.apache.calcite.plan.RelOptCost;
 import org.apache.calcite.plan.RelOptListener;
+import org.apache.calcite.plan.RelOptPlanner;
 import org.apache.calcite.plan.RelOptRule;
 import org.apache.calcite.plan.RelOptRuleCall;
 import org.apache.calcite.plan.RelOptUtil;
@@ -29,6 +31,7 @@
 import org.apache.calcite.rel.convert.ConverterImpl;
 import org.apache.calcite.rel.convert.ConverterRule;
 import org.apache.calcite.rel.logical.LogicalProject;
+import org.apache.calcite.rel.metadata.RelMetadataQuery;
 import org.apache.calcite.rel.rules.ProjectRemoveRule;
 import org.apache.calcite.rex.RexInputRef;
 
@@ -124,6 +127,74 @@ public VolcanoPlannerTest() {
    * Tests a rule that is fired once per subset (whereas most rules are fired
    * once per rel in a set or rel in a subset)
    */
+  /**
+   * Tests transformation of a single+leaf from NONE to PHYS, driving the
+   * planner top-down.
+   */
+  @Test public void testTransformSingleGoodTopDown() {
+    VolcanoPlanner planner = new VolcanoPlanner();
+    planner.setTopDownOpt(true);
+    planner.addRelTraitDef(ConventionTraitDef.INSTANCE);
+
+    planner.addRule(new PhysLeafRule());
+    planner.addRule(new GoodSingleRule());
+
+    RelOptCluster cluster = newCluster(planner);
+    NoneLeafRel leafRel =
+        new NoneLeafRel(
+            cluster,
+            "a");
+    NoneSingleRel singleRel =
+        new NoneSingleRel(
+            cluster,
+            leafRel);
+    RelNode convertedRel =
+        planner.changeTraits(
+            singleRel,
+            cluster.traitSetOf(PHYS_CALLING_CONVENTION));
+    planner.setRoot(convertedRel);
+    RelNode result = planner.chooseDelegate().findBestExp();
+    assertTrue(result instanceof PhysSingleRel);
+    assertTrue(((PhysSingleRel) result).getInput() instanceof PhysLeafRel);
+  }
+
+  /**
+   * Tests that a planner driven top-down prunes an alternative whose own
+   * cost exceeds that of the best plan found so far, and so never fires the
+   * rules that would implement its input.
+   */
+  @Test public void testTopDownPrune() {
+    VolcanoPlanner planner = new VolcanoPlanner();
+    planner.setTopDownOpt(true);
+    planner.addRelTraitDef(ConventionTraitDef.INSTANCE);
+
+    planner.addRule(new PhysLeafRule());
+    planner.addRule(new ExpensiveSingleRule());
+    planner.addRule(new CollapseSingleRule());
+
+    RelOptCluster cluster = newCluster(planner);
+    NoneLeafRel leafRel =
+        new NoneLeafRel(
+            cluster,
+            "a");
+    NoneSingleRel singleRel =
+        new NoneSingleRel(
+            cluster,
+            leafRel);
+    RelNode convertedRel =
+        planner.changeTraits(
+            singleRel,
+            cluster.traitSetOf(PHYS_CALLING_CONVENTION));
+    planner.setRoot(convertedRel);
+    RelNode result = planner.chooseDelegate().findBestExp();
+    assertTrue(result instanceof PhysLeafRel);
+    assertThat(((PhysLeafRel) result).label, equalTo("b"));
+
+    // PhysLeafRule did not fire, so the leaf's set holds only the original
+    final RelSet leafSet = planner.getSet(leafRel);
+    assertThat(leafSet.rels.size(), equalTo(1));
+  }
+
   @Test public void testSubsetRule() {
     VolcanoPlanner planner = new VolcanoPlanner();
     planner.addRelTraitDef(ConventionTraitDef.INSTANCE);
@@ -557,6 +628,63 @@ public void onMatch(RelOptRuleCall call) {
     }
   }
 
+  /** Relational expression with one input and convention PHYS, whose cost
+   * is much higher than that of {@link PhysSingleRel}. */
+  private static class ExpensiveSingleRel extends TestSingleRel {
+    ExpensiveSingleRel(RelOptCluster cluster, RelNode input) {
+      super(cluster, cluster.traitSetOf(PHYS_CALLING_CONVENTION), input);
+    }
+
+    @Override public RelOptCost computeSelfCost(RelOptPlanner planner,
+        RelMetadataQuery mq) {
+      return planner.getCostFactory().makeCost(100d, 100d, 0d);
+    }
+
+    public RelNode copy(RelTraitSet traitSet, List<RelNode> inputs) {
+      assert traitSet.comprises(PHYS_CALLING_CONVENTION);
+      return new ExpensiveSingleRel(getCluster(), sole(inputs));
+    }
+  }
+
+  /** Planner rule that converts a {@link NoneSingleRel} to an
+   * {@link ExpensiveSingleRel}. */
+  private static class ExpensiveSingleRule extends RelOptRule {
+    ExpensiveSingleRule() {
+      super(operand(NoneSingleRel.class, any()));
+    }
+
+    @Override public Convention getOutConvention() {
+      return PHYS_CALLING_CONVENTION;
+    }
+
+    public void onMatch(RelOptRuleCall call) {
+      NoneSingleRel singleRel = call.rel(0);
+      RelNode physInput =
+          convert(singleRel.getInput(),
+              singleRel.getTraitSet().replace(PHYS_CALLING_CONVENTION));
+      call.transformTo(
+          new ExpensiveSingleRel(singleRel.getCluster(), physInput));
+    }
+  }
+
+  /** Planner rule that replaces a {@link NoneSingleRel} and its input with
+   * a {@link PhysLeafRel}. */
+  private static class CollapseSingleRule extends RelOptRule {
+    CollapseSingleRule() {
+      super(operand(NoneSingleRel.class, any()));
+    }
+
+    @Override public Convention getOutConvention() {
+      return PHYS_CALLING_CONVENTION;
+    }
+
+    public void onMatch(RelOptRuleCall call) {
+      NoneSingleRel singleRel = call.rel(0);
+      call.transformTo(
+          new PhysLeafRel(singleRel.getCluster(), "b"));
+    }
+  }
+
   /** Planner rule that successfully removes a {@link PhysSingleRel}. */
   private static class GoodRemoveSingleRule extends RelOptRule {
     GoodRemoveSingleRule() {
@@ -16,22 +16,38 @@
  */
 package org.apache.calcite.runtime;
 
+import org.apache.calcite.avatica.util.ByteString;
+import org.apache.calcite.linq4j.CorrelateJoinType;
 import org.apache.calcite.linq4j.Enumerable;
 import org.apache.calcite.linq4j.EnumerableDefaults;
+import org.apache.calcite.linq4j.Enumerator;
 import org.apache.calcite.linq4j.Linq4j;
+import org.apache.calcite.linq4j.function.Function0;
 import org.apache.calcite.linq4j.function.Function1;
 import org.apache.calcite.linq4j.function.Function2;
 import org.apache.calcite.linq4j.function.Functions;
 import org.apache.calcite.linq4j.function.Predicate2;
 
+import com.google.common.base.Function;
 import com.google.common.collect.Lists;
 
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Random;
 
 import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
 
 /**
@@ -68,6 +84,61 @@ public boolean apply(Emp v0, Dept v1) {
         }
       };
 
+  /** Key of a row {@code [key, value]} in the aggregation tests. */
+  private static final Function1<Object[], Object> ROW_KEY =
+      new Function1<Object[], Object>() {
+        public Object apply(Object[] row) {
+          return row[0];
+        }
+      };
+
+  /** Accumulator of the aggregation tests: count and sum of values. */
+  private static final Function0<long[]> COUNT_SUM_INIT =
+      new Function0<long[]>() {
+        public long[] apply() {
+          return new long[2];
+        }
+      };
+
+  private static final Function2<long[], Object[], long[]> COUNT_SUM_ADDER =
+      new Function2<long[], Object[], long[]>() {
+        public long[] apply(long[] acc, Object[] row) {
+          ++acc[0];
+          acc[1] += (Integer) row[1];
+          return acc;
+        }
+      };
+
+  private static final Function2<long[], long[], long[]> COUNT_SUM_MERGER =
+      new Function2<long[], long[], long[]>() {
+        public long[] apply(long[] acc, long[] otherAcc) {
+          acc[0] += otherAcc[0];
+          acc[1] += otherAcc[1];
+          return acc;
+        }
+      };
+
+  private static final Function1<long[], Object[]> COUNT_SUM_WRITER =
+      new Function1<long[], Object[]>() {
+        public Object[] apply(long[] acc) {
+          return new Object[] {acc[0], acc[1]};
+        }
+      };
+
+  private static final Function1<Object[], long[]> COUNT_SUM_READER =
+      new Function1<Object[], long[]>() {
+        public long[] apply(Object[] values) {
+          return new long[] {(Long) values[0], (Long) values[1]};
+        }
+      };
+
+  private static final Function2<Object, long[], String> COUNT_SUM_RESULT =
+      new Function2<Object, long[], String>() {
+        public String apply(Object groupKey, long[] acc) {
+          return groupKey + ":" + acc[0] + ":" + acc[1];
+        }
+      };
+
   @Test public void testSemiJoin() {
     assertThat(
         EnumerableDefaults.semiJoin(EMPS, DEPTS,
@@ -184,6 +255,80 @@ public T apply(T v0, T v1) {
         }, false, false);
   }
 
+  /** Tests {@link EnumerableDefaults#mergeJoin} with each join type, with
+   * and without an extra condition, on inputs that have duplicate and null
+   * keys; it must return the same rows as
+   * {@link EnumerableDefaults#thetaJoin}. */
+  @Test public void testMergeJoinOuter() {
+    final Random random = new Random(0);
+    final Comparator<Object[]> comparator =
+        new Comparator<Object[]>() {
+          public int compare(Object[] o1, Object[] o2) {
+            if (o1[0] == null || o2[0] == null) {
+              return o1[0] == null ? o2[0] == null ? 0 : 1 : -1;
+            }
+            return ((Integer) o1[0]).compareTo((Integer) o2[0]);
+          }
+        };
+    final Function1<Object[], Integer> key =
+        new Function1<Object[], Integer>() {
+          public Integer apply(Object[] row) {
+            return (Integer) row[0];
+          }
+        };
+    final Predicate2<Object[], Object[]> extra =
+        new Predicate2<Object[], Object[]>() {
+          public boolean apply(Object[] v0, Object[] v1) {
+            return ((Integer) v0[1] + (Integer) v1[1]) % 3 != 0;
+          }
+        };
+    final Function2<Object[], Object[], String> result =
+        new Function2<Object[], Object[], String>() {
+          public String apply(Object[] v0, Object[] v1) {
+            return (v0 == null ? null : v0[0] + "/" + v0[1]) + ":"
+                + (v1 == null ? null : v1[0] + "/" + v1[1]);
+          }
+        };
+    for (int size : new int[] {0, 1, 5, 40}) {
+      final List<Object[]> outers = new ArrayList<>();
+      final List<Object[]> inners = new ArrayList<>();
+      for (int i = 0; i < size; i++) {
+        final int k = random.nextInt(12);
+        outers.add(new Object[] {k < 2 ? null : k, i});
+        final int k2 = random.nextInt(12);
+        inners.add(new Object[] {k2 < 2 ? null : k2, i});
+      }
+      Collections.sort(outers, comparator);
+      Collections.sort(inners, comparator);
+      for (final boolean useExtra : new boolean[] {false, true}) {
+        final Predicate2<Object[], Object[]> predicate =
+            new Predicate2<Object[], Object[]>() {
+              public boolean apply(Object[] v0, Object[] v1) {
+                return v0[0] != null
+                    && v0[0].equals(v1[0])
+                    && (!useExtra || extra.apply(v0, v1));
+              }
+            };
+        for (boolean nullsOnLeft : new boolean[] {false, true}) {
+          for (boolean nullsOnRight : new boolean[] {false, true}) {
+            final List<String> expected =
+                EnumerableDefaults.thetaJoin(Linq4j.asEnumerable(outers),
+                    Linq4j.asEnumerable(inners), predicate, result,
+                    nullsOnLeft, nullsOnRight).toList();
+            final List<String> actual =
+                EnumerableDefaults.mergeJoin(Linq4j.asEnumerable(outers),
+                    Linq4j.asEnumerable(inners), key, key,
+                    useExtra ? extra : null, result, nullsOnLeft,
+                    nullsOnRight).toList();
+            Collections.sort(expected);
+            Collections.sort(actual);
+            assertThat(actual, equalTo(expected));
+          }
+        }
+      }
+    }
+  }
+
   @Test public void testThetaJoin() {
     assertThat(
         EnumerableDefaults.thetaJoin(EMPS, DEPTS, EQUAL_DEPTNO,
@@ -239,6 +384,706 @@ public T apply(T v0, T v1) {
         equalTo("[]"));
   }
 
+  /** Tests {@link EnumerableDefaults#bandJoin}; for each combination of
+   * bounds, strictness, remaining condition and join type, it must return
+   * the same rows as {@link EnumerableDefaults#thetaJoin}. */
+  @Test public void testBandJoin() {
+    final Random random = new Random(0);
+    final List<Integer> outers = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      outers.add(random.nextInt(20) == 0 ? null : random.nextInt(100));
+    }
+    final List<Integer[]> inners = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      final int lower = random.nextInt(100);
+      inners.add(
+          new Integer[] {random.nextInt(20) == 0 ? null : lower,
+              lower + random.nextInt(10), i});
+    }
+    final Function1<Integer, Integer> key = Functions.identitySelector();
+    final Function1<Integer[], Integer> lower =
+        new Function1<Integer[], Integer>() {
+          public Integer apply(Integer[] a0) {
+            return a0[0];
+          }
+        };
+    final Function1<Integer[], Integer> upper =
+        new Function1<Integer[], Integer>() {
+          public Integer apply(Integer[] a0) {
+            return a0[1];
+          }
+        };
+    final Predicate2<Integer, Integer[]> odd =
+        new Predicate2<Integer, Integer[]>() {
+          public boolean apply(Integer v0, Integer[] v1) {
+            return (v0 + v1[2]) % 2 == 1;
+          }
+        };
+    final Function2<Integer, Integer[], String> result =
+        new Function2<Integer, Integer[], String>() {
+          public String apply(Integer v0, Integer[] v1) {
+            return v0 + ":" + (v1 == null ? null : Arrays.toString(v1));
+          }
+        };
+    for (int bounds = 1; bounds < 4; bounds++) {
+      for (final boolean lowerStrict : new boolean[] {false, true}) {
+        for (final boolean upperStrict : new boolean[] {false, true}) {
+          final boolean hasLower = (bounds & 1) != 0;
+          final boolean hasUpper = (bounds & 2) != 0;
+          for (final Predicate2<Integer, Integer[]> remaining
+              : Arrays.asList(null, odd)) {
+            final Predicate2<Integer, Integer[]> predicate =
+                new Predicate2<Integer, Integer[]>() {
+                  public boolean apply(Integer v0, Integer[] v1) {
+                    return v0 != null
+                        && (!hasLower
+                            || v1[0] != null
+                            && (lowerStrict ? v0 > v1[0] : v0 >= v1[0]))
+                        && (!hasUpper
+                            || (upperStrict ? v0 < v1[1] : v0 <= v1[1]))
+                        && (remaining == null || remaining.apply(v0, v1));
+                  }
+                };
+            for (boolean nullsOnLeft : new boolean[] {false, true}) {
+              for (boolean nullsOnRight : new boolean[] {false, true}) {
+                final List<String> expected =
+                    EnumerableDefaults.thetaJoin(Linq4j.asEnumerable(outers),
+                        Linq4j.asEnumerable(inners), predicate, result,
+                        nullsOnLeft, nullsOnRight)
+                        .toList();
+                final List<String> actual =
+                    EnumerableDefaults.bandJoin(Linq4j.asEnumerable(outers),
+                        Linq4j.asEnumerable(inners), key,
+                        hasLower ? lower : null, lowerStrict,
+                        hasUpper ? upper : null, upperStrict, remaining,
+                        result, nullsOnLeft, nullsOnRight)
+                        .toList();
+                Collections.sort(expected);
+                Collections.sort(actual);
+                assertThat(actual, equalTo(expected));
+              }
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /** Tests {@link SpillingHashJoin} with a memory limit so small that it
+   * writes most rows to disk; for each join type, it must return the same
+   * rows as an in-memory join. */
+  @Test public void testSpillingJoin() {
+    final List<Object[]> outers = new ArrayList<>();
+    for (int i = 0; i < 2000; i++) {
+      outers.add(new Object[] {i % 50 == 0 ? null : i % 300, "o" + i});
+    }
+    final List<Object[]> inners = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      // Key 7 is very common; some keys are null.
+      final Integer key = i % 40 == 0 ? null : i < 200 ? 7 : i % 500;
+      inners.add(new Object[] {key, "i" + i, BigDecimal.valueOf(i, 1)});
+    }
+    final Function1<Object[], Object> key =
+        new Function1<Object[], Object>() {
+          public Object apply(Object[] row) {
+            return row[0];
+          }
+        };
+    final Function2<Object[], Object[], String> result =
+        new Function2<Object[], Object[], String>() {
+          public String apply(Object[] v0, Object[] v1) {
+            return (v0 == null ? null : v0[1]) + ":"
+                + (v1 == null ? null : v1[1] + "/" + v1[2]);
+          }
+        };
+    final List<SpillFile.Stats> statsList = new ArrayList<>();
+    try (Hook.Closeable ignored = Hook.SPILL.addThread(
+        new Function<SpillFile.Stats, Void>() {
+          public Void apply(SpillFile.Stats stats) {
+            statsList.add(stats);
+            return null;
+          }
+        })) {
+      for (boolean nullsOnLeft : new boolean[] {false, true}) {
+        for (boolean nullsOnRight : new boolean[] {false, true}) {
+          final List<String> expected =
+              EnumerableDefaults.join(Linq4j.asEnumerable(outers),
+                  Linq4j.asEnumerable(inners), key, key, result, null,
+                  nullsOnLeft, nullsOnRight)
+                  .toList();
+          final List<String> actual =
+              SpillingHashJoin.join(Linq4j.asEnumerable(outers),
+                  Linq4j.asEnumerable(inners), key, key, result, null,
+                  nullsOnLeft, nullsOnRight, 2000L)
+                  .toList();
+          Collections.sort(expected);
+          Collections.sort(actual);
+          assertThat(actual, equalTo(expected));
+        }
+      }
+    }
+    assertThat(statsList.size(), equalTo(4));
+    assertThat(statsList.get(0).fileCount > 0, is(true));
+    assertThat(statsList.get(0).byteCount > 0, is(true));
+  }
+
+  /** Returns the groups of rows {@code [key, value]}, as
+   * "key:count:sum", computed by an in-memory aggregation, sorted. */
+  private static List<String> groupBy(List<Object[]> rows) {
+    final List<String> list =
+        EnumerableDefaults.groupBy(Linq4j.asEnumerable(rows), ROW_KEY,
+            COUNT_SUM_INIT, COUNT_SUM_ADDER, COUNT_SUM_RESULT).toList();
+    Collections.sort(list);
+    return list;
+  }
+
+  /** Tests {@link SpillingHashAggregate} with a memory limit so small that
+   * it partitions groups to several levels of files; it must return the same
+   * groups as an in-memory aggregation. */
+  @Test public void testSpillingAggregate() {
+    final List<Object[]> rows = new ArrayList<>();
+    for (int i = 0; i < 5000; i++) {
+      rows.add(new Object[] {i % 97 == 0 ? null : (i * 7919) % 1000, i});
+    }
+    final List<String> expected = groupBy(rows);
+    final List<SpillFile.Stats> statsList = new ArrayList<>();
+    final List<String> actual;
+    try (Hook.Closeable ignored = Hook.SPILL.addThread(
+        new Function<SpillFile.Stats, Void>() {
+          public Void apply(SpillFile.Stats stats) {
+            statsList.add(stats);
+            return null;
+          }
+        })) {
+      actual =
+          SpillingHashAggregate.groupBy(Linq4j.asEnumerable(rows), ROW_KEY,
+              COUNT_SUM_INIT, COUNT_SUM_ADDER, COUNT_SUM_MERGER,
+              COUNT_SUM_RESULT, COUNT_SUM_WRITER, COUNT_SUM_READER, null,
+              5000L).toList();
+    }
+    Collections.sort(actual);
+    assertThat(actual, equalTo(expected));
+    assertThat(statsList.size(), equalTo(1));
+    assertThat(statsList.get(0).operator, equalTo("aggregate"));
+    assertThat(statsList.get(0).fileCount > SpillPartitioning.FANOUT,
+        is(true));
+    assertThat(statsList.get(0).groupCount > 0, is(true));
+  }
+
+  /** Tests that {@link SpillingHashAggregate} writes a group to a file when
+   * its accumulator grows beyond the memory limit, even though there is only
+   * one group. */
+  @Test public void testSpillingAggregateGrowingAccumulator() {
+    final List<Integer> values = new ArrayList<>();
+    for (int i = 0; i < 2000; i++) {
+      values.add(i);
+    }
+    final List<SpillFile.Stats> statsList = new ArrayList<>();
+    final List<Integer> actual;
+    try (Hook.Closeable ignored = Hook.SPILL.addThread(
+        new Function<SpillFile.Stats, Void>() {
+          public Void apply(SpillFile.Stats stats) {
+            statsList.add(stats);
+            return null;
+          }
+        })) {
+      actual =
+          SpillingHashAggregate.groupBy(Linq4j.asEnumerable(values),
+              new Function1<Integer, String>() {
+                public String apply(Integer value) {
+                  return "k";
+                }
+              },
+              new Function0<List<Integer>>() {
+                public List<Integer> apply() {
+                  return new ArrayList<>();
+                }
+              },
+              new Function2<List<Integer>, Integer, List<Integer>>() {
+                public List<Integer> apply(List<Integer> acc, Integer value) {
+                  acc.add(value);
+                  return acc;
+                }
+              },
+              new Function2<List<Integer>, List<Integer>, List<Integer>>() {
+                public List<Integer> apply(List<Integer> acc,
+                    List<Integer> otherAcc) {
+                  acc.addAll(otherAcc);
+                  return acc;
+                }
+              },
+              new Function2<String, List<Integer>, Integer>() {
+                public Integer apply(String key, List<Integer> acc) {
+                  return acc.size();
+                }
+              },
+              new Function1<List<Integer>, Object[]>() {
+                public Object[] apply(List<Integer> acc) {
+                  return new Object[] {acc};
+                }
+              },
+              new Function1<Object[], List<Integer>>() {
+                public List<Integer> apply(Object[] values) {
+                  //noinspection unchecked
+                  return (List<Integer>) values[0];
+                }
+              },
+              null, 5000L).toList();
+    }
+    assertThat(actual, equalTo(Collections.singletonList(2000)));
+    assertThat(statsList.size(), equalTo(1));
+    assertThat(statsList.get(0).fileCount > 0, is(true));
+  }
+
+  /** Tests {@link ExternalSort} with a memory limit so small that it writes
+   * more runs than it can merge at once. The sort must be stable. */
+  @Test public void testExternalSort() {
+    final List<Object[]> rows = new ArrayList<>();
+    for (int i = 0; i < 5000; i++) {
+      rows.add(new Object[] {(i * 7919) % 100, i});
+    }
+    final Comparator<Object[]> comparator =
+        new Comparator<Object[]>() {
+          public int compare(Object[] o1, Object[] o2) {
+            return ((Integer) o1[0]).compareTo((Integer) o2[0]);
+          }
+        };
+    final List<Object[]> expected = new ArrayList<>(rows);
+    Collections.sort(expected, comparator);
+    final List<SpillFile.Stats> statsList = new ArrayList<>();
+    final List<Object[]> actual;
+    try (Hook.Closeable ignored = Hook.SPILL.addThread(
+        new Function<SpillFile.Stats, Void>() {
+          public Void apply(SpillFile.Stats stats) {
+            statsList.add(stats);
+            return null;
+          }
+        })) {
+      actual =
+          ExternalSort.sort(Linq4j.asEnumerable(rows), comparator, 2000L)
+              .toList();
+    }
+    assertThat(actual.size(), equalTo(expected.size()));
+    for (int i = 0; i < actual.size(); i++) {
+      assertThat(actual.get(i), equalTo(expected.get(i)));
+    }
+    assertThat(statsList.size(), equalTo(1));
+    assertThat(statsList.get(0).operator, equalTo("sort"));
+    assertThat(statsList.get(0).fileCount > ExternalSort.MERGE_FAN_IN,
+        is(true));
+  }
+
+  /** Tests {@link TopN}, which should return the same rows as a stable sort
+   * followed by offset and fetch. */
+  @Test public void testTopN() {
+    final List<Object[]> rows = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      rows.add(new Object[] {(i * 7919) % 50, i});
+    }
+    final Comparator<Object[]> comparator =
+        new Comparator<Object[]>() {
+          public int compare(Object[] o1, Object[] o2) {
+            return ((Integer) o1[0]).compareTo((Integer) o2[0]);
+          }
+        };
+    final List<Object[]> sorted = new ArrayList<>(rows);
+    Collections.sort(sorted, comparator);
+    final int[][] offsetFetches = {
+        {0, 0}, {0, 1}, {0, 10}, {5, 30}, {990, 20}, {0, 1000}, {1200, 5},
+        {3, Integer.MAX_VALUE}
+    };
+    for (int[] offsetFetch : offsetFetches) {
+      final int offset = offsetFetch[0];
+      final int fetch = offsetFetch[1];
+      final List<Object[]> expected =
+          sorted.subList(Math.min(offset, sorted.size()),
+              (int) Math.min((long) offset + fetch, sorted.size()));
+      final List<Object[]> actual =
+          TopN.sort(Linq4j.asEnumerable(rows), comparator, offset, fetch)
+              .toList();
+      assertThat(actual.size(), equalTo(expected.size()));
+      for (int i = 0; i < actual.size(); i++) {
+        assertThat(actual.get(i), equalTo(expected.get(i)));
+      }
+    }
+  }
+
+  /** Tests {@link LongGroupTable}, which assigns consecutive ordinals to
+   * distinct keys, and must keep them as it grows. */
+  @Test public void testLongGroupTable() {
+    final LongGroupTable table = new LongGroupTable();
+    final long[] keys = {0L, -1L, Long.MIN_VALUE, Long.MAX_VALUE, 1L << 32};
+    for (int i = 0; i < keys.length; i++) {
+      assertThat(table.ordinal(keys[i]), equalTo(i));
+    }
+    for (int i = 0; i < 10000; i++) {
+      table.ordinal(i * 1024L);
+    }
+    // 0 was already present
+    assertThat(table.size(), equalTo(keys.length + 9999));
+    for (int i = 0; i < keys.length; i++) {
+      assertThat(table.ordinal(keys[i]), equalTo(i));
+      assertThat(table.key(i), equalTo(keys[i]));
+    }
+    assertThat(table.ordinal(1024L), equalTo(keys.length));
+    assertThat(table.ordinal(9999 * 1024L), equalTo(keys.length + 9998));
+    assertThat(table.size(), equalTo(keys.length + 9999));
+  }
+
+  /** Tests that {@link RowSerializer} reads back the values it writes. */
+  @Test public void testRowSerializer() throws IOException {
+    final Object[] row = {
+        null, true, false, (byte) 1, (short) -2, 3, -4L, 5.5F, 6.5D, 'x',
+        "abc\u00e9", new BigDecimal("-123.4500"),
+        new ByteString(new byte[] {1, 2}), Long.MIN_VALUE, Integer.MAX_VALUE,
+        new Object[] {1, "a"}, Arrays.asList(1, null, "b"),
+        new java.sql.Date(0L)
+    };
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      RowSerializer.write(out, row);
+    }
+    final Object[] row2;
+    try (DataInputStream in = new DataInputStream(
+        new ByteArrayInputStream(bytes.toByteArray()))) {
+      row2 = (Object[]) RowSerializer.read(in);
+    }
+    assertThat(Arrays.deepEquals(row, row2), is(true));
+    assertThat(row2[5], equalTo((Object) 3));
+  }
+
+  /** Tests that {@link SegmentTree} returns the same minimum and maximum as
+   * a scan of the range. */
+  @Test public void testSegmentTree() {
+    final Random random = new Random(0);
+    final Object[] values = new Object[100];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = random.nextInt(5) == 0 ? null : random.nextInt(1000);
+    }
+    final SegmentTree min = new SegmentTree(values, false);
+    final SegmentTree max = new SegmentTree(values, true);
+    for (int start = 0; start < values.length; start++) {
+      for (int end = start - 1; end < values.length; end++) {
+        Integer expectedMin = null;
+        Integer expectedMax = null;
+        for (int i = start; i <= end; i++) {
+          final Integer value = (Integer) values[i];
+          if (value != null) {
+            expectedMin = expectedMin == null
+                ? value : Math.min(expectedMin, value);
+            expectedMax = expectedMax == null
+                ? value : Math.max(expectedMax, value);
+          }
+        }
+        assertThat(min.query(start, end), equalTo((Object) expectedMin));
+        assertThat(max.query(start, end), equalTo((Object) expectedMax));
+      }
+    }
+    assertThat(new SegmentTree(new Object[0], true).query(-1, -2),
+        equalTo(null));
+  }
+
+  /** Tests that {@link SlidingSum} returns the same sum and count as a scan
+   * of the frame, however the frame moves. */
+  @Test public void testSlidingSum() {
+    final Random random = new Random(0);
+    final Object[] values = new Object[100];
+    final Object[] decimals = new Object[values.length];
+    for (int i = 0; i < values.length; i++) {
+      if (random.nextInt(5) > 0) {
+        values[i] = random.nextInt(1000) - 500;
+        decimals[i] = BigDecimal.valueOf((Integer) values[i], 2);
+      }
+    }
+    final SlidingSum sum = new SlidingSum(values, false);
+    final SlidingSum decimalSum = new SlidingSum(decimals, true);
+    for (int k = 0; k < 1000; k++) {
+      final int start = random.nextInt(values.length + 1);
+      final int end = k % 3 == 0
+          ? start + random.nextInt(20)
+          : random.nextInt(values.length);
+      final int actualEnd = Math.min(end, values.length - 1);
+      sum.moveTo(start, actualEnd);
+      decimalSum.moveTo(start, actualEnd);
+      long expectedCount = 0;
+      long expectedSum = 0;
+      for (int i = start; i <= actualEnd; i++) {
+        if (values[i] != null) {
+          ++expectedCount;
+          expectedSum += (Integer) values[i];
+        }
+      }
+      assertThat(sum.count(), equalTo(expectedCount));
+      assertThat(sum.longSum(), equalTo(expectedSum));
+      assertThat(decimalSum.count(), equalTo(expectedCount));
+      assertThat(decimalSum.decimalSum().compareTo(
+          BigDecimal.valueOf(expectedSum, 2)), equalTo(0));
+    }
+  }
+
+  /** Tests {@link RuntimeFilter}. Probe rows whose key is outside the range
+   * of the build keys, or is null, are eliminated; every probe row that has
+   * a match passes. */
+  @Test public void testRuntimeFilter() {
+    final List<Integer> buildKeys = new ArrayList<>();
+    for (int i = 0; i < 100; i += 3) {
+      buildKeys.add(i);
+    }
+    final List<Integer> probeKeys = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      probeKeys.add(i);
+    }
+    probeKeys.add(null);
+    final Function1<Integer, Integer> identity = Functions.identitySelector();
+    final RuntimeFilter filter = new RuntimeFilter(buildKeys.size());
+
+    // Until the build side has been read, every row passes.
+    final Enumerable<Integer> probe =
+        RuntimeFilter.filter(Linq4j.asEnumerable(probeKeys), identity, filter);
+    assertThat(probe.count(), equalTo(probeKeys.size()));
+
+    final List<RuntimeFilter> filters = new ArrayList<>();
+    try (Hook.Closeable ignored = Hook.RUNTIME_FILTER.addThread(
+        new Function<RuntimeFilter, Void>() {
+          public Void apply(RuntimeFilter filter) {
+            filters.add(filter);
+            return null;
+          }
+        })) {
+      final List<Integer> build =
+          RuntimeFilter.collect(Linq4j.asEnumerable(buildKeys), identity,
+              filter).toList();
+      assertThat(build, equalTo(buildKeys));
+      final List<Integer> passed = probe.toList();
+      assertThat(passed.containsAll(buildKeys), is(true));
+      assertThat(passed.size() <= 100, is(true));
+      assertThat(passed.contains(null), is(false));
+    }
+    assertThat(filters.size(), equalTo(1));
+    assertThat(filter.getKeyCount(), equalTo(34L));
+    assertThat(filter.getRowCount(), equalTo(1001L));
+    assertThat(filter.getEliminatedCount() >= 901L, is(true));
+  }
+
+  /** Tests {@link Enumerables#cacheCorrelate}. The inner input is evaluated
+   * only for keys that are not among the two most recently used. */
+  @Test public void testCacheCorrelate() {
+    final List<Integer> outers = Arrays.asList(1, 2, 1, 3, 1, 2, 4, 1);
+    final int[] evaluationCount = {0};
+    final Function1<Integer, Enumerable<Integer>> inner =
+        new Function1<Integer, Enumerable<Integer>>() {
+          public Enumerable<Integer> apply(Integer a0) {
+            ++evaluationCount[0];
+            return Linq4j.asEnumerable(Collections.nCopies(a0, a0 * 10));
+          }
+        };
+    final Function2<Integer, Integer, String> result =
+        new Function2<Integer, Integer, String>() {
+          public String apply(Integer v0, Integer v1) {
+            return v0 + ":" + v1;
+          }
+        };
+    final List<String> expected =
+        EnumerableDefaults.correlateJoin(CorrelateJoinType.INNER,
+            Linq4j.asEnumerable(outers), inner, result).toList();
+    assertThat(evaluationCount[0], equalTo(8));
+
+    evaluationCount[0] = 0;
+    final Function1<Integer, Integer> key = Functions.identitySelector();
+    final List<String> actual =
+        EnumerableDefaults.correlateJoin(CorrelateJoinType.INNER,
+            Linq4j.asEnumerable(outers),
+            Enumerables.cacheCorrelate(inner, key, 2, false), result)
+            .toList();
+    assertThat(actual, equalTo(expected));
+    assertThat(evaluationCount[0], equalTo(6));
+
+    // For a semi-join, only the first row of each inner input is kept
+    final Function1<Integer, Enumerable<Integer>> cached =
+        Enumerables.cacheCorrelate(inner, key, 2, true);
+    assertThat(cached.apply(3).toList(), equalTo(Arrays.asList(30)));
+  }
+
+  /** Tests {@link Enumerables#mapPartitions}. Rows with the same key
+   * ({@code i / 10}) form a partition; the function returns the key and the
+   * rows of each partition, or nothing for key 5. */
+  @Test public void testMapPartitions() {
+    // Empty input
+    assertThat(mapPartitions().toList().isEmpty(), is(true));
+
+    // One partition
+    assertThat(mapPartitions(1, 2, 3).toList().toString(),
+        equalTo("[0:[1, 2, 3]]"));
+
+    // The last row is a partition by itself
+    assertThat(mapPartitions(1, 2, 11, 12, 21).toList().toString(),
+        equalTo("[0:[1, 2], 1:[11, 12], 2:[21]]"));
+
+    // A partition for which the function returns no rows is skipped
+    assertThat(mapPartitions(1, 51, 52, 61).toList().toString(),
+        equalTo("[0:[1], 6:[61]]"));
+
+    // Reset part way through, and after the end, starts again at the first
+    // partition
+    final Enumerator<String> enumerator =
+        mapPartitions(1, 2, 11, 12, 21).enumerator();
+    assertThat(enumerator.moveNext(), is(true));
+    assertThat(enumerator.current(), equalTo("0:[1, 2]"));
+    enumerator.reset();
+    final List<String> list = new ArrayList<>();
+    while (enumerator.moveNext()) {
+      list.add(enumerator.current());
+    }
+    assertThat(list.toString(), equalTo("[0:[1, 2], 1:[11, 12], 2:[21]]"));
+    enumerator.reset();
+    assertThat(enumerator.moveNext(), is(true));
+    assertThat(enumerator.current(), equalTo("0:[1, 2]"));
+    enumerator.close();
+  }
+
+  private static Enumerable<String> mapPartitions(Integer... values) {
+    return Enumerables.mapPartitions(Linq4j.asEnumerable(values),
+        new Function1<Integer, Integer>() {
+          public Integer apply(Integer value) {
+            return value / 10;
+          }
+        },
+        new Function1<Object[], List<String>>() {
+          public List<String> apply(Object[] rows) {
+            final int key = (Integer) rows[0] / 10;
+            if (key == 5) {
+              return Collections.emptyList();
+            }
+            return Collections.singletonList(
+                key + ":" + Arrays.toString(rows));
+          }
+        });
+  }
+
+  /** Tests {@link EnumerableDefaults#sortedGroupBy}; on input in which
+   * rows with the same key are adjacent, it must return the same groups as
+   * {@link EnumerableDefaults#groupBy}, in the order that they occur. */
+  @Test public void testSortedGroupBy() {
+    final List<Object[]> rows = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      rows.add(new Object[] {i < 30 ? null : i / 7, i});
+    }
+    final List<String> expected = groupBy(rows);
+    final List<String> actual =
+        EnumerableDefaults.sortedGroupBy(Linq4j.asEnumerable(rows), ROW_KEY,
+            COUNT_SUM_INIT, COUNT_SUM_ADDER, COUNT_SUM_RESULT, null).toList();
+    assertThat(actual.size(), equalTo(140));
+    assertThat(actual.get(0), equalTo("null:30:435"));
+    final List<String> sortedActual = new ArrayList<>(actual);
+    Collections.sort(sortedActual);
+    assertThat(sortedActual, equalTo(expected));
+
+    // Empty input
+    assertThat(
+        EnumerableDefaults.sortedGroupBy(Linq4j.asEnumerable(rows).take(0),
+            ROW_KEY, COUNT_SUM_INIT, COUNT_SUM_ADDER, COUNT_SUM_RESULT, null)
+            .toList().size(),
+        equalTo(0));
+  }
+
+  /** Tests {@link HyperLogLog}. Estimates must be close to the number of
+   * distinct values, and a merged sketch must be the same as one to which all
+   * values were added. */
+  @Test public void testHyperLogLog() {
+    final byte[] all = HyperLogLog.create();
+    final byte[] evens = HyperLogLog.create();
+    final byte[] odds = HyperLogLog.create();
+    for (int i = 0; i < 200000; i++) {
+      // Each value is added several times
+      final int v = i % 50000;
+      HyperLogLog.add(all, "v" + v);
+      HyperLogLog.add(v % 2 == 0 ? evens : odds, "v" + v);
+    }
+    final long estimate = HyperLogLog.estimate(all);
+    assertThat(Math.abs(estimate - 50000) < 2500, is(true));
+    HyperLogLog.merge(evens, odds);
+    assertThat(Arrays.equals(evens, all), is(true));
+
+    // Small sets are counted almost exactly
+    final byte[] small = HyperLogLog.create();
+    assertThat(HyperLogLog.estimate(small), equalTo(0L));
+    for (int i = 0; i < 100; i++) {
+      HyperLogLog.add(small, (long) i);
+      // A boxed value has the same hash as a primitive one
+      HyperLogLog.add(small, Integer.valueOf(i));
+      HyperLogLog.add(small, BigDecimal.valueOf(i));
+    }
+    HyperLogLog.add(small, (Object) null);
+    assertThat(Math.abs(HyperLogLog.estimate(small) - 100) <= 2, is(true));
+  }
+
+  @Test public void testSpaceSaving() {
+    // Key k occurs about 1000 / (k + 1) times; there are many more distinct
+    // keys than counters
+    final List<Integer> keys = new ArrayList<>();
+    for (int k = 0; k < 2000; k++) {
+      for (int i = 0; i < 1000 / (k + 1) + 1; i++) {
+        keys.add(k);
+      }
+    }
+    Collections.shuffle(keys, new Random(0));
+    final SpaceSaving<Integer> sketch = new SpaceSaving<>(100);
+    for (Integer key : keys) {
+      sketch.add(key);
+    }
+    assertThat(sketch.getTotal(), equalTo((long) keys.size()));
+    final List<SpaceSaving.Counter<Integer>> top = sketch.top(5);
+    assertThat(top.size(), equalTo(5));
+    for (int i = 0; i < top.size(); i++) {
+      final SpaceSaving.Counter<Integer> counter = top.get(i);
+      final long actual = 1000 / (i + 1) + 1;
+      assertThat(counter.key, equalTo(i));
+      // The true count lies between the lower and upper bounds
+      assertThat(counter.getCount() >= actual, is(true));
+      assertThat(counter.getCount() - counter.getError() <= actual, is(true));
+    }
+    assertThat(sketch.isGuaranteed(2), is(true));
+
+    // If there are no more distinct keys than counters, counts are exact
+    final SpaceSaving<String> small = new SpaceSaving<>(10);
+    for (String s : new String[] {"a", "b", "a", "c", "a", "b"}) {
+      small.add(s);
+    }
+    assertThat(small.top(2).toString(), equalTo("[a:3+/-0, b:2+/-0]"));
+    assertThat(small.isGuaranteed(3), is(true));
+
+    final List<String> result =
+        SpaceSaving.topN(Linq4j.asEnumerable(keys),
+            new Function1<Integer, Integer>() {
+              public Integer apply(Integer key) {
+                return key;
+              }
+            }, 100, 1, 2,
+            new Function2<Integer, Long, String>() {
+              public String apply(Integer key, Long count) {
+                return key + "";
+              }
+            }).toList();
+    assertThat(result.toString(), equalTo("[1, 2]"));
+
+    // A fetch so large that offset + fetch overflows an int returns every
+    // key after the offset
+    final List<String> all =
+        SpaceSaving.topN(Linq4j.asEnumerable(keys),
+            new Function1<Integer, Integer>() {
+              public Integer apply(Integer key) {
+                return key;
+              }
+            }, 100, 1, Integer.MAX_VALUE,
+            new Function2<Integer, Long, String>() {
+              public String apply(Integer key, Long count) {
+                return key + "";
+              }
+            }).toList();
+    assertThat(all.size(), equalTo(99));
+    assertThat(all.subList(0, 2).toString(), equalTo("[1, 2]"));
+  }
+
   /** Employee record. */
   private static class Emp {
     final int deptno;
@@ -19,8 +19,19 @@
 import org.apache.calcite.DataContext;
 import org.apache.calcite.adapter.java.JavaTypeFactory;
 import org.apache.calcite.interpreter.Interpreter;
+import org.apache.calcite.linq4j.Enumerator;
 import org.apache.calcite.linq4j.QueryProvider;
+import org.apache.calcite.plan.RelOptCluster;
+import org.apache.calcite.plan.RelTraitSet;
+import org.apache.calcite.rel.RelCollation;
+import org.apache.calcite.rel.RelCollationTraitDef;
+import org.apache.calcite.rel.RelCollations;
+import org.apache.calcite.rel.RelDistribution;
+import org.apache.calcite.rel.RelDistributionTraitDef;
+import org.apache.calcite.rel.RelDistributions;
 import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.core.SortExchange;
+import org.apache.calcite.rel.logical.LogicalExchange;
 import org.apache.calcite.schema.SchemaPlus;
 import org.apache.calcite.sql.SqlNode;
 import org.apache.calcite.sql.parser.SqlParser;
@@ -28,6 +39,7 @@
 import org.apache.calcite.tools.Frameworks;
 import org.apache.calcite.tools.Planner;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 
 import org.junit.After;
@@ -119,6 +131,21 @@ public Object get(String name) {
     assertRows(interpreter, "[c]", "[b]", "[a]");
   }
 
+  /** Tests a sort with offset and fetch, which keeps only the rows it
+   * needs. Rows with equal keys are returned in input order. */
+  @Test public void testInterpretOrderFetch() throws Exception {
+    final String sql = "select x, y\n"
+        + "from (values (3, 'a'), (1, 'b'), (2, 'c'), (1, 'd'), (2, 'e'))\n"
+        + "  as t(x, y)\n"
+        + "order by x offset 1 fetch next 3 rows only";
+    SqlNode parse = planner.parse(sql);
+    SqlNode validate = planner.validate(parse);
+    RelNode convert = planner.rel(validate).project();
+
+    final Interpreter interpreter = new Interpreter(dataContext, convert);
+    assertRows(interpreter, "[1, d]", "[2, c]", "[2, e]");
+  }
+
   private static void assertRows(Interpreter interpreter, String... rows) {
     assertRows(interpreter, false, rows);
   }
@@ -142,6 +169,96 @@ private static void assertRows(Interpreter interpreter,
     assertThat(list, equalTo(expected));
   }
 
+  /** Tests a query whose intermediate results span several batches; the
+   * filter and project are evaluated as the sort reads its input. */
+  @Test public void testInterpretManyRows() throws Exception {
+    final String sql = "with t(x) as (values 0, 1, 2, 3, 4, 5, 6, 7, 8, 9)\n"
+        + "select a.x * 1000 + b.x * 100 + c.x * 10 + d.x as n\n"
+        + "from t as a, t as b, t as c, t as d\n"
+        + "where d.x < 5\n"
+        + "order by n desc";
+    SqlNode parse = planner.parse(sql);
+    SqlNode validate = planner.validate(parse);
+    RelNode convert = planner.rel(validate).rel;
+
+    final Interpreter interpreter = new Interpreter(dataContext, convert);
+    final List<Object> list = Lists.newArrayList();
+    for (Object[] row : interpreter) {
+      list.add(row[0]);
+    }
+    assertThat(list.size(), equalTo(5000));
+    assertThat(list.get(0), equalTo((Object) 9994));
+    assertThat(list.get(1), equalTo((Object) 9993));
+    assertThat(list.get(5), equalTo((Object) 9984));
+    assertThat(list.get(4999), equalTo((Object) 0));
+  }
+
+  /** As {@link #testInterpretManyRows()}, but the nodes run at the same
+   * time, and each join writes more rows than the buffer between it and the
+   * next node can hold, so it must wait while they are read. */
+  @Test public void testInterpretManyRowsParallel() throws Exception {
+    final String sql = "with t(x) as (values 0, 1, 2, 3, 4, 5, 6, 7, 8, 9)\n"
+        + "select d.x, count(*) as c, sum(a.x * 1000 + b.x * 100 + c.x) as s\n"
+        + "from t as a, t as b, t as c, t as d\n"
+        + "where d.x < 5\n"
+        + "group by d.x";
+    SqlNode parse = planner.parse(sql);
+    SqlNode validate = planner.validate(parse);
+    RelNode convert = planner.rel(validate).rel;
+
+    final Interpreter interpreter = new Interpreter(dataContext, convert, 4);
+    assertRowsUnordered(interpreter,
+        "[0, 1000, 4954500]",
+        "[1, 1000, 4954500]",
+        "[2, 1000, 4954500]",
+        "[3, 1000, 4954500]",
+        "[4, 1000, 4954500]");
+  }
+
+  /** Tests a query that reads only the first few rows of a large input,
+   * running in parallel; the nodes that are still writing rows stop. */
+  @Test public void testInterpretFetchParallel() throws Exception {
+    final String sql = "with t(x) as (values 0, 1, 2, 3, 4, 5, 6, 7, 8, 9)\n"
+        + "select a.x * 1000 + b.x * 100 + c.x * 10 + d.x as n\n"
+        + "from t as a, t as b, t as c, t as d\n"
+        + "fetch next 3 rows only";
+    SqlNode parse = planner.parse(sql);
+    SqlNode validate = planner.validate(parse);
+    RelNode convert = planner.rel(validate).rel;
+
+    final Interpreter interpreter = new Interpreter(dataContext, convert, 4);
+    final List<Object[]> list = Lists.newArrayList(interpreter);
+    assertThat(list.size(), equalTo(3));
+  }
+
+  /** Tests that an enumerator over rows that are computed as they are read
+   * can be reset, and then returns the same rows again. */
+  @Test public void testInterpretReset() throws Exception {
+    rootSchema.add("beatles", new ScannableTableTest.BeatlesTable());
+    final String sql = "select \"j\", \"i\" + 1 as i1\n"
+        + "from \"beatles\"\n"
+        + "where \"i\" > 4";
+    SqlNode parse = planner.parse(sql);
+    SqlNode validate = planner.validate(parse);
+    RelNode convert = planner.rel(validate).rel;
+
+    final Interpreter interpreter = new Interpreter(dataContext, convert);
+    final Enumerator<Object[]> enumerator = interpreter.enumerator();
+    final List<String> list = Lists.newArrayList();
+    while (enumerator.moveNext()) {
+      list.add(Arrays.toString(enumerator.current()));
+    }
+    enumerator.reset();
+    while (enumerator.moveNext()) {
+      list.add(Arrays.toString(enumerator.current()));
+    }
+    enumerator.close();
+    assertThat(list,
+        equalTo(
+            Arrays.asList("[George, 7]", "[Ringo, 6]",
+                "[George, 7]", "[Ringo, 6]")));
+  }
+
   /** Tests executing a simple plan using an interpreter. */
   @Test public void testInterpretTable() throws Exception {
     SqlNode parse =
@@ -222,6 +339,38 @@ private static void assertRows(Interpreter interpreter,
         "[Ringo, 1]");
   }
 
+  /** Tests an aggregate grouped by an integer column that contains nulls,
+   * whose accumulators hold their state in primitive arrays. */
+  @Test public void testAggregatePrimitive() throws Exception {
+    final String sql = "with t(k, i, d) as (values (1, 10, 1.5e0),\n"
+        + " (2, 20, 2.5e0), (1, cast(null as integer), 3.5e0),\n"
+        + " (cast(null as integer), 40, 4.5e0))\n"
+        + "select k, count(*), count(i), sum(i), min(i), max(d), sum(d)\n"
+        + "from t group by k";
+    SqlNode parse = planner.parse(sql);
+    SqlNode validate = planner.validate(parse);
+    RelNode convert = planner.rel(validate).rel;
+
+    final Interpreter interpreter = new Interpreter(dataContext, convert);
+    assertRowsUnordered(interpreter,
+        "[1, 2, 1, 10, 10, 3.5, 5.0]",
+        "[2, 1, 1, 20, 20, 2.5, 2.5]",
+        "[null, 1, 1, 40, 40, 4.5, 4.5]");
+  }
+
+  /** Tests an aggregate with no group keys over an empty input; it returns
+   * one row. */
+  @Test public void testAggregateEmpty() throws Exception {
+    final String sql = "with t(k, i) as (values (1, 10), (2, 20))\n"
+        + "select count(*), sum(i), max(k) from t where i > 100";
+    SqlNode parse = planner.parse(sql);
+    SqlNode validate = planner.validate(parse);
+    RelNode convert = planner.rel(validate).rel;
+
+    final Interpreter interpreter = new Interpreter(dataContext, convert);
+    assertRows(interpreter, "[0, null, null]");
+  }
+
   /** Tests executing a plan on a single-column
    * {@link org.apache.calcite.schema.ScannableTable} using an interpreter. */
   @Test public void testInterpretSimpleScannableTable() throws Exception {
@@ -266,6 +415,206 @@ private static void assertRows(Interpreter interpreter,
     final Interpreter interpreter = new Interpreter(dataContext, convert);
     assertRows(interpreter, "[0]", "[10]", "[20]", "[30]");
   }
+
+  private static final String JOIN_INPUTS = "with a(x, y) as (\n"
+      + "  values (1, 'a'), (2, 'b'), (3, 'c'), (cast(null as integer), 'd')),\n"
+      + " b(x, z) as (\n"
+      + "  values (1, 10), (1, 20), (3, 30), (4, 40), (cast(null as integer), 50))\n";
+
+  /** Tests an inner join whose condition has a key and a residual. */
+  @Test public void testInterpretJoin() throws Exception {
+    final String sql = JOIN_INPUTS
+        + "select * from a join b on a.x = b.x and b.z > 10";
+    SqlNode parse = planner.parse(sql);
+    SqlNode validate = planner.validate(parse);
+    RelNode convert = planner.rel(validate).rel;
+
+    final Interpreter interpreter = new Interpreter(dataContext, convert);
+    assertRowsUnordered(interpreter,
+        "[1, a, 1, 20]",
+        "[3, c, 3, 30]");
+  }
+
+  /** Tests a left join; left rows that have no match, including the row
+   * whose key is null, are returned with nulls. */
+  @Test public void testInterpretLeftJoin() throws Exception {
+    final String sql = JOIN_INPUTS
+        + "select * from a left join b on a.x = b.x and b.z > 10";
+    SqlNode parse = planner.parse(sql);
+    SqlNode validate = planner.validate(parse);
+    RelNode convert = planner.rel(validate).rel;
+
+    final Interpreter interpreter = new Interpreter(dataContext, convert);
+    assertRowsUnordered(interpreter,
+        "[1, a, 1, 20]",
+        "[2, b, null, null]",
+        "[3, c, 3, 30]",
+        "[null, d, null, null]");
+  }
+
+  /** Tests a right join. */
+  @Test public void testInterpretRightJoin() throws Exception {
+    final String sql = JOIN_INPUTS
+        + "select * from a right join b on a.x = b.x and b.z > 10";
+    SqlNode parse = planner.parse(sql);
+    SqlNode validate = planner.validate(parse);
+    RelNode convert = planner.rel(validate).rel;
+
+    final Interpreter interpreter = new Interpreter(dataContext, convert);
+    assertRowsUnordered(interpreter,
+        "[1, a, 1, 20]",
+        "[3, c, 3, 30]",
+        "[null, null, 1, 10]",
+        "[null, null, 4, 40]",
+        "[null, null, null, 50]");
+  }
+
+  /** Tests a full join. */
+  @Test public void testInterpretFullJoin() throws Exception {
+    final String sql = JOIN_INPUTS
+        + "select * from a full join b on a.x = b.x and b.z > 10";
+    SqlNode parse = planner.parse(sql);
+    SqlNode validate = planner.validate(parse);
+    RelNode convert = planner.rel(validate).rel;
+
+    final Interpreter interpreter = new Interpreter(dataContext, convert);
+    assertRowsUnordered(interpreter,
+        "[1, a, 1, 20]",
+        "[2, b, null, null]",
+        "[3, c, 3, 30]",
+        "[null, d, null, null]",
+        "[null, null, 1, 10]",
+        "[null, null, 4, 40]",
+        "[null, null, null, 50]");
+  }
+
+  /** Tests a join with no keys, and one whose nulls match each other. */
+  @Test public void testInterpretNonEquiJoin() throws Exception {
+    final String sql = JOIN_INPUTS
+        + "select a.y, b.z from a join b on a.x > b.x and b.z < 40\n"
+        + "union all\n"
+        + "select a.y, b.z from a join b on a.x is not distinct from b.x";
+    SqlNode parse = planner.parse(sql);
+    SqlNode validate = planner.validate(parse);
+    RelNode convert = planner.rel(validate).rel;
+
+    final Interpreter interpreter = new Interpreter(dataContext, convert);
+    assertRowsUnordered(interpreter,
+        "[b, 10]",
+        "[b, 20]",
+        "[c, 10]",
+        "[c, 20]",
+        "[a, 10]",
+        "[a, 20]",
+        "[c, 30]",
+        "[d, 50]");
+  }
+
+  /** Tests running a plan in several threads; the inputs of each join, and
+   * the branches of the union, may run at the same time. */
+  @Test public void testInterpretParallel() throws Exception {
+    final String sql = JOIN_INPUTS
+        + "select a.y, b.z from a join b on a.x > b.x and b.z < 40\n"
+        + "union all\n"
+        + "select a.y, b.z from a join b on a.x is not distinct from b.x";
+    SqlNode parse = planner.parse(sql);
+    SqlNode validate = planner.validate(parse);
+    RelNode convert = planner.rel(validate).rel;
+
+    final Interpreter interpreter = new Interpreter(dataContext, convert, 4);
+    assertRowsUnordered(interpreter,
+        "[b, 10]",
+        "[b, 20]",
+        "[c, 10]",
+        "[c, 20]",
+        "[a, 10]",
+        "[a, 20]",
+        "[c, 30]",
+        "[d, 50]");
+  }
+
+  /** Tests exchanges that partition their input, running in parallel. */
+  @Test public void testInterpretExchange() throws Exception {
+    final String sql = "select * from (values (1, 'a'), (2, 'b'), (1, 'c'),\n"
+        + " (3, 'd'), (cast(null as integer), 'e'))";
+    SqlNode parse = planner.parse(sql);
+    SqlNode validate = planner.validate(parse);
+    RelNode convert = planner.rel(validate).rel;
+
+    final RelNode hash =
+        LogicalExchange.create(convert,
+            RelDistributions.hash(ImmutableList.of(0)));
+    assertRowsUnordered(new Interpreter(dataContext, hash, 4),
+        "[1, a]",
+        "[2, b]",
+        "[1, c]",
+        "[3, d]",
+        "[null, e]");
+
+    final RelNode roundRobin =
+        LogicalExchange.create(convert,
+            RelDistributions.ROUND_ROBIN_DISTRIBUTED);
+    assertRowsUnordered(new Interpreter(dataContext, roundRobin, 3),
+        "[1, a]",
+        "[2, b]",
+        "[1, c]",
+        "[3, d]",
+        "[null, e]");
+
+    // The exchange has a single consumer, which receives each row once
+    final RelNode broadcast =
+        LogicalExchange.create(convert,
+            RelDistributions.BROADCAST_DISTRIBUTED);
+    assertRowsUnordered(new Interpreter(dataContext, broadcast, 2),
+        "[1, a]",
+        "[2, b]",
+        "[1, c]",
+        "[3, d]",
+        "[null, e]");
+  }
+
+  /** Tests a sort exchange; each partition is sorted, and the partitions
+   * are merged, so the output is sorted. */
+  @Test public void testInterpretSortExchange() throws Exception {
+    final String sql = "select * from (values (1, 'a'), (5, 'b'), (2, 'c'),\n"
+        + " (4, 'd'), (3, 'e'), (6, 'f'), (0, 'g'))";
+    SqlNode parse = planner.parse(sql);
+    SqlNode validate = planner.validate(parse);
+    RelNode convert = planner.rel(validate).rel;
+
+    final RelCollation collation =
+        RelCollationTraitDef.INSTANCE.canonize(RelCollations.of(0));
+    final RelDistribution distribution =
+        RelDistributionTraitDef.INSTANCE.canonize(
+            RelDistributions.ROUND_ROBIN_DISTRIBUTED);
+    final RelNode sortExchange =
+        new MySortExchange(convert.getCluster(),
+            convert.getTraitSet().replace(collation).replace(distribution),
+            convert, distribution, collation);
+    assertRows(new Interpreter(dataContext, sortExchange, 3),
+        "[0, g]",
+        "[1, a]",
+        "[2, c]",
+        "[3, e]",
+        "[4, d]",
+        "[5, b]",
+        "[6, f]");
+  }
+
+  /** Implementation of {@link SortExchange}, which has none in core. */
+  private static class MySortExchange extends SortExchange {
+    MySortExchange(RelOptCluster cluster, RelTraitSet traitSet,
+        RelNode input, RelDistribution distribution,
+        RelCollation collation) {
+      super(cluster, traitSet, input, distribution, collation);
+    }
+
+    public SortExchange copy(RelTraitSet traitSet, RelNode newInput,
+        RelDistribution newDistribution, RelCollation newCollation) {
+      return new MySortExchange(getCluster(), traitSet, newInput,
+          newDistribution, newCollation);
+    }
+  }
 }
 
 // End InterpreterTest.java
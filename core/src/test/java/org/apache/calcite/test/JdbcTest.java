@@ -29,6 +29,7 @@
 import org.apache.calcite.avatica.HandlerImpl;
 import org.apache.calcite.avatica.Meta;
 import org.apache.calcite.config.CalciteConnectionConfig;
+import org.apache.calcite.config.CalciteConnectionProperty;
 import org.apache.calcite.config.Lex;
 import org.apache.calcite.config.NullCollation;
 import org.apache.calcite.jdbc.CalciteConnection;
@@ -57,6 +58,7 @@
 import org.apache.calcite.rex.RexNode;
 import org.apache.calcite.runtime.FlatLists;
 import org.apache.calcite.runtime.Hook;
+import org.apache.calcite.runtime.RuntimeFilter;
 import org.apache.calcite.runtime.SqlFunctions;
 import org.apache.calcite.schema.ModifiableTable;
 import org.apache.calcite.schema.ModifiableView;
@@ -96,6 +98,7 @@
 import org.apache.calcite.util.Util;
 
 import com.google.common.base.Function;
+import com.google.common.cache.CacheStats;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.LinkedListMultimap;
 import com.google.common.collect.Multimap;
@@ -1606,6 +1609,20 @@ public Void apply(ResultSet a0) {
             + "empid=110; name=Sales; name=Theodore\n");
   }
 
+  /** Tests a query with several joins, planned top-down with
+   * branch-and-bound pruning. */
+  @Test public void testTopDownOpt() {
+    CalciteAssert.hr()
+        .with(CalciteConnectionProperty.TOP_DOWN_OPT.camelName(), true)
+        .query("select d.\"name\", count(*) as c\n"
+            + "from \"hr\".\"emps\" as e\n"
+            + "join \"hr\".\"depts\" as d on e.\"deptno\" = d.\"deptno\"\n"
+            + "join \"hr\".\"emps\" as e2 on e2.\"deptno\" = d.\"deptno\"\n"
+            + "group by d.\"name\"")
+        .planContains("EnumerableJoin")
+        .returns("name=Sales; C=9\n");
+  }
+
   /** Test case for
    * <a href="https://issues.apache.org/jira/browse/CALCITE-451">[CALCITE-451]
    * Implement theta join, inner and outer, in enumerable convention</a>. */
@@ -1626,6 +1643,42 @@ public Void apply(ResultSet a0) {
             "empid=110; name=HR; name=Theodore");
   }
 
+  /** Tests a join whose condition is a range, which is evaluated by sorting
+   * both inputs rather than by comparing every pair of rows. */
+  @Test public void testBandJoin() {
+    CalciteAssert.hr()
+        .query("select a.x, b.lo, b.hi\n"
+            + "from (values 0, 2, 4, 6, 9, 11, 12) as a (x)\n"
+            + "left join (values (1, 5), (3, 8), (10, 12)) as b (lo, hi)\n"
+            + "on a.x between b.lo and b.hi")
+        .planContains("bandJoin(")
+        .returnsUnordered("X=0; LO=null; HI=null",
+            "X=2; LO=1; HI=5",
+            "X=4; LO=1; HI=5",
+            "X=4; LO=3; HI=8",
+            "X=6; LO=3; HI=8",
+            "X=9; LO=null; HI=null",
+            "X=11; LO=10; HI=12",
+            "X=12; LO=10; HI=12");
+  }
+
+  /** Tests a full join of sorted inputs, with a condition that is not just
+   * equality of keys, evaluated by a merge join. */
+  @Test public void testMergeFullJoin() {
+    CalciteAssert.hr()
+        .query("select *\n"
+            + "from (values (1, 'a'), (2, 'b'), (2, 'c'), (4, 'd')) as a (k, x)\n"
+            + "full join (values (2, 10), (2, 20), (3, 30), (4, 40)) as b (k, y)\n"
+            + "on a.k = b.k and b.y > 15")
+        .planContains("mergeJoin(")
+        .returnsUnordered("K=1; X=a; K0=null; Y=null",
+            "K=2; X=b; K0=2; Y=20",
+            "K=2; X=c; K0=2; Y=20",
+            "K=null; X=null; K0=2; Y=10",
+            "K=null; X=null; K0=3; Y=30",
+            "K=4; X=d; K0=4; Y=40");
+  }
+
   /** Test case for
    * <a href="https://issues.apache.org/jira/browse/CALCITE-35">[CALCITE-35]
    * Support parenthesized sub-clause in JOIN</a>. */
@@ -3137,6 +3190,91 @@ public Void apply(ResultSet resultSet) {
         .planContains(".distinct(");
   }
 
+  /** Tests that an aggregate whose input is sorted on the grouping columns
+   * streams its groups rather than hashing them. */
+  @Test public void testGroupBySortedInput() {
+    CalciteAssert.hr()
+        .query("select x, count(*) as c, sum(y) as s\n"
+            + "from (values (1, 10), (1, 20), (2, 5), (4, 1), (4, 2), (4, 3))\n"
+            + "  as t (x, y)\n"
+            + "group by x")
+        .planContains("sortedGroupBy(")
+        .returns("X=1; C=2; S=30\n"
+            + "X=2; C=1; S=5\n"
+            + "X=4; C=3; S=6\n");
+  }
+
+  /** Tests that {@code COUNT(DISTINCT ...)} uses a sketch if the connection
+   * allows approximate results, and that {@code APPROX_COUNT_DISTINCT} always
+   * does. */
+  @Test public void testApproxCountDistinct() {
+    CalciteAssert.hr()
+        .with(CalciteConnectionProperty.APPROXIMATE_DISTINCT_COUNT.camelName(),
+            true)
+        .query("select \"deptno\", count(distinct \"name\") as c\n"
+            + "from \"hr\".\"emps\"\n"
+            + "group by \"deptno\"")
+        .planContains("HyperLogLog.estimate(")
+        .returnsUnordered("deptno=10; C=3",
+            "deptno=20; C=1");
+    CalciteAssert.hr()
+        .query("select approx_count_distinct(\"deptno\") as c,\n"
+            + "  count(distinct \"deptno\") as c2\n"
+            + "from \"hr\".\"emps\"")
+        .returns("C=2; C2=2\n");
+  }
+
+  /** Tests that "Top N" on a count uses a sketch if approximate results are
+   * allowed. */
+  @Test public void testApproxTopN() {
+    final String sql = "select \"deptno\", count(*) as c\n"
+        + "from \"hr\".\"emps\"\n"
+        + "group by \"deptno\"\n"
+        + "order by c desc limit 1";
+    CalciteAssert.hr()
+        .with(CalciteConnectionProperty.APPROXIMATE_TOP_N.camelName(), true)
+        .query(sql)
+        .planContains("SpaceSaving.topN(")
+        .returns("deptno=10; C=3\n");
+    CalciteAssert.hr()
+        .query(sql)
+        .returns("deptno=10; C=3\n");
+  }
+
+  /** Tests an approximate "Top N" with a large fetch. The number of counters
+   * is limited; if the fetch is too large for a sketch, or the offset plus
+   * the fetch overflows an {@code int}, the exact plan is used. */
+  @Test public void testApproxTopNLargeFetch() {
+    final String sql = "select \"deptno\", count(*) as c\n"
+        + "from \"hr\".\"emps\"\n"
+        + "group by \"deptno\"\n"
+        + "order by c desc limit 200000000";
+    CalciteAssert.hr()
+        .with(CalciteConnectionProperty.APPROXIMATE_TOP_N.camelName(), true)
+        .query(sql)
+        .returns("deptno=10; C=3\n"
+            + "deptno=20; C=1\n");
+    final String sql2 = "select \"deptno\", count(*) as c\n"
+        + "from \"hr\".\"emps\"\n"
+        + "group by \"deptno\"\n"
+        + "order by c desc limit 2147483647 offset 1";
+    CalciteAssert.hr()
+        .with(CalciteConnectionProperty.APPROXIMATE_TOP_N.camelName(), true)
+        .query(sql2)
+        .returns("deptno=20; C=1\n");
+    final String sql3 = "select \"deptno\", count(*) as c\n"
+        + "from \"hr\".\"emps\"\n"
+        + "group by \"deptno\"\n"
+        + "order by c desc limit 1000000";
+    CalciteAssert.hr()
+        .with(CalciteConnectionProperty.APPROXIMATE_TOP_N.camelName(), true)
+        .query(sql3)
+        .planContains("SpaceSaving.topN(")
+        .planContains("1048576")
+        .returns("deptno=10; C=3\n"
+            + "deptno=20; C=1\n");
+  }
+
   /** Same result (and plan) as {@link #testSelectDistinct}. */
   @Test public void testGroupByMax1IsNull() {
     CalciteAssert.hr()
@@ -3219,6 +3357,35 @@ public Void apply(ResultSet resultSet) {
         .returnsCount(8);
   }
 
+  /** As {@link #testWhereNot()}, but the table is read in column batches,
+   * and the filter is evaluated in a loop over each batch. */
+  @Test public void testWhereNotColumnarBatch() {
+    CalciteAssert.that()
+        .with(CalciteAssert.Config.FOODMART_CLONE)
+        .with(CalciteConnectionProperty.COLUMNAR_BATCH.camelName(), true)
+        .query("select 1\n"
+            + "from \"store\"\n"
+            + "where NOT (\"store\".\"grocery_sqft\" < 22000)\n"
+            + "group by \"store\".\"store_street_address\"\n")
+        .planContains("ColumnBatchEnumerator")
+        .returnsCount(8);
+  }
+
+  /** Tests a projection over a table read in column batches. */
+  @Test public void testColumnarBatchProject() {
+    CalciteAssert.that()
+        .with(CalciteAssert.Config.FOODMART_CLONE)
+        .with(CalciteConnectionProperty.COLUMNAR_BATCH.camelName(), true)
+        .query("select \"store_id\" + 1 as \"id\"\n"
+            + "from \"store\"\n"
+            + "where \"store_id\" < 3\n"
+            + "order by \"store_id\"")
+        .planContains("ColumnBatchEnumerator")
+        .returns("id=1\n"
+            + "id=2\n"
+            + "id=3\n");
+  }
+
   /** Query that reads no columns from either underlying table. */
   @Test public void testCountStar() {
     try (final TryThreadLocal.Memo ignored = Prepare.THREAD_TRIM.push(true)) {
@@ -3486,6 +3653,86 @@ public Void apply(ResultSet resultSet) {
             "deptno=10; empid=150; S=18760.0; FIVE=5; M=7000.0; C=2; C2=3; C11=3; C11DEPT=2");
   }
 
+  /** Tests windowed aggregation over frames that slide, which are
+   * maintained incrementally rather than recomputed for each row. */
+  @Test public void testWinAggSliding() {
+    final String values = "(values 0, 1, 2, 3, 4, 5, 6, 7, 8, 9)";
+    CalciteAssert.that()
+        .query("select x, s, c, mn, mx, a, s2, c2, mn2\n"
+            + "from (\n"
+            + "  select x,\n"
+            + "    sum(y) over w as s, count(y) over w as c,\n"
+            + "    min(y) over w as mn, max(y) over w as mx, avg(y) over w as a,\n"
+            + "    sum(y) over w2 as s2, count(y) over w2 as c2,\n"
+            + "    min(y) over w2 as mn2\n"
+            + "  from (\n"
+            + "    select a.x * 10 + b.x as x,\n"
+            + "      case when mod(a.x * 10 + b.x, 7) = 0 then null\n"
+            + "        else a.x * 10 + b.x end as y\n"
+            + "    from " + values + " as a(x), " + values + " as b(x))\n"
+            + "  window w as (order by x rows 20 preceding),\n"
+            + "    w2 as (order by x\n"
+            + "      rows between 5 following and unbounded following))\n"
+            + "where x in (0, 3, 25, 94, 98)")
+        .planContains("org.apache.calcite.runtime.SlidingSum")
+        .planContains("org.apache.calcite.runtime.SegmentTree")
+        .returnsUnordered(
+            "X=0; S=null; C=0; MN=null; MX=null; A=null; S2=4205; C2=81; MN2=5",
+            "X=3; S=6; C=3; MN=1; MX=3; A=2; S2=4194; C2=79; MN2=8",
+            "X=25; S=273; C=18; MN=5; MX=25; A=15; S2=3850; C2=60; MN2=30",
+            "X=94; S=1512; C=18; MN=74; MX=94; A=84; S2=99; C2=1; MN2=99",
+            "X=98; S=1575; C=18; MN=78; MX=97; A=87; S2=null; C2=0; MN2=null");
+  }
+
+  /** As {@link #testWinAggSliding()}, but the argument is NOT NULL. Over
+   * {@code w}, which always contains the current row, SUM is NOT NULL; over
+   * {@code w2}, which may be empty, it is converted to $SUM0 and COUNT. */
+  @Test public void testWinAggSlidingNotNull() {
+    final String values = "(values 0, 1, 2, 3, 4, 5, 6, 7, 8, 9)";
+    CalciteAssert.that()
+        .query("select x, s, c, mn, a, s2, c2, mn2\n"
+            + "from (\n"
+            + "  select x,\n"
+            + "    sum(x) over w as s, count(x) over w as c,\n"
+            + "    min(x) over w as mn, avg(x) over w as a,\n"
+            + "    sum(x) over w2 as s2, count(x) over w2 as c2,\n"
+            + "    min(x) over w2 as mn2\n"
+            + "  from (\n"
+            + "    select a.x * 10 + b.x as x\n"
+            + "    from " + values + " as a(x), " + values + " as b(x))\n"
+            + "  window w as (order by x rows 20 preceding),\n"
+            + "    w2 as (order by x\n"
+            + "      rows between 5 following and unbounded following))\n"
+            + "where x in (0, 3, 25, 94, 98)")
+        .planContains("org.apache.calcite.runtime.SlidingSum")
+        .planContains("org.apache.calcite.runtime.SegmentTree")
+        .returnsUnordered(
+            "X=0; S=0; C=1; MN=0; A=0; S2=4940; C2=95; MN2=5",
+            "X=3; S=6; C=4; MN=0; A=1; S2=4922; C2=92; MN2=8",
+            "X=25; S=315; C=21; MN=5; A=15; S2=4515; C2=70; MN2=30",
+            "X=94; S=1764; C=21; MN=74; A=84; S2=99; C2=1; MN2=99",
+            "X=98; S=1848; C=21; MN=78; A=88; S2=null; C2=0; MN2=null");
+  }
+
+  /** Tests windowed aggregation over input that is already sorted by the
+   * partition and ORDER BY keys, which is evaluated one partition at a
+   * time, without sorting. */
+  @Test public void testWinAggSortedInput() {
+    CalciteAssert.hr()
+        .query("select \"deptno\", \"empid\",\n"
+            + " rank() over w as r,\n"
+            + " sum(\"salary\") over (w rows 1 preceding) as s\n"
+            + "from (select * from \"hr\".\"emps\"\n"
+            + "  order by \"deptno\", \"empid\" limit 10)\n"
+            + "window w as (partition by \"deptno\" order by \"empid\")")
+        .planContains("org.apache.calcite.runtime.Enumerables.mapPartitions(")
+        .returnsUnordered(
+            "deptno=10; empid=100; R=1; S=10000.0",
+            "deptno=10; empid=110; R=2; S=21500.0",
+            "deptno=10; empid=150; R=3; S=18500.0",
+            "deptno=20; empid=200; R=1; S=8000.0");
+  }
+
   /**
    * Tests that window aggregates work when computed over non-nullable
    * {@link org.apache.calcite.adapter.enumerable.JavaRowFormat#SCALAR} inputs.
@@ -4310,6 +4557,26 @@ public boolean moveNext() {
             + "empid=150; deptno=10; name=Sebastian; salary=7000.0; commission=null\n");
   }
 
+  /** Tests that the LIKE operator with a literal pattern creates a matcher
+   * once, and with a pattern that is not a literal, still works. */
+  @Test public void testLikeLiteralPattern() {
+    CalciteAssert.hr()
+        .query("select \"name\" from \"hr\".\"emps\"\n"
+            + "where \"name\" like '%e%'")
+        .planContains("static final org.apache.calcite.runtime.Like.Matcher ")
+        .planContains("org.apache.calcite.runtime.SqlFunctions"
+            + ".likeMatcher(\"%e%\")")
+        .returnsUnordered("name=Sebastian",
+            "name=Theodore");
+    CalciteAssert.hr()
+        .query("select \"name\" from \"hr\".\"emps\"\n"
+            + "where 'x' || \"name\" like 'x' || substring(\"name\", 1, 2) || '%'")
+        .returnsUnordered("name=Bill",
+            "name=Eric",
+            "name=Sebastian",
+            "name=Theodore");
+  }
+
   /** Tests array index. */
   @Test public void testArrayIndexing() {
     CalciteAssert.that()
@@ -4626,6 +4893,203 @@ public Void apply(RelNode relNode) {
             "deptno=null; deptno=40");
   }
 
+  /** As {@link #testFullJoin()}, but the hash table is built and probed by
+   * several threads. */
+  @Test public void testFullJoinParallel() {
+    CalciteAssert.hr()
+        .with(CalciteConnectionProperty.JOIN_PARALLELISM.camelName(), 4)
+        .query("select e.\"deptno\", d.\"deptno\"\n"
+            + "from \"hr\".\"emps\" as e\n"
+            + "  full join \"hr\".\"depts\" as d using (\"deptno\")")
+        .planContains("parallelJoin")
+        .returnsUnordered(
+            "deptno=10; deptno=10",
+            "deptno=10; deptno=10",
+            "deptno=10; deptno=10",
+            "deptno=20; deptno=null",
+            "deptno=null; deptno=30",
+            "deptno=null; deptno=40");
+  }
+
+  /** As {@link #testFullJoin()}, but with a limit on the memory that the
+   * join may use. The inputs are converted to arrays, so that rows can be
+   * written to disk. */
+  @Test public void testFullJoinSpill() {
+    CalciteAssert.hr()
+        .with(CalciteConnectionProperty.SPILL_MEMORY_LIMIT.camelName(), 1)
+        .query("select e.\"deptno\", d.\"deptno\"\n"
+            + "from \"hr\".\"emps\" as e\n"
+            + "  full join \"hr\".\"depts\" as d using (\"deptno\")")
+        .planContains("SpillingHashJoin.join")
+        .returnsUnordered(
+            "deptno=10; deptno=10",
+            "deptno=10; deptno=10",
+            "deptno=10; deptno=10",
+            "deptno=20; deptno=null",
+            "deptno=null; deptno=30",
+            "deptno=null; deptno=40");
+  }
+
+  /** Tests a join whose build side is much smaller than its probe side, with
+   * runtime filters enabled. The keys of the build side filter the rows of
+   * the "emps" scan before they reach the join. */
+  @Test public void testJoinRuntimeFilter() {
+    final List<RuntimeFilter> filters = new ArrayList<>();
+    CalciteAssert.hr()
+        .with(CalciteConnectionProperty.RUNTIME_FILTER.camelName(), true)
+        .query("select e.\"empid\", d.\"name\"\n"
+            + "from \"hr\".\"emps\" as e\n"
+            + "  join \"hr\".\"depts\" as d using (\"deptno\")\n"
+            + "where d.\"name\" = 'Sales'")
+        .withHook(Hook.RUNTIME_FILTER,
+            new Function<RuntimeFilter, Void>() {
+              public Void apply(RuntimeFilter filter) {
+                filters.add(filter);
+                return null;
+              }
+            })
+        .planContains("RuntimeFilter.filter")
+        .returnsUnordered("empid=100; name=Sales",
+            "empid=110; name=Sales",
+            "empid=150; name=Sales");
+    assertThat(filters.isEmpty(), is(false));
+    final RuntimeFilter filter = filters.get(filters.size() - 1);
+    assertThat(filter.getKeyCount(), equalTo(1L));
+    assertThat(filter.getRowCount(), equalTo(4L));
+    assertThat(filter.getEliminatedCount(), equalTo(1L));
+  }
+
+  /** As {@link #testJoinRuntimeFilter()}, but the join uses several threads.
+   * The build side must be read before the probe side, or the filter would
+   * eliminate nothing. */
+  @Test public void testJoinRuntimeFilterParallel() {
+    final List<RuntimeFilter> filters = new ArrayList<>();
+    CalciteAssert.hr()
+        .with(CalciteConnectionProperty.RUNTIME_FILTER.camelName(), true)
+        .with(CalciteConnectionProperty.JOIN_PARALLELISM.camelName(), 2)
+        .query("select e.\"empid\", d.\"name\"\n"
+            + "from \"hr\".\"emps\" as e\n"
+            + "  join \"hr\".\"depts\" as d using (\"deptno\")\n"
+            + "where d.\"name\" = 'Sales'")
+        .withHook(Hook.RUNTIME_FILTER,
+            new Function<RuntimeFilter, Void>() {
+              public Void apply(RuntimeFilter filter) {
+                filters.add(filter);
+                return null;
+              }
+            })
+        .planContains("RuntimeFilter.filter")
+        .planContains("parallelJoin")
+        .returnsUnordered("empid=100; name=Sales",
+            "empid=110; name=Sales",
+            "empid=150; name=Sales");
+    assertThat(filters.isEmpty(), is(false));
+    final RuntimeFilter filter = filters.get(filters.size() - 1);
+    assertThat(filter.getKeyCount(), equalTo(1L));
+    assertThat(filter.getRowCount(), equalTo(4L));
+    assertThat(filter.getEliminatedCount(), equalTo(1L));
+  }
+
+  /** Tests a sort with a limit on the memory that it may use. The input is
+   * converted to arrays, so that rows can be written to disk. */
+  @Test public void testOrderBySpill() {
+    CalciteAssert.hr()
+        .with(CalciteConnectionProperty.SPILL_MEMORY_LIMIT.camelName(), 1)
+        .query("select \"empid\", \"name\" from \"hr\".\"emps\"\n"
+            + "order by \"deptno\" desc, \"name\"")
+        .planContains("ExternalSort.sort")
+        .returnsOrdered("empid=200; name=Eric",
+            "empid=100; name=Bill",
+            "empid=150; name=Sebastian",
+            "empid=110; name=Theodore");
+  }
+
+  /** Tests an aggregation with a limit on the memory that it may use. The
+   * input is converted to arrays, so that rows can be written to disk. */
+  @Test public void testGroupBySpill() {
+    CalciteAssert.hr()
+        .with(CalciteConnectionProperty.SPILL_MEMORY_LIMIT.camelName(), 1)
+        .query("select \"deptno\", count(*) as c, sum(\"salary\") as s\n"
+            + "from \"hr\".\"emps\"\n"
+            + "group by \"deptno\"")
+        .planContains("SpillingHashAggregate.groupBy")
+        .returnsUnordered("deptno=10; C=3; S=28500.0",
+            "deptno=20; C=1; S=8000.0");
+  }
+
+  /** Tests an aggregation that uses several threads. The input has enough
+   * rows to be split into several morsels, so partial results are merged;
+   * {@code SN} is nullable, so its merge checks whether each partial result
+   * has seen a value. */
+  @Test public void testGroupByParallel() {
+    final String digits = "(values 0, 1, 2, 3, 4, 5, 6, 7, 8, 9)";
+    CalciteAssert.hr()
+        .with(CalciteConnectionProperty.AGGREGATE_PARALLELISM.camelName(), 4)
+        .query("select mod(a.x, 3) as k, count(*) as c, sum(b.x) as s,\n"
+            + " sum(case when b.x > 4 then c.x end) as sn, min(c.x) as m,\n"
+            + " max(d.x + a.x) as mx\n"
+            + "from " + digits + " as a (x),\n"
+            + " " + digits + " as b (x),\n"
+            + " " + digits + " as c (x),\n"
+            + " " + digits + " as d (x)\n"
+            + "group by mod(a.x, 3)")
+        .planContains("parallelGroupBy")
+        .returnsUnordered("K=0; C=4000; S=18000; SN=9000; M=0; MX=18",
+            "K=1; C=3000; S=13500; SN=6750; M=0; MX=16",
+            "K=2; C=3000; S=13500; SN=6750; M=0; MX=17");
+  }
+
+  /** Tests a sort with offset and fetch, which is implemented by keeping
+   * the top rows in a bounded heap rather than sorting all rows. */
+  @Test public void testOrderByTopN() {
+    CalciteAssert.hr()
+        .query("select \"empid\", \"name\" from \"hr\".\"emps\"\n"
+            + "order by \"deptno\" desc, \"name\"\n"
+            + "offset 1 fetch next 2 rows only")
+        .planContains("TopN.sort")
+        .returnsOrdered("empid=100; name=Bill",
+            "empid=150; name=Sebastian");
+  }
+
+  /** Tests aggregation with accumulators held in arrays, keyed on a
+   * primitive value. */
+  @Test public void testPrimitiveAggregate() {
+    CalciteAssert.hr()
+        .with(CalciteConnectionProperty.PRIMITIVE_AGGREGATE.camelName(), true)
+        .query("select \"deptno\", count(*) as c, sum(\"salary\") as s,\n"
+            + " sum(\"commission\") as sc, min(\"name\") as m\n"
+            + "from \"hr\".\"emps\"\n"
+            + "group by \"deptno\"")
+        .planContains("LongHashAggregator")
+        .returnsUnordered("deptno=10; C=3; S=28500.0; SC=1250; M=Bill",
+            "deptno=20; C=1; S=8000.0; SC=500; M=Eric");
+  }
+
+  /** Tests aggregation whose key consists of several columns, some of them
+   * nullable, packed into a {@code long}. */
+  @Test public void testPrimitiveAggregateCompositeKey() {
+    CalciteAssert.hr()
+        .with(CalciteConnectionProperty.PRIMITIVE_AGGREGATE.camelName(), true)
+        .query("select \"commission\" is null as n, \"deptno\",\n"
+            + " count(*) as c, max(\"empid\") as m\n"
+            + "from \"hr\".\"emps\"\n"
+            + "group by \"commission\" is null, \"deptno\"")
+        .planContains("LongHashAggregator")
+        .returnsUnordered("N=false; deptno=10; C=2; M=110",
+            "N=true; deptno=10; C=1; M=150",
+            "N=false; deptno=20; C=1; M=200");
+    CalciteAssert.hr()
+        .with(CalciteConnectionProperty.PRIMITIVE_AGGREGATE.camelName(), true)
+        .query("select \"commission\", count(*) as c\n"
+            + "from \"hr\".\"emps\"\n"
+            + "group by \"commission\"")
+        .planContains("LongHashAggregator")
+        .returnsUnordered("commission=1000; C=1",
+            "commission=250; C=1",
+            "commission=500; C=1",
+            "commission=null; C=1");
+  }
+
   /** Various queries against EMP and DEPT, in particular involving composite
    * join conditions in various flavors of outer join. Results are verified
    * against MySQL (except full join, which MySQL does not support). */
@@ -6097,6 +6561,95 @@ public Void apply(Object[] args) {
     }
   }
 
+  /** Tests that if the cache of compiled classes is enabled, a statement that
+   * generates the same Java code as a previous statement re-uses the compiled
+   * class; see {@link Hook#BINDABLE_CACHE}. */
+  @Test public void testBindableCache() {
+    final List<CacheStats> statsList = new ArrayList<>();
+    final String sql = "select \"empid\" + 17 as e\n"
+        + "from \"hr\".\"emps\"\n"
+        + "where \"deptno\" = 10";
+    try (Hook.Closeable hook = Hook.BINDABLE_CACHE.addThread(
+        new Function<CacheStats, Void>() {
+          public Void apply(CacheStats stats) {
+            statsList.add(stats);
+            return null;
+          }
+        })) {
+      final CalciteAssert.AssertThat with = CalciteAssert.hr()
+          .with(CalciteConnectionProperty.BINDABLE_CACHE_MAX_SIZE.camelName(),
+              10);
+      with.query(sql).returnsUnordered("E=117", "E=127", "E=167");
+      assertThat(statsList.size(), equalTo(1));
+      final long missCount = statsList.get(0).missCount();
+      final long hitCount = statsList.get(0).hitCount();
+
+      // Second execution generates the same code, and finds it in the cache.
+      with.query(sql).returnsUnordered("E=117", "E=127", "E=167");
+      assertThat(statsList.size(), equalTo(2));
+      assertThat(statsList.get(1).missCount(), equalTo(missCount));
+      assertThat(statsList.get(1).hitCount(), equalTo(hitCount + 1));
+
+      // With the cache disabled (the default), the hook is not called.
+      CalciteAssert.hr()
+          .query(sql)
+          .returnsUnordered("E=117", "E=127", "E=167");
+      assertThat(statsList.size(), equalTo(2));
+    }
+  }
+
+  /** Tests the connection's cache of prepared statements. Statements that
+   * differ only in the values of literals share an entry; see
+   * {@link Hook#PLAN_CACHE}. */
+  @Test public void testPlanCache() throws Exception {
+    final List<CacheStats> statsList = new ArrayList<>();
+    try (Hook.Closeable hook = Hook.PLAN_CACHE.addThread(
+        new Function<CacheStats, Void>() {
+          public Void apply(CacheStats stats) {
+            statsList.add(stats);
+            return null;
+          }
+        })) {
+      CalciteAssert.hr()
+          .with(CalciteConnectionProperty.PLAN_CACHE_MAX_SIZE.camelName(), 10)
+          .doWithConnection(
+              new Function<CalciteConnection, Void>() {
+                public Void apply(CalciteConnection c) {
+                  try (Statement s = c.createStatement()) {
+                    final String sql = "select \"name\"\n"
+                        + "from \"hr\".\"emps\"\n"
+                        + "where \"empid\" = ";
+                    assertThat(
+                        CalciteAssert.toString(s.executeQuery(sql + "100")),
+                        equalTo("name=Bill\n"));
+                    assertThat(statsList.size(), equalTo(1));
+                    assertThat(statsList.get(0).hitCount(), equalTo(0L));
+
+                    // Same shape, different literal; re-uses the plan
+                    assertThat(
+                        CalciteAssert.toString(s.executeQuery(sql + "200")),
+                        equalTo("name=Eric\n"));
+                    assertThat(statsList.size(), equalTo(2));
+                    assertThat(statsList.get(1).hitCount(), equalTo(1L));
+
+                    // 150.5 cannot be converted to INTEGER without loss, so
+                    // the statement is prepared without replacing literals
+                    assertThat(
+                        CalciteAssert.toString(s.executeQuery(sql + "150.5")),
+                        equalTo(""));
+                    assertThat(
+                        CalciteAssert.toString(
+                            s.executeQuery(sql + "150 or \"name\" = 'Eric'")),
+                        equalTo("name=Eric\nname=Sebastian\n"));
+                    return null;
+                  } catch (SQLException e) {
+                    throw new RuntimeException(e);
+                  }
+                }
+              });
+    }
+  }
+
   /** Tests {@link SqlDialect}. */
   @Test public void testDialect() {
     final String[] sqls = {null};
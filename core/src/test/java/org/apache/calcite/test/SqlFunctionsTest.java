@@ -28,6 +28,7 @@
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
 import static org.apache.calcite.avatica.util.DateTimeUtils.ymdToUnixDate;
 import static org.apache.calcite.runtime.SqlFunctions.addMonths;
@@ -36,9 +37,11 @@
 import static org.apache.calcite.runtime.SqlFunctions.greater;
 import static org.apache.calcite.runtime.SqlFunctions.initcap;
 import static org.apache.calcite.runtime.SqlFunctions.lesser;
+import static org.apache.calcite.runtime.SqlFunctions.like;
 import static org.apache.calcite.runtime.SqlFunctions.lower;
 import static org.apache.calcite.runtime.SqlFunctions.ltrim;
 import static org.apache.calcite.runtime.SqlFunctions.rtrim;
+import static org.apache.calcite.runtime.SqlFunctions.similar;
 import static org.apache.calcite.runtime.SqlFunctions.subtractMonths;
 import static org.apache.calcite.runtime.SqlFunctions.trim;
 import static org.apache.calcite.runtime.SqlFunctions.upper;
@@ -152,6 +155,70 @@ static String trimSpacesBoth(String s) {
     return trim(true, true, " ", s);
   }
 
+  @Test public void testLike() {
+    final String[] strings = {
+      "", "a", "abc", "xabcx", "abcabd", "ab\ncd", "%ab", "xyzabc"
+    };
+    // Equals, prefix, suffix, contains, and general patterns
+    assertThat(likes(strings, "abc", null), is("[abc]"));
+    assertThat(likes(strings, "abc%", null), is("[abc, abcabd]"));
+    assertThat(likes(strings, "%abc", null), is("[abc, xyzabc]"));
+    assertThat(likes(strings, "%abc%", null),
+        is("[abc, xabcx, abcabd, xyzabc]"));
+    assertThat(likes(strings, "%abd%", null), is("[abcabd]"));
+    assertThat(likes(strings, "%", null), is(Arrays.toString(strings)));
+    assertThat(likes(strings, "%%", null), is(Arrays.toString(strings)));
+    assertThat(likes(strings, "a_c", null), is("[abc]"));
+    assertThat(likes(strings, "a%d", null), is("[abcabd, ab\ncd]"));
+    assertThat(likes(strings, "!%%", "!"), is("[%ab]"));
+    assertThat(likes(strings, "%!%%", "!"), is("[%ab]"));
+    try {
+      like("abc", "a!b%", "!");
+      fail("expected error");
+    } catch (RuntimeException e) {
+      assertThat(e.getMessage(), is("Invalid escape sequence 'a!b%', 1"));
+    }
+    assertThat(similar("abc", "a(b|x)c"), is(true));
+    assertThat(similar("axc", "a(b|x)c"), is(true));
+    assertThat(similar("ayc", "a(b|x)c"), is(false));
+
+    // A matcher is created once for each pattern
+    assertSame(SqlFunctions.likeMatcher("abc%"),
+        SqlFunctions.likeMatcher("abc%"));
+
+    // "Contains" agrees with String.contains, including for characters that
+    // share an entry in the table of shifts ('a' and '\u0161')
+    final Random random = new Random(0);
+    final String alphabet = "ab\u0161";
+    for (int i = 0; i < 1000; i++) {
+      final String s = randomString(random, alphabet, 12);
+      final String t = randomString(random, alphabet, 3);
+      assertThat(s + " LIKE %" + t + "%", like(s, "%" + t + "%"),
+          is(s.contains(t)));
+    }
+  }
+
+  /** Returns the strings that match a LIKE pattern. */
+  private static String likes(String[] strings, String pattern,
+      String escape) {
+    final List<String> list = new ArrayList<>();
+    for (String s : strings) {
+      if (escape == null ? like(s, pattern) : like(s, pattern, escape)) {
+        list.add(s);
+      }
+    }
+    return list.toString();
+  }
+
+  private static String randomString(Random random, String alphabet,
+      int maxLength) {
+    final StringBuilder b = new StringBuilder();
+    for (int n = random.nextInt(maxLength + 1); n > 0; n--) {
+      b.append(alphabet.charAt(random.nextInt(alphabet.length())));
+    }
+    return b.toString();
+  }
+
   @Test public void testAddMonths() {
     checkAddMonths(2016, 1, 1, 2016, 2, 1, 1);
     checkAddMonths(2016, 1, 1, 2017, 1, 1, 12);
@@ -61,6 +61,21 @@ public class EnumerableCorrelateTest {
             "empid=150; name=Sebastian");
   }
 
+  /** As {@link #simpleCorrelate()}, but the rows of the inner input are
+   * cached for each value of the correlation variable; several employees
+   * have the same department. */
+  @Test public void simpleCorrelateCached() {
+    tester(false, new JdbcTest.HrSchema())
+        .with("correlateCacheSize", "2")
+        .query(
+            "select empid, name from emps e where exists (select 1 from depts d where d.deptno=e.deptno)")
+        .planContains("cacheCorrelate(")
+        .returnsUnordered(
+            "empid=100; name=Bill",
+            "empid=110; name=Theodore",
+            "empid=150; name=Sebastian");
+  }
+
   private CalciteAssert.AssertThat tester(boolean forceDecorrelate,
       Object schema) {
     return CalciteAssert.that()
@@ -17,23 +17,33 @@
 package org.apache.calcite.adapter.csv;
 
 import org.apache.calcite.DataContext;
+import org.apache.calcite.adapter.java.JavaTypeFactory;
 import org.apache.calcite.linq4j.AbstractEnumerable;
 import org.apache.calcite.linq4j.Enumerable;
 import org.apache.calcite.linq4j.Enumerator;
+import org.apache.calcite.rel.type.RelDataTypeField;
 import org.apache.calcite.rel.type.RelProtoDataType;
+import org.apache.calcite.runtime.ColumnBatch;
+import org.apache.calcite.schema.ColumnarScannableTable;
 import org.apache.calcite.schema.ScannableTable;
 import org.apache.calcite.util.Source;
 
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Table based on a CSV file.
  *
  * <p>It implements the {@link ScannableTable} interface, so Calcite gets
- * data by calling the {@link #scan(DataContext)} method.
+ * data by calling the {@link #scan(DataContext)} method. It also implements
+ * {@link ColumnarScannableTable}, so if the connection enables
+ * {@code columnarBatch}, Calcite reads batches of rows by calling the
+ * {@link #scanBatches(DataContext)} method.
  */
 public class CsvScannableTable extends CsvTable
-    implements ScannableTable {
+    implements ColumnarScannableTable {
   /** Creates a CsvScannableTable. */
   CsvScannableTable(Source source, RelProtoDataType protoRowType) {
     super(source, protoRowType);
@@ -53,6 +63,16 @@ public Enumerator<Object[]> enumerator() {
       }
     };
   }
+
+  public Enumerable<ColumnBatch> scanBatches(DataContext root) {
+    final JavaTypeFactory typeFactory = root.getTypeFactory();
+    final List<Type> types = new ArrayList<>();
+    for (RelDataTypeField field : getRowType(typeFactory).getFieldList()) {
+      types.add(typeFactory.getJavaClass(field.getType()));
+    }
+    return ColumnBatch.batches(scan(root), types,
+        ColumnBatch.DEFAULT_CAPACITY);
+  }
 }
 
 // End CsvScannableTable.java
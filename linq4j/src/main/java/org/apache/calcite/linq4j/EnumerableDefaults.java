@@ -44,6 +44,7 @@
 import java.util.AbstractSet;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -55,9 +56,15 @@
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Objects;
+import java.util.PriorityQueue;
 import java.util.RandomAccess;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.apache.calcite.linq4j.Linq4j.CollectionEnumerable;
 import static org.apache.calcite.linq4j.Linq4j.ListEnumerable;
@@ -815,6 +822,86 @@ public Map<Wrapped<TKey>, TAccumulate> apply() {
         resultSelector);
   }
 
+  /**
+   * Groups the elements of a sequence in which elements with the same key
+   * are adjacent, such as a sequence sorted on the key, and aggregates each
+   * group.
+   *
+   * <p>Returns the same elements as {@link #groupBy}, called with the same
+   * arguments, in the order that the groups occur in the input. Each result
+   * is returned as soon as the key changes, and only one accumulator is held
+   * in memory at a time. If elements with the same key are not adjacent,
+   * the key occurs in more than one result.
+   *
+   * @param comparer Comparer of keys, or null to use {@link Object#equals}
+   */
+  public static <TSource, TKey, TAccumulate, TResult> Enumerable<TResult> sortedGroupBy(
+      final Enumerable<TSource> enumerable,
+      final Function1<TSource, TKey> keySelector,
+      final Function0<TAccumulate> accumulatorInitializer,
+      final Function2<TAccumulate, TSource, TAccumulate> accumulatorAdder,
+      final Function2<TKey, TAccumulate, TResult> resultSelector,
+      final EqualityComparer<TKey> comparer) {
+    return new AbstractEnumerable<TResult>() {
+      public Enumerator<TResult> enumerator() {
+        return new SortedAggregateEnumerator<>(enumerable.enumerator(),
+            keySelector, accumulatorInitializer, accumulatorAdder,
+            resultSelector,
+            comparer == null ? Functions.<TKey>identityComparer() : comparer);
+      }
+    };
+  }
+
+  /**
+   * Groups the elements of a sequence according to a specified key selector
+   * function, and aggregates each group, using several threads.
+   *
+   * <p>Returns the same elements as {@link #groupBy}, called with the same
+   * arguments, but not necessarily in the same order. The input is read into
+   * memory and split into morsels of consecutive elements. Each of
+   * {@code parallelism} tasks repeatedly takes the next morsel and adds its
+   * elements to accumulators of its own, which it keeps in one hash table
+   * for each partition of the keys. Then one task for each partition merges
+   * the accumulators that the tasks created for each key, and applies the
+   * result selector.
+   *
+   * <p>The functions and comparer are called from several threads, and
+   * therefore must not modify shared state; an accumulator is used by only
+   * one thread at a time.
+   *
+   * @param accumulatorMerger Function that adds the state of its second
+   *                          argument to its first argument, and returns
+   *                          the first argument or a new accumulator
+   * @param comparer Comparer of keys, or null to use {@link Object#equals}
+   * @param parallelism Number of threads; if less than 2, performs a serial
+   *                    aggregation
+   */
+  public static <TSource, TKey, TAccumulate, TResult> Enumerable<TResult> parallelGroupBy(
+      final Enumerable<TSource> enumerable,
+      final Function1<TSource, TKey> keySelector,
+      final Function0<TAccumulate> accumulatorInitializer,
+      final Function2<TAccumulate, TSource, TAccumulate> accumulatorAdder,
+      final Function2<TAccumulate, TAccumulate, TAccumulate> accumulatorMerger,
+      final Function2<TKey, TAccumulate, TResult> resultSelector,
+      final EqualityComparer<TKey> comparer, final int parallelism) {
+    if (parallelism < 2) {
+      return comparer == null
+          ? groupBy(enumerable, keySelector, accumulatorInitializer,
+              accumulatorAdder, resultSelector)
+          : groupBy(enumerable, keySelector, accumulatorInitializer,
+              accumulatorAdder, resultSelector, comparer);
+    }
+    return new AbstractEnumerable<TResult>() {
+      public Enumerator<TResult> enumerator() {
+        final ParallelGroupBy<TSource, TKey, TAccumulate, TResult> groupBy =
+            new ParallelGroupBy<>(keySelector, accumulatorInitializer,
+                accumulatorAdder, accumulatorMerger, resultSelector, comparer,
+                parallelism);
+        return groupBy.run(enumerable.toList()).enumerator();
+      }
+    };
+  }
+
   private static <TSource, TKey, TAccumulate, TResult> Enumerable<TResult> groupBy_(
       final Map<TKey, TAccumulate> map, Enumerable<TSource> enumerable,
       Function1<TSource, TKey> keySelector,
@@ -1172,6 +1259,48 @@ public void close() {
     };
   }
 
+  /**
+   * Correlates the elements of two sequences based on matching keys, using
+   * several threads.
+   *
+   * <p>Returns the same elements as {@link #join}, called with the same
+   * arguments. Both inputs are read into memory, the inner input first, as
+   * in {@link #join}. Rows of the inner input are partitioned on the hash
+   * code of their key, and a hash table is built for each partition by a
+   * separate task; then the outer input is split into ranges, which are
+   * probed concurrently. Elements are returned in the
+   * order of the outer input; if {@code generateNullsOnLeft}, elements for
+   * inner rows that matched no outer row come last.
+   *
+   * <p>The key selectors, result selector and comparer are called from
+   * several threads, and therefore must not modify shared state.
+   *
+   * @param parallelism Number of threads; if less than 2, performs a serial
+   *                    join
+   */
+  public static <TSource, TInner, TKey, TResult> Enumerable<TResult> parallelJoin(
+      final Enumerable<TSource> outer, final Enumerable<TInner> inner,
+      final Function1<TSource, TKey> outerKeySelector,
+      final Function1<TInner, TKey> innerKeySelector,
+      final Function2<TSource, TInner, TResult> resultSelector,
+      final EqualityComparer<TKey> comparer, final boolean generateNullsOnLeft,
+      final boolean generateNullsOnRight, final int parallelism) {
+    if (parallelism < 2) {
+      return join_(outer, inner, outerKeySelector, innerKeySelector,
+          resultSelector, comparer, generateNullsOnLeft, generateNullsOnRight);
+    }
+    return new AbstractEnumerable<TResult>() {
+      public Enumerator<TResult> enumerator() {
+        final ParallelHashJoin<TSource, TInner, TKey, TResult> join =
+            new ParallelHashJoin<>(outerKeySelector, innerKeySelector,
+                resultSelector, comparer, generateNullsOnLeft,
+                generateNullsOnRight, parallelism);
+        final List<TInner> innerList = inner.toList();
+        return join.run(outer.toList(), innerList).enumerator();
+      }
+    };
+  }
+
   /**
    * Returns elements of {@code outer} for which there is a member of
    * {@code inner} with a matching key. A specified
@@ -1396,13 +1525,86 @@ public static <TSource, TInner, TResult> Enumerable<TResult> thetaJoin(
       final Function2<TSource, TInner, TResult> resultSelector,
       boolean generateNullsOnLeft,
       boolean generateNullsOnRight) {
-    assert !generateNullsOnLeft : "not implemented";
-    assert !generateNullsOnRight : "not implemented";
+    return mergeJoin(outer, inner, outerKeySelector, innerKeySelector, null,
+        resultSelector, generateNullsOnLeft, generateNullsOnRight);
+  }
+
+  /** Joins two inputs that are sorted on the key, with an optional extra
+   * condition, and generating nulls on either side for outer joins.
+   *
+   * <p>Both inputs must be sorted ascending on the key, with nulls last.
+   * Only one run of elements that have the same key is held in memory from
+   * each input. A key that is null, or is a list that contains a null,
+   * matches nothing. */
+  public static <TSource, TInner, TKey extends Comparable<TKey>, TResult> Enumerable<TResult>
+      mergeJoin(final Enumerable<TSource> outer,
+      final Enumerable<TInner> inner,
+      final Function1<TSource, TKey> outerKeySelector,
+      final Function1<TInner, TKey> innerKeySelector,
+      final Predicate2<TSource, TInner> extraPredicate,
+      final Function2<TSource, TInner, TResult> resultSelector,
+      final boolean generateNullsOnLeft,
+      final boolean generateNullsOnRight) {
     return new AbstractEnumerable<TResult>() {
       public Enumerator<TResult> enumerator() {
         return new MergeJoinEnumerator<>(outer.enumerator(),
             inner.enumerator(), outerKeySelector, innerKeySelector,
-            resultSelector);
+            extraPredicate, resultSelector, generateNullsOnLeft,
+            generateNullsOnRight);
+      }
+    };
+  }
+
+  /** Joins two inputs on a band (range) condition: each outer element
+   * matches the inner elements whose lower bound is below its key and whose
+   * upper bound is above it.
+   *
+   * <p>Both inputs are sorted: the outer on its key and the inner on its
+   * lower bound. The outer elements are swept in order of key; inner
+   * elements become active when their lower bound is passed, and expire
+   * when their upper bound is passed. Each outer element is therefore only
+   * compared with the active inner elements, not with every inner element
+   * as in {@link #thetaJoin}.
+   *
+   * <p>A key or bound that is null matches nothing.
+   *
+   * @param outer Outer input
+   * @param inner Inner input
+   * @param outerKeySelector Key of an outer element
+   * @param innerLowerSelector Lower bound of an inner element, or null if
+   *                           there is no lower bound
+   * @param lowerStrict Whether the key must be greater than the lower bound
+   *                    (otherwise greater than or equal to)
+   * @param innerUpperSelector Upper bound of an inner element, or null if
+   *                           there is no upper bound
+   * @param upperStrict Whether the key must be less than the upper bound
+   *                    (otherwise less than or equal to)
+   * @param predicate Remaining condition, applied to each pair that is within
+   *                  the band, or null
+   * @param resultSelector Creates a result from an outer and inner element
+   * @param generateNullsOnLeft Whether to generate a result for inner
+   *                            elements that match no outer element
+   * @param generateNullsOnRight Whether to generate a result for outer
+   *                             elements that match no inner element
+   */
+  public static <TSource, TInner, TKey extends Comparable<TKey>, TResult>
+      Enumerable<TResult> bandJoin(final Enumerable<TSource> outer,
+      final Enumerable<TInner> inner,
+      final Function1<TSource, TKey> outerKeySelector,
+      final Function1<TInner, TKey> innerLowerSelector,
+      final boolean lowerStrict,
+      final Function1<TInner, TKey> innerUpperSelector,
+      final boolean upperStrict,
+      final Predicate2<TSource, TInner> predicate,
+      final Function2<TSource, TInner, TResult> resultSelector,
+      final boolean generateNullsOnLeft,
+      final boolean generateNullsOnRight) {
+    return new AbstractEnumerable<TResult>() {
+      public Enumerator<TResult> enumerator() {
+        return new BandJoinEnumerator<>(outer, inner, outerKeySelector,
+            innerLowerSelector, lowerStrict, innerUpperSelector, upperStrict,
+            predicate, resultSelector, generateNullsOnLeft,
+            generateNullsOnRight);
       }
     };
   }
@@ -3085,6 +3287,428 @@ public void close() {
     }
   }
 
+  /** Hash join that builds and probes using several threads.
+   *
+   * @see EnumerableDefaults#parallelJoin
+   *
+   * @param <TSource> left input record type
+   * @param <TInner> right input record type
+   * @param <TKey> key type
+   * @param <TResult> result type */
+  private static class ParallelHashJoin<TSource, TInner, TKey, TResult> {
+    private final Function1<TSource, TKey> outerKeySelector;
+    private final Function1<TInner, TKey> innerKeySelector;
+    private final Function2<TSource, TInner, TResult> resultSelector;
+    private final EqualityComparer<TKey> comparer;
+    private final boolean generateNullsOnLeft;
+    private final boolean generateNullsOnRight;
+    private final int parallelism;
+
+    /** Number of bits of the hash code that determine a row's partition.
+     * There are more partitions than threads, so that the work is spread
+     * evenly even if some keys are more frequent than others. */
+    private final int partitionBits;
+
+    /** Hash table of each partition; populated by {@link #build}. */
+    private final List<Map<Object, Group<TInner>>> tables = new ArrayList<>();
+
+    /** Inner rows whose key is null. They never match, but a RIGHT or FULL
+     * join must return them. */
+    private final List<TInner> nullKeyInners = new ArrayList<>();
+
+    ParallelHashJoin(Function1<TSource, TKey> outerKeySelector,
+        Function1<TInner, TKey> innerKeySelector,
+        Function2<TSource, TInner, TResult> resultSelector,
+        EqualityComparer<TKey> comparer, boolean generateNullsOnLeft,
+        boolean generateNullsOnRight, int parallelism) {
+      this.outerKeySelector = outerKeySelector;
+      this.innerKeySelector = innerKeySelector;
+      this.resultSelector = resultSelector;
+      this.comparer = comparer;
+      this.generateNullsOnLeft = generateNullsOnLeft;
+      this.generateNullsOnRight = generateNullsOnRight;
+      this.parallelism = parallelism;
+      this.partitionBits =
+          32 - Integer.numberOfLeadingZeros(parallelism * 4 - 1);
+    }
+
+    /** Joins two lists of rows. */
+    Enumerable<TResult> run(List<TSource> outers, List<TInner> inners) {
+      final ForkJoinPool pool = new ForkJoinPool(parallelism);
+      try {
+        build(pool, inners);
+        return probe(pool, outers);
+      } finally {
+        pool.shutdown();
+      }
+    }
+
+    /** Returns the value to use as a key in a hash table; wraps the key if
+     * there is a comparer. */
+    private Object wrap(TKey key) {
+      return comparer == null ? key : Wrapped.upAs(comparer, key);
+    }
+
+    /** Returns the partition of a key. Multiplying scrambles the bits of the
+     * hash code, and the partition is taken from the high bits, so that the
+     * low bits used by each partition's hash table still vary. */
+    private int partition(Object key) {
+      return (key.hashCode() * 0x9E3779B9) >>> (32 - partitionBits);
+    }
+
+    /** Builds a hash table for each partition of the inner rows.
+     *
+     * <p>First, each task assigns a range of the inner rows to partitions;
+     * then each task builds the hash table of one partition from the rows
+     * that all ranges assigned to it. Within a key, rows stay in the order
+     * of the input. */
+    private void build(ForkJoinPool pool, final List<TInner> inners) {
+      final int partitionCount = 1 << partitionBits;
+      final int[] bounds = bounds(inners.size());
+      final List<Callable<List<Slice>>> scatterTasks = new ArrayList<>();
+      for (int i = 0; i < bounds.length - 1; i++) {
+        final int start = bounds[i];
+        final int end = bounds[i + 1];
+        scatterTasks.add(
+            new Callable<List<Slice>>() {
+              public List<Slice> call() {
+                // The extra slice holds rows whose key is null.
+                final List<Slice> slices = new ArrayList<>();
+                for (int p = 0; p <= partitionCount; p++) {
+                  slices.add(new Slice());
+                }
+                for (TInner row : inners.subList(start, end)) {
+                  final TKey key = innerKeySelector.apply(row);
+                  if (key == null) {
+                    slices.get(partitionCount).rows.add(row);
+                  } else {
+                    final Object k = wrap(key);
+                    final Slice slice = slices.get(partition(k));
+                    slice.keys.add(k);
+                    slice.rows.add(row);
+                  }
+                }
+                return slices;
+              }
+            });
+      }
+      final List<List<Slice>> scattered = invokeAll(pool, scatterTasks);
+
+      final List<Callable<Map<Object, Group<TInner>>>> buildTasks =
+          new ArrayList<>();
+      for (int p = 0; p < partitionCount; p++) {
+        final int partition = p;
+        buildTasks.add(
+            new Callable<Map<Object, Group<TInner>>>() {
+              public Map<Object, Group<TInner>> call() {
+                final Map<Object, Group<TInner>> table = new LinkedHashMap<>();
+                for (List<Slice> slices : scattered) {
+                  final Slice slice = slices.get(partition);
+                  for (int i = 0; i < slice.keys.size(); i++) {
+                    final Object key = slice.keys.get(i);
+                    Group<TInner> group = table.get(key);
+                    if (group == null) {
+                      group = new Group<>();
+                      table.put(key, group);
+                    }
+                    group.rows.add(slice.rows.get(i));
+                  }
+                }
+                return table;
+              }
+            });
+      }
+      tables.addAll(invokeAll(pool, buildTasks));
+      for (List<Slice> slices : scattered) {
+        nullKeyInners.addAll(slices.get(partitionCount).rows);
+      }
+    }
+
+    /** Probes the hash tables with the outer rows. Each task handles a range
+     * of the outer rows. */
+    private Enumerable<TResult> probe(ForkJoinPool pool,
+        final List<TSource> outers) {
+      final int[] bounds = bounds(outers.size());
+      final List<Callable<Enumerable<TResult>>> tasks = new ArrayList<>();
+      for (int i = 0; i < bounds.length - 1; i++) {
+        final int start = bounds[i];
+        final int end = bounds[i + 1];
+        tasks.add(
+            new Callable<Enumerable<TResult>>() {
+              public Enumerable<TResult> call() {
+                final List<TResult> results = new ArrayList<>();
+                for (TSource outer : outers.subList(start, end)) {
+                  probe(outer, results);
+                }
+                return Linq4j.asEnumerable(results);
+              }
+            });
+      }
+      final List<Enumerable<TResult>> list = invokeAll(pool, tasks);
+      if (generateNullsOnLeft) {
+        list.add(Linq4j.asEnumerable(unmatched()));
+      }
+      return Linq4j.concat(list);
+    }
+
+    private void probe(TSource outer, List<TResult> results) {
+      Group<TInner> group = null;
+      if (outer != null) {
+        final TKey key = outerKeySelector.apply(outer);
+        if (key != null) {
+          final Object k = wrap(key);
+          group = tables.get(partition(k)).get(k);
+        }
+      }
+      if (group != null) {
+        // Several threads may set the flag; all write the same value, and
+        // completion of the tasks makes it visible to the caller.
+        group.matched = true;
+        for (TInner inner : group.rows) {
+          results.add(resultSelector.apply(outer, inner));
+        }
+      } else if (generateNullsOnRight) {
+        results.add(resultSelector.apply(outer, null));
+      }
+    }
+
+    /** Returns results for the inner rows that matched no outer row. */
+    private List<TResult> unmatched() {
+      final List<TResult> results = new ArrayList<>();
+      for (Map<Object, Group<TInner>> table : tables) {
+        for (Group<TInner> group : table.values()) {
+          if (!group.matched) {
+            for (TInner inner : group.rows) {
+              results.add(resultSelector.apply(null, inner));
+            }
+          }
+        }
+      }
+      for (TInner inner : nullKeyInners) {
+        results.add(resultSelector.apply(null, inner));
+      }
+      return results;
+    }
+
+    /** Splits {@code n} rows into at most {@link #parallelism} ranges of
+     * similar size, and returns the start of each range followed by
+     * {@code n}. */
+    private int[] bounds(int n) {
+      final int taskCount = Math.max(1, Math.min(parallelism, n));
+      final int[] bounds = new int[taskCount + 1];
+      for (int i = 0; i <= taskCount; i++) {
+        bounds[i] = (int) ((long) n * i / taskCount);
+      }
+      return bounds;
+    }
+
+    private static <T> List<T> invokeAll(ForkJoinPool pool,
+        List<Callable<T>> tasks) {
+      final List<T> results = new ArrayList<>();
+      for (Future<T> future : pool.invokeAll(tasks)) {
+        try {
+          results.add(future.get());
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+          final Throwable cause = e.getCause();
+          if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+          }
+          if (cause instanceof Error) {
+            throw (Error) cause;
+          }
+          throw new RuntimeException(cause);
+        }
+      }
+      return results;
+    }
+
+    /** Rows from a range of the inner input that belong to one partition,
+     * with their keys. */
+    private class Slice {
+      final List<Object> keys = new ArrayList<>();
+      final List<TInner> rows = new ArrayList<>();
+    }
+
+    /** Inner rows that have the same key.
+     *
+     * @param <T> row type */
+    private static class Group<T> {
+      final List<T> rows = new ArrayList<>();
+      boolean matched;
+    }
+  }
+
+  /** Two-phase aggregation that uses several threads; see
+   * {@link #parallelGroupBy}.
+   *
+   * @param <TSource> element type
+   * @param <TKey> key type
+   * @param <TAccumulate> accumulator type
+   * @param <TResult> result type */
+  private static class ParallelGroupBy<TSource, TKey, TAccumulate, TResult> {
+    /** Number of consecutive input elements that a task takes at a time.
+     * Morsels are small enough that tasks finish at about the same time,
+     * even if some elements cost more than others. */
+    private static final int MORSEL_SIZE = 4096;
+
+    private final Function1<TSource, TKey> keySelector;
+    private final Function0<TAccumulate> accumulatorInitializer;
+    private final Function2<TAccumulate, TSource, TAccumulate> accumulatorAdder;
+    private final Function2<TAccumulate, TAccumulate, TAccumulate>
+        accumulatorMerger;
+    private final Function2<TKey, TAccumulate, TResult> resultSelector;
+    private final EqualityComparer<TKey> comparer;
+    private final int parallelism;
+
+    /** Number of bits of the hash code that determine a key's partition.
+     * There are more partitions than threads, so that merging is spread
+     * evenly even if some partitions have more keys than others. */
+    private final int partitionBits;
+
+    ParallelGroupBy(Function1<TSource, TKey> keySelector,
+        Function0<TAccumulate> accumulatorInitializer,
+        Function2<TAccumulate, TSource, TAccumulate> accumulatorAdder,
+        Function2<TAccumulate, TAccumulate, TAccumulate> accumulatorMerger,
+        Function2<TKey, TAccumulate, TResult> resultSelector,
+        EqualityComparer<TKey> comparer, int parallelism) {
+      this.keySelector = keySelector;
+      this.accumulatorInitializer = accumulatorInitializer;
+      this.accumulatorAdder = accumulatorAdder;
+      this.accumulatorMerger = accumulatorMerger;
+      this.resultSelector = resultSelector;
+      this.comparer = comparer;
+      this.parallelism = parallelism;
+      this.partitionBits =
+          32 - Integer.numberOfLeadingZeros(parallelism * 4 - 1);
+    }
+
+    /** Aggregates a list of elements. */
+    Enumerable<TResult> run(List<TSource> rows) {
+      final ForkJoinPool pool = new ForkJoinPool(parallelism);
+      try {
+        return merge(pool, aggregate(pool, rows));
+      } finally {
+        pool.shutdown();
+      }
+    }
+
+    /** Returns the value to use as a key in a hash table; wraps the key if
+     * there is a comparer. */
+    private Object wrap(TKey key) {
+      return comparer == null ? key : Wrapped.upAs(comparer, key);
+    }
+
+    /** Returns the partition of a key. As in
+     * {@link ParallelHashJoin}, the partition is taken from the high bits of
+     * the scrambled hash code. */
+    private int partition(Object key) {
+      final int h = key == null ? 0 : key.hashCode();
+      return (h * 0x9E3779B9) >>> (32 - partitionBits);
+    }
+
+    /** First phase: each task aggregates morsels of the input into hash
+     * tables of its own, one for each partition, and returns the tables. */
+    private List<List<Map<Object, Group>>> aggregate(ForkJoinPool pool,
+        final List<TSource> rows) {
+      final int partitionCount = 1 << partitionBits;
+      final int morselCount = (rows.size() + MORSEL_SIZE - 1) / MORSEL_SIZE;
+      final int taskCount = Math.max(1, Math.min(parallelism, morselCount));
+      final AtomicInteger nextMorsel = new AtomicInteger();
+      final List<Callable<List<Map<Object, Group>>>> tasks = new ArrayList<>();
+      for (int i = 0; i < taskCount; i++) {
+        tasks.add(
+            new Callable<List<Map<Object, Group>>>() {
+              public List<Map<Object, Group>> call() {
+                final List<Map<Object, Group>> tables = new ArrayList<>();
+                for (int p = 0; p < partitionCount; p++) {
+                  tables.add(new HashMap<Object, Group>());
+                }
+                for (;;) {
+                  final int morsel = nextMorsel.getAndIncrement();
+                  if (morsel >= morselCount) {
+                    return tables;
+                  }
+                  final int start = morsel * MORSEL_SIZE;
+                  final int end = Math.min(start + MORSEL_SIZE, rows.size());
+                  for (TSource row : rows.subList(start, end)) {
+                    add(tables, row);
+                  }
+                }
+              }
+            });
+      }
+      return ParallelHashJoin.invokeAll(pool, tasks);
+    }
+
+    private void add(List<Map<Object, Group>> tables, TSource row) {
+      final TKey key = keySelector.apply(row);
+      final Object k = wrap(key);
+      final Map<Object, Group> table = tables.get(partition(k));
+      Group group = table.get(k);
+      if (group == null) {
+        group = new Group(key, accumulatorInitializer.apply());
+        table.put(k, group);
+      }
+      group.accumulator = accumulatorAdder.apply(group.accumulator, row);
+    }
+
+    /** Second phase: for each partition, a task merges the accumulators
+     * that the first-phase tasks created for each key, and returns a result
+     * for each key. */
+    private Enumerable<TResult> merge(ForkJoinPool pool,
+        final List<List<Map<Object, Group>>> partials) {
+      final int partitionCount = 1 << partitionBits;
+      final List<Callable<Enumerable<TResult>>> tasks = new ArrayList<>();
+      for (int p = 0; p < partitionCount; p++) {
+        final int partition = p;
+        tasks.add(
+            new Callable<Enumerable<TResult>>() {
+              public Enumerable<TResult> call() {
+                // Merge into the first task's table, which no other task
+                // uses.
+                final Map<Object, Group> merged =
+                    partials.get(0).get(partition);
+                for (List<Map<Object, Group>> tables
+                    : partials.subList(1, partials.size())) {
+                  for (Map.Entry<Object, Group> entry
+                      : tables.get(partition).entrySet()) {
+                    final Group group = merged.get(entry.getKey());
+                    if (group == null) {
+                      merged.put(entry.getKey(), entry.getValue());
+                    } else {
+                      group.accumulator =
+                          accumulatorMerger.apply(group.accumulator,
+                              entry.getValue().accumulator);
+                    }
+                  }
+                }
+                final List<TResult> results = new ArrayList<>(merged.size());
+                for (Group group : merged.values()) {
+                  results.add(
+                      resultSelector.apply(group.key, group.accumulator));
+                }
+                return Linq4j.asEnumerable(results);
+              }
+            });
+      }
+      return Linq4j.concat(ParallelHashJoin.invokeAll(pool, tasks));
+    }
+
+    /** Key and accumulator of a group. */
+    private class Group {
+      final TKey key;
+      TAccumulate accumulator;
+
+      Group(TKey key, TAccumulate accumulator) {
+        this.key = key;
+        this.accumulator = accumulator;
+      }
+    }
+  }
+
   /** Value wrapped with a comparer.
    *
    * @param <T> element type */
@@ -3222,6 +3846,87 @@ public void remove() {
     }
   }
 
+  /** Enumerator that aggregates groups of adjacent elements that have the
+   * same key.
+   *
+   * @see #sortedGroupBy
+   *
+   * @param <TSource> element type
+   * @param <TKey> key type
+   * @param <TAccumulate> accumulator type
+   * @param <TResult> result type */
+  private static class SortedAggregateEnumerator<TSource, TKey, TAccumulate,
+      TResult> implements Enumerator<TResult> {
+    private final Enumerator<TSource> input;
+    private final Function1<TSource, TKey> keySelector;
+    private final Function0<TAccumulate> accumulatorInitializer;
+    private final Function2<TAccumulate, TSource, TAccumulate> accumulatorAdder;
+    private final Function2<TKey, TAccumulate, TResult> resultSelector;
+    private final EqualityComparer<TKey> comparer;
+    private boolean started;
+    /** Whether the current element of the input is the first of a group that
+     * has not been aggregated yet. */
+    private boolean pending;
+    /** Key of the current element of the input, if {@link #pending}. */
+    private TKey pendingKey;
+    private TResult current;
+
+    SortedAggregateEnumerator(Enumerator<TSource> input,
+        Function1<TSource, TKey> keySelector,
+        Function0<TAccumulate> accumulatorInitializer,
+        Function2<TAccumulate, TSource, TAccumulate> accumulatorAdder,
+        Function2<TKey, TAccumulate, TResult> resultSelector,
+        EqualityComparer<TKey> comparer) {
+      this.input = input;
+      this.keySelector = keySelector;
+      this.accumulatorInitializer = accumulatorInitializer;
+      this.accumulatorAdder = accumulatorAdder;
+      this.resultSelector = resultSelector;
+      this.comparer = comparer;
+    }
+
+    public TResult current() {
+      return current;
+    }
+
+    public boolean moveNext() {
+      if (!started) {
+        started = true;
+        next();
+      }
+      if (!pending) {
+        current = null;
+        return false;
+      }
+      final TKey key = pendingKey;
+      TAccumulate accumulator = accumulatorInitializer.apply();
+      do {
+        accumulator = accumulatorAdder.apply(accumulator, input.current());
+        next();
+      } while (pending && comparer.equal(key, pendingKey));
+      current = resultSelector.apply(key, accumulator);
+      return true;
+    }
+
+    /** Moves to the next element of the input, and computes its key. */
+    private void next() {
+      pending = input.moveNext();
+      pendingKey = pending ? keySelector.apply(input.current()) : null;
+    }
+
+    public void reset() {
+      input.reset();
+      started = false;
+      pending = false;
+      pendingKey = null;
+      current = null;
+    }
+
+    public void close() {
+      input.close();
+    }
+  }
+
   /** Enumerator that performs a merge join on its sorted inputs.
    *
    * @param <TResult> result type
@@ -3230,122 +3935,392 @@ public void remove() {
    * @param <TInner> right input record type */
   private static class MergeJoinEnumerator<TResult, TSource, TInner, TKey extends Comparable<TKey>>
       implements Enumerator<TResult> {
-    final List<TSource> lefts = new ArrayList<>();
-    final List<TInner> rights = new ArrayList<>();
     private final Enumerator<TSource> leftEnumerator;
     private final Enumerator<TInner> rightEnumerator;
     private final Function1<TSource, TKey> outerKeySelector;
     private final Function1<TInner, TKey> innerKeySelector;
+    private final Predicate2<TSource, TInner> extraPredicate;
     private final Function2<TSource, TInner, TResult> resultSelector;
-    boolean done;
-    Enumerator<List<Object>> cartesians;
+    private final boolean generateNullsOnLeft;
+    private final boolean generateNullsOnRight;
+
+    /** Whether the first element of each input has been read. */
+    private boolean started;
+    /** Next element of the left input that is not in a run, and its key;
+     * valid if {@link #leftHas}. */
+    private TSource left;
+    private TKey leftKey;
+    private boolean leftHas;
+    private TInner right;
+    private TKey rightKey;
+    private boolean rightHas;
+
+    /** Elements of each input that have the same key. */
+    final List<TSource> lefts = new ArrayList<>();
+    final List<TInner> rights = new ArrayList<>();
+    /** Which elements of {@link #rights} have matched. */
+    private final BitSet rightMatched = new BitSet();
+    /** Index of the next element of {@link #lefts} to join. */
+    private int leftIndex;
+
+    /** Results that have been computed but not returned. */
+    private final List<TResult> results = new ArrayList<>();
+    private int resultIndex;
+    private TResult current;
 
     MergeJoinEnumerator(Enumerator<TSource> leftEnumerator,
         Enumerator<TInner> rightEnumerator,
         Function1<TSource, TKey> outerKeySelector,
         Function1<TInner, TKey> innerKeySelector,
-        Function2<TSource, TInner, TResult> resultSelector) {
+        Predicate2<TSource, TInner> extraPredicate,
+        Function2<TSource, TInner, TResult> resultSelector,
+        boolean generateNullsOnLeft,
+        boolean generateNullsOnRight) {
       this.leftEnumerator = leftEnumerator;
       this.rightEnumerator = rightEnumerator;
       this.outerKeySelector = outerKeySelector;
       this.innerKeySelector = innerKeySelector;
+      this.extraPredicate = extraPredicate;
       this.resultSelector = resultSelector;
-      start();
+      this.generateNullsOnLeft = generateNullsOnLeft;
+      this.generateNullsOnRight = generateNullsOnRight;
     }
 
-    private void start() {
-      if (!leftEnumerator.moveNext()
-          || !rightEnumerator.moveNext()
-          || !advance()) {
-        done = true;
-        cartesians = Linq4j.emptyEnumerator();
+    private void moveLeft() {
+      leftHas = leftEnumerator.moveNext();
+      if (leftHas) {
+        left = leftEnumerator.current();
+        leftKey = outerKeySelector.apply(left);
       }
     }
 
-    /** Moves to the next key that is present in both sides. Populates
-     * lefts and rights with the rows. Restarts the cross-join
-     * enumerator. */
-    private boolean advance() {
-      TSource left = leftEnumerator.current();
-      TKey leftKey = outerKeySelector.apply(left);
-      TInner right = rightEnumerator.current();
-      TKey rightKey = innerKeySelector.apply(right);
-      for (;;) {
-        int c = leftKey.compareTo(rightKey);
-        if (c == 0) {
-          break;
+    private void moveRight() {
+      rightHas = rightEnumerator.moveNext();
+      if (rightHas) {
+        right = rightEnumerator.current();
+        rightKey = innerKeySelector.apply(right);
+      }
+    }
+
+    /** Returns whether a key is null or contains a null, and therefore
+     * matches nothing. */
+    private static boolean hasNull(Object key) {
+      if (key == null) {
+        return true;
+      }
+      if (key instanceof List) {
+        for (Object o : (List) key) {
+          if (o == null) {
+            return true;
+          }
         }
-        if (c < 0) {
-          if (!leftEnumerator.moveNext()) {
-            done = true;
-            return false;
+      }
+      return false;
+    }
+
+    /** Computes the next few results. Returns false if there are no more
+     * results. */
+    private boolean advance() {
+      if (!started) {
+        moveLeft();
+        moveRight();
+        started = true;
+      }
+      if (leftIndex < lefts.size()) {
+        // Join the next element of the left run to the right run.
+        final TSource left = lefts.get(leftIndex++);
+        boolean matched = false;
+        for (int i = 0; i < rights.size(); i++) {
+          final TInner right = rights.get(i);
+          if (extraPredicate == null || extraPredicate.apply(left, right)) {
+            results.add(resultSelector.apply(left, right));
+            rightMatched.set(i);
+            matched = true;
           }
-          left = leftEnumerator.current();
-          leftKey = outerKeySelector.apply(left);
-        } else {
-          if (!rightEnumerator.moveNext()) {
-            done = true;
-            return false;
+        }
+        if (!matched && generateNullsOnRight) {
+          results.add(resultSelector.apply(left, null));
+        }
+        return true;
+      }
+      if (!rights.isEmpty()) {
+        // End of the runs.
+        if (generateNullsOnLeft) {
+          for (int i = rightMatched.nextClearBit(0); i < rights.size();
+               i = rightMatched.nextClearBit(i + 1)) {
+            results.add(resultSelector.apply(null, rights.get(i)));
           }
-          right = rightEnumerator.current();
-          rightKey = innerKeySelector.apply(right);
         }
+        lefts.clear();
+        rights.clear();
+        rightMatched.clear();
+        leftIndex = 0;
+        return true;
       }
-      lefts.clear();
-      lefts.add(left);
-      for (;;) {
-        if (!leftEnumerator.moveNext()) {
-          done = true;
-          break;
+      if (leftHas && (!rightHas || hasNull(leftKey))) {
+        // The left element matches nothing.
+        if (!rightHas && !generateNullsOnRight) {
+          leftHas = false;
+          return true;
         }
-        left = leftEnumerator.current();
-        TKey leftKey2 = outerKeySelector.apply(left);
-        int c = leftKey.compareTo(leftKey2);
-        if (c != 0) {
-          assert c < 0 : "not sorted";
-          break;
+        if (generateNullsOnRight) {
+          results.add(resultSelector.apply(left, null));
         }
-        lefts.add(left);
+        moveLeft();
+        return true;
       }
-      rights.clear();
-      rights.add(right);
-      for (;;) {
-        if (!rightEnumerator.moveNext()) {
-          done = true;
-          break;
+      if (rightHas && (!leftHas || hasNull(rightKey))) {
+        // The right element matches nothing.
+        if (!leftHas && !generateNullsOnLeft) {
+          rightHas = false;
+          return true;
         }
-        right = rightEnumerator.current();
-        TKey rightKey2 = innerKeySelector.apply(right);
-        int c = rightKey.compareTo(rightKey2);
-        if (c != 0) {
-          assert c < 0 : "not sorted";
-          break;
+        if (generateNullsOnLeft) {
+          results.add(resultSelector.apply(null, right));
         }
-        rights.add(right);
+        moveRight();
+        return true;
+      }
+      if (!leftHas) {
+        return false;
+      }
+      final int c = leftKey.compareTo(rightKey);
+      if (c < 0) {
+        if (generateNullsOnRight) {
+          results.add(resultSelector.apply(left, null));
+        }
+        moveLeft();
+        return true;
       }
-      cartesians = Linq4j.product(
-          ImmutableList.of(Linq4j.<Object>enumerator(lefts),
-              Linq4j.<Object>enumerator(rights)));
+      if (c > 0) {
+        if (generateNullsOnLeft) {
+          results.add(resultSelector.apply(null, right));
+        }
+        moveRight();
+        return true;
+      }
+      // Read the elements of each input that have this key.
+      final TKey key = leftKey;
+      do {
+        lefts.add(left);
+        moveLeft();
+      } while (leftHas && !hasNull(leftKey) && leftKey.compareTo(key) == 0);
+      do {
+        rights.add(right);
+        moveRight();
+      } while (rightHas && !hasNull(rightKey) && rightKey.compareTo(key) == 0);
       return true;
     }
 
     public TResult current() {
-      final List<Object> list = cartesians.current();
-      @SuppressWarnings("unchecked") final TSource left =
-          (TSource) list.get(0);
-      @SuppressWarnings("unchecked") final TInner right =
-          (TInner) list.get(1);
-      return resultSelector.apply(left, right);
+      return current;
     }
 
     public boolean moveNext() {
       for (;;) {
-        if (cartesians.moveNext()) {
+        if (resultIndex < results.size()) {
+          current = results.get(resultIndex++);
           return true;
         }
-        if (done) {
+        results.clear();
+        resultIndex = 0;
+        if (!advance()) {
           return false;
         }
+      }
+    }
+
+    public void reset() {
+      leftEnumerator.reset();
+      rightEnumerator.reset();
+      started = false;
+      lefts.clear();
+      rights.clear();
+      rightMatched.clear();
+      leftIndex = 0;
+      results.clear();
+      resultIndex = 0;
+    }
+
+    public void close() {
+      leftEnumerator.close();
+      rightEnumerator.close();
+    }
+  }
+
+  /** Enumerator that evaluates a band join.
+   *
+   * @param <TResult> result type
+   * @param <TSource> left input record type
+   * @param <TInner> right input record type
+   * @param <TKey> key type
+   *
+   * @see EnumerableDefaults#bandJoin */
+  private static class BandJoinEnumerator<TResult, TSource, TInner,
+      TKey extends Comparable<TKey>> implements Enumerator<TResult> {
+    private final Enumerable<TSource> outer;
+    private final Enumerable<TInner> inner;
+    private final Function1<TSource, TKey> outerKeySelector;
+    private final Function1<TInner, TKey> innerLowerSelector;
+    private final boolean lowerStrict;
+    private final Function1<TInner, TKey> innerUpperSelector;
+    private final boolean upperStrict;
+    private final Predicate2<TSource, TInner> predicate;
+    private final Function2<TSource, TInner, TResult> resultSelector;
+    private final boolean generateNullsOnLeft;
+    private final boolean generateNullsOnRight;
+
+    /** Outer elements whose key is not null, sorted by key. */
+    private List<BandRow<TSource, TKey>> lefts;
+    /** Inner elements whose bounds are not null, sorted by lower bound. */
+    private List<BandRow<TInner, TKey>> rights;
+    private final List<TSource> leftNulls = new ArrayList<>();
+    private final List<TInner> rightNulls = new ArrayList<>();
+    /** Inner elements whose lower bound has been passed, and whose upper
+     * bound has not; a queue ordered by upper bound if there is one. */
+    private Collection<BandRow<TInner, TKey>> active;
+    private int leftIndex;
+    private int rightIndex;
+    private boolean done;
+
+    /** Results for the current outer element. */
+    private final List<TResult> results = new ArrayList<>();
+    private int resultIndex;
+    private TResult current;
+
+    BandJoinEnumerator(Enumerable<TSource> outer, Enumerable<TInner> inner,
+        Function1<TSource, TKey> outerKeySelector,
+        Function1<TInner, TKey> innerLowerSelector, boolean lowerStrict,
+        Function1<TInner, TKey> innerUpperSelector, boolean upperStrict,
+        Predicate2<TSource, TInner> predicate,
+        Function2<TSource, TInner, TResult> resultSelector,
+        boolean generateNullsOnLeft, boolean generateNullsOnRight) {
+      this.outer = outer;
+      this.inner = inner;
+      this.outerKeySelector = outerKeySelector;
+      this.innerLowerSelector = innerLowerSelector;
+      this.lowerStrict = lowerStrict;
+      this.innerUpperSelector = innerUpperSelector;
+      this.upperStrict = upperStrict;
+      this.predicate = predicate;
+      this.resultSelector = resultSelector;
+      this.generateNullsOnLeft = generateNullsOnLeft;
+      this.generateNullsOnRight = generateNullsOnRight;
+    }
+
+    /** Reads and sorts both inputs. */
+    private void start() {
+      lefts = new ArrayList<>();
+      for (TSource left : outer) {
+        final TKey key = outerKeySelector.apply(left);
+        if (key == null) {
+          leftNulls.add(left);
+        } else {
+          lefts.add(new BandRow<>(left, key, null));
+        }
+      }
+      Collections.sort(lefts, BandRow.<TSource, TKey>keyComparator());
+      rights = new ArrayList<>();
+      for (TInner right : inner) {
+        final TKey lower = innerLowerSelector == null
+            ? null : innerLowerSelector.apply(right);
+        final TKey upper = innerUpperSelector == null
+            ? null : innerUpperSelector.apply(right);
+        if (innerLowerSelector != null && lower == null
+            || innerUpperSelector != null && upper == null) {
+          rightNulls.add(right);
+        } else {
+          rights.add(new BandRow<>(right, lower, upper));
+        }
+      }
+      if (innerLowerSelector != null) {
+        Collections.sort(rights, BandRow.<TInner, TKey>keyComparator());
+      }
+      if (innerUpperSelector != null) {
+        active = new PriorityQueue<>(11,
+            BandRow.<TInner, TKey>upperComparator());
+      } else {
+        active = new ArrayList<>();
+      }
+    }
+
+    /** Computes the results for the next outer element, or, after the last,
+     * the elements that matched nothing. Returns false if there are no more
+     * elements. */
+    private boolean advance() {
+      if (lefts == null) {
+        start();
+      }
+      if (leftIndex < lefts.size()) {
+        final BandRow<TSource, TKey> left = lefts.get(leftIndex++);
+        while (rightIndex < rights.size()) {
+          final BandRow<TInner, TKey> right = rights.get(rightIndex);
+          if (right.key != null) {
+            final int c = right.key.compareTo(left.key);
+            if (c > 0 || c == 0 && lowerStrict) {
+              break;
+            }
+          }
+          active.add(right);
+          ++rightIndex;
+        }
+        if (innerUpperSelector != null) {
+          final PriorityQueue<BandRow<TInner, TKey>> queue =
+              (PriorityQueue<BandRow<TInner, TKey>>) active;
+          while (!queue.isEmpty()) {
+            final int c = queue.peek().upper.compareTo(left.key);
+            if (c > 0 || c == 0 && !upperStrict) {
+              break;
+            }
+            // Keys are ascending, so the element matches no later key.
+            queue.poll();
+          }
+        }
+        for (BandRow<TInner, TKey> right : active) {
+          if (predicate == null || predicate.apply(left.e, right.e)) {
+            right.matched = true;
+            results.add(resultSelector.apply(left.e, right.e));
+          }
+        }
+        if (results.isEmpty() && generateNullsOnRight) {
+          results.add(resultSelector.apply(left.e, null));
+        }
+        return true;
+      }
+      if (done) {
+        return false;
+      }
+      done = true;
+      if (generateNullsOnRight) {
+        for (TSource left : leftNulls) {
+          results.add(resultSelector.apply(left, null));
+        }
+      }
+      if (generateNullsOnLeft) {
+        for (BandRow<TInner, TKey> right : rights) {
+          if (!right.matched) {
+            results.add(resultSelector.apply(null, right.e));
+          }
+        }
+        for (TInner right : rightNulls) {
+          results.add(resultSelector.apply(null, right));
+        }
+      }
+      return true;
+    }
+
+    public TResult current() {
+      return current;
+    }
+
+    public boolean moveNext() {
+      for (;;) {
+        if (resultIndex < results.size()) {
+          current = results.get(resultIndex++);
+          return true;
+        }
+        results.clear();
+        resultIndex = 0;
         if (!advance()) {
           return false;
         }
@@ -3353,15 +4328,59 @@ public boolean moveNext() {
     }
 
     public void reset() {
+      lefts = null;
+      rights = null;
+      leftNulls.clear();
+      rightNulls.clear();
+      active = null;
+      leftIndex = 0;
+      rightIndex = 0;
       done = false;
-      leftEnumerator.reset();
-      rightEnumerator.reset();
-      start();
+      results.clear();
+      resultIndex = 0;
     }
 
     public void close() {
     }
   }
+
+  /** Element of an input to a band join, with its key or bounds.
+   *
+   * @param <E> element type
+   * @param <K> key type */
+  private static class BandRow<E, K extends Comparable<K>> {
+    final E e;
+    /** Key of an outer element, or lower bound of an inner element. */
+    final K key;
+    /** Upper bound of an inner element. */
+    final K upper;
+    /** Whether an inner element has matched an outer element. */
+    boolean matched;
+
+    BandRow(E e, K key, K upper) {
+      this.e = e;
+      this.key = key;
+      this.upper = upper;
+    }
+
+    static <E, K extends Comparable<K>> Comparator<BandRow<E, K>>
+        keyComparator() {
+      return new Comparator<BandRow<E, K>>() {
+        public int compare(BandRow<E, K> o1, BandRow<E, K> o2) {
+          return o1.key.compareTo(o2.key);
+        }
+      };
+    }
+
+    static <E, K extends Comparable<K>> Comparator<BandRow<E, K>>
+        upperComparator() {
+      return new Comparator<BandRow<E, K>>() {
+        public int compare(BandRow<E, K> o1, BandRow<E, K> o2) {
+          return o1.upper.compareTo(o2.upper);
+        }
+      };
+    }
+  }
 }
 
 // End EnumerableDefaults.java
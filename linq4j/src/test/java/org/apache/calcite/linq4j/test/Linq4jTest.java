@@ -1258,6 +1258,141 @@ public String apply(Employee v1, Department v2) {
         s);
   }
 
+  /** Tests {@link EnumerableDefaults#parallelJoin}; for each join type, it
+   * must return the same elements as a serial join. */
+  @Test public void testParallelJoin() {
+    final List<Integer> outers = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      outers.add(i % 100 == 0 ? null : i);
+    }
+    final List<Integer> inners = new ArrayList<>();
+    for (int i = 0; i < 300; i++) {
+      inners.add(i);
+    }
+    // Keys are null for some rows.
+    final Function1<Integer, Integer> outerKey =
+        new Function1<Integer, Integer>() {
+          public Integer apply(Integer v) {
+            return v % 7 == 0 ? null : v % 53;
+          }
+        };
+    final Function1<Integer, Integer> innerKey =
+        new Function1<Integer, Integer>() {
+          public Integer apply(Integer v) {
+            return v % 11 == 0 ? null : v % 71;
+          }
+        };
+    final Function2<Integer, Integer, String> result =
+        new Function2<Integer, Integer, String>() {
+          public String apply(Integer v0, Integer v1) {
+            return v0 + ":" + v1;
+          }
+        };
+    // Treats keys as equal if they have the same last digit.
+    final EqualityComparer<Integer> comparer =
+        new EqualityComparer<Integer>() {
+          public boolean equal(Integer v1, Integer v2) {
+            return v1 == null || v2 == null
+                ? v1 == v2
+                : v1 % 10 == v2 % 10;
+          }
+
+          public int hashCode(Integer integer) {
+            return integer == null ? -1 : integer % 10;
+          }
+        };
+    for (EqualityComparer<Integer> c : Arrays.asList(null, comparer)) {
+      for (boolean nullsOnLeft : new boolean[] {false, true}) {
+        for (boolean nullsOnRight : new boolean[] {false, true}) {
+          final List<String> expected =
+              EnumerableDefaults.join(Linq4j.asEnumerable(outers),
+                  Linq4j.asEnumerable(inners), outerKey, innerKey, result, c,
+                  nullsOnLeft, nullsOnRight)
+                  .toList();
+          final List<String> actual =
+              EnumerableDefaults.parallelJoin(Linq4j.asEnumerable(outers),
+                  Linq4j.asEnumerable(inners), outerKey, innerKey, result, c,
+                  nullsOnLeft, nullsOnRight, 4)
+                  .toList();
+          Collections.sort(expected);
+          Collections.sort(actual);
+          assertThat(actual, equalTo(expected));
+        }
+      }
+    }
+  }
+
+  /** Tests {@link EnumerableDefaults#parallelGroupBy}, with and without a
+   * comparer; it must return the same groups as a serial aggregation. */
+  @Test public void testParallelGroupBy() {
+    final List<Integer> list = new ArrayList<>();
+    for (int i = 0; i < 20000; i++) {
+      list.add(i);
+    }
+    // Keys are null for some elements.
+    final Function1<Integer, Integer> key =
+        new Function1<Integer, Integer>() {
+          public Integer apply(Integer v) {
+            return v % 101 == 0 ? null : (v * 7919) % 997;
+          }
+        };
+    final Function0<long[]> init =
+        new Function0<long[]>() {
+          public long[] apply() {
+            return new long[2];
+          }
+        };
+    final Function2<long[], Integer, long[]> adder =
+        new Function2<long[], Integer, long[]>() {
+          public long[] apply(long[] acc, Integer v) {
+            ++acc[0];
+            acc[1] += v;
+            return acc;
+          }
+        };
+    final Function2<long[], long[], long[]> merger =
+        new Function2<long[], long[], long[]>() {
+          public long[] apply(long[] acc, long[] otherAcc) {
+            acc[0] += otherAcc[0];
+            acc[1] += otherAcc[1];
+            return acc;
+          }
+        };
+    final Function2<Integer, long[], String> result =
+        new Function2<Integer, long[], String>() {
+          public String apply(Integer k, long[] acc) {
+            return (k == null ? null : k % 10) + ":" + acc[0] + ":" + acc[1];
+          }
+        };
+    // Treats keys as equal if they have the same last digit.
+    final EqualityComparer<Integer> comparer =
+        new EqualityComparer<Integer>() {
+          public boolean equal(Integer v1, Integer v2) {
+            return v1 == null || v2 == null
+                ? v1 == v2
+                : v1 % 10 == v2 % 10;
+          }
+
+          public int hashCode(Integer integer) {
+            return integer == null ? -1 : integer % 10;
+          }
+        };
+    for (EqualityComparer<Integer> c : Arrays.asList(null, comparer)) {
+      final List<String> expected =
+          c == null
+              ? EnumerableDefaults.groupBy(Linq4j.asEnumerable(list), key,
+                  init, adder, result).toList()
+              : EnumerableDefaults.groupBy(Linq4j.asEnumerable(list), key,
+                  init, adder, result, c).toList();
+      final List<String> actual =
+          EnumerableDefaults.parallelGroupBy(Linq4j.asEnumerable(list), key,
+              init, adder, merger, result, c, 4).toList();
+      Collections.sort(expected);
+      Collections.sort(actual);
+      assertThat(actual, equalTo(expected));
+    }
+  }
+
   @Test public void testJoinCartesianProduct() {
     int n =
         Linq4j.asEnumerable(emps)